@@ -0,0 +1,59 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.amqp;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.mendmix.common.util.ResourceUtils;
+
+/**
+ * 批量消息处理
+ * <br>
+ * 同一topic的消息按maxBatchSize和lingerMillis（首条消息最长等待时间）攒批后一次处理，
+ * 返回处理失败的消息，只确认成功部分，失败部分按原有机制单独重试（重试时通过{@link #process(MQMessage)}逐条处理）。
+ * <br>
+ * 批量处理不设置单条消息的上下文头。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public interface BatchMessageHandler extends MessageHandler {
+
+	default int maxBatchSize() {
+		return ResourceUtils.getInt("mendmix.amqp.consumer.batch.maxSize", 100);
+	}
+
+	default long lingerMillis() {
+		return ResourceUtils.getLong("mendmix.amqp.consumer.batch.lingerMs", 50);
+	}
+
+	/**
+	 * 批量处理消息
+	 * @param messages
+	 * @return 处理失败的消息，全部成功返回null或空列表；抛出异常视为全部失败
+	 * @throws Exception
+	 */
+	List<MQMessage> processBatch(List<MQMessage> messages) throws Exception;
+
+	@Override
+	default void process(MQMessage message) throws Exception {
+		List<MQMessage> failed = processBatch(Collections.singletonList(message));
+		if(failed != null && !failed.isEmpty()) {
+			throw new IllegalStateException("process message[" + message.getMsgId() + "] failed");
+		}
+	}
+}
@@ -15,6 +15,8 @@
  */
 package com.mendmix.amqp;
 
+import java.util.List;
+
 /**
  * 
  * <br>
@@ -43,6 +45,17 @@ public class MQInstanceDelegate {
 		producer.sendMessage(message, false);
 	}
 	
+	public static void sendBatch(List<MQMessage> messages){
+		if(producer == null){
+			System.err.println("MQProducer did not Initialization,Please check config[mq.provider] AND [mq.producer.enabled]");
+			return;
+		}
+		for (MQMessage message : messages) {
+			message.setTopic(MQContext.rebuildWithNamespace(message.getTopic()));
+		}
+		producer.sendMessages(messages);
+	}
+	
     public static void asyncSend(MQMessage message){
     	if(producer == null){
     		System.err.println("MQProducer did not Initialization,Please check config[mq.provider] AND [mq.producer.enabled]");
@@ -15,6 +15,8 @@
  */
 package com.mendmix.amqp;
 
+import java.util.List;
+
 /**
  * 
  * <br>
@@ -36,5 +38,15 @@ public interface MQProducer {
 	 */
 	public String sendMessage(MQMessage message,boolean async);
 	
+	/**
+	 * 批量发送（同步）
+	 * @param messages
+	 */
+	default void sendMessages(List<MQMessage> messages) {
+		for (MQMessage message : messages) {
+			sendMessage(message, false);
+		}
+	}
+	
 	public void shutdown();
 }
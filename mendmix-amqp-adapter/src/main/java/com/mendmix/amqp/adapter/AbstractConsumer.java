@@ -15,20 +15,28 @@
  */
 package com.mendmix.amqp.adapter;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mendmix.amqp.BatchMessageHandler;
 import com.mendmix.amqp.MQConsumer;
 import com.mendmix.amqp.MQContext;
 import com.mendmix.amqp.MQContext.ActionType;
 import com.mendmix.amqp.MQMessage;
 import com.mendmix.amqp.MessageHandler;
+import com.mendmix.amqp.adapter.journal.JournalEntry;
+import com.mendmix.amqp.adapter.journal.MessageRetryJournal;
 import com.mendmix.common.CurrentRuntimeContext;
 import com.mendmix.common.ThreadLocalContext;
 import com.mendmix.common.async.DelayRetryExecutor;
@@ -61,12 +69,23 @@ public abstract class AbstractConsumer implements MQConsumer {
 	protected StandardThreadExecutor asyncProcessExecutor;
 	
 	protected DelayRetryExecutor retryExecutor;
+	//本地持久化重试（开启后消费失败的重试走重试日志）
+	protected MessageRetryJournal retryJournal;
+	private ScheduledExecutorService journalReplayExecutor;
 	//
 	protected Semaphore semaphore;
+	//批量处理topic攒批（只在拉取线程访问）
+	protected Map<String, MessageBatchAccumulator> batchAccumulators = new HashMap<>();
 
 	public AbstractConsumer(Map<String, MessageHandler> messageHandlers) {
 		this.messageHandlers = messageHandlers;
 		this.batchSize = ResourceUtils.getInt("mendmix.amqp.consumer.fetch.batchSize", 1);
+		messageHandlers.forEach((topic,handler) -> {
+			if(handler instanceof BatchMessageHandler) {
+				BatchMessageHandler batchHandler = (BatchMessageHandler) handler;
+				batchAccumulators.put(topic, new MessageBatchAccumulator(batchHandler.maxBatchSize(), batchHandler.lingerMillis()));
+			}
+		});
 	}
 
 	protected void startWorker() {
@@ -88,11 +107,92 @@ public abstract class AbstractConsumer implements MQConsumer {
 		
 		//异步重试
 		retryExecutor = new DelayRetryExecutor(1,5000, 1000, 3);
+		if(ResourceUtils.getBoolean("mendmix.amqp.consumer.retryJournal.enabled", false)) {
+			initRetryJournal();
+		}
 		
 		logger.info("MENDMIX-TRACE-LOGGGING-->> init fetchExecutor finish -> fetchMaxThreads:{}",fetchMaxThreads);
 		
 	}
 
+	private void initRetryJournal() {
+		String dir = ResourceUtils.getProperty("mendmix.amqp.consumer.retryJournal.dir", System.getProperty("user.home") + "/.mendmix/mq-retry/" + MQContext.getGroupName());
+		int segmentSize = ResourceUtils.getInt("mendmix.amqp.consumer.retryJournal.segmentSize", 16 * 1024 * 1024);
+		int maxAttempts = ResourceUtils.getInt("mendmix.amqp.consumer.retryJournal.maxAttempts", 10);
+		long retryPeriod = ResourceUtils.getLong("mendmix.amqp.consumer.retryJournal.retryPeriodMs", 5000);
+		retryJournal = new MessageRetryJournal(dir, segmentSize, maxAttempts, retryPeriod);
+		//启动时回放的记录同样按到期时间重试，分段迁移也在该线程执行
+		journalReplayExecutor = Executors.newSingleThreadScheduledExecutor(new StandardThreadFactory("messageRetryJournal"));
+		journalReplayExecutor.scheduleWithFixedDelay(() -> {
+			try {
+				replayRetryJournal();
+				retryJournal.compact();
+				retryJournal.flush();
+			} catch (Exception e) {
+				logger.warn("MENDMIX-TRACE-LOGGGING-->> replay retry journal error:{}",e.getMessage());
+			}
+		}, 1, 1, TimeUnit.SECONDS);
+	}
+	
+	private void replayRetryJournal() {
+		for (JournalEntry entry : retryJournal.pollDue(System.currentTimeMillis(), 100)) {
+			if(closed.get())return;
+			MessageHandler messageHandler = messageHandlers.get(entry.getTopic());
+			//未订阅的topic保留等待
+			if(messageHandler == null)continue;
+			MQMessage message = retryJournal.readMessage(entry);
+			if(message == null)continue;
+			Exception error = null;
+			try {
+				if(message.getHeaders() != null) {	
+					CurrentRuntimeContext.addContextHeaders(message.getHeaders());
+				}
+				messageHandler.process(message);
+			} catch (Exception e) {
+				error = e;
+			} finally {
+				ThreadLocalContext.unset();
+			}
+			if(!retryJournal.onRetryFinished(entry, message, error)) {
+				MQContext.processMessageLog(message,ActionType.sub, error);
+			}
+		}
+	}
+	
+	/**
+	 * 消费失败重试
+	 * @param messageHandler
+	 * @param message
+	 * @param error
+	 */
+	private void retryLater(MessageHandler messageHandler,MQMessage message,Exception error) {
+		if(retryJournal != null) {
+			try {
+				if(!retryJournal.recordFailure(message, error)) {
+					processMessageConsumeLog(message,error);
+				}
+				return;
+			} catch (Exception e) {
+				logger.warn("MENDMIX-TRACE-LOGGGING-->> write retry journal error:{},fallback to memory retry",e.getMessage());
+			}
+		}
+		retryExecutor.submit("message:"+message.getMsgId(), new ICaller<Void>() {
+			@Override
+			public Void call() throws Exception{
+				messageHandler.process(message);
+				return null;
+			}
+		});
+	}
+	
+	/**
+	 * 本地重试日志（未开启为空），可查询、重新投递死信
+	 * @return
+	 */
+	public MessageRetryJournal getRetryJournal() {
+		return retryJournal;
+	}
+
 	public abstract List<MQMessage> fetchMessages();
 	
 	public abstract String handleMessageConsumed(MQMessage message);
@@ -126,13 +226,136 @@ public abstract class AbstractConsumer implements MQConsumer {
 		asyncProcessExecutor.execute(new Runnable() {
 			@Override
 			public void run() {
-				consumeMessage(message);
+				try {					
+					consumeMessage(message);
+				} finally {
+					//释放信号量
+					semaphore.release();
+				}
 			}
 			
 		});
 	}
 	
-	private void consumeMessage(MQMessage message) {
+	/**
+	 * 分发拉取到的消息
+	 * @param message
+	 * @throws InterruptedException
+	 */
+	protected void dispatchMessage(MQMessage message) throws InterruptedException {
+		if(asyncProcessExecutor == null) {
+			consumeMessage(message);
+		}else {
+			asyncConsumeMessage(message);
+		}
+	}
+	
+	/**
+	 * 处理线程是否已满（暂停拉取）
+	 * @return
+	 */
+	protected boolean isProcessBusy() {
+		return asyncProcessExecutor != null && asyncProcessExecutor.getSubmittedTasksCount() >= MQContext.getMaxProcessThreads();
+	}
+	
+	/**
+	 * 攒批key，同一key的消息组成一批
+	 * @param message
+	 * @return
+	 */
+	protected String batchKey(MQMessage message) {
+		return message.getTopic();
+	}
+	
+	/**
+	 * 分发攒满（或等待超时）的批次
+	 * @param batch
+	 * @throws InterruptedException
+	 */
+	protected void dispatchBatch(List<MQMessage> batch) throws InterruptedException {
+		if(asyncProcessExecutor == null) {
+			consumeBatch(batch);
+			return;
+		}
+		semaphore.acquire();
+		asyncProcessExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {					
+					consumeBatch(batch);
+				} finally {
+					semaphore.release();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * 丢弃未分发的批次（如分区被回收）
+	 * @param keyFilter
+	 */
+	protected void discardPendingBatches(Predicate<String> keyFilter) {
+		for (MessageBatchAccumulator accumulator : batchAccumulators.values()) {
+			accumulator.discard(keyFilter);
+		}
+	}
+	
+	private void flushExpiredBatches() throws InterruptedException {
+		for (MessageBatchAccumulator accumulator : batchAccumulators.values()) {
+			for (List<MQMessage> batch : accumulator.drainExpired()) {
+				dispatchBatch(batch);
+			}
+		}
+	}
+	
+	/**
+	 * 批量处理，只确认成功的消息，失败的逐条重试
+	 * @param messages
+	 */
+	protected void consumeBatch(List<MQMessage> messages) {
+		BatchMessageHandler messageHandler = (BatchMessageHandler) messageHandlers.get(messages.get(0).getTopic());
+		List<MQMessage> batch = new ArrayList<>(messages.size());
+		for (MQMessage message : messages) {
+			if(MQContext.getConsumeMaxRetryTimes() > 0 && message.getConsumeTimes() > MQContext.getConsumeMaxRetryTimes()) {
+				continue;
+			}
+			//事务消息状态未确认的按单条处理
+			if(!message.originStatusCompleted()) {
+				consumeMessage(message);
+			}else {
+				batch.add(message);
+			}
+		}
+		if(batch.isEmpty())return;
+		List<MQMessage> failed;
+		Exception error = null;
+		try {
+			failed = messageHandler.processBatch(batch);
+		} catch (Exception e) {
+			failed = batch;
+			error = e;
+		} finally {
+			ThreadLocalContext.unset();
+		}
+		for (MQMessage message : MessageBatchAccumulator.succeededMessages(batch, failed)) {
+			processMessageConsumeLog(message,null);
+		}
+		if(failed == null || failed.isEmpty()) {
+			if(logger.isDebugEnabled())logger.debug("MENDMIX-TRACE-LOGGGING-->> MQmessage_BATCH_CONSUME_SUCCESS -> topic:{},size:{}",batch.get(0).getTopic(),batch.size());
+			return;
+		}
+		logger.error(String.format("MENDMIX-TRACE-LOGGGING-->> MQmessage_BATCH_CONSUME_ERROR -> topic:%s,size:%s,failed:%s",batch.get(0).getTopic(),batch.size(),failed.size()),error);
+		for (MQMessage message : failed) {
+			Exception ex = error != null ? error : new IllegalStateException("batch process failed");
+			if(messageHandler.retrieable()) {
+				retryLater(messageHandler, message, ex);
+			}else {
+				processMessageConsumeLog(message,ex);
+			}
+		}
+	}
+	
+	protected void consumeMessage(MQMessage message) {
 		MessageHandler messageHandler = messageHandlers.get(message.getTopic());
 		try {	
 			//上下文
@@ -167,20 +390,12 @@ public abstract class AbstractConsumer implements MQConsumer {
 		}catch (Exception e) {
 			logger.error(String.format("MENDMIX-TRACE-LOGGGING-->> MQmessage_CONSUME_ERROR -> [%s]",message.logString()),e);
 			if(messageHandler.retrieable()) {
-				retryExecutor.submit("message:"+message.getMsgId(), new ICaller<Void>() {
-					@Override
-					public Void call() throws Exception{
-						messageHandler.process(message);
-						return null;
-					}
-				});
+				retryLater(messageHandler, message, e);
 			}else {
 				processMessageConsumeLog(message,e);
 			}
 		} finally {
 			ThreadLocalContext.unset();
-			//释放信号量
-			if(semaphore != null)semaphore.release();
 		}
 	}
 	
@@ -193,6 +408,15 @@ public abstract class AbstractConsumer implements MQConsumer {
 		if(asyncProcessExecutor != null) {
 			asyncProcessExecutor.shutdown();
 		}
+		if(journalReplayExecutor != null) {
+			journalReplayExecutor.shutdown();
+			try {
+				journalReplayExecutor.awaitTermination(1, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			retryJournal.close();
+		}
 	}
 
 	private class Worker implements Runnable{
@@ -201,22 +425,26 @@ public abstract class AbstractConsumer implements MQConsumer {
 		public void run() {
 			while(!closed.get()){ 
 				try {	
-					if(asyncProcessExecutor != null && asyncProcessExecutor.getSubmittedTasksCount() >= MQContext.getMaxProcessThreads()) {
+					if(isProcessBusy()) {
 						Thread.sleep(1);
 						continue;
 					}
 					List<MQMessage> messages = fetchMessages();
 					if(messages == null || messages.isEmpty()){
-						Thread.sleep(100);
+						flushExpiredBatches();
+						Thread.sleep(batchAccumulators.isEmpty() ? 100 : 10);
 						continue;
 					}
+					MessageBatchAccumulator accumulator;
 					for (MQMessage message : messages) {
-						if(asyncProcessExecutor == null) {
-							consumeMessage(message);
-						}else {
-							asyncConsumeMessage(message);
+						if((accumulator = batchAccumulators.get(message.getTopic())) == null) {
+							dispatchMessage(message);
+							continue;
 						}
+						List<MQMessage> batch = accumulator.add(batchKey(message), message);
+						if(batch != null)dispatchBatch(batch);
 					}
+					flushExpiredBatches();
 				} catch (Exception e) {
 					
 				}
@@ -15,19 +15,111 @@
  */
 package com.mendmix.amqp.adapter;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.mendmix.amqp.MQContext;
 import com.mendmix.amqp.MQContext.ActionType;
 import com.mendmix.amqp.MQMessage;
 import com.mendmix.amqp.MQProducer;
+import com.mendmix.common.CurrentRuntimeContext;
+import com.mendmix.common.async.StandardThreadExecutor.StandardThreadFactory;
+import com.mendmix.common.util.ResourceUtils;
 
 public abstract class AbstractProducer implements MQProducer {
 	
+	private final static Logger logger = LoggerFactory.getLogger("com.mendmix.amqp.adapter");
+	
+	//异步发送攒批（lingerMs大于0开启）
+	private MessageBatchAccumulator batchAccumulator;
+	private ScheduledExecutorService lingerScheduler;
+	
 	@Override
-	public void start() throws Exception {}
+	public void start() throws Exception {
+		long lingerMillis = ResourceUtils.getLong("mendmix.amqp.producer.batch.lingerMs", 0);
+		if(lingerMillis <= 0)return;
+		int maxBatchSize = ResourceUtils.getInt("mendmix.amqp.producer.batch.maxSize", 100);
+		batchAccumulator = new MessageBatchAccumulator(maxBatchSize, lingerMillis);
+		long checkInterval = Math.max(lingerMillis / 2, 1);
+		lingerScheduler = Executors.newSingleThreadScheduledExecutor(new StandardThreadFactory("messageProduceLinger"));
+		lingerScheduler.scheduleWithFixedDelay(() -> {
+			for (List<MQMessage> batch : batchAccumulator.drainExpired()) {
+				flushBatch(batch);
+			}
+		}, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+	}
 
 
 	@Override
-	public void shutdown() {}
+	public void shutdown() {
+		if(lingerScheduler == null)return;
+		lingerScheduler.shutdown();
+		try {
+			lingerScheduler.awaitTermination(1, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (List<MQMessage> batch : batchAccumulator.drainAll()) {
+			flushBatch(batch);
+		}
+	}
+	
+	/**
+	 * 批量发送（同步），同一批次只取一次上下文头
+	 */
+	@Override
+	public void sendMessages(List<MQMessage> messages) {
+		if(messages == null || messages.isEmpty())return;
+		Map<String, String> contextHeaders = CurrentRuntimeContext.getContextHeaders();
+		for (MQMessage message : messages) {
+			if(message.getHeaders() == null) {
+				message.setHeaders(contextHeaders);
+			}else {
+				message.getHeaders().putAll(contextHeaders);
+			}
+		}
+		doSendMessages(messages, false);
+	}
+	
+	/**
+	 * 批量发送，调用前已合并上下文头
+	 * @param messages
+	 * @param async 是否异步（不等待发送结果）
+	 */
+	protected void doSendMessages(List<MQMessage> messages,boolean async) {
+		for (MQMessage message : messages) {
+			sendMessage(message, false);
+		}
+	}
+	
+	/**
+	 * 异步发送时放入攒批队列
+	 * @param message
+	 * @return 未开启攒批返回false
+	 */
+	protected boolean bufferAsyncMessage(MQMessage message) {
+		if(batchAccumulator == null)return false;
+		//在发送线程取上下文
+		message.mergeContextHeaders();
+		List<MQMessage> batch = batchAccumulator.add(message.getTopic(), message);
+		if(batch != null)flushBatch(batch);
+		return true;
+	}
+	
+	private void flushBatch(List<MQMessage> batch) {
+		try {
+			doSendMessages(batch, true);
+		} catch (Exception e) {
+			//单条失败已在handleError记录
+			logger.warn("MENDMIX-TRACE-LOGGGING-->> flush message batch error:{},topic:{},size:{}",e.getMessage(),batch.get(0).getTopic(),batch.size());
+		}
+	}
 	
 	
 	public void handleSuccess(MQMessage message) {
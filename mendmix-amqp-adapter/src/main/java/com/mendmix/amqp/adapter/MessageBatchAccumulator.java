@@ -0,0 +1,136 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.amqp.adapter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import com.mendmix.amqp.MQMessage;
+
+/**
+ * 消息攒批
+ * <br>
+ * 按key（topic或topic+分区）分别攒批，达到maxBatchSize立即返回，首条消息等待超过lingerMillis由{@link #drainExpired()}取出。
+ * 不持有线程，由调用方决定在拉取线程还是定时线程驱动。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class MessageBatchAccumulator {
+
+	private final int maxBatchSize;
+	private final long lingerMillis;
+	private final Map<String, PendingBatch> pendingBatches = new LinkedHashMap<>();
+
+	public MessageBatchAccumulator(int maxBatchSize, long lingerMillis) {
+		this.maxBatchSize = Math.max(1, maxBatchSize);
+		this.lingerMillis = lingerMillis;
+	}
+
+	/**
+	 * @param key
+	 * @param message
+	 * @return 攒满的批次，未满返回null
+	 */
+	public synchronized List<MQMessage> add(String key, MQMessage message) {
+		PendingBatch batch = pendingBatches.get(key);
+		if(batch == null) {
+			batch = new PendingBatch(maxBatchSize);
+			pendingBatches.put(key, batch);
+		}
+		batch.messages.add(message);
+		if(batch.messages.size() < maxBatchSize && lingerMillis > 0)return null;
+		pendingBatches.remove(key);
+		return batch.messages;
+	}
+
+	/**
+	 * 取出等待超时的批次
+	 * @return
+	 */
+	public synchronized List<List<MQMessage>> drainExpired() {
+		if(pendingBatches.isEmpty())return Collections.emptyList();
+		long deadline = System.currentTimeMillis() - lingerMillis;
+		List<List<MQMessage>> result = new ArrayList<>(pendingBatches.size());
+		Iterator<PendingBatch> iterator = pendingBatches.values().iterator();
+		PendingBatch batch;
+		while(iterator.hasNext()) {
+			batch = iterator.next();
+			if(batch.createTime > deadline)continue;
+			result.add(batch.messages);
+			iterator.remove();
+		}
+		return result;
+	}
+
+	public synchronized List<List<MQMessage>> drainAll() {
+		List<List<MQMessage>> result = new ArrayList<>(pendingBatches.size());
+		for (PendingBatch batch : pendingBatches.values()) {
+			result.add(batch.messages);
+		}
+		pendingBatches.clear();
+		return result;
+	}
+
+	/**
+	 * 丢弃匹配key的未处理批次
+	 * @param keyFilter
+	 */
+	public synchronized void discard(Predicate<String> keyFilter) {
+		pendingBatches.keySet().removeIf(keyFilter);
+	}
+
+	public synchronized int getPendingCount() {
+		int count = 0;
+		for (PendingBatch batch : pendingBatches.values()) {
+			count += batch.messages.size();
+		}
+		return count;
+	}
+
+	/**
+	 * 拆分处理结果
+	 * @param messages 批次消息
+	 * @param failed 处理失败的消息
+	 * @return 处理成功的消息
+	 */
+	public static List<MQMessage> succeededMessages(List<MQMessage> messages, List<MQMessage> failed) {
+		if(failed == null || failed.isEmpty())return messages;
+		Set<MQMessage> failedSet = Collections.newSetFromMap(new IdentityHashMap<>(failed.size()));
+		failedSet.addAll(failed);
+		List<MQMessage> succeeded = new ArrayList<>(messages.size());
+		for (MQMessage message : messages) {
+			if(!failedSet.contains(message))succeeded.add(message);
+		}
+		return succeeded;
+	}
+
+	private static class PendingBatch {
+		final long createTime = System.currentTimeMillis();
+		final List<MQMessage> messages;
+
+		PendingBatch(int capacity) {
+			this.messages = new ArrayList<>(Math.min(capacity, 64));
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.amqp.adapter.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 重试日志记录
+ * <br>
+ * 编码：type(1) + attempts(4) + time(8) + key + topic + error + payload，字符串为short长度前缀，payload为int长度前缀。
+ * 索引中只保留元数据及所在位置，消息内容按位置读取。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class JournalEntry {
+
+	/** 等待重试 */
+	public static final byte TYPE_PENDING = 1;
+	/** 死信 */
+	public static final byte TYPE_DEAD = 2;
+	/** 结束（重试成功、转入死信、重新投递或丢弃） */
+	public static final byte TYPE_DONE = 3;
+	
+	private static final int MAX_ERROR_LENGTH = 512;
+
+	private final byte type;
+	private final String key;
+	private final String topic;
+	private final int attempts;
+	private final long time;
+	private final String error;
+	//所在位置及占用字节数（含记录头）
+	int segmentId;
+	int position;
+	int length;
+
+	JournalEntry(byte type, String key, String topic, int attempts, long time, String error) {
+		this.type = type;
+		this.key = key;
+		this.topic = topic;
+		this.attempts = attempts;
+		this.time = time;
+		this.error = error != null && error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+	}
+
+	public byte getType() {
+		return type;
+	}
+
+	/**
+	 * 消息标识（msgId，没有msgId时为topic:partition:offset）
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	public String getTopic() {
+		return topic;
+	}
+
+	/**
+	 * 已失败次数
+	 */
+	public int getAttempts() {
+		return attempts;
+	}
+
+	/**
+	 * 等待重试为下次重试时间，死信为转入时间
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	byte[] encode(byte[] payload) {
+		byte[] keyBytes = bytes(key);
+		byte[] topicBytes = bytes(topic);
+		byte[] errorBytes = bytes(error);
+		int length = payload == null ? 0 : payload.length;
+		ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + 8 + 2 * 3 + keyBytes.length + topicBytes.length + errorBytes.length + 4 + length);
+		buffer.put(type).putInt(attempts).putLong(time);
+		buffer.putShort((short) keyBytes.length).put(keyBytes);
+		buffer.putShort((short) topicBytes.length).put(topicBytes);
+		buffer.putShort((short) errorBytes.length).put(errorBytes);
+		buffer.putInt(length);
+		if(payload != null)buffer.put(payload);
+		return buffer.array();
+	}
+
+	/**
+	 * 只解析元数据，buffer位置停在payload长度之前
+	 */
+	static JournalEntry decode(ByteBuffer buffer) {
+		byte type = buffer.get();
+		int attempts = buffer.getInt();
+		long time = buffer.getLong();
+		String key = string(buffer);
+		String topic = string(buffer);
+		String error = string(buffer);
+		return new JournalEntry(type, key, topic, attempts, time, error);
+	}
+
+	static byte[] readPayload(ByteBuffer buffer) {
+		decode(buffer);
+		int length = buffer.getInt();
+		if(length == 0)return null;
+		byte[] payload = new byte[length];
+		buffer.get(payload);
+		return payload;
+	}
+
+	private static byte[] bytes(String value) {
+		if(value == null)return new byte[0];
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		if(bytes.length > Short.MAX_VALUE)throw new IllegalArgumentException("value too long:" + value.substring(0, 64));
+		return bytes;
+	}
+
+	private static String string(ByteBuffer buffer) {
+		int length = buffer.getShort();
+		if(length == 0)return null;
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public String toString() {
+		return "JournalEntry [type=" + type + ", key=" + key + ", topic=" + topic + ", attempts=" + attempts + ", time="
+				+ time + ", error=" + error + "]";
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.amqp.adapter.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mendmix.common.async.DelayRetryExecutor;
+import com.mendmix.common.async.RetryLog;
+
+/**
+ * 基于分段日志的{@link DelayRetryExecutor}重试日志
+ * <br>
+ * 每次进入重试等待追加一条记录，结束时追加结束标记，打开时回放得到未结束的任务（{@link #getUnfinishedTasks()}），
+ * 由调用方决定是否重新提交。任务每次重试都会重新写入当前分段，等待间隔有上限，因此不需要单独迁移。
+ * 没有traceId的任务不记录。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class JournalRetryLog implements RetryLog {
+
+	private static final Logger logger = LoggerFactory.getLogger("com.mendmix.amqp.adapter");
+
+	private final SegmentedJournal store;
+	private final Map<String, JournalEntry> pending = new LinkedHashMap<>();
+	private final List<JournalEntry> unfinishedTasks;
+	private boolean closed;
+
+	/**
+	 * @param dir 存储目录
+	 * @param segmentSize 分段文件大小（字节）
+	 */
+	public JournalRetryLog(String dir, int segmentSize) {
+		try {
+			this.store = new SegmentedJournal(new File(dir), segmentSize);
+		} catch (IOException e) {
+			throw new RuntimeException("open retry log[" + dir + "] error", e);
+		}
+		store.replay(entry -> {
+			JournalEntry previous;
+			if(entry.getType() == JournalEntry.TYPE_PENDING) {
+				store.retain(entry);
+				previous = pending.put(entry.getKey(), entry);
+			}else {
+				previous = pending.remove(entry.getKey());
+			}
+			if(previous != null)store.release(previous);
+		});
+		store.purge();
+		unfinishedTasks = Collections.unmodifiableList(new ArrayList<>(pending.values()));
+		logger.info("MENDMIX-TRACE-LOGGGING-->> retry log[{}] opened -> unfinished:{}",dir,unfinishedTasks.size());
+	}
+
+	/**
+	 * 打开时未结束的任务（key为traceId，time为下次执行时间）
+	 * @return
+	 */
+	public List<JournalEntry> getUnfinishedTasks() {
+		return unfinishedTasks;
+	}
+
+	@Override
+	public synchronized void onScheduled(String traceId, int attempts, long nextFireTime) {
+		if(closed || traceId == null)return;
+		JournalEntry entry = new JournalEntry(JournalEntry.TYPE_PENDING, traceId, null, attempts, nextFireTime, null);
+		try {
+			store.append(entry, null);
+		} catch (IOException e) {
+			logger.warn("MENDMIX-TRACE-LOGGGING-->> write retry log[{}] error:{}",traceId,e.getMessage());
+			return;
+		}
+		store.retain(entry);
+		JournalEntry previous = pending.put(traceId, entry);
+		if(previous != null)store.release(previous);
+	}
+
+	@Override
+	public synchronized void onFinished(String traceId, int attempts, boolean success, String error) {
+		if(closed || traceId == null)return;
+		JournalEntry entry = pending.remove(traceId);
+		if(entry == null)return;
+		try {
+			store.append(new JournalEntry(JournalEntry.TYPE_DONE, traceId, null, attempts, System.currentTimeMillis(), error), null);
+		} catch (IOException e) {
+			logger.warn("MENDMIX-TRACE-LOGGGING-->> write retry log done mark[{}] error:{}",traceId,e.getMessage());
+		}
+		store.release(entry);
+	}
+
+	public synchronized void flush() {
+		if(closed)return;
+		store.flush();
+	}
+
+	@Override
+	public synchronized void close() {
+		if(closed)return;
+		closed = true;
+		store.flush();
+		store.close();
+	}
+}
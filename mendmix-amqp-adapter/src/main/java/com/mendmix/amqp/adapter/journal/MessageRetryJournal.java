@@ -0,0 +1,383 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.amqp.adapter.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mendmix.amqp.MQMessage;
+import com.mendmix.common.util.JsonUtils;
+
+/**
+ * 消费失败消息本地重试日志
+ * <br>
+ * 等待重试与死信分别存放在retry、dead两个分段日志目录，内存中按消息标识及topic建立索引，启动时回放重建。
+ * 失败次数达到maxAttempts转入死信，死信可查询、重新投递或丢弃。
+ * 写入不主动刷盘（进程崩溃不丢失），由{@link #flush()}定期刷盘。
+ * 长期未结束的记录会阻止分段回收，由后台线程调用{@link #compact()}迁移，不占用消费线程。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class MessageRetryJournal {
+
+	private static final Logger logger = LoggerFactory.getLogger("com.mendmix.amqp.adapter");
+	
+	//分段数超过该值且最早分段有效数据占比低于COMPACT_LIVE_RATIO时迁移其中的有效记录
+	private static final int MAX_SEGMENTS = 8;
+	private static final double COMPACT_LIVE_RATIO = 0.25;
+	//单次迁移记录数上限，避免长时间持有锁
+	private static final int MAX_COMPACT_RECORDS = 256;
+	private static final int MAX_RETRY_PERIOD_FACTOR = 64;
+
+	private static final Comparator<JournalEntry> TIME_ORDER = Comparator.comparingLong(JournalEntry::getTime).thenComparing(JournalEntry::getKey);
+
+	private final SegmentedJournal retryStore;
+	private final SegmentedJournal deadStore;
+	private final EntryIndex pendingIndex = new EntryIndex();
+	private final EntryIndex deadIndex = new EntryIndex();
+	private final int maxAttempts;
+	private final long retryPeriodMillis;
+	private volatile boolean closed;
+
+	/**
+	 * @param dir 存储目录
+	 * @param segmentSize 分段文件大小（字节）
+	 * @param maxAttempts 最大失败次数，超过转入死信
+	 * @param retryPeriodMillis 重试间隔单元（按失败次数指数增长）
+	 */
+	public MessageRetryJournal(String dir, int segmentSize, int maxAttempts, long retryPeriodMillis) {
+		this.maxAttempts = maxAttempts;
+		this.retryPeriodMillis = retryPeriodMillis;
+		try {
+			this.retryStore = new SegmentedJournal(new File(dir, "retry"), segmentSize);
+			this.deadStore = new SegmentedJournal(new File(dir, "dead"), segmentSize);
+		} catch (IOException e) {
+			throw new RuntimeException("open message retry journal[" + dir + "] error", e);
+		}
+		rebuildIndex(retryStore, pendingIndex, JournalEntry.TYPE_PENDING);
+		rebuildIndex(deadStore, deadIndex, JournalEntry.TYPE_DEAD);
+		logger.info("MENDMIX-TRACE-LOGGGING-->> message retry journal[{}] opened -> pending:{},deadLetters:{}",dir,pendingIndex.size(),deadIndex.size());
+	}
+
+	public static String journalKey(MQMessage message) {
+		if(message.getMsgId() != null)return message.getMsgId();
+		return message.getTopic() + ":" + message.getPartition() + ":" + message.getOffset();
+	}
+
+	/**
+	 * 记录消费失败
+	 * @param message
+	 * @param error
+	 * @return true：等待重试，false：转入死信
+	 */
+	public synchronized boolean recordFailure(MQMessage message, Throwable error) {
+		if(closed)throw new IllegalStateException("journal closed");
+		String key = journalKey(message);
+		JournalEntry exists = pendingIndex.get(key);
+		int attempts = exists == null ? 1 : exists.getAttempts() + 1;
+		return recordFailure(key, message, attempts, error);
+	}
+
+	/**
+	 * 重试结果
+	 * @param entry {@link #pollDue(long, int)}返回的记录
+	 * @param message
+	 * @param error 为空表示成功
+	 * @return 是否仍在等待重试
+	 */
+	public synchronized boolean onRetryFinished(JournalEntry entry, MQMessage message, Throwable error) {
+		if(error == null) {
+			complete(retryStore, pendingIndex, entry.getKey());
+			return false;
+		}
+		return recordFailure(entry.getKey(), message, entry.getAttempts() + 1, error);
+	}
+
+	/**
+	 * 到期的等待重试记录
+	 * @param now
+	 * @param limit
+	 * @return
+	 */
+	public synchronized List<JournalEntry> pollDue(long now, int limit) {
+		List<JournalEntry> result = new ArrayList<>();
+		for (JournalEntry entry : pendingIndex.byTime) {
+			if(entry.getTime() > now || result.size() >= limit)break;
+			result.add(entry);
+		}
+		return result;
+	}
+
+	public synchronized MQMessage readMessage(JournalEntry entry) {
+		SegmentedJournal store = entry.getType() == JournalEntry.TYPE_DEAD ? deadStore : retryStore;
+		byte[] payload = store.readPayload(entry);
+		return payload == null ? null : MQMessage.build(new String(payload, StandardCharsets.UTF_8));
+	}
+
+	public synchronized JournalEntry getPending(String key) {
+		return pendingIndex.get(key);
+	}
+
+	public synchronized JournalEntry getDeadLetter(String key) {
+		return deadIndex.get(key);
+	}
+
+	/**
+	 * @param topic 为空查询全部
+	 */
+	public synchronized List<JournalEntry> listPending(String topic) {
+		return pendingIndex.list(topic);
+	}
+
+	/**
+	 * @param topic 为空查询全部
+	 */
+	public synchronized List<JournalEntry> listDeadLetters(String topic) {
+		return deadIndex.list(topic);
+	}
+
+	/**
+	 * 死信重新投递（重置失败次数，立即重试）
+	 * @param key
+	 * @return
+	 */
+	public synchronized boolean redrive(String key) {
+		JournalEntry entry = deadIndex.get(key);
+		if(entry == null)return false;
+		byte[] payload = deadStore.readPayload(entry);
+		try {
+			put(retryStore, pendingIndex, new JournalEntry(JournalEntry.TYPE_PENDING, key, entry.getTopic(), 0, System.currentTimeMillis(), entry.getError()), payload);
+		} catch (IOException e) {
+			logger.warn("MENDMIX-TRACE-LOGGGING-->> redrive message[{}] error:{}",key,e.getMessage());
+			return false;
+		}
+		complete(deadStore, deadIndex, key);
+		logger.info("MENDMIX-TRACE-LOGGGING-->> redrive dead letter message[{}]",key);
+		return true;
+	}
+
+	/**
+	 * @param topic 为空重新投递全部
+	 * @return 重新投递数量
+	 */
+	public synchronized int redriveAll(String topic) {
+		int count = 0;
+		for (JournalEntry entry : deadIndex.list(topic)) {
+			if(redrive(entry.getKey()))count++;
+		}
+		return count;
+	}
+
+	/**
+	 * 丢弃死信
+	 */
+	public synchronized boolean discard(String key) {
+		if(deadIndex.get(key) == null)return false;
+		complete(deadStore, deadIndex, key);
+		return true;
+	}
+
+	public synchronized int getPendingCount() {
+		return pendingIndex.size();
+	}
+
+	public synchronized int getDeadLetterCount() {
+		return deadIndex.size();
+	}
+
+	public synchronized Map<String, Object> toMap() {
+		Map<String, Object> map = new HashMap<>(4);
+		map.put("pending", pendingIndex.size());
+		map.put("deadLetters", deadIndex.size());
+		map.put("retrySegments", retryStore.getSegmentCount());
+		map.put("deadSegments", deadStore.getSegmentCount());
+		return map;
+	}
+
+	/**
+	 * 迁移最早分段中的有效记录（定期调用）
+	 * @return 迁移记录数
+	 */
+	public int compact() {
+		return compact(MAX_COMPACT_RECORDS);
+	}
+
+	synchronized int compact(int maxRecords) {
+		if(closed)return 0;
+		return compact(retryStore, pendingIndex, maxRecords) + compact(deadStore, deadIndex, maxRecords);
+	}
+
+	public synchronized void flush() {
+		if(closed)return;
+		retryStore.flush();
+		deadStore.flush();
+	}
+
+	public synchronized void close() {
+		if(closed)return;
+		closed = true;
+		retryStore.close();
+		deadStore.close();
+	}
+
+	private boolean recordFailure(String key, MQMessage message, int attempts, Throwable error) {
+		String errorMessage = error == null ? null : error.toString();
+		byte[] payload = JsonUtils.toJson(message).getBytes(StandardCharsets.UTF_8);
+		try {
+			if(attempts >= maxAttempts) {
+				put(deadStore, deadIndex, new JournalEntry(JournalEntry.TYPE_DEAD, key, message.getTopic(), attempts, System.currentTimeMillis(), errorMessage), payload);
+				complete(retryStore, pendingIndex, key);
+				logger.warn("MENDMIX-TRACE-LOGGGING-->> message[{}] failed {} times,move to dead letter",key,attempts);
+				return false;
+			}
+			put(retryStore, pendingIndex, new JournalEntry(JournalEntry.TYPE_PENDING, key, message.getTopic(), attempts, System.currentTimeMillis() + nextDelay(attempts), errorMessage), payload);
+			return true;
+		} catch (IOException e) {
+			throw new RuntimeException("write message retry journal error", e);
+		}
+	}
+
+	private long nextDelay(int attempts) {
+		long delay = retryPeriodMillis << Math.min(attempts - 1, 30);
+		long maxDelay = retryPeriodMillis * MAX_RETRY_PERIOD_FACTOR;
+		return delay <= 0 || delay > maxDelay ? maxDelay : delay;
+	}
+
+	private void put(SegmentedJournal store, EntryIndex index, JournalEntry entry, byte[] payload) throws IOException {
+		store.append(entry, payload);
+		store.retain(entry);
+		JournalEntry previous = index.put(entry);
+		if(previous != null)store.release(previous);
+	}
+
+	private void complete(SegmentedJournal store, EntryIndex index, String key) {
+		JournalEntry entry = index.remove(key);
+		if(entry == null)return;
+		try {
+			store.append(new JournalEntry(JournalEntry.TYPE_DONE, key, entry.getTopic(), entry.getAttempts(), System.currentTimeMillis(), null), null);
+		} catch (IOException e) {
+			logger.warn("MENDMIX-TRACE-LOGGGING-->> write journal done mark[{}] error:{}",key,e.getMessage());
+		}
+		store.release(entry);
+	}
+
+	/**
+	 * 长期未结束的记录会阻止后续分段回收，迁移到当前分段
+	 * <br>
+	 * 积压期间最早分段大部分仍有效时迁移只是复制，不处理
+	 */
+	private int compact(SegmentedJournal store, EntryIndex index, int maxRecords) {
+		if(store.getSegmentCount() <= MAX_SEGMENTS || store.getOldestLiveRatio() >= COMPACT_LIVE_RATIO)return 0;
+		List<JournalEntry> liveEntries = new ArrayList<>();
+		store.scanOldest(entry -> {
+			if(liveEntries.size() >= maxRecords)return;
+			JournalEntry current = index.get(entry.getKey());
+			if(current != null && current.segmentId == entry.segmentId && current.position == entry.position) {
+				liveEntries.add(current);
+			}
+		});
+		int count = 0;
+		try {
+			for (JournalEntry entry : liveEntries) {
+				JournalEntry relocated = new JournalEntry(entry.getType(), entry.getKey(), entry.getTopic(), entry.getAttempts(), entry.getTime(), entry.getError());
+				store.append(relocated, store.readPayload(entry));
+				store.retain(relocated);
+				index.put(relocated);
+				store.release(entry);
+				count++;
+			}
+		} catch (IOException e) {
+			logger.warn("MENDMIX-TRACE-LOGGGING-->> compact message retry journal error:{}",e.getMessage());
+		}
+		return count;
+	}
+
+	private static void rebuildIndex(SegmentedJournal store, EntryIndex index, byte liveType) {
+		store.replay(entry -> {
+			JournalEntry previous;
+			if(entry.getType() == liveType) {
+				store.retain(entry);
+				previous = index.put(entry);
+			}else {
+				previous = index.remove(entry.getKey());
+			}
+			if(previous != null)store.release(previous);
+		});
+		store.purge();
+	}
+
+	private static class EntryIndex {
+		final Map<String, JournalEntry> entries = new LinkedHashMap<>();
+		final Map<String, Set<String>> topicKeys = new HashMap<>();
+		//按时间排序，到期查询不需要遍历全部
+		final TreeSet<JournalEntry> byTime = new TreeSet<>(TIME_ORDER);
+
+		JournalEntry get(String key) {
+			return entries.get(key);
+		}
+
+		JournalEntry put(JournalEntry entry) {
+			//重新放入保持按时间顺序
+			JournalEntry previous = entries.remove(entry.getKey());
+			if(previous != null)byTime.remove(previous);
+			entries.put(entry.getKey(), entry);
+			byTime.add(entry);
+			topicKeys.computeIfAbsent(entry.getTopic(), k -> new LinkedHashSet<>()).add(entry.getKey());
+			return previous;
+		}
+
+		JournalEntry remove(String key) {
+			JournalEntry entry = entries.remove(key);
+			if(entry == null)return null;
+			byTime.remove(entry);
+			Set<String> keys = topicKeys.get(entry.getTopic());
+			if(keys != null) {
+				keys.remove(key);
+				if(keys.isEmpty())topicKeys.remove(entry.getTopic());
+			}
+			return entry;
+		}
+
+		List<JournalEntry> list(String topic) {
+			if(topic == null)return new ArrayList<>(entries.values());
+			Set<String> keys = topicKeys.getOrDefault(topic, Collections.emptySet());
+			List<JournalEntry> result = new ArrayList<>(keys.size());
+			for (String key : keys) {
+				result.add(entries.get(key));
+			}
+			return result;
+		}
+
+		int size() {
+			return entries.size();
+		}
+	}
+}
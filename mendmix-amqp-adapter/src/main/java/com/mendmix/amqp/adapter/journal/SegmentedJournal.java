@@ -0,0 +1,302 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.amqp.adapter.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 内存映射分段追加日志
+ * <br>
+ * 每个分段为固定大小的映射文件，记录格式：length(4) + crc32(4) + body，长度为0或校验失败处即写入位置。
+ * 分段按引用计数（索引中有效记录数）回收，只从最早的分段开始删除，保证结束标记不会先于对应记录被删除。
+ * 同时统计每个分段有效记录字节数，用于判断最早分段是否值得迁移。
+ * 删除的分段立即释放映射内存，不等待GC。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+class SegmentedJournal {
+
+	private static final Logger logger = LoggerFactory.getLogger("com.mendmix.amqp.adapter");
+	
+	private static final String SEGMENT_SUFFIX = ".seg";
+	private static final int RECORD_HEADER_SIZE = 8;
+
+	private final File dir;
+	private final int segmentSize;
+	private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+	private Segment active;
+	//回放期间不回收分段，避免释放正在读取的映射
+	private boolean replaying;
+
+	SegmentedJournal(File dir, int segmentSize) throws IOException {
+		this.dir = dir;
+		this.segmentSize = segmentSize;
+		if(!dir.exists() && !dir.mkdirs()) {
+			throw new IOException("create journal dir[" + dir + "] failed");
+		}
+		File[] files = dir.listFiles((d, name) -> name.endsWith(SEGMENT_SUFFIX));
+		if(files != null) {
+			Arrays.sort(files);
+			for (File file : files) {
+				int id = Integer.parseInt(file.getName().substring(0, file.getName().length() - SEGMENT_SUFFIX.length()));
+				segments.put(id, new Segment(id, file));
+			}
+		}
+		active = segments.isEmpty() ? roll() : segments.lastEntry().getValue();
+	}
+
+	/**
+	 * 按顺序回放所有记录（只解析元数据）
+	 */
+	void replay(Consumer<JournalEntry> consumer) {
+		replaying = true;
+		try {
+			for (Segment segment : segments.values()) {
+				segment.scan(consumer);
+			}
+		} finally {
+			replaying = false;
+		}
+	}
+
+	JournalEntry append(JournalEntry entry, byte[] payload) throws IOException {
+		byte[] body = entry.encode(payload);
+		if(body.length + RECORD_HEADER_SIZE > segmentSize) {
+			throw new IOException("record size[" + body.length + "] over segmentSize:" + segmentSize);
+		}
+		int position = active.append(body);
+		if(position < 0) {
+			active = roll();
+			position = active.append(body);
+		}
+		entry.segmentId = active.id;
+		entry.position = position;
+		entry.length = RECORD_HEADER_SIZE + body.length;
+		return entry;
+	}
+
+	byte[] readPayload(JournalEntry entry) {
+		Segment segment = segments.get(entry.segmentId);
+		if(segment == null)return null;
+		return JournalEntry.readPayload(segment.read(entry.position));
+	}
+
+	/**
+	 * 记录被索引引用
+	 */
+	void retain(JournalEntry entry) {
+		Segment segment = segments.get(entry.segmentId);
+		if(segment == null)return;
+		segment.liveCount++;
+		segment.liveBytes += entry.length;
+	}
+
+	/**
+	 * 记录不再被引用，回收最早的无引用分段
+	 */
+	void release(JournalEntry entry) {
+		Segment segment = segments.get(entry.segmentId);
+		if(segment != null) {
+			segment.liveCount--;
+			segment.liveBytes -= entry.length;
+		}
+		purge();
+	}
+
+	void purge() {
+		if(replaying)return;
+		Map.Entry<Integer, Segment> first;
+		while((first = segments.firstEntry()) != null && first.getValue() != active && first.getValue().liveCount <= 0) {
+			segments.remove(first.getKey()).delete();
+		}
+	}
+
+	int getSegmentCount() {
+		return segments.size();
+	}
+
+	int getOldestSegmentId() {
+		return segments.firstKey();
+	}
+
+	/**
+	 * 最早分段中有效记录字节占分段大小的比例
+	 */
+	double getOldestLiveRatio() {
+		return (double) segments.firstEntry().getValue().liveBytes / segmentSize;
+	}
+
+	/**
+	 * 按顺序读取最早分段的记录（只解析元数据）
+	 */
+	void scanOldest(Consumer<JournalEntry> consumer) {
+		segments.firstEntry().getValue().scan(consumer);
+	}
+
+	void flush() {
+		for (Segment segment : segments.values()) {
+			segment.buffer.force();
+		}
+	}
+
+	void close() {
+		for (Segment segment : segments.values()) {
+			segment.close();
+		}
+	}
+
+	private Segment roll() throws IOException {
+		int id = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+		if(active != null)active.buffer.force();
+		Segment segment = new Segment(id, new File(dir, String.format("%010d%s", id, SEGMENT_SUFFIX)));
+		segments.put(id, segment);
+		return segment;
+	}
+
+	private class Segment {
+		final int id;
+		final File file;
+		final RandomAccessFile raf;
+		final MappedByteBuffer buffer;
+		int writePosition;
+		int liveCount;
+		long liveBytes;
+
+		Segment(int id, File file) throws IOException {
+			this.id = id;
+			this.file = file;
+			this.raf = new RandomAccessFile(file, "rw");
+			try {
+				this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+			} catch (IOException e) {
+				raf.close();
+				throw e;
+			}
+			this.writePosition = recoverWritePosition();
+		}
+
+		private int recoverWritePosition() {
+			int position = 0;
+			while(position + RECORD_HEADER_SIZE <= segmentSize) {
+				int length = buffer.getInt(position);
+				if(length <= 0 || position + RECORD_HEADER_SIZE + length > segmentSize)break;
+				if(buffer.getInt(position + 4) != crc(position + RECORD_HEADER_SIZE, length)) {
+					//写入中断的不完整记录，从此处覆盖
+					logger.warn("MENDMIX-TRACE-LOGGGING-->> journal segment[{}] corrupted at position:{}",file.getName(),position);
+					break;
+				}
+				position += RECORD_HEADER_SIZE + length;
+			}
+			return position;
+		}
+
+		int append(byte[] body) {
+			if(writePosition + RECORD_HEADER_SIZE + body.length > segmentSize)return -1;
+			int position = writePosition;
+			ByteBuffer slice = buffer.duplicate();
+			slice.position(position + RECORD_HEADER_SIZE);
+			slice.put(body);
+			buffer.putInt(position + 4, crc(position + RECORD_HEADER_SIZE, body.length));
+			//最后写长度，回放时长度为0即结束
+			buffer.putInt(position, body.length);
+			writePosition = position + RECORD_HEADER_SIZE + body.length;
+			return position;
+		}
+
+		ByteBuffer read(int position) {
+			int length = buffer.getInt(position);
+			ByteBuffer slice = buffer.duplicate();
+			slice.position(position + RECORD_HEADER_SIZE);
+			slice.limit(position + RECORD_HEADER_SIZE + length);
+			return slice.slice();
+		}
+
+		void scan(Consumer<JournalEntry> consumer) {
+			int position = 0;
+			while(position < writePosition) {
+				JournalEntry entry = JournalEntry.decode(read(position));
+				entry.segmentId = id;
+				entry.position = position;
+				entry.length = RECORD_HEADER_SIZE + buffer.getInt(position);
+				consumer.accept(entry);
+				position += entry.length;
+			}
+		}
+
+		private int crc(int position, int length) {
+			CRC32 crc32 = new CRC32();
+			ByteBuffer slice = buffer.duplicate();
+			slice.position(position);
+			slice.limit(position + length);
+			crc32.update(slice);
+			return (int) crc32.getValue();
+		}
+
+		void close() {
+			buffer.force();
+			try {
+				raf.close();
+			} catch (IOException e) {}
+		}
+
+		void delete() {
+			close();
+			unmap(buffer);
+			if(!file.delete()) {
+				logger.warn("MENDMIX-TRACE-LOGGGING-->> delete journal segment[{}] failed",file.getName());
+			}
+		}
+	}
+
+	/**
+	 * 释放映射内存，释放后不能再访问该buffer
+	 */
+	private static void unmap(MappedByteBuffer buffer) {
+		try {
+			try {
+				//JDK9+
+				Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+				Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+				Field field = unsafeClass.getDeclaredField("theUnsafe");
+				field.setAccessible(true);
+				invokeCleaner.invoke(field.get(null), buffer);
+			} catch (NoSuchMethodException e) {
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(buffer);
+				if(cleaner != null)cleaner.getClass().getMethod("clean").invoke(cleaner);
+			}
+		} catch (Exception e) {
+			logger.debug("MENDMIX-TRACE-LOGGGING-->> unmap journal segment error:{}",e.toString());
+		}
+	}
+}
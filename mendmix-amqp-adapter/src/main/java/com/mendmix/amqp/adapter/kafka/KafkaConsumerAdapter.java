@@ -25,7 +25,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
@@ -65,7 +65,8 @@ public class KafkaConsumerAdapter extends AbstractConsumer {
 	
 	private boolean offsetAutoCommit;
 	
-	private Map<TopicPartition, OffsetAndMetadataStat> uncommitOffsetStats = new ConcurrentHashMap<>();
+	//异步处理时按分区有序消费及按水位提交
+	private PartitionedConsumeEngine consumeEngine;
 	
 
 	public KafkaConsumerAdapter(Map<String, MessageHandler> messageHandlers) {
@@ -79,6 +80,13 @@ public class KafkaConsumerAdapter extends AbstractConsumer {
 		offsetAutoCommit = Boolean.parseBoolean(configs.getProperty(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG));
 		kafkaConsumer = new KafkaConsumer<>(configs);
 		
+		if(!offsetAutoCommit && MQContext.isAsyncConsumeEnabled()) {
+			boolean keyOrdering = "key".equalsIgnoreCase(ResourceUtils.getProperty("mendmix.amqp.kafka.consumer.orderBy", "partition"));
+			int maxPendingPerPartition = ResourceUtils.getInt("mendmix.amqp.kafka.consumer.maxPendingPerPartition", 500);
+			consumeEngine = new PartitionedConsumeEngine(MQContext.getMaxProcessThreads(), keyOrdering, maxPendingPerPartition, this::consumeMessage);
+			logger.info("MENDMIX-TRACE-LOGGGING-->> init PartitionedConsumeEngine finish -> lanes:{},keyOrdering:{},maxPendingPerPartition:{}",MQContext.getMaxProcessThreads(),keyOrdering,maxPendingPerPartition);
+		}
+		
 		Set<String> topicNames = messageHandlers.keySet();
 		if(offsetAutoCommit) {
 			kafkaConsumer.subscribe(topicNames);
@@ -89,14 +97,21 @@ public class KafkaConsumerAdapter extends AbstractConsumer {
 				@Override
 				public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
 					//手动提交
-					kafkaConsumer.commitSync();
+					if(consumeEngine == null) {						
+						kafkaConsumer.commitSync();
+					}else {
+						//只提交连续处理完成的位置，未完成的由新的消费者重新消费
+						Set<String> batchKeys = partitions.stream().map(TopicPartition::toString).collect(Collectors.toSet());
+						discardPendingBatches(batchKeys::contains);
+						Map<TopicPartition, OffsetAndMetadata> offsets = consumeEngine.revoke(partitions);
+						if(!offsets.isEmpty())kafkaConsumer.commitSync(offsets);
+					}
 				}
 				//完成负载均衡，准备重新消费消息
 				@Override
 				public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
-					uncommitOffsetStats.clear();
-					for (TopicPartition partition : partitions) {
-						uncommitOffsetStats.put(partition, new OffsetAndMetadataStat(0));
+					if(consumeEngine != null) {
+						consumeEngine.assign(partitions);
 					}
 				}
 				
@@ -114,6 +129,9 @@ public class KafkaConsumerAdapter extends AbstractConsumer {
 	public List<MQMessage> fetchMessages() {
 		 //手动提交offset
 		trySubmitOffsets();
+		if(consumeEngine != null) {
+			consumeEngine.applyBackpressure(kafkaConsumer);
+		}
 
 		 ConsumerRecords<String, String> records = kafkaConsumer.poll(timeoutDuration);
 		 Iterator<ConsumerRecord<String, String>> iterator = records.iterator();
@@ -124,43 +142,67 @@ public class KafkaConsumerAdapter extends AbstractConsumer {
 		 while(iterator.hasNext()) {
 			 item = iterator.next();
 			 message = new MQMessage(item.topic(), item.value());
+			 message.setBizKey(item.key());
+			 message.setPartition(item.partition());
+			 message.setOffset(item.offset());
 			 message.setOriginMessage(item);
 			 result.add(message);
 		 }
 		 return result;
 	}
 	
+	@Override
+	protected void dispatchMessage(MQMessage message) throws InterruptedException {
+		if(consumeEngine == null) {
+			super.dispatchMessage(message);
+			return;
+		}
+		ConsumerRecord<String, String> originMessage = message.getOriginMessage(ConsumerRecord.class);
+		TopicPartition partition = new TopicPartition(originMessage.topic(), originMessage.partition());
+		consumeEngine.dispatch(message, partition, originMessage.offset(), originMessage.key());
+	}
+	
+	@Override
+	protected String batchKey(MQMessage message) {
+		//按分区攒批，保证分区内顺序及水位连续
+		return consumeEngine == null ? super.batchKey(message) : message.getTopic() + "-" + message.getPartition();
+	}
+	
+	@Override
+	protected void dispatchBatch(List<MQMessage> batch) throws InterruptedException {
+		if(consumeEngine == null) {
+			super.dispatchBatch(batch);
+			return;
+		}
+		MQMessage first = batch.get(0);
+		consumeEngine.dispatchBatch(batch, new TopicPartition(first.getTopic(), first.getPartition()), this::consumeBatch);
+	}
+	
+	@Override
+	protected boolean isProcessBusy() {
+		//按分区暂停拉取，不阻塞拉取线程
+		return consumeEngine == null && super.isProcessBusy();
+	}
+	
 	@Override
 	public String handleMessageConsumed(MQMessage message) {
-		if(offsetAutoCommit)return null;
+		//异步处理由水位统一提交
+		if(offsetAutoCommit || consumeEngine != null)return null;
 		ConsumerRecord<String, String> originMessage = message.getOriginMessage(ConsumerRecord.class);
 		
 		TopicPartition partition = new TopicPartition(originMessage.topic(), originMessage.partition());
-		//
-		if(MQContext.isAsyncConsumeEnabled()){
-			uncommitOffsetStats.get(partition).updateOnConsumed(originMessage.offset());
-		}else {
-			Map<TopicPartition, OffsetAndMetadata> uncommitOffsets = new HashMap<>(1);
-			uncommitOffsets.put(partition, new OffsetAndMetadata(originMessage.offset() + 1));
-			submitOffsets(uncommitOffsets);
-		}
+		Map<TopicPartition, OffsetAndMetadata> uncommitOffsets = new HashMap<>(1);
+		uncommitOffsets.put(partition, new OffsetAndMetadata(originMessage.offset() + 1));
+		submitOffsets(uncommitOffsets);
 
 		return null;
 	}
 	
 	private void trySubmitOffsets() {
-		if(offsetAutoCommit || !MQContext.isAsyncConsumeEnabled()){
+		if(consumeEngine == null){
 			return;
 		}
-		
-		Map<TopicPartition, OffsetAndMetadata> uncommitOffsets = new HashMap<>(uncommitOffsetStats.size());
-		uncommitOffsetStats.forEach( (k,v) -> {
-			if(!v.isCommited()) {
-				uncommitOffsets.put(k, new OffsetAndMetadata(v.getOffset() + 1));
-			}
-		} );
-		
-		submitOffsets(uncommitOffsets);
+		submitOffsets(consumeEngine.committableOffsets());
 	}
 	
 	/**
@@ -177,9 +219,9 @@ public class KafkaConsumerAdapter extends AbstractConsumer {
 					if(logger.isDebugEnabled())logger.debug("MENDMIX-TRACE-LOGGGING-->> MQmessage_COMMIT_SUCCESS -> offsets:{}",offsets);
 				}
 				//
-				offsets.forEach( (k,v) -> {
-					uncommitOffsetStats.get(k).setCommited(true);
-				} );
+				if(consumeEngine != null) {
+					consumeEngine.onCommited(uncommitOffsets);
+				}
 			}
 		});
 	}
@@ -240,6 +282,9 @@ public class KafkaConsumerAdapter extends AbstractConsumer {
 		@Override
 		public void shutdown() {
 			super.shutdown();
+			if(consumeEngine != null) {
+				consumeEngine.close();
+			}
 			kafkaConsumer.close();
 		}
 		
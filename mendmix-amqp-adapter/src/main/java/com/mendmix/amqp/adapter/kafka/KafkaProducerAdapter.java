@@ -16,10 +16,12 @@
 package com.mendmix.amqp.adapter.kafka;
 
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.Future;
-import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.kafka.clients.producer.Callback;
@@ -57,36 +59,22 @@ public class KafkaProducerAdapter extends AbstractProducer {
 	public void start() throws Exception {
 		Properties configs = buildConfigs();
         kafkaProducer = new KafkaProducer<String, Object>(configs);
-
+        super.start();
 	}
 
 	@Override
 	public String sendMessage(MQMessage message, boolean async) {
+		if(async && bufferAsyncMessage(message))return null;
 		String topic = message.getTopic();
 		Integer partition = null; //
 		String key = message.getBizKey();
 		String value = message.toMessageValue(true);
-		List<Header> headers = CurrentRuntimeContext.getContextHeaders().entrySet().stream().map(e -> {
-			return new RecordHeader(e.getKey(), e.getValue().getBytes());
-		}).collect(Collectors.toList());
+		List<Header> headers = encodeHeaders(CurrentRuntimeContext.getContextHeaders());
 		
 		ProducerRecord<String,Object> producerRecord = new ProducerRecord<String, Object>(topic, partition, key, value, headers);
 
 		if (async) {
-			kafkaProducer.send(producerRecord, new Callback(){
-				@Override
-				public void onCompletion(RecordMetadata recordMetadata, Exception e) {
-					message.onProducerFinished(null,recordMetadata.partition(), recordMetadata.offset());
-                    if (e == null) {//成功发送
-                        handleSuccess(message);
-                        logger.debug("MENDMIX-TRACE-LOGGGING-->> 发送成功, topic:{}, partition:{}, offset:{}", topic, recordMetadata.partition(), recordMetadata.offset());
-                    }else{
-                        //发送失败
-                        handleError(message, e);
-                        logger.warn("MENDMIX-TRACE-LOGGGING-->> 发送失败, topic:{}, partition:{}, offset:{}, exception:{}", topic, recordMetadata.partition(), recordMetadata.offset(), e);
-                    }
-				}
-			});
+			kafkaProducer.send(producerRecord, new SendCallback(message));
         } else {
             try {
                 Future<RecordMetadata> future= kafkaProducer.send(producerRecord);
@@ -101,11 +89,73 @@ public class KafkaProducerAdapter extends AbstractProducer {
 		return null;
 	}
 
+	@Override
+	protected void doSendMessages(List<MQMessage> messages, boolean async) {
+		List<Future<RecordMetadata>> futures = async ? null : new ArrayList<>(messages.size());
+		//同一批次的消息通常共用同一个头，编码结果复用
+		Map<String, String> lastHeaders = null;
+		List<Header> encodedHeaders = null;
+		for (MQMessage message : messages) {
+			if(message.getHeaders() != lastHeaders) {
+				lastHeaders = message.getHeaders();
+				encodedHeaders = encodeHeaders(lastHeaders);
+			}
+			ProducerRecord<String,Object> producerRecord = new ProducerRecord<String, Object>(message.getTopic(), null, message.getBizKey(), message.toMessageValue(true), encodedHeaders);
+			Future<RecordMetadata> future = kafkaProducer.send(producerRecord, new SendCallback(message));
+			if(futures != null)futures.add(future);
+		}
+		if(async)return;
+		//全部发出后再统一等待
+		Exception error = null;
+		for (Future<RecordMetadata> future : futures) {
+			try {
+				future.get();
+			} catch (Exception e) {
+				if(error == null)error = e;
+			}
+		}
+		if(error != null) {
+			throw new RuntimeException("kafkaProduce_error", error);
+		}
+	}
+
 	@Override
 	public void shutdown() {
+		super.shutdown();
 		kafkaProducer.close();
 	}
 	
+	private static List<Header> encodeHeaders(Map<String, String> headers) {
+		if(headers == null)return null;
+		List<Header> result = new ArrayList<>(headers.size());
+		for (Map.Entry<String, String> entry : headers.entrySet()) {
+			result.add(new RecordHeader(entry.getKey(), entry.getValue().getBytes(StandardCharsets.UTF_8)));
+		}
+		return result;
+	}
+	
+	private class SendCallback implements Callback {
+		
+		final MQMessage message;
+
+		SendCallback(MQMessage message) {
+			this.message = message;
+		}
+
+		@Override
+		public void onCompletion(RecordMetadata recordMetadata, Exception e) {
+			message.onProducerFinished(null,recordMetadata.partition(), recordMetadata.offset());
+            if (e == null) {//成功发送
+                handleSuccess(message);
+                logger.debug("MENDMIX-TRACE-LOGGGING-->> 发送成功, topic:{}, partition:{}, offset:{}", message.getTopic(), recordMetadata.partition(), recordMetadata.offset());
+            }else{
+                //发送失败
+                handleError(message, e);
+                logger.warn("MENDMIX-TRACE-LOGGGING-->> 发送失败, topic:{}, partition:{}, offset:{}, exception:{}", message.getTopic(), recordMetadata.partition(), recordMetadata.offset(), e);
+            }
+		}
+	}
+	
 	private Properties buildConfigs() {
 		
 		Properties result = new Properties();
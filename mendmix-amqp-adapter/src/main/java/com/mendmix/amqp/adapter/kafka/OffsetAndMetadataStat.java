@@ -15,35 +15,81 @@
  */
 package com.mendmix.amqp.adapter.kafka;
 
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * 分区消费位点统计
+ * <br>
+ * 记录已分发未完成的offset，可提交位点（水位）为最小的未完成offset，全部完成时为最大已分发offset+1，
+ * 保证只提交连续完成的区间，进程崩溃不会跳过未处理的消息。
+ * <br>
+ * 分发和提交在拉取线程，完成在处理线程。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
 public class OffsetAndMetadataStat {
 
-	private long offset;
-	private boolean commited = true;
+	private final ConcurrentSkipListSet<Long> pendingOffsets = new ConcurrentSkipListSet<>();
+	//最大已分发offset+1
+	private volatile long nextOffset = -1;
+	private volatile long commitedOffset = -1;
+	private volatile boolean revoked;
+	private boolean paused;
+
+	public void onDispatched(long offset) {
+		pendingOffsets.add(offset);
+		if(offset >= nextOffset)nextOffset = offset + 1;
+	}
 
-	public OffsetAndMetadataStat(long offset) {
-		this.offset = offset;
+	public void onCompleted(long offset) {
+		pendingOffsets.remove(offset);
 	}
 
-	public long getOffset() {
-		return offset;
+	/**
+	 * 可提交的offset（下一条待消费）
+	 * @return 未分发过消息返回-1
+	 */
+	public long getWatermark() {
+		Long first = pendingOffsets.ceiling(Long.MIN_VALUE);
+		return first == null ? nextOffset : first;
 	}
 
-	public void setOffset(long offset) {
-		this.offset = offset;
+	public int getPendingCount() {
+		return pendingOffsets.size();
 	}
 
 	public boolean isCommited() {
-		return commited;
+		return getWatermark() <= commitedOffset;
+	}
+
+	public long getCommitedOffset() {
+		return commitedOffset;
+	}
+
+	public void updateOnCommited(long offset) {
+		if(offset > commitedOffset)commitedOffset = offset;
 	}
 
-	public void setCommited(boolean commited) {
-		this.commited = commited;
+	public boolean isRevoked() {
+		return revoked;
 	}
-	
-	
-	
-	public void updateOnConsumed(long offset) {
-		this.offset = offset;
-		this.commited = false;
+
+	public void setRevoked(boolean revoked) {
+		this.revoked = revoked;
+	}
+
+	public boolean isPaused() {
+		return paused;
+	}
+
+	public void setPaused(boolean paused) {
+		this.paused = paused;
+	}
+
+	@Override
+	public String toString() {
+		return "OffsetAndMetadataStat [watermark=" + getWatermark() + ", commitedOffset=" + commitedOffset + ", pending="
+				+ getPendingCount() + ", paused=" + paused + "]";
 	}
 }
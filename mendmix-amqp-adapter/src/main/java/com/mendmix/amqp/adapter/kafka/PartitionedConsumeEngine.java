@@ -0,0 +1,193 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.amqp.adapter.kafka;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mendmix.amqp.MQMessage;
+import com.mendmix.common.async.StandardThreadExecutor.StandardThreadFactory;
+
+/**
+ * 按分区有序的并行消费
+ * <br>
+ * 消息按分区（或分区内bizKey）固定分配到单线程处理通道，同一分区（或同一key）的消息按拉取顺序处理，不同分区并行。
+ * 每个分区按水位提交连续完成的offset；分区未完成消息超过上限时暂停拉取该分区，降到一半以下恢复。
+ * <br>
+ * 除消息处理外，所有方法须在拉取线程调用（KafkaConsumer非线程安全）。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class PartitionedConsumeEngine {
+
+	private static final Logger logger = LoggerFactory.getLogger("com.mendmix.amqp.adapter");
+
+	private final ExecutorService[] lanes;
+	private final boolean keyOrdering;
+	private final int maxPendingPerPartition;
+	private final Consumer<MQMessage> processor;
+	private final Map<TopicPartition, OffsetAndMetadataStat> offsetStats = new ConcurrentHashMap<>();
+
+	/**
+	 * @param laneCount 处理通道数
+	 * @param keyOrdering true:按bizKey保证顺序，false:按分区保证顺序
+	 * @param maxPendingPerPartition 单分区最大未完成消息数
+	 * @param processor 消息处理
+	 */
+	public PartitionedConsumeEngine(int laneCount, boolean keyOrdering, int maxPendingPerPartition, Consumer<MQMessage> processor) {
+		this.keyOrdering = keyOrdering;
+		this.maxPendingPerPartition = maxPendingPerPartition;
+		this.processor = processor;
+		this.lanes = new ExecutorService[laneCount];
+		StandardThreadFactory threadFactory = new StandardThreadFactory("kafkaConsumeLane");
+		for (int i = 0; i < laneCount; i++) {
+			lanes[i] = Executors.newSingleThreadExecutor(threadFactory);
+		}
+	}
+
+	public void assign(Collection<TopicPartition> partitions) {
+		for (TopicPartition partition : partitions) {
+			offsetStats.put(partition, new OffsetAndMetadataStat());
+		}
+	}
+
+	/**
+	 * 分区被回收，排队中的消息不再处理
+	 * @param partitions
+	 * @return 回收分区待提交的offset
+	 */
+	public Map<TopicPartition, OffsetAndMetadata> revoke(Collection<TopicPartition> partitions) {
+		Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>(partitions.size());
+		for (TopicPartition partition : partitions) {
+			OffsetAndMetadataStat stat = offsetStats.remove(partition);
+			if(stat == null)continue;
+			stat.setRevoked(true);
+			if(stat.getWatermark() >= 0 && !stat.isCommited()) {
+				offsets.put(partition, new OffsetAndMetadata(stat.getWatermark()));
+			}
+		}
+		return offsets;
+	}
+
+	public void dispatch(MQMessage message, TopicPartition partition, long offset, String key) {
+		OffsetAndMetadataStat stat = offsetStats.computeIfAbsent(partition, k -> new OffsetAndMetadataStat());
+		stat.onDispatched(offset);
+		int hash = keyOrdering && key != null ? Objects.hash(partition, key) : partition.hashCode();
+		lanes[Math.floorMod(hash, lanes.length)].execute(() -> {
+			try {
+				if(!stat.isRevoked())processor.accept(message);
+			} finally {
+				//处理失败已转入重试，同样视为完成
+				stat.onCompleted(offset);
+			}
+		});
+	}
+
+	/**
+	 * 分发同一分区的一批消息
+	 * @param batch
+	 * @param partition
+	 * @param batchProcessor
+	 */
+	public void dispatchBatch(List<MQMessage> batch, TopicPartition partition, Consumer<List<MQMessage>> batchProcessor) {
+		OffsetAndMetadataStat stat = offsetStats.computeIfAbsent(partition, k -> new OffsetAndMetadataStat());
+		for (MQMessage message : batch) {
+			stat.onDispatched(message.getOffset());
+		}
+		lanes[Math.floorMod(partition.hashCode(), lanes.length)].execute(() -> {
+			try {
+				if(!stat.isRevoked())batchProcessor.accept(batch);
+			} finally {
+				for (MQMessage message : batch) {
+					stat.onCompleted(message.getOffset());
+				}
+			}
+		});
+	}
+
+	/**
+	 * 水位有推进的分区
+	 * @return
+	 */
+	public Map<TopicPartition, OffsetAndMetadata> committableOffsets() {
+		Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>(offsetStats.size());
+		offsetStats.forEach((partition,stat) -> {
+			if(stat.getWatermark() >= 0 && !stat.isCommited()) {
+				offsets.put(partition, new OffsetAndMetadata(stat.getWatermark()));
+			}
+		});
+		return offsets;
+	}
+
+	public void onCommited(Map<TopicPartition, OffsetAndMetadata> offsets) {
+		offsets.forEach((partition,offset) -> {
+			OffsetAndMetadataStat stat = offsetStats.get(partition);
+			if(stat != null)stat.updateOnCommited(offset.offset());
+		});
+	}
+
+	/**
+	 * 按未完成消息数暂停/恢复分区拉取
+	 * @param consumer
+	 */
+	public void applyBackpressure(org.apache.kafka.clients.consumer.Consumer<?, ?> consumer) {
+		offsetStats.forEach((partition,stat) -> {
+			int pending = stat.getPendingCount();
+			if(!stat.isPaused() && pending >= maxPendingPerPartition) {
+				consumer.pause(Collections.singleton(partition));
+				stat.setPaused(true);
+				if(logger.isDebugEnabled())logger.debug("MENDMIX-TRACE-LOGGGING-->> pause partition:{},pending:{}",partition,pending);
+			}else if(stat.isPaused() && pending <= maxPendingPerPartition / 2) {
+				consumer.resume(Collections.singleton(partition));
+				stat.setPaused(false);
+				if(logger.isDebugEnabled())logger.debug("MENDMIX-TRACE-LOGGGING-->> resume partition:{},pending:{}",partition,pending);
+			}
+		});
+	}
+
+	public Map<TopicPartition, OffsetAndMetadataStat> getOffsetStats() {
+		return Collections.unmodifiableMap(offsetStats);
+	}
+
+	public void close() {
+		for (ExecutorService lane : lanes) {
+			lane.shutdown();
+		}
+		for (ExecutorService lane : lanes) {
+			try {
+				lane.awaitTermination(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+}
@@ -15,14 +15,25 @@
  */
 package com.mendmix.amqp.adapter.redis;
 
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mendmix.amqp.BatchMessageHandler;
 import com.mendmix.amqp.MQContext;
 import com.mendmix.amqp.MQContext.ActionType;
 import com.mendmix.amqp.MQMessage;
 import com.mendmix.amqp.MessageHandler;
+import com.mendmix.amqp.adapter.MessageBatchAccumulator;
 import com.mendmix.common.CurrentRuntimeContext;
+import com.mendmix.common.ThreadLocalContext;
+import com.mendmix.common.async.DelayRetryExecutor;
+import com.mendmix.common.async.ICaller;
+import com.mendmix.common.async.StandardThreadExecutor.StandardThreadFactory;
 
 /**
  * 
@@ -35,14 +46,37 @@ public class MessageHandlerDelegate {
 	private final static Logger logger = LoggerFactory.getLogger("com.zvosframework.adapter.amqp");
 	
 	private MessageHandler messageHandler;
+	//批量处理
+	private MessageBatchAccumulator batchAccumulator;
+	private ScheduledExecutorService lingerScheduler;
+	private DelayRetryExecutor retryExecutor;
 	
 	public MessageHandlerDelegate(String topic, MessageHandler messageHandler) {
 		this.messageHandler = messageHandler;
+		if(messageHandler instanceof BatchMessageHandler) {
+			BatchMessageHandler batchHandler = (BatchMessageHandler) messageHandler;
+			this.batchAccumulator = new MessageBatchAccumulator(batchHandler.maxBatchSize(), batchHandler.lingerMillis());
+			long checkInterval = Math.max(batchHandler.lingerMillis() / 2, 5);
+			this.lingerScheduler = Executors.newSingleThreadScheduledExecutor(new StandardThreadFactory("redisMessageBatchLinger"));
+			this.lingerScheduler.scheduleWithFixedDelay(() -> {
+				for (List<MQMessage> batch : batchAccumulator.drainExpired()) {
+					consumeBatch(batch);
+				}
+			}, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+			if(batchHandler.retrieable()) {
+				this.retryExecutor = new DelayRetryExecutor(1,5000, 1000, 3);
+			}
+		}
 	}
 
 
 	public void onMessage(String body, String topic) {
 		MQMessage message = MQMessage.build(body);
+		if(batchAccumulator != null) {
+			List<MQMessage> batch = batchAccumulator.add(message.getTopic(), message);
+			if(batch != null)consumeBatch(batch);
+			return;
+		}
 		try {
 			//上下文
 			if(message.getHeaders() != null) {	
@@ -57,6 +91,48 @@ public class MessageHandlerDelegate {
 		}
 		
 	}
+	
+	private void consumeBatch(List<MQMessage> batch) {
+		BatchMessageHandler batchHandler = (BatchMessageHandler) messageHandler;
+		List<MQMessage> failed;
+		Exception error = null;
+		try {
+			failed = batchHandler.processBatch(batch);
+		} catch (Exception e) {
+			failed = batch;
+			error = e;
+		} finally {
+			ThreadLocalContext.unset();
+		}
+		for (MQMessage message : MessageBatchAccumulator.succeededMessages(batch, failed)) {
+			MQContext.processMessageLog(message, ActionType.sub,null);
+		}
+		if(failed == null || failed.isEmpty())return;
+		logger.error(String.format("MENDMIX-TRACE-LOGGGING-->> MQmessage_BATCH_CONSUME_ERROR -> topic:%s,size:%s,failed:%s",batch.get(0).getTopic(),batch.size(),failed.size()),error);
+		for (MQMessage message : failed) {
+			if(retryExecutor != null) {
+				retryExecutor.submit("message:"+message.getMsgId(), new ICaller<Void>() {
+					@Override
+					public Void call() throws Exception{
+						batchHandler.process(message);
+						return null;
+					}
+				});
+			}else {				
+				MQContext.processMessageLog(message, ActionType.sub,error != null ? error : new IllegalStateException("batch process failed"));
+			}
+		}
+	}
+	
+	public void close() {
+		if(lingerScheduler == null)return;
+		lingerScheduler.shutdown();
+		//处理剩余未满批次
+		for (List<MQMessage> batch : batchAccumulator.drainAll()) {
+			consumeBatch(batch);
+		}
+		if(retryExecutor != null)retryExecutor.close();
+	}
 
 	
 }
@@ -15,7 +15,9 @@
  */
 package com.mendmix.amqp.adapter.redis;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -50,6 +52,7 @@ public class RedisConsumerAdapter implements MQConsumer {
 	private StandardThreadExecutor asyncProcessExecutor;
 		
 	private Map<String, MessageHandler> messageHandlers = new HashMap<>(); 
+	private List<MessageHandlerDelegate> delegates = new ArrayList<>();
 	/**
 	 * @param messageHandlers
 	 */
@@ -73,6 +76,7 @@ public class RedisConsumerAdapter implements MQConsumer {
         MessageListenerAdapter listener;
         for (String topic : topics) {
         	MessageHandlerDelegate delegate = new MessageHandlerDelegate(topic, messageHandlers.get(topic));
+        	delegates.add(delegate);
         	listener = new MessageListenerAdapter(delegate, "onMessage");
         	listener.afterPropertiesSet();
         	container.addMessageListener(listener, new PatternTopic(topic));
@@ -88,6 +92,9 @@ public class RedisConsumerAdapter implements MQConsumer {
 		asyncProcessExecutor.shutdown();
 		container.stop();
 		try {container.destroy();} catch (Exception e) {}
+		for (MessageHandlerDelegate delegate : delegates) {
+			delegate.close();
+		}
 	}
 
 	
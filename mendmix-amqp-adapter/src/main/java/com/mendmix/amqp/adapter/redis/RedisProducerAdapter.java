@@ -15,13 +15,18 @@
  */
 package com.mendmix.amqp.adapter.redis;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.util.List;
+
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
 
 import com.mendmix.amqp.MQMessage;
 import com.mendmix.amqp.adapter.AbstractProducer;
 import com.mendmix.cache.RedisTemplateGroups;
+import com.mendmix.common.util.JsonUtils;
 
 /**
  * 
@@ -47,11 +52,9 @@ public class RedisProducerAdapter extends AbstractProducer {
 	
 	@Override
 	public String sendMessage(MQMessage message,boolean async) {
+		if(async && bufferAsyncMessage(message))return null;
 		try {
-			if(redisTemplate == null) {
-				redisTemplate = RedisTemplateGroups.getDefaultStringRedisTemplate();
-			}
-			redisTemplate.convertAndSend(message.getTopic(), message.toMessageValue(false));
+			getRedisTemplate().convertAndSend(message.getTopic(), message.toMessageValue(false));
 			handleSuccess(message);
 		} catch (Exception e) {
 			handleError(message, e);
@@ -61,6 +64,68 @@ public class RedisProducerAdapter extends AbstractProducer {
 		return null;
 	}
 
+	/**
+	 * 一次pipeline发布整批消息，集群连接不支持pipeline时逐条发布
+	 */
+	@Override
+	protected void doSendMessages(List<MQMessage> messages, boolean async) {
+		StringRedisTemplate template = getRedisTemplate();
+		RedisConnectionFactory connectionFactory = template.getRequiredConnectionFactory();
+		if(messages.size() == 1 || (connectionFactory instanceof JedisConnectionFactory && ((JedisConnectionFactory)connectionFactory).isRedisClusterAware())) {
+			RuntimeException error = null;
+			for (MQMessage message : messages) {
+				try {					
+					publish(template, message);
+				} catch (RuntimeException e) {
+					if(error == null)error = e;
+				}
+			}
+			if(error != null)throw error;
+			return;
+		}
+		RedisSerializer<String> serializer = template.getStringSerializer();
+		//头已合并，直接序列化
+		byte[][] channels = new byte[messages.size()][];
+		byte[][] values = new byte[messages.size()][];
+		for (int i = 0; i < messages.size(); i++) {
+			channels[i] = serializer.serialize(messages.get(i).getTopic());
+			values[i] = serializer.serialize(JsonUtils.toJson(messages.get(i)));
+		}
+		try {
+			template.executePipelined((RedisCallback<Object>) connection -> {
+				for (int i = 0; i < channels.length; i++) {
+					connection.publish(channels[i], values[i]);
+				}
+				return null;
+			});
+		} catch (Exception e) {
+			for (MQMessage message : messages) {
+				handleError(message, e);
+			}
+			throw e;
+		}
+		for (MQMessage message : messages) {
+			handleSuccess(message);
+		}
+	}
+	
+	private void publish(StringRedisTemplate template,MQMessage message) {
+		try {
+			template.convertAndSend(message.getTopic(), JsonUtils.toJson(message));
+			handleSuccess(message);
+		} catch (Exception e) {
+			handleError(message, e);
+			throw e;
+		}
+	}
+	
+	private StringRedisTemplate getRedisTemplate() {
+		if(redisTemplate == null) {
+			redisTemplate = RedisTemplateGroups.getDefaultStringRedisTemplate();
+		}
+		return redisTemplate;
+	}
+
 	@Override
 	public void shutdown() {
 		super.shutdown();
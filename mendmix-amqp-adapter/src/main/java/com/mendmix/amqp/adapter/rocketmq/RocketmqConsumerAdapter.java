@@ -15,7 +15,9 @@
  */
 package com.mendmix.amqp.adapter.rocketmq;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -28,11 +30,13 @@ import org.apache.rocketmq.common.message.MessageExt;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mendmix.amqp.BatchMessageHandler;
 import com.mendmix.amqp.MQConsumer;
 import com.mendmix.amqp.MQContext;
 import com.mendmix.amqp.MQContext.ActionType;
 import com.mendmix.amqp.MQMessage;
 import com.mendmix.amqp.MessageHandler;
+import com.mendmix.amqp.adapter.MessageBatchAccumulator;
 import com.mendmix.common.CurrentRuntimeContext;
 import com.mendmix.common.ThreadLocalContext;
 import com.mendmix.common.util.ResourceUtils;
@@ -40,6 +44,8 @@ import com.mendmix.common.util.ResourceUtils;
 /**
  * 
  * <br>
+ * 存在批量处理（{@link BatchMessageHandler}）的topic时，消费者按其最大批量拉取和投递，消费组与位点保持不变；
+ * 同一批次中非批量处理topic的消息仍逐条处理，失败的消息单独回发重试。
  * Class Name   : RocketmqConsumerAdapter
  *
  * @author jiangwei
@@ -77,12 +83,21 @@ public class RocketmqConsumerAdapter implements MQConsumer {
 
 	@Override
 	public void start() throws Exception {
-
 		int consumeThreads = MQContext.getMaxProcessThreads();
 		String groupName = MQContext.getGroupName();
+		//未注册批量处理时每次投递一条
+		int consumeBatchSize = 1;
+		for (MessageHandler handler : messageHandlers.values()) {
+			if(handler instanceof BatchMessageHandler) {
+				consumeBatchSize = Math.max(consumeBatchSize, ((BatchMessageHandler)handler).maxBatchSize());
+			}
+		}
 		consumer = new DefaultMQPushConsumer(groupName);
 		consumer.setNamesrvAddr(namesrvAddr);
-		consumer.setConsumeMessageBatchMaxSize(1); //每次拉取一条
+		consumer.setConsumeMessageBatchMaxSize(consumeBatchSize);
+		if(consumeBatchSize > consumer.getPullBatchSize()) {
+			consumer.setPullBatchSize(consumeBatchSize);
+		}
         consumer.setConsumeFromWhere(ConsumeFromWhere.CONSUME_FROM_LAST_OFFSET);
         consumer.setConsumeThreadMin(consumeThreads);
         consumer.setConsumeThreadMax(consumeThreads);
@@ -93,28 +108,50 @@ public class RocketmqConsumerAdapter implements MQConsumer {
 		}
 		consumer.registerMessageListener(new CustomMessageListener());
 		consumer.start();
+		if(consumeBatchSize > 1) {
+			logger.info("MENDMIX-TRACE-LOGGGING-->> rocketmq consumer group:{} consume with batchSize:{}",groupName,consumeBatchSize);
+		}
 	}
 
-
 	
 	private class CustomMessageListener implements MessageListenerConcurrently{
+
 		@Override
 		public ConsumeConcurrentlyStatus consumeMessage(List<MessageExt> msgs, ConsumeConcurrentlyContext context) {
 			if(msgs.isEmpty())return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
-			MessageExt msg = msgs.get(0); //每次只拉取一条
-			if(!messageHandlers.containsKey(msg.getTopic())) {
-				logger.warn("MENDMIX-TRACE-LOGGGING-->> not messageHandler found for:{}",msg.getTopic());
-				return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
+			if(msgs.size() == 1)return consumeSingle(msgs.get(0));
+			//按topic分组，批量处理的topic整批处理，失败部分单独回发重试
+			Map<String, List<MessageExt>> topicMessages = new LinkedHashMap<>();
+			for (MessageExt msg : msgs) {
+				topicMessages.computeIfAbsent(msg.getTopic(), k -> new ArrayList<>()).add(msg);
 			}
-			if(MQContext.getConsumeMaxRetryTimes() > 0 && msg.getReconsumeTimes() > MQContext.getConsumeMaxRetryTimes()) {
-				return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
+			List<MessageExt> failed = new ArrayList<>();
+			for (List<MessageExt> group : topicMessages.values()) {
+				MessageHandler handler = messageHandlers.get(group.get(0).getTopic());
+				if(handler instanceof BatchMessageHandler) {
+					failed.addAll(consumeBatch((BatchMessageHandler) handler, group));
+				}else {
+					for (MessageExt msg : group) {
+						if(consumeSingle(msg) == ConsumeConcurrentlyStatus.RECONSUME_LATER)failed.add(msg);
+					}
+				}
 			}
-			if(MQContext.getConsumeMaxInterval() > 0 && msg.getReconsumeTimes() > 1 && System.currentTimeMillis() - msg.getBornTimestamp() > MQContext.getConsumeMaxInterval()) {
-				return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
+			if(failed.isEmpty())return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
+			//整批为同一队列，只回发失败的消息，回发失败时整批重试
+			for (MessageExt msg : failed) {
+				try {
+					consumer.sendMessageBack(msg, context.getDelayLevelWhenNextConsume(), context.getMessageQueue().getBrokerName());
+				} catch (Exception e) {
+					logger.warn("MENDMIX-TRACE-LOGGGING-->> sendMessageBack error:{},msgId:{}",e.getMessage(),msg.getMsgId());
+					return ConsumeConcurrentlyStatus.RECONSUME_LATER;
+				}
 			}
-			MQMessage message = new MQMessage(msg.getTopic(),msg.getTags(),msg.getKeys(), msg.getBody());
-			message.setOriginMessage(msg);
-			message.setHeaders(msg.getProperties());
+			return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
+		}
+		
+		private ConsumeConcurrentlyStatus consumeSingle(MessageExt msg) {
+			if(!isConsumable(msg))return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
+			MQMessage message = buildMessage(msg);
 			//上下文
 			if(message.getHeaders() != null) {	
 				CurrentRuntimeContext.addContextHeaders(message.getHeaders());
@@ -139,6 +176,69 @@ public class RocketmqConsumerAdapter implements MQConsumer {
 			}				
 		}
 		
+		/**
+		 * @return 处理失败需要重试的消息
+		 */
+		private List<MessageExt> consumeBatch(BatchMessageHandler handler,List<MessageExt> msgs) {
+			List<MessageExt> retryMsgs = new ArrayList<>();
+			List<MQMessage> batch = new ArrayList<>(msgs.size());
+			for (MessageExt msg : msgs) {
+				if(!isConsumable(msg))continue;
+				MQMessage message = buildMessage(msg);
+				//消息状态检查
+				if(!message.originStatusCompleted() && message.getConsumeTimes() <= 1) {
+					retryMsgs.add(msg);
+					continue;
+				}
+				batch.add(message);
+			}
+			if(batch.isEmpty())return retryMsgs;
+			List<MQMessage> failed;
+			Exception error = null;
+			try {
+				failed = handler.processBatch(batch);
+			} catch (Exception e) {
+				failed = batch;
+				error = e;
+			}finally{
+				ThreadLocalContext.unset();
+			}
+			for (MQMessage message : MessageBatchAccumulator.succeededMessages(batch, failed)) {
+				MQContext.processMessageLog(message, ActionType.sub,null);
+			}
+			if(failed == null || failed.isEmpty()) {
+				if(logger.isDebugEnabled())logger.debug("MENDMIX-TRACE-LOGGGING-->> MQmessage_BATCH_CONSUME_SUCCESS -> topic:{},size:{}",batch.get(0).getTopic(),batch.size());
+				return retryMsgs;
+			}
+			logger.error(String.format("MENDMIX-TRACE-LOGGGING-->> MQmessage_BATCH_CONSUME_ERROR -> topic:%s,size:%s,failed:%s",batch.get(0).getTopic(),batch.size(),failed.size()),error);
+			for (MQMessage message : failed) {
+				MQContext.processMessageLog(message,ActionType.sub, error != null ? error : new IllegalStateException("batch process failed"));
+				retryMsgs.add((MessageExt) message.getOriginMessage(MessageExt.class));
+			}
+			return retryMsgs;
+		}
+		
+		private boolean isConsumable(MessageExt msg) {
+			if(!messageHandlers.containsKey(msg.getTopic())) {
+				logger.warn("MENDMIX-TRACE-LOGGGING-->> not messageHandler found for:{}",msg.getTopic());
+				return false;
+			}
+			if(MQContext.getConsumeMaxRetryTimes() > 0 && msg.getReconsumeTimes() > MQContext.getConsumeMaxRetryTimes()) {
+				return false;
+			}
+			if(MQContext.getConsumeMaxInterval() > 0 && msg.getReconsumeTimes() > 1 && System.currentTimeMillis() - msg.getBornTimestamp() > MQContext.getConsumeMaxInterval()) {
+				return false;
+			}
+			return true;
+		}
+		
+		private MQMessage buildMessage(MessageExt msg) {
+			MQMessage message = new MQMessage(msg.getTopic(),msg.getTags(),msg.getKeys(), msg.getBody());
+			message.setOriginMessage(msg);
+			message.setHeaders(msg.getProperties());
+			return message;
+		}
+		
 	}
 
 	@Override
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.amqp.adapter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.mendmix.amqp.MQMessage;
+
+/**
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class MessageBatchAccumulatorTest {
+
+	@Test
+	public void testFlushOnMaxBatchSize() {
+		MessageBatchAccumulator accumulator = new MessageBatchAccumulator(3, 60000);
+		MQMessage m1 = message("t1", 1), m2 = message("t1", 2), m3 = message("t1", 3);
+		Assert.assertNull(accumulator.add("t1", m1));
+		Assert.assertNull(accumulator.add("t1", m2));
+		//其他key单独攒批
+		Assert.assertNull(accumulator.add("t2", message("t2", 1)));
+		Assert.assertEquals(3, accumulator.getPendingCount());
+		Assert.assertEquals(Arrays.asList(m1, m2, m3), accumulator.add("t1", m3));
+		Assert.assertEquals(1, accumulator.getPendingCount());
+		Assert.assertNull(accumulator.add("t1", message("t1", 4)));
+	}
+
+	@Test
+	public void testNoLingerFlushImmediately() {
+		MessageBatchAccumulator accumulator = new MessageBatchAccumulator(10, 0);
+		MQMessage message = message("t1", 1);
+		Assert.assertEquals(Collections.singletonList(message), accumulator.add("t1", message));
+		Assert.assertEquals(0, accumulator.getPendingCount());
+	}
+
+	@Test
+	public void testDrainExpired() throws InterruptedException {
+		MessageBatchAccumulator accumulator = new MessageBatchAccumulator(10, 50);
+		MQMessage m1 = message("t1", 1), m2 = message("t1", 2);
+		accumulator.add("t1", m1);
+		accumulator.add("t1", m2);
+		Assert.assertTrue(accumulator.drainExpired().isEmpty());
+		Thread.sleep(80);
+		MQMessage fresh = message("t2", 1);
+		accumulator.add("t2", fresh);
+		//只取出首条消息等待超时的批次
+		List<List<MQMessage>> expired = accumulator.drainExpired();
+		Assert.assertEquals(1, expired.size());
+		Assert.assertEquals(Arrays.asList(m1, m2), expired.get(0));
+		Assert.assertEquals(1, accumulator.getPendingCount());
+
+		Assert.assertEquals(Collections.singletonList(Collections.singletonList(fresh)), accumulator.drainAll());
+		Assert.assertEquals(0, accumulator.getPendingCount());
+		Assert.assertTrue(accumulator.drainExpired().isEmpty());
+	}
+
+	@Test
+	public void testDiscard() {
+		MessageBatchAccumulator accumulator = new MessageBatchAccumulator(10, 60000);
+		accumulator.add("t1:0", message("t1", 1));
+		accumulator.add("t1:1", message("t1", 2));
+		accumulator.add("t2:0", message("t2", 1));
+		//分区被回收时丢弃对应批次
+		accumulator.discard(key -> key.startsWith("t1:"));
+		Assert.assertEquals(1, accumulator.getPendingCount());
+		List<List<MQMessage>> remaining = accumulator.drainAll();
+		Assert.assertEquals(1, remaining.size());
+		Assert.assertEquals("t2", remaining.get(0).get(0).getTopic());
+	}
+
+	@Test
+	public void testSucceededMessages() {
+		MQMessage m1 = message("t1", 1), m2 = message("t1", 2), m3 = message("t1", 3);
+		List<MQMessage> batch = Arrays.asList(m1, m2, m3);
+		Assert.assertSame(batch, MessageBatchAccumulator.succeededMessages(batch, null));
+		Assert.assertSame(batch, MessageBatchAccumulator.succeededMessages(batch, Collections.emptyList()));
+		Assert.assertEquals(Arrays.asList(m1, m3), MessageBatchAccumulator.succeededMessages(batch, Collections.singletonList(m2)));
+		Assert.assertTrue(MessageBatchAccumulator.succeededMessages(batch, batch).isEmpty());
+		//按实例比较，内容相同的其他消息不算失败
+		Assert.assertEquals(batch, MessageBatchAccumulator.succeededMessages(batch, Collections.singletonList(message("t1", 1))));
+	}
+
+	private static MQMessage message(String topic, int offset) {
+		MQMessage message = new MQMessage(topic, "body-" + offset);
+		message.setOffset(offset);
+		return message;
+	}
+}
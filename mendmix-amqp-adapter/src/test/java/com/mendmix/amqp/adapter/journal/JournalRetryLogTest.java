@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.amqp.adapter.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class JournalRetryLogTest {
+
+	private static final int SEGMENT_SIZE = 1024;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testUnfinishedTasksAfterReopen() throws IOException {
+		String dir = folder.newFolder().getAbsolutePath();
+		JournalRetryLog retryLog = new JournalRetryLog(dir, SEGMENT_SIZE);
+		Assert.assertTrue(retryLog.getUnfinishedTasks().isEmpty());
+		retryLog.onScheduled("task-1", 0, 1000);
+		retryLog.onScheduled("task-2", 0, 2000);
+		retryLog.onScheduled("task-2", 1, 3000);
+		retryLog.onFinished("task-1", 1, true, null);
+		retryLog.onScheduled(null, 0, 4000);
+		retryLog.close();
+
+		retryLog = new JournalRetryLog(dir, SEGMENT_SIZE);
+		List<JournalEntry> unfinished = retryLog.getUnfinishedTasks();
+		Assert.assertEquals(1, unfinished.size());
+		Assert.assertEquals("task-2", unfinished.get(0).getKey());
+		Assert.assertEquals(1, unfinished.get(0).getAttempts());
+		Assert.assertEquals(3000, unfinished.get(0).getTime());
+		retryLog.close();
+	}
+
+	@Test
+	public void testFinishedSegmentsPurged() throws IOException {
+		File dir = folder.newFolder();
+		JournalRetryLog retryLog = new JournalRetryLog(dir.getAbsolutePath(), SEGMENT_SIZE);
+		for (int i = 0; i < 200; i++) {
+			retryLog.onScheduled("task-" + i, 0, i);
+			retryLog.onFinished("task-" + i, 1, false, "java.lang.IllegalStateException: failed");
+		}
+		retryLog.close();
+		Assert.assertTrue(dir.listFiles().length <= 2);
+		retryLog = new JournalRetryLog(dir.getAbsolutePath(), SEGMENT_SIZE);
+		Assert.assertTrue(retryLog.getUnfinishedTasks().isEmpty());
+		retryLog.close();
+	}
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.amqp.adapter.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.mendmix.amqp.MQMessage;
+
+/**
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class MessageRetryJournalTest {
+
+	private static final String TOPIC = "test-topic";
+	private static final int SEGMENT_SIZE = 1024;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRecordReopenReplay() throws IOException {
+		String dir = folder.newFolder().getPath();
+		MessageRetryJournal journal = new MessageRetryJournal(dir, 64 * 1024, 5, 1000);
+		Assert.assertTrue(journal.recordFailure(message("m1", "body-1"), new RuntimeException("e1")));
+		Assert.assertTrue(journal.recordFailure(message("m2", "body-2"), new RuntimeException("e2")));
+		Assert.assertTrue(journal.recordFailure(message("m1", "body-1"), new RuntimeException("e3")));
+		Assert.assertTrue(journal.recordFailure(message("m3", "body-3"), null));
+		JournalEntry entry = journal.getPending("m3");
+		Assert.assertFalse(journal.onRetryFinished(entry, message("m3", "body-3"), null));
+		journal.close();
+
+		journal = new MessageRetryJournal(dir, 64 * 1024, 5, 1000);
+		Assert.assertEquals(2, journal.getPendingCount());
+		Assert.assertNull(journal.getPending("m3"));
+		entry = journal.getPending("m1");
+		Assert.assertEquals(2, entry.getAttempts());
+		Assert.assertEquals("java.lang.RuntimeException: e3", entry.getError());
+		Assert.assertEquals("body-1", journal.readMessage(entry).getBody());
+		Assert.assertEquals(2, journal.listPending(TOPIC).size());
+		Assert.assertTrue(journal.listPending("other-topic").isEmpty());
+		journal.close();
+	}
+
+	@Test
+	public void testPollDue() throws IOException {
+		String dir = folder.newFolder().getPath();
+		MessageRetryJournal journal = new MessageRetryJournal(dir, 64 * 1024, 5, 1000);
+		journal.recordFailure(message("m1", "body-1"), null);
+		long now = System.currentTimeMillis();
+		Assert.assertTrue(journal.pollDue(now, 10).isEmpty());
+		List<JournalEntry> due = journal.pollDue(now + 1000, 10);
+		Assert.assertEquals(1, due.size());
+		//下次重试间隔按失败次数增长
+		Assert.assertTrue(journal.onRetryFinished(due.get(0), message("m1", "body-1"), new RuntimeException()));
+		Assert.assertTrue(journal.pollDue(now + 1000, 10).isEmpty());
+		Assert.assertEquals(1, journal.pollDue(now + 3000, 10).size());
+		journal.close();
+	}
+
+	@Test
+	public void testPollDueInTimeOrder() throws IOException {
+		String dir = folder.newFolder().getPath();
+		MessageRetryJournal journal = new MessageRetryJournal(dir, 64 * 1024, 5, 1000);
+		//先写入的m2失败两次，下次重试晚于后写入的m1
+		journal.recordFailure(message("m2", "body-2"), null);
+		journal.recordFailure(message("m2", "body-2"), null);
+		journal.recordFailure(message("m1", "body-1"), null);
+		long now = System.currentTimeMillis();
+		List<JournalEntry> due = journal.pollDue(now + 5000, 1);
+		Assert.assertEquals(1, due.size());
+		Assert.assertEquals("m1", due.get(0).getKey());
+		due = journal.pollDue(now + 5000, 10);
+		Assert.assertEquals(2, due.size());
+		Assert.assertEquals("m1", due.get(0).getKey());
+		Assert.assertEquals("m2", due.get(1).getKey());
+		Assert.assertEquals("m1", journal.pollDue(now + 1000, 10).get(0).getKey());
+		journal.close();
+	}
+
+	@Test
+	public void testSegmentReclaimedAfterDone() throws IOException {
+		File dir = folder.newFolder();
+		MessageRetryJournal journal = new MessageRetryJournal(dir.getPath(), SEGMENT_SIZE, 5, 1000);
+		for (int i = 0; i < 6; i++) {
+			journal.recordFailure(message("m" + i, largeBody()), null);
+		}
+		Assert.assertTrue(segmentCount(journal) > 2);
+		for (int i = 0; i < 6; i++) {
+			journal.onRetryFinished(journal.getPending("m" + i), null, null);
+		}
+		Assert.assertEquals(0, journal.getPendingCount());
+		Assert.assertEquals(1, segmentCount(journal));
+		Assert.assertEquals(1, new File(dir, "retry").listFiles().length);
+		journal.close();
+
+		journal = new MessageRetryJournal(dir.getPath(), SEGMENT_SIZE, 5, 1000);
+		Assert.assertEquals(0, journal.getPendingCount());
+		journal.close();
+	}
+
+	@Test
+	public void testRelocateWhenTooManySegments() throws IOException {
+		File dir = folder.newFolder();
+		MessageRetryJournal journal = new MessageRetryJournal(dir.getPath(), SEGMENT_SIZE, 5, 1000);
+		journal.recordFailure(message("stuck", "stuck-body"), null);
+		for (int i = 0; i < 40; i++) {
+			journal.recordFailure(message("m" + i, largeBody()), null);
+			journal.onRetryFinished(journal.getPending("m" + i), null, null);
+			journal.compact();
+			Assert.assertTrue(segmentCount(journal) <= 9);
+		}
+		//长期未结束的记录已迁出最早分段
+		Assert.assertFalse(new File(dir, "retry/0000000001.seg").exists());
+		JournalEntry entry = journal.getPending("stuck");
+		Assert.assertNotEquals(1, entry.segmentId);
+		Assert.assertEquals("stuck-body", journal.readMessage(entry).getBody());
+		journal.close();
+
+		journal = new MessageRetryJournal(dir.getPath(), SEGMENT_SIZE, 5, 1000);
+		Assert.assertEquals(1, journal.getPendingCount());
+		entry = journal.getPending("stuck");
+		Assert.assertEquals(1, entry.getAttempts());
+		Assert.assertEquals("stuck-body", journal.readMessage(entry).getBody());
+		journal.close();
+	}
+
+	@Test
+	public void testCompactLimitedPerCall() throws IOException {
+		File dir = folder.newFolder();
+		//最早分段有效数据占比低于迁移阈值
+		MessageRetryJournal journal = new MessageRetryJournal(dir.getPath(), SEGMENT_SIZE * 2, 5, 1000);
+		for (int i = 0; i < 3; i++) {
+			journal.recordFailure(message("stuck" + i, "stuck-body"), null);
+		}
+		for (int i = 0; i < 80; i++) {
+			journal.recordFailure(message("m" + i, largeBody()), null);
+			journal.onRetryFinished(journal.getPending("m" + i), null, null);
+		}
+		//写入时不迁移
+		int segments = segmentCount(journal);
+		Assert.assertTrue(segments > 9);
+		Assert.assertEquals(1, journal.compact(1));
+		Assert.assertTrue(new File(dir, "retry/0000000001.seg").exists());
+		Assert.assertEquals(2, journal.compact(10));
+		Assert.assertFalse(new File(dir, "retry/0000000001.seg").exists());
+		Assert.assertTrue(segmentCount(journal) < segments);
+		for (int i = 0; i < 3; i++) {
+			Assert.assertEquals("stuck-body", journal.readMessage(journal.getPending("stuck" + i)).getBody());
+		}
+		journal.close();
+	}
+
+	@Test
+	public void testNoCompactWhenOldestMostlyLive() throws IOException {
+		File dir = folder.newFolder();
+		MessageRetryJournal journal = new MessageRetryJournal(dir.getPath(), SEGMENT_SIZE, 5, 1000);
+		//下游故障期间积压，全部记录有效
+		for (int i = 0; i < 40; i++) {
+			journal.recordFailure(message("m" + i, largeBody()), null);
+		}
+		int segments = segmentCount(journal);
+		Assert.assertTrue(segments > 9);
+		Assert.assertEquals(0, journal.compact());
+		Assert.assertEquals(segments, segmentCount(journal));
+		Assert.assertEquals(1, journal.getPending("m0").segmentId);
+		Assert.assertEquals(40, journal.getPendingCount());
+		journal.close();
+	}
+
+	@Test
+	public void testDeadLetterRedriveAndDiscard() throws IOException {
+		String dir = folder.newFolder().getPath();
+		MessageRetryJournal journal = new MessageRetryJournal(dir, 64 * 1024, 2, 1000);
+		Assert.assertTrue(journal.recordFailure(message("m1", "body-1"), null));
+		Assert.assertFalse(journal.recordFailure(message("m1", "body-1"), new RuntimeException("dead")));
+		Assert.assertTrue(journal.recordFailure(message("m2", "body-2"), null));
+		Assert.assertFalse(journal.recordFailure(message("m2", "body-2"), null));
+		Assert.assertEquals(0, journal.getPendingCount());
+		Assert.assertEquals(2, journal.getDeadLetterCount());
+		JournalEntry deadLetter = journal.getDeadLetter("m1");
+		Assert.assertEquals(2, deadLetter.getAttempts());
+		Assert.assertEquals("body-1", journal.readMessage(deadLetter).getBody());
+		Assert.assertEquals(2, journal.listDeadLetters(TOPIC).size());
+
+		//重新投递：重置失败次数，立即到期
+		Assert.assertTrue(journal.redrive("m1"));
+		Assert.assertFalse(journal.redrive("m1"));
+		Assert.assertNull(journal.getDeadLetter("m1"));
+		JournalEntry pending = journal.getPending("m1");
+		Assert.assertEquals(0, pending.getAttempts());
+		Assert.assertEquals(1, journal.pollDue(System.currentTimeMillis(), 10).size());
+		Assert.assertEquals("body-1", journal.readMessage(pending).getBody());
+
+		Assert.assertTrue(journal.discard("m2"));
+		Assert.assertFalse(journal.discard("m2"));
+		Assert.assertEquals(0, journal.getDeadLetterCount());
+		journal.close();
+
+		journal = new MessageRetryJournal(dir, 64 * 1024, 2, 1000);
+		Assert.assertEquals(1, journal.getPendingCount());
+		Assert.assertEquals(0, journal.getDeadLetterCount());
+		Assert.assertEquals(0, journal.getPending("m1").getAttempts());
+		//重新投递后再次失败重新计数
+		Assert.assertTrue(journal.recordFailure(message("m1", "body-1"), null));
+		Assert.assertFalse(journal.recordFailure(message("m1", "body-1"), null));
+		Assert.assertEquals(1, journal.redriveAll(TOPIC));
+		journal.close();
+	}
+
+	private static MQMessage message(String msgId, String body) {
+		MQMessage message = new MQMessage(TOPIC, body);
+		message.setMsgId(msgId);
+		return message;
+	}
+
+	private static String largeBody() {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 30; i++) {
+			builder.append("0123456789");
+		}
+		return builder.toString();
+	}
+
+	private static int segmentCount(MessageRetryJournal journal) {
+		return (Integer) journal.toMap().get("retrySegments");
+	}
+}
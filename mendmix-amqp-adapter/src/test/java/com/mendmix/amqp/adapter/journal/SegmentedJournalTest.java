@@ -0,0 +1,176 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.amqp.adapter.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class SegmentedJournalTest {
+
+	private static final int SEGMENT_SIZE = 4096;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testAppendReopenReplay() throws IOException {
+		File dir = folder.newFolder();
+		SegmentedJournal journal = new SegmentedJournal(dir, SEGMENT_SIZE);
+		JournalEntry first = journal.append(entry("k1"), bytes("payload-1"));
+		journal.append(entry("k2"), bytes("payload-2"));
+		journal.close();
+
+		journal = new SegmentedJournal(dir, SEGMENT_SIZE);
+		List<JournalEntry> entries = replay(journal);
+		Assert.assertEquals(2, entries.size());
+		Assert.assertEquals("k1", entries.get(0).getKey());
+		Assert.assertEquals("k2", entries.get(1).getKey());
+		Assert.assertEquals(first.position, entries.get(0).position);
+		Assert.assertEquals("payload-2", new String(journal.readPayload(entries.get(1)), StandardCharsets.UTF_8));
+		journal.close();
+	}
+
+	@Test
+	public void testCorruptedTailRecord() throws IOException {
+		File dir = folder.newFolder();
+		SegmentedJournal journal = new SegmentedJournal(dir, SEGMENT_SIZE);
+		journal.append(entry("k1"), bytes("payload-1"));
+		JournalEntry tail = journal.append(entry("k2"), bytes("payload-2"));
+		journal.close();
+		//校验和不匹配
+		try(RandomAccessFile raf = new RandomAccessFile(segmentFile(dir, 1), "rw")){
+			raf.seek(tail.position + 8 + 2);
+			raf.write(raf.read() ^ 0xFF);
+		}
+
+		assertTailOverwritten(dir, tail.position);
+	}
+
+	@Test
+	public void testTruncatedTailRecord() throws IOException {
+		File dir = folder.newFolder();
+		SegmentedJournal journal = new SegmentedJournal(dir, SEGMENT_SIZE);
+		journal.append(entry("k1"), bytes("payload-1"));
+		JournalEntry tail = journal.append(entry("k2"), bytes("payload-2"));
+		journal.close();
+		//长度超出分段
+		try(RandomAccessFile raf = new RandomAccessFile(segmentFile(dir, 1), "rw")){
+			raf.seek(tail.position);
+			raf.writeInt(SEGMENT_SIZE);
+		}
+
+		assertTailOverwritten(dir, tail.position);
+	}
+
+	@Test
+	public void testTornTailWithoutLength() throws IOException {
+		File dir = folder.newFolder();
+		SegmentedJournal journal = new SegmentedJournal(dir, SEGMENT_SIZE);
+		journal.append(entry("k1"), bytes("payload-1"));
+		JournalEntry tail = journal.append(entry("k2"), bytes("payload-2"));
+		journal.close();
+		//只写入了部分记录体，长度尚未写入
+		try(RandomAccessFile raf = new RandomAccessFile(segmentFile(dir, 1), "rw")){
+			raf.seek(tail.position);
+			raf.writeInt(0);
+		}
+
+		assertTailOverwritten(dir, tail.position);
+	}
+
+	@Test
+	public void testRollAndPurge() throws IOException {
+		File dir = folder.newFolder();
+		SegmentedJournal journal = new SegmentedJournal(dir, 256);
+		List<JournalEntry> entries = new ArrayList<>();
+		for (int i = 0; i < 6; i++) {
+			JournalEntry entry = journal.append(entry("k" + i), new byte[100]);
+			journal.retain(entry);
+			entries.add(entry);
+		}
+		int segmentCount = journal.getSegmentCount();
+		Assert.assertTrue(segmentCount > 2);
+		//非最早分段无引用时不回收
+		JournalEntry middle = entries.remove(entries.size() - 2);
+		Assert.assertNotEquals(1, middle.segmentId);
+		journal.release(middle);
+		Assert.assertEquals(segmentCount, journal.getSegmentCount());
+
+		for (JournalEntry entry : entries) {
+			if(entry.segmentId == 1)journal.release(entry);
+		}
+		Assert.assertFalse(segmentFile(dir, 1).exists());
+		Assert.assertTrue(journal.getOldestSegmentId() > 1);
+		Assert.assertNull(journal.readPayload(entries.get(0)));
+		
+		for (JournalEntry entry : entries) {
+			if(entry.segmentId != 1)journal.release(entry);
+		}
+		//当前写入分段不回收
+		Assert.assertEquals(1, journal.getSegmentCount());
+		Assert.assertEquals(1, dir.listFiles().length);
+		journal.close();
+	}
+
+	private void assertTailOverwritten(File dir, int tailPosition) throws IOException {
+		SegmentedJournal journal = new SegmentedJournal(dir, SEGMENT_SIZE);
+		List<JournalEntry> entries = replay(journal);
+		Assert.assertEquals(1, entries.size());
+		Assert.assertEquals("k1", entries.get(0).getKey());
+
+		JournalEntry entry = journal.append(entry("k3"), bytes("payload-3"));
+		Assert.assertEquals(tailPosition, entry.position);
+		journal.close();
+
+		journal = new SegmentedJournal(dir, SEGMENT_SIZE);
+		entries = replay(journal);
+		Assert.assertEquals(2, entries.size());
+		Assert.assertEquals("payload-3", new String(journal.readPayload(entries.get(1)), StandardCharsets.UTF_8));
+		journal.close();
+	}
+
+	private static List<JournalEntry> replay(SegmentedJournal journal) {
+		List<JournalEntry> entries = new ArrayList<>();
+		journal.replay(entries::add);
+		return entries;
+	}
+
+	private static JournalEntry entry(String key) {
+		return new JournalEntry(JournalEntry.TYPE_PENDING, key, "test-topic", 1, System.currentTimeMillis(), null);
+	}
+
+	private static byte[] bytes(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static File segmentFile(File dir, int id) {
+		return new File(dir, String.format("%010d.seg", id));
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.amqp.adapter.kafka;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class OffsetAndMetadataStatTest {
+
+	@Test
+	public void testNoDispatched() {
+		OffsetAndMetadataStat stat = new OffsetAndMetadataStat();
+		Assert.assertEquals(-1, stat.getWatermark());
+		Assert.assertEquals(0, stat.getPendingCount());
+	}
+
+	@Test
+	public void testOutOfOrderCompletion() {
+		OffsetAndMetadataStat stat = new OffsetAndMetadataStat();
+		stat.onDispatched(10);
+		stat.onDispatched(11);
+		stat.onDispatched(12);
+		Assert.assertEquals(10, stat.getWatermark());
+		//后面的先完成，水位停在最小的未完成offset
+		stat.onCompleted(12);
+		Assert.assertEquals(10, stat.getWatermark());
+		stat.onCompleted(10);
+		Assert.assertEquals(11, stat.getWatermark());
+		stat.onDispatched(13);
+		stat.onCompleted(13);
+		Assert.assertEquals(11, stat.getWatermark());
+		stat.onCompleted(11);
+		//全部完成为最大已分发offset+1
+		Assert.assertEquals(14, stat.getWatermark());
+		Assert.assertEquals(0, stat.getPendingCount());
+	}
+
+	@Test
+	public void testCommited() {
+		OffsetAndMetadataStat stat = new OffsetAndMetadataStat();
+		stat.onDispatched(0);
+		stat.onDispatched(1);
+		stat.onCompleted(0);
+		Assert.assertFalse(stat.isCommited());
+		stat.updateOnCommited(1);
+		Assert.assertTrue(stat.isCommited());
+		//提交结果乱序返回不回退
+		stat.updateOnCommited(0);
+		Assert.assertEquals(1, stat.getCommitedOffset());
+		stat.onCompleted(1);
+		Assert.assertFalse(stat.isCommited());
+	}
+}
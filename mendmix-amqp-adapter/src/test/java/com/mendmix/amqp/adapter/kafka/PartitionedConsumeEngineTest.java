@@ -0,0 +1,161 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.amqp.adapter.kafka;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.mendmix.amqp.MQMessage;
+
+/**
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class PartitionedConsumeEngineTest {
+
+	private final TopicPartition partition = new TopicPartition("test-topic", 0);
+	//每条消息处理前须获取一个许可
+	private final Semaphore permits = new Semaphore(0);
+	private final List<Long> processed = Collections.synchronizedList(new ArrayList<>());
+	private PartitionedConsumeEngine engine;
+
+	@After
+	public void tearDown() {
+		permits.release(1000);
+		if(engine != null)engine.close();
+	}
+
+	@Test
+	public void testCommitWatermark() throws InterruptedException {
+		engine = newEngine(100);
+		engine.assign(Collections.singleton(partition));
+		dispatch(0, 1, 2);
+		Assert.assertEquals(0, engine.committableOffsets().get(partition).offset());
+		permits.release(2);
+		awaitPending(1);
+		Map<TopicPartition, OffsetAndMetadata> offsets = engine.committableOffsets();
+		Assert.assertEquals(2, offsets.get(partition).offset());
+		engine.onCommited(offsets);
+		Assert.assertTrue(engine.committableOffsets().isEmpty());
+
+		permits.release();
+		awaitPending(0);
+		Assert.assertEquals(3, engine.committableOffsets().get(partition).offset());
+	}
+
+	@Test
+	public void testRevoke() throws InterruptedException {
+		engine = newEngine(100);
+		engine.assign(Collections.singleton(partition));
+		dispatch(0, 1, 2);
+		permits.release();
+		awaitPending(2);
+		OffsetAndMetadataStat stat = engine.getOffsetStats().get(partition);
+
+		//回收时返回当前水位，之后不再参与提交
+		Map<TopicPartition, OffsetAndMetadata> offsets = engine.revoke(Collections.singleton(partition));
+		Assert.assertEquals(1, offsets.get(partition).offset());
+		Assert.assertTrue(engine.committableOffsets().isEmpty());
+		engine.onCommited(offsets);
+		Assert.assertNull(engine.getOffsetStats().get(partition));
+
+		//已开始处理的消息继续完成，排队中的不再处理
+		permits.release(2);
+		awaitPending(stat, 0);
+		Assert.assertEquals(Arrays.asList(0L, 1L), processed);
+		Assert.assertTrue(engine.committableOffsets().isEmpty());
+	}
+
+	@Test
+	public void testRevokeCommited() throws InterruptedException {
+		engine = newEngine(100);
+		engine.assign(Collections.singleton(partition));
+		dispatch(0);
+		permits.release();
+		awaitPending(0);
+		engine.onCommited(engine.committableOffsets());
+		Assert.assertTrue(engine.revoke(Collections.singleton(partition)).isEmpty());
+	}
+
+	@Test
+	public void testBackpressure() throws InterruptedException {
+		engine = newEngine(4);
+		engine.assign(Collections.singleton(partition));
+		MockConsumer<String, String> consumer = new MockConsumer<>(OffsetResetStrategy.LATEST);
+		consumer.assign(Collections.singleton(partition));
+
+		dispatch(0, 1, 2);
+		engine.applyBackpressure(consumer);
+		Assert.assertTrue(consumer.paused().isEmpty());
+
+		dispatch(3);
+		engine.applyBackpressure(consumer);
+		Assert.assertEquals(Collections.singleton(partition), consumer.paused());
+		Assert.assertTrue(engine.getOffsetStats().get(partition).isPaused());
+
+		//降到上限一半以下才恢复
+		permits.release();
+		awaitPending(3);
+		engine.applyBackpressure(consumer);
+		Assert.assertEquals(Collections.singleton(partition), consumer.paused());
+
+		permits.release();
+		awaitPending(2);
+		engine.applyBackpressure(consumer);
+		Assert.assertTrue(consumer.paused().isEmpty());
+		Assert.assertFalse(engine.getOffsetStats().get(partition).isPaused());
+	}
+
+	private PartitionedConsumeEngine newEngine(int maxPendingPerPartition) {
+		return new PartitionedConsumeEngine(2, false, maxPendingPerPartition, message -> {
+			permits.acquireUninterruptibly();
+			processed.add(message.getOffset());
+		});
+	}
+
+	private void dispatch(long...offsets) {
+		for (long offset : offsets) {
+			MQMessage message = new MQMessage(partition.topic(), "body-" + offset);
+			message.setOffset(offset);
+			engine.dispatch(message, partition, offset, null);
+		}
+	}
+
+	private void awaitPending(int pending) throws InterruptedException {
+		awaitPending(engine.getOffsetStats().get(partition), pending);
+	}
+
+	private static void awaitPending(OffsetAndMetadataStat stat, int pending) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 2000;
+		while(stat.getPendingCount() != pending && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		Assert.assertEquals(pending, stat.getPendingCount());
+	}
+}
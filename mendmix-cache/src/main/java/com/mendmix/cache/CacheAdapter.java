@@ -19,6 +19,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 public interface CacheAdapter {
@@ -31,6 +32,27 @@ public interface CacheAdapter {
 
 	void setStr(String key, String value, long expireSeconds);
 
+	/**
+	 * 批量获取
+	 * @param keys
+	 * @return 按keys顺序的map，不存在的key不包含在结果中
+	 */
+	<T> Map<String, T> getAll(Collection<String> keys);
+
+	/**
+	 * 批量写入（一次往返）
+	 * @param keyValues
+	 * @param expireSeconds
+	 */
+	void setAll(Map<String, Object> keyValues, long expireSeconds);
+
+	/**
+	 * 批量写入，每个key单独过期时间（一次往返）
+	 * @param keyValues
+	 * @param keyExpireSeconds key -> 过期时间（秒）
+	 */
+	void setAll(Map<String, Object> keyValues, Map<String, Long> keyExpireSeconds);
+
 	void remove(String... keys);
 
 	boolean exists(String key);
@@ -58,4 +80,36 @@ public interface CacheAdapter {
 	<T> Map<String, T> getMapValues(String key, Collection<String> fields);
 
 	Set<String> getKeys(String pattern);
+
+	/**
+	 * 异步查询，默认同步执行（本地缓存无IO）
+	 * @param key
+	 * @return
+	 */
+	default <T> CompletableFuture<T> getAsync(String key) {
+		return CompletableFuture.completedFuture(get(key));
+	}
+
+	default CompletableFuture<String> getStrAsync(String key) {
+		return CompletableFuture.completedFuture(getStr(key));
+	}
+
+	default CompletableFuture<Void> setAsync(String key, Object value, long expireSeconds) {
+		set(key, value, expireSeconds);
+		return CompletableFuture.completedFuture(null);
+	}
+
+	default CompletableFuture<Void> setStrAsync(String key, String value, long expireSeconds) {
+		setStr(key, value, expireSeconds);
+		return CompletableFuture.completedFuture(null);
+	}
+
+	default <T> CompletableFuture<Map<String, T>> getAllAsync(Collection<String> keys) {
+		return CompletableFuture.completedFuture(getAll(keys));
+	}
+
+	default CompletableFuture<Void> removeAsync(String... keys) {
+		remove(keys);
+		return CompletableFuture.completedFuture(null);
+	}
 }
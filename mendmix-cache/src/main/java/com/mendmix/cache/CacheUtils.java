@@ -19,9 +19,11 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 import com.mendmix.cache.adapter.LocalCacheAdapter;
+import com.mendmix.cache.adapter.NearCacheRedisAdapter;
 import com.mendmix.cache.adapter.RedisCacheAdapter;
 import com.mendmix.common.async.ICaller;
 import com.mendmix.common.util.ResourceUtils;
@@ -30,14 +32,18 @@ public class CacheUtils {
 	
 	private static boolean redis;
 	private static CacheAdapter cacheAdapter;
+	private static SingleFlightLoader singleFlightLoader;
 	
 	static {
 		if(ResourceUtils.containsAnyProperty("spring.redis.host","spring.redis.sentinel.nodes","spring.redis.cluster.nodes")) {
-			cacheAdapter = new RedisCacheAdapter();
+			cacheAdapter = ResourceUtils.getBoolean("mendmix.cache.nearCache.enabled", false) ? new NearCacheRedisAdapter() : new RedisCacheAdapter();
 			redis = true;
 		}else {
 			cacheAdapter = new LocalCacheAdapter(3600);
 		}
+		long waitMillis = ResourceUtils.getLong("mendmix.cache.singleFlight.waitMillis", 3000);
+		boolean distributedLease = ResourceUtils.getBoolean("mendmix.cache.singleFlight.distributedLease", redis);
+		singleFlightLoader = new SingleFlightLoader(cacheAdapter, waitMillis, distributedLease);
 	}
 	
 	public static boolean isRedis() {
@@ -48,17 +54,27 @@ public class CacheUtils {
 		return cacheAdapter;
 	}
 	
+	public static SingleFlightLoader getSingleFlightLoader() {
+		return singleFlightLoader;
+	}
+	
+	/**
+	 * 查询缓存，未命中时合并回源（同一key同时只有一个回源请求）
+	 * @param cacheKey
+	 * @param dataCaller
+	 * @param expireSeconds
+	 * @return
+	 */
 	public static <T> T queryTryCache(String cacheKey,ICaller<T> dataCaller,long expireSeconds){
 		T result = cacheAdapter.get(cacheKey);
 		if(result == null){
-			try {
-				result = dataCaller.call();
-			} catch (Exception e) {
-				throw new RuntimeException(e);
-			}
-			if(result != null){
-				cacheAdapter.set(cacheKey, result, expireSeconds);
-		    }
+			result = singleFlightLoader.load(cacheKey, () -> cacheAdapter.get(cacheKey), () -> {
+				T value = dataCaller.call();
+				if(value != null){
+					cacheAdapter.set(cacheKey, value, expireSeconds);
+				}
+				return value;
+			});
 		}
 		return result;
 	}
@@ -137,4 +153,28 @@ public class CacheUtils {
 		return cacheAdapter.getKeys(pattern);
 	}
 	
+	public static <T> CompletableFuture<T> getAsync(String key) {
+		return cacheAdapter.getAsync(key);
+	}
+	
+	public static CompletableFuture<String> getStrAsync(String key) {
+		return cacheAdapter.getStrAsync(key);
+	}
+	
+	public static CompletableFuture<Void> setAsync(String key,Object value,long expireSeconds) {
+		return cacheAdapter.setAsync(key, value, expireSeconds);
+	}
+	
+	public static CompletableFuture<Void> setStrAsync(String key,String value,long expireSeconds) {
+		return cacheAdapter.setStrAsync(key, value, expireSeconds);
+	}
+	
+	public static <T> CompletableFuture<Map<String, T>> getAllAsync(Collection<String> keys) {
+		return cacheAdapter.getAllAsync(keys);
+	}
+	
+	public static CompletableFuture<Void> removeAsync(String...keys) {
+		return cacheAdapter.removeAsync(keys);
+	}
+	
 }
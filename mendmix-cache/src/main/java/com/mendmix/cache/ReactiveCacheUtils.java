@@ -0,0 +1,56 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.cache;
+
+import java.util.Collection;
+import java.util.Map;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * 响应式缓存操作（网关等webflux环境使用，需引入reactor-core）
+ * <br>
+ * 订阅时才发出命令，不存在的key返回空Mono。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class ReactiveCacheUtils {
+
+	public static <T> Mono<T> get(String key) {
+		return Mono.fromFuture(() -> CacheUtils.<T>getAsync(key));
+	}
+
+	public static Mono<String> getStr(String key) {
+		return Mono.fromFuture(() -> CacheUtils.getStrAsync(key));
+	}
+
+	public static Mono<Void> set(String key, Object value, long expireSeconds) {
+		return Mono.fromFuture(() -> CacheUtils.setAsync(key, value, expireSeconds));
+	}
+
+	public static Mono<Void> setStr(String key, String value, long expireSeconds) {
+		return Mono.fromFuture(() -> CacheUtils.setStrAsync(key, value, expireSeconds));
+	}
+
+	public static <T> Mono<Map<String, T>> getAll(Collection<String> keys) {
+		return Mono.fromFuture(() -> CacheUtils.<T>getAllAsync(keys));
+	}
+
+	public static Mono<Void> remove(String... keys) {
+		return Mono.fromFuture(() -> CacheUtils.removeAsync(keys));
+	}
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mendmix.common.async.ICaller;
+
+/**
+ * 缓存未命中合并加载（防缓存击穿）
+ * <br>
+ * 同一JVM内同一key只有一个加载任务，其余线程等待其结果；
+ * 开启分布式租约后，同一时刻集群内也只有一个节点回源，其他节点轮询缓存等待写入。
+ * leader正常完成（包括结果为空）时等待者直接使用其结果，leader失败或等待超时后降级为各自回源；
+ * 等待超时在waitTimeoutMillis基础上加随机延长，避免慢查询时等待者同时超时集中回源。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月12日
+ */
+public class SingleFlightLoader {
+
+	private static final Logger logger = LoggerFactory.getLogger(SingleFlightLoader.class);
+
+	public static final String LEASE_KEY_PREFIX = "concurrent:";
+
+	private static final long POLL_INTERVAL_MILLIS = 50;
+
+	private static final Exception LEADER_FAILED = new IllegalStateException("singleFlight leader load failed");
+
+	private final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<>();
+
+	private CacheAdapter cacheAdapter;
+	private long waitTimeoutMillis;
+	private boolean distributedLease;
+	private long leaseSeconds = 30;
+
+	public SingleFlightLoader(CacheAdapter cacheAdapter,long waitTimeoutMillis,boolean distributedLease) {
+		this.cacheAdapter = cacheAdapter;
+		this.waitTimeoutMillis = waitTimeoutMillis;
+		this.distributedLease = distributedLease;
+	}
+
+	public void setLeaseSeconds(long leaseSeconds) {
+		this.leaseSeconds = leaseSeconds;
+	}
+
+	public boolean isDistributedLease() {
+		return distributedLease;
+	}
+
+	public long getWaitTimeoutMillis() {
+		return waitTimeoutMillis;
+	}
+
+	/**
+	 * 合并加载
+	 * @param key 缓存key
+	 * @param cacheReader 读缓存（其他节点持有租约时轮询）
+	 * @param loader 回源并写缓存
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T load(String key,ICaller<T> cacheReader,ICaller<T> loader) {
+		Flight flight = begin(key);
+		if(!flight.isLeader()) {
+			if(flight.await()) {
+				return (T) flight.result;
+			}
+			return call(loader);
+		}
+		boolean leaseHolder = false;
+		try {
+			leaseHolder = tryAcquireLease(key);
+			if(!leaseHolder) {
+				T value = awaitCache(cacheReader);
+				if(value != null) {
+					flight.complete(value);
+					return value;
+				}
+			}
+			T value = call(loader);
+			flight.complete(value);
+			return value;
+		} finally {
+			//异常时唤醒等待者各自回源（已完成时无影响）
+			flight.fail();
+			if(leaseHolder)releaseLease(key);
+		}
+	}
+
+	/**
+	 * 加入加载任务，首个加入者为leader，负责回源并调用{@link Flight#complete(Object)}或{@link Flight#fail()}
+	 * @param key
+	 * @return
+	 */
+	public Flight begin(String key) {
+		Flight flight = new Flight(key, true);
+		Flight exists = flights.putIfAbsent(key, flight);
+		if(exists != null) {
+			return new Flight(exists, false);
+		}
+		return flight;
+	}
+
+	/**
+	 * 获取跨节点加载租约
+	 * @param key
+	 * @return 未开启分布式租约时总是返回true
+	 */
+	public boolean tryAcquireLease(String key) {
+		if(!distributedLease)return true;
+		try {
+			return cacheAdapter.setIfAbsent(LEASE_KEY_PREFIX + key, "1", leaseSeconds, TimeUnit.SECONDS);
+		} catch (Exception e) {
+			logger.warn("MENDMIX-TRACE-LOGGGING-->> acquire singleFlight lease error,key:{}",key,e);
+			return true;
+		}
+	}
+
+	public void releaseLease(String key) {
+		if(!distributedLease)return;
+		try {
+			cacheAdapter.remove(LEASE_KEY_PREFIX + key);
+		} catch (Exception e) {
+			logger.warn("MENDMIX-TRACE-LOGGGING-->> release singleFlight lease error,key:{}",key,e);
+		}
+	}
+
+	/**
+	 * 等待其他节点加载写入缓存
+	 * @param cacheReader
+	 * @return 超时返回null
+	 */
+	public <T> T awaitCache(ICaller<T> cacheReader) {
+		long deadline = System.currentTimeMillis() + waitTimeoutMillis;
+		T value;
+		while(System.currentTimeMillis() < deadline) {
+			try {
+				Thread.sleep(POLL_INTERVAL_MILLIS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+			value = call(cacheReader);
+			if(value != null)return value;
+		}
+		return null;
+	}
+
+	private static <T> T call(ICaller<T> caller) {
+		try {
+			return caller.call();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public class Flight {
+
+		private final String key;
+		private final boolean leader;
+		private final CompletableFuture<Object> future;
+		private Object result;
+
+		private Flight(String key, boolean leader) {
+			this.key = key;
+			this.leader = leader;
+			this.future = new CompletableFuture<>();
+		}
+
+		private Flight(Flight leaderFlight, boolean leader) {
+			this.key = leaderFlight.key;
+			this.leader = leader;
+			this.future = leaderFlight.future;
+		}
+
+		public boolean isLeader() {
+			return leader;
+		}
+
+		public Object getResult() {
+			return result;
+		}
+
+		/**
+		 * 等待leader加载结果
+		 * @return 在等待时间内leader加载完成返回true（结果可能为null），结果通过{@link #getResult()}获取
+		 */
+		public boolean await() {
+			//随机延长至1.5倍，慢查询时等待者错开超时
+			long timeoutMillis = waitTimeoutMillis + ThreadLocalRandom.current().nextLong(waitTimeoutMillis / 2 + 1);
+			try {
+				result = future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+				return true;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				if(logger.isDebugEnabled())logger.debug("MENDMIX-TRACE-LOGGGING-->> singleFlight[{}] leader failed",key);
+			} catch (Exception e) {
+				if(logger.isDebugEnabled())logger.debug("MENDMIX-TRACE-LOGGGING-->> await singleFlight[{}] timeout",key);
+			}
+			return false;
+		}
+
+		/**
+		 * leader完成加载（结果为null表示数据不存在，等待者同样返回null）
+		 * @param value
+		 */
+		public void complete(Object value) {
+			if(!leader)return;
+			flights.remove(key, this);
+			future.complete(value);
+		}
+
+		/**
+		 * leader加载失败，等待者将各自回源
+		 */
+		public void fail() {
+			if(!leader)return;
+			flights.remove(key, this);
+			future.completeExceptionally(LEADER_FAILED);
+		}
+	}
+}
@@ -20,6 +20,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -80,6 +81,33 @@ public class LocalCacheAdapter implements CacheAdapter {
 		set(key, value, expireSeconds);
 	}
 
+	@Override
+	public <T> Map<String, T> getAll(Collection<String> keys) {
+		Map<String, T> result = new LinkedHashMap<>(keys.size());
+		T value;
+		for (String key : keys) {
+			value = get(key);
+			if(value != null)result.put(key, value);
+		}
+		return result;
+	}
+
+	@Override
+	public void setAll(Map<String, Object> keyValues, long expireSeconds) {
+		keyValues.forEach((key,value) -> {
+			if(value != null)set(key, value, expireSeconds);
+		});
+	}
+
+	@Override
+	public void setAll(Map<String, Object> keyValues, Map<String, Long> keyExpireSeconds) {
+		keyValues.forEach((key,value) -> {
+			if(value == null)return;
+			Long expire = keyExpireSeconds.get(key);
+			set(key, value, expire == null ? 0 : expire);
+		});
+	}
+
 	@Override
 	public void remove(String... keys) {
 		if(keys != null && keys.length > 0 && keys[0] != null) {
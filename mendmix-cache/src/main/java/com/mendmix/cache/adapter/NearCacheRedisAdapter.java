@@ -0,0 +1,300 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.cache.adapter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import com.mendmix.cache.local.ClientTrackingInvalidator;
+import com.mendmix.cache.local.KeyspaceNotificationInvalidator;
+import com.mendmix.cache.local.NearCache;
+import com.mendmix.cache.local.NearCacheInvalidator;
+import com.mendmix.common.util.ResourceUtils;
+
+/**
+ * 带近端缓存的redis缓存适配器
+ * <br>
+ * 读多写少的key（系统配置、权限列表、按主键缓存等）命中进程内缓存时不访问redis，
+ * 其他节点的写入由redis失效通知驱动清除，本节点写入直接清除。
+ * 对象值按redis中的序列化字节缓存，每次命中反序列化出新对象，调用方修改返回的实体不影响缓存及其他线程。
+ * <pre>
+ * mendmix.cache.nearCache.enabled=true
+ * mendmix.cache.nearCache.prefixes=SysConfig.,UserEntity.id:
+ * mendmix.cache.nearCache.maxSize=10000
+ * mendmix.cache.nearCache.ttlSeconds=60
+ * #tracking(redis 6+ CLIENT TRACKING)|keyspace(keyspace通知)
+ * mendmix.cache.nearCache.invalidation=tracking
+ * #哨兵等模式需指定主节点，集群模式不支持
+ * mendmix.cache.nearCache.server=127.0.0.1:6379
+ * </pre>
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月18日
+ */
+public class NearCacheRedisAdapter extends RedisCacheAdapter {
+
+	private static final Logger logger = LoggerFactory.getLogger(NearCacheRedisAdapter.class);
+
+	private volatile NearCache nearCache;
+	private volatile boolean nearCacheUnavailable;
+
+	public NearCacheRedisAdapter() {}
+
+	public NearCacheRedisAdapter(RedisTemplate<String, Object> redisTemplate, StringRedisTemplate stringRedisTemplate, NearCache nearCache) {
+		super(redisTemplate, stringRedisTemplate);
+		this.nearCache = nearCache;
+	}
+
+	@Override
+	public <T> T get(String key) {
+		NearCache cache = getNearCache();
+		if(cache == null || !cache.isCacheable(key))return super.get(key);
+		Object cached = cache.get(key);
+		if(cached instanceof byte[])return deserializeValue((byte[]) cached);
+		//同一key混用对象/字符串读取时不缓存
+		if(cached != null)return super.get(key);
+		Object token = cache.beginLoad(key);
+		byte[] raw = getRaw(key);
+		cache.completeLoad(key, token, raw);
+		return deserializeValue(raw);
+	}
+
+	@Override
+	public String getStr(String key) {
+		NearCache cache = getNearCache();
+		if(cache == null || !cache.isCacheable(key))return super.getStr(key);
+		Object cached = cache.get(key);
+		if(cached instanceof String)return (String) cached;
+		//同一key混用对象/字符串读取时不缓存
+		if(cached != null)return super.getStr(key);
+		Object token = cache.beginLoad(key);
+		String value = super.getStr(key);
+		cache.completeLoad(key, token, value);
+		return value;
+	}
+
+	@Override
+	public <T> Map<String, T> getAll(Collection<String> keys) {
+		NearCache cache = getNearCache();
+		if(cache == null || keys == null || keys.isEmpty())return super.getAll(keys);
+		Map<String, byte[]> hits = new HashMap<>(keys.size());
+		List<String> missKeys = new ArrayList<>(keys.size());
+		Map<String, Object> tokens = new HashMap<>();
+		collectHits(cache, keys, hits, missKeys, tokens);
+		Map<String, byte[]> loaded = missKeys.isEmpty() ? new HashMap<>(0) : getAllRaw(missKeys);
+		tokens.forEach((key,token) -> cache.completeLoad(key, token, loaded.get(key)));
+		return mergeResult(keys, hits, loaded);
+	}
+
+	@Override
+	public <T> CompletableFuture<T> getAsync(String key) {
+		NearCache cache = getNearCache();
+		if(cache == null || !cache.isCacheable(key))return super.getAsync(key);
+		Object cached = cache.get(key);
+		if(cached instanceof byte[])return CompletableFuture.completedFuture(deserializeValue((byte[]) cached));
+		if(cached != null)return super.getAsync(key);
+		Object token = cache.beginLoad(key);
+		return getRawAsync(key).whenComplete((loaded, error) -> cache.completeLoad(key, token, loaded))
+				.thenApply(this::deserializeValue);
+	}
+
+	@Override
+	public CompletableFuture<String> getStrAsync(String key) {
+		NearCache cache = getNearCache();
+		if(cache == null || !cache.isCacheable(key))return super.getStrAsync(key);
+		Object cached = cache.get(key);
+		if(cached instanceof String)return CompletableFuture.completedFuture((String) cached);
+		//同一key混用对象/字符串读取时不缓存
+		if(cached != null)return super.getStrAsync(key);
+		Object token = cache.beginLoad(key);
+		return super.getStrAsync(key).whenComplete((loaded, error) -> cache.completeLoad(key, token, loaded));
+	}
+
+	@Override
+	public <T> CompletableFuture<Map<String, T>> getAllAsync(Collection<String> keys) {
+		NearCache cache = getNearCache();
+		if(cache == null || keys == null || keys.isEmpty())return super.getAllAsync(keys);
+		Map<String, byte[]> hits = new HashMap<>(keys.size());
+		List<String> missKeys = new ArrayList<>(keys.size());
+		Map<String, Object> tokens = new HashMap<>();
+		collectHits(cache, keys, hits, missKeys, tokens);
+		CompletableFuture<Map<String, byte[]>> loadFuture = missKeys.isEmpty() ? CompletableFuture.completedFuture(new HashMap<>(0)) : getAllRawAsync(missKeys);
+		return loadFuture.whenComplete((loaded, error) -> {
+			tokens.forEach((key,token) -> cache.completeLoad(key, token, loaded == null ? null : loaded.get(key)));
+		}).thenApply(loaded -> mergeResult(keys, hits, loaded));
+	}
+
+	private static void collectHits(NearCache cache, Collection<String> keys, Map<String, byte[]> hits, List<String> missKeys, Map<String, Object> tokens) {
+		for (String key : keys) {
+			Object cached = cache.isCacheable(key) ? cache.get(key) : null;
+			if(cached instanceof byte[]) {
+				hits.put(key, (byte[]) cached);
+			}else {
+				missKeys.add(key);
+				//同一key混用对象/字符串读取时不缓存
+				if(cached == null && cache.isCacheable(key))tokens.put(key, cache.beginLoad(key));
+			}
+		}
+	}
+
+	/**
+	 * 每次反序列化，返回给调用方的对象互不共享
+	 */
+	private <T> Map<String, T> mergeResult(Collection<String> keys, Map<String, byte[]> hits, Map<String, byte[]> loaded) {
+		Map<String, T> result = new LinkedHashMap<>(keys.size());
+		for (String key : keys) {
+			byte[] raw = hits.containsKey(key) ? hits.get(key) : loaded.get(key);
+			if(raw != null)result.put(key, deserializeValue(raw));
+		}
+		return result;
+	}
+
+	@Override
+	public void set(String key, Object value, long expireSeconds) {
+		invalidateLocal(key);
+		super.set(key, value, expireSeconds);
+	}
+
+	@Override
+	public void setStr(String key, String value, long expireSeconds) {
+		invalidateLocal(key);
+		super.setStr(key, value, expireSeconds);
+	}
+
+	@Override
+	public CompletableFuture<Void> setAsync(String key, Object value, long expireSeconds) {
+		invalidateLocal(key);
+		return super.setAsync(key, value, expireSeconds);
+	}
+
+	@Override
+	public CompletableFuture<Void> setStrAsync(String key, String value, long expireSeconds) {
+		invalidateLocal(key);
+		return super.setStrAsync(key, value, expireSeconds);
+	}
+
+	@Override
+	public void setAll(Map<String, Object> keyValues, long expireSeconds) {
+		if(keyValues != null)keyValues.keySet().forEach(this::invalidateLocal);
+		super.setAll(keyValues, expireSeconds);
+	}
+
+	@Override
+	public void setAll(Map<String, Object> keyValues, Map<String, Long> keyExpireSeconds) {
+		if(keyValues != null)keyValues.keySet().forEach(this::invalidateLocal);
+		super.setAll(keyValues, keyExpireSeconds);
+	}
+
+	@Override
+	public void remove(String... keys) {
+		if(keys != null) {
+			for (String key : keys) {
+				if(key != null)invalidateLocal(key);
+			}
+		}
+		super.remove(keys);
+	}
+
+	@Override
+	public CompletableFuture<Void> removeAsync(String... keys) {
+		if(keys != null) {
+			for (String key : keys) {
+				if(key != null)invalidateLocal(key);
+			}
+		}
+		return super.removeAsync(keys);
+	}
+
+	@Override
+	public boolean setIfAbsent(String key, Object value, long timeout, TimeUnit timeUnit) {
+		invalidateLocal(key);
+		return super.setIfAbsent(key, value, timeout, timeUnit);
+	}
+
+	public NearCache getNearCache() {
+		if(nearCache != null || nearCacheUnavailable)return nearCache;
+		synchronized (this) {
+			if(nearCache == null && !nearCacheUnavailable) {
+				try {
+					nearCache = createNearCache();
+				} catch (Exception e) {
+					logger.warn("MENDMIX-TRACE-LOGGGING-->> init nearCache error,fallback to redis only",e);
+				}
+				nearCacheUnavailable = nearCache == null;
+			}
+		}
+		return nearCache;
+	}
+
+	private void invalidateLocal(String key) {
+		NearCache cache = getNearCache();
+		if(cache == null)return;
+		cache.onInvalidate(key);
+	}
+
+	private NearCache createNearCache() {
+		String host;
+		int port;
+		String password = ResourceUtils.getProperty("mendmix.cache.nearCache.password");
+		int database = 0;
+		String server = ResourceUtils.getProperty("mendmix.cache.nearCache.server");
+		RedisConnectionFactory connectionFactory = getRedisTemplate().getRequiredConnectionFactory();
+		if(server != null) {
+			String[] parts = server.split(":");
+			host = parts[0];
+			port = Integer.parseInt(parts[1]);
+			database = ResourceUtils.getInt("mendmix.cache.nearCache.database", 0);
+		}else if(connectionFactory instanceof JedisConnectionFactory) {
+			JedisConnectionFactory jedisConnectionFactory = (JedisConnectionFactory) connectionFactory;
+			if(jedisConnectionFactory.isRedisClusterAware() || jedisConnectionFactory.isRedisSentinelAware()) {
+				logger.warn("MENDMIX-TRACE-LOGGGING-->> nearCache not support cluster/sentinel without [mendmix.cache.nearCache.server]");
+				return null;
+			}
+			host = jedisConnectionFactory.getHostName();
+			port = jedisConnectionFactory.getPort();
+			if(password == null)password = jedisConnectionFactory.getPassword();
+			database = jedisConnectionFactory.getDatabase();
+		}else {
+			logger.warn("MENDMIX-TRACE-LOGGGING-->> nearCache not support connectionFactory:{}",connectionFactory.getClass().getName());
+			return null;
+		}
+
+		List<String> prefixes = ResourceUtils.getList("mendmix.cache.nearCache.prefixes");
+		NearCacheInvalidator invalidator;
+		if("keyspace".equals(ResourceUtils.getProperty("mendmix.cache.nearCache.invalidation", "tracking"))) {
+			invalidator = new KeyspaceNotificationInvalidator(host, port, password, database, prefixes);
+		}else {
+			invalidator = new ClientTrackingInvalidator(host, port, password, prefixes);
+		}
+		int maxSize = ResourceUtils.getInt("mendmix.cache.nearCache.maxSize", 10000);
+		int ttlSeconds = ResourceUtils.getInt("mendmix.cache.nearCache.ttlSeconds", 60);
+		logger.info("MENDMIX-TRACE-LOGGGING-->> init nearCache -> server:{}:{},invalidator:{},prefixes:{},maxSize:{},ttlSeconds:{}",host,port,invalidator.getClass().getSimpleName(),prefixes,maxSize,ttlSeconds);
+		return new NearCache(maxSize, ttlSeconds, prefixes, invalidator);
+	}
+}
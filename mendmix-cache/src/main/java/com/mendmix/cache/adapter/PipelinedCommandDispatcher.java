@@ -0,0 +1,291 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.cache.adapter;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import com.mendmix.common.async.StandardThreadExecutor.StandardThreadFactory;
+import com.mendmix.common.util.ResourceUtils;
+
+/**
+ * 异步命令分发器
+ * <br>
+ * 调用线程只负责序列化并入队，少量分发线程批量取出排队命令，在一次pipeline中发送（一次往返），
+ * 按顺序回填结果。并发请求越多单次批量越大，连接数固定为分发线程数。
+ * <br>
+ * 集群连接不支持pipeline，逐条执行（仍不占用调用线程）。
+ * 队列满或已关闭时直接返回失败（{@link RejectedExecutionException}），不在调用线程（可能是事件循环线程）执行阻塞IO。
+ * <br>
+ * 通过{@link #acquire(RedisTemplate)}获取的实例按连接工厂共用，引用计数归零时关闭；分发线程为守护线程。
+ * <pre>
+ * mendmix.cache.async.threads=2
+ * mendmix.cache.async.maxBatchSize=128
+ * mendmix.cache.async.queueCapacity=10000
+ * </pre>
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class PipelinedCommandDispatcher implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(PipelinedCommandDispatcher.class);
+
+	private static final ThreadLocal<Boolean> dispatcherThread = new ThreadLocal<>();
+	
+	private static final Map<RedisConnectionFactory, PipelinedCommandDispatcher> sharedDispatchers = new HashMap<>();
+
+	private final RedisTemplate<String, ?> template;
+	private final RedisConnectionFactory connectionFactory;
+	private final boolean pipelineSupported;
+	private final int maxBatchSize;
+	private final BlockingQueue<PendingCommand> queue;
+	private final ExecutorService dispatchExecutor;
+	private volatile boolean closed;
+	private int refCount = 1;
+
+	private final LongAdder commandCount = new LongAdder();
+	private final LongAdder batchCount = new LongAdder();
+	private final LongAdder callerRunsCount = new LongAdder();
+	private final LongAdder rejectCount = new LongAdder();
+
+	/**
+	 * @param template 提供连接
+	 * @param threads 分发线程数（即占用连接数）
+	 * @param maxBatchSize 单次pipeline最大命令数
+	 * @param queueCapacity 排队命令上限
+	 */
+	public PipelinedCommandDispatcher(RedisTemplate<String, ?> template, int threads, int maxBatchSize, int queueCapacity) {
+		this.template = template;
+		this.connectionFactory = template.getRequiredConnectionFactory();
+		this.pipelineSupported = !(connectionFactory instanceof JedisConnectionFactory && ((JedisConnectionFactory)connectionFactory).isRedisClusterAware());
+		this.maxBatchSize = maxBatchSize;
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.dispatchExecutor = Executors.newFixedThreadPool(threads, new StandardThreadFactory("cacheCommandDispatcher", true));
+		for (int i = 0; i < threads; i++) {
+			dispatchExecutor.execute(this::dispatchLoop);
+		}
+	}
+
+	/**
+	 * 获取同一连接工厂共用的分发器，使用完需调用{@link #close()}释放
+	 * @param template
+	 * @return
+	 */
+	public static PipelinedCommandDispatcher acquire(RedisTemplate<String, ?> template) {
+		synchronized (sharedDispatchers) {
+			RedisConnectionFactory connectionFactory = template.getRequiredConnectionFactory();
+			PipelinedCommandDispatcher dispatcher = sharedDispatchers.get(connectionFactory);
+			if(dispatcher != null) {
+				dispatcher.refCount++;
+				return dispatcher;
+			}
+			int threads = ResourceUtils.getInt("mendmix.cache.async.threads", 2);
+			int maxBatchSize = ResourceUtils.getInt("mendmix.cache.async.maxBatchSize", 128);
+			int queueCapacity = ResourceUtils.getInt("mendmix.cache.async.queueCapacity", 10000);
+			dispatcher = new PipelinedCommandDispatcher(template, threads, maxBatchSize, queueCapacity);
+			sharedDispatchers.put(connectionFactory, dispatcher);
+			return dispatcher;
+		}
+	}
+
+	/**
+	 * 提交命令
+	 * @param command 在连接上执行的命令，返回原始结果（不可在其中反序列化，pipeline模式下返回值为null）
+	 * @param converter 原始结果转换，在分发线程执行
+	 * @return
+	 */
+	public <T> CompletableFuture<T> submit(RedisCallback<?> command, Function<Object, T> converter) {
+		PendingCommand pending = new PendingCommand(command, converter);
+		commandCount.increment();
+		//分发线程内（如回调中再次调用）直接执行，避免互相等待
+		if(Boolean.TRUE.equals(dispatcherThread.get())) {
+			callerRunsCount.increment();
+			executeSingle(pending);
+		}else if(closed || !queue.offer(pending)) {
+			rejectCount.increment();
+			pending.fail(new RejectedExecutionException(closed ? "command dispatcher closed" : "command queue full"));
+		}
+		return pending.future();
+	}
+
+	private void dispatchLoop() {
+		dispatcherThread.set(Boolean.TRUE);
+		List<PendingCommand> batch = new ArrayList<>(maxBatchSize);
+		while(!closed) {
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException e) {
+				break;
+			}
+			queue.drainTo(batch, maxBatchSize - 1);
+			try {
+				executeBatch(batch);
+			} catch (Throwable e) {
+				//兜底，保证不会有命令永远不返回
+				for (PendingCommand pending : batch) {
+					pending.fail(e);
+				}
+			}
+			batch.clear();
+		}
+		PendingCommand pending;
+		while((pending = queue.poll()) != null) {
+			executeSingle(pending);
+		}
+	}
+
+	private void executeBatch(List<PendingCommand> batch) {
+		batchCount.increment();
+		if(batch.size() == 1 || !pipelineSupported) {
+			for (PendingCommand pending : batch) {
+				executeSingle(pending);
+			}
+			return;
+		}
+		List<Object> results;
+		try {
+			results = template.executePipelined((RedisCallback<Object>) connection -> {
+				for (PendingCommand pending : batch) {
+					pending.command.doInRedis(connection);
+				}
+				return null;
+			}, null);
+		} catch (Exception e) {
+			//单条命令错误会导致整批失败，逐条重试以定位（get/set/del均为幂等命令）
+			logger.debug("MENDMIX-TRACE-LOGGGING-->> pipeline batch[{}] error:{},retry one by one",batch.size(),e.getMessage());
+			for (PendingCommand pending : batch) {
+				executeSingle(pending);
+			}
+			return;
+		}
+		for (int i = 0; i < batch.size(); i++) {
+			batch.get(i).complete(results.get(i));
+		}
+	}
+
+	private void executeSingle(PendingCommand pending) {
+		Object raw;
+		try {
+			raw = template.execute((RedisCallback<Object>) connection -> pending.command.doInRedis(connection));
+		} catch (Throwable e) {
+			pending.fail(e);
+			return;
+		}
+		pending.complete(raw);
+	}
+
+	public long getCommandCount() {
+		return commandCount.sum();
+	}
+
+	public long getBatchCount() {
+		return batchCount.sum();
+	}
+
+	public long getCallerRunsCount() {
+		return callerRunsCount.sum();
+	}
+
+	public long getRejectCount() {
+		return rejectCount.sum();
+	}
+
+	public int getQueueSize() {
+		return queue.size();
+	}
+
+	/**
+	 * 平均每次往返的命令数
+	 * @return
+	 */
+	public double getAvgBatchSize() {
+		long batches = getBatchCount();
+		return batches == 0 ? 0d : (double) (getCommandCount() - getCallerRunsCount() - getRejectCount()) / batches;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * 释放引用，最后一个使用方释放时停止分发线程（排队中的命令由分发线程执行完）
+	 */
+	@Override
+	public void close() {
+		synchronized (sharedDispatchers) {
+			if(closed || --refCount > 0)return;
+			if(sharedDispatchers.get(connectionFactory) == this) {
+				sharedDispatchers.remove(connectionFactory);
+			}
+			closed = true;
+		}
+		dispatchExecutor.shutdownNow();
+	}
+
+	@Override
+	public String toString() {
+		return "PipelinedCommandDispatcher [commands=" + getCommandCount() + ", batches=" + getBatchCount()
+				+ ", avgBatchSize=" + getAvgBatchSize() + ", callerRuns=" + getCallerRunsCount() + ", rejects=" + getRejectCount() + ", queueSize="
+				+ getQueueSize() + ", pipelineSupported=" + pipelineSupported + "]";
+	}
+
+	private static class PendingCommand {
+		final RedisCallback<?> command;
+		final Function<Object, ?> converter;
+		final CompletableFuture<Object> future = new CompletableFuture<>();
+
+		PendingCommand(RedisCallback<?> command, Function<Object, ?> converter) {
+			this.command = command;
+			this.converter = converter;
+		}
+
+		void complete(Object raw) {
+			try {
+				future.complete(converter.apply(raw));
+			} catch (Throwable e) {
+				future.completeExceptionally(e);
+			}
+		}
+
+		void fail(Throwable e) {
+			future.completeExceptionally(e);
+		}
+
+		@SuppressWarnings("unchecked")
+		<T> CompletableFuture<T> future() {
+			return (CompletableFuture<T>) future;
+		}
+	}
+}
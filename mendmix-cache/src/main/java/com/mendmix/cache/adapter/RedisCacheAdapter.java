@@ -15,29 +15,53 @@
  */
 package com.mendmix.cache.adapter;
 
+import java.io.Closeable;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.connection.jedis.JedisClusterConnection;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
 
 import com.mendmix.cache.CacheAdapter;
 import com.mendmix.cache.RedisTemplateGroups;
+import com.mendmix.cache.command.RedisBatchCommand;
+import com.mendmix.cache.redis.cluster.ClusterSlotTable;
+import com.mendmix.cache.serializer.KryoRedisSerializer;
 import com.mendmix.common.util.BeanUtils;
+import com.mendmix.common.util.ResourceUtils;
 
 
 @SuppressWarnings({"unchecked" })
-public class RedisCacheAdapter implements CacheAdapter {
+public class RedisCacheAdapter implements CacheAdapter, Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisCacheAdapter.class);
 
 	private RedisTemplate<String, Object> redisTemplate;
 	private StringRedisTemplate stringRedisTemplate;
+	private volatile PipelinedCommandDispatcher dispatcher;
+	private volatile ClusterSlotTable clusterSlotTable;
+	private volatile boolean clusterChecked;
+	//批量删除是否使用UNLINK（redis 4.0+），服务端不支持时自动改为DEL
+	private volatile boolean unlinkEnabled = ResourceUtils.getBoolean("mendmix.cache.unlink.enabled", true);
 	
 	public RedisCacheAdapter() {}
 
@@ -62,7 +86,20 @@ public class RedisCacheAdapter implements CacheAdapter {
 		return redisTemplate;
 	}
 
-	
+	/**
+	 * 异步命令分发器（仅用于*Async方法，同一连接工厂共用，首次异步调用时创建）
+	 * @return
+	 */
+	public PipelinedCommandDispatcher getDispatcher() {
+		if(dispatcher != null)return dispatcher;
+		synchronized (this) {
+			if(dispatcher == null) {
+				dispatcher = PipelinedCommandDispatcher.acquire(getRedisTemplate());
+			}
+		}
+		return dispatcher;
+	}
+
 	@Override
 	public <T> T get(String key) {
 		return (T) getRedisTemplate().opsForValue().get(key);
@@ -75,7 +112,11 @@ public class RedisCacheAdapter implements CacheAdapter {
 
 	@Override
 	public void set(String key, Object value, long expireSeconds) {
-		getRedisTemplate().opsForValue().set(key, value, Duration.ofSeconds(expireSeconds));
+		RedisTemplate<String, Object> template = getRedisTemplate();
+		byte[] rawKey = keySerializer(template).serialize(key);
+		byte[] rawValue = serializeValue(template, key, value);
+		Expiration expiration = Expiration.seconds(expireSeconds);
+		template.execute((RedisCallback<Object>) connection -> connection.stringCommands().set(rawKey, rawValue, expiration, SetOption.upsert()));
 	}
 
 	@Override
@@ -83,15 +124,258 @@ public class RedisCacheAdapter implements CacheAdapter {
 		getStringRedisTemplate().opsForValue().set(key, value, Duration.ofSeconds(expireSeconds));
 	}
 
+	@Override
+	public <T> Map<String, T> getAll(Collection<String> keys) {
+		if(keys == null || keys.isEmpty())return new HashMap<>(0);
+		List<String> keyList = new ArrayList<>(keys);
+		//集群模式由连接按slot拆分执行
+		List<Object> values = getRedisTemplate().opsForValue().multiGet(keyList);
+		Map<String, T> result = new LinkedHashMap<>(keyList.size());
+		if(values == null)return result;
+		for (int i = 0; i < keyList.size(); i++) {
+			if(values.get(i) != null)result.put(keyList.get(i), (T)values.get(i));
+		}
+		return result;
+	}
+
+	@Override
+	public <T> CompletableFuture<T> getAsync(String key) {
+		return getRawAsync(key).thenApply(this::deserializeValue);
+	}
+
+	/**
+	 * 读取未反序列化的值
+	 * @param key
+	 * @return
+	 */
+	protected byte[] getRaw(String key) {
+		RedisTemplate<String, Object> template = getRedisTemplate();
+		byte[] rawKey = keySerializer(template).serialize(key);
+		return template.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(rawKey));
+	}
+
+	/**
+	 * 批量读取未反序列化的值
+	 * @param keys
+	 * @return 按keys顺序的map，不存在的key不包含在结果中
+	 */
+	protected Map<String, byte[]> getAllRaw(List<String> keys) {
+		RedisTemplate<String, Object> template = getRedisTemplate();
+		byte[][] rawKeys = rawKeys(template, keys);
+		//集群模式由连接按slot拆分执行
+		List<byte[]> values = template.execute((RedisCallback<List<byte[]>>) connection -> connection.stringCommands().mGet(rawKeys));
+		return toRawMap(keys, values);
+	}
+
+	protected CompletableFuture<byte[]> getRawAsync(String key) {
+		byte[] rawKey = keySerializer(getRedisTemplate()).serialize(key);
+		return getDispatcher().submit(connection -> connection.stringCommands().get(rawKey), raw -> (byte[]) raw);
+	}
+
+	protected CompletableFuture<Map<String, byte[]>> getAllRawAsync(List<String> keys) {
+		byte[][] rawKeys = rawKeys(getRedisTemplate(), keys);
+		return getDispatcher().submit(connection -> connection.stringCommands().mGet(rawKeys), raw -> toRawMap(keys, (List<byte[]>) raw));
+	}
+
+	protected <T> T deserializeValue(byte[] raw) {
+		if(raw == null)return null;
+		return (T) getRedisTemplate().getValueSerializer().deserialize(raw);
+	}
+
+	private static byte[][] rawKeys(RedisTemplate<String, ?> template, List<String> keys) {
+		RedisSerializer<String> keySerializer = keySerializer(template);
+		byte[][] rawKeys = new byte[keys.size()][];
+		for (int i = 0; i < rawKeys.length; i++) {
+			rawKeys[i] = keySerializer.serialize(keys.get(i));
+		}
+		return rawKeys;
+	}
+
+	private static Map<String, byte[]> toRawMap(List<String> keys, List<byte[]> values) {
+		Map<String, byte[]> result = new LinkedHashMap<>(keys.size());
+		if(values == null)return result;
+		for (int i = 0; i < keys.size(); i++) {
+			if(values.get(i) != null)result.put(keys.get(i), values.get(i));
+		}
+		return result;
+	}
+
+	@Override
+	public CompletableFuture<String> getStrAsync(String key) {
+		StringRedisTemplate template = getStringRedisTemplate();
+		byte[] rawKey = keySerializer(template).serialize(key);
+		RedisSerializer<String> valueSerializer = template.getStringSerializer();
+		return getDispatcher().submit(connection -> connection.stringCommands().get(rawKey), 
+				raw -> valueSerializer.deserialize((byte[]) raw));
+	}
+
+	@Override
+	public CompletableFuture<Void> setAsync(String key, Object value, long expireSeconds) {
+		RedisTemplate<String, Object> template = getRedisTemplate();
+		byte[] rawValue = serializeValue(template, key, value);
+		return submitSet(keySerializer(template).serialize(key), rawValue, expireSeconds);
+	}
+
+	@Override
+	public CompletableFuture<Void> setStrAsync(String key, String value, long expireSeconds) {
+		StringRedisTemplate template = getStringRedisTemplate();
+		byte[] rawValue = template.getStringSerializer().serialize(value);
+		return submitSet(keySerializer(template).serialize(key), rawValue, expireSeconds);
+	}
+
+	private CompletableFuture<Void> submitSet(byte[] rawKey, byte[] rawValue, long expireSeconds) {
+		Expiration expiration = expireSeconds > 0 ? Expiration.seconds(expireSeconds) : Expiration.persistent();
+		return getDispatcher().submit(connection -> connection.stringCommands().set(rawKey, rawValue, expiration, SetOption.upsert()), 
+				raw -> null);
+	}
+
+	@Override
+	public <T> CompletableFuture<Map<String, T>> getAllAsync(Collection<String> keys) {
+		if(keys == null || keys.isEmpty())return CompletableFuture.completedFuture(new HashMap<>(0));
+		//集群模式由连接按slot拆分执行
+		return getAllRawAsync(new ArrayList<>(keys)).thenApply(rawValues -> {
+			Map<String, T> result = new LinkedHashMap<>(rawValues.size());
+			rawValues.forEach((key,raw) -> result.put(key, deserializeValue(raw)));
+			return result;
+		});
+	}
+
+	@Override
+	public CompletableFuture<Void> removeAsync(String... keys) {
+		if(keys == null || keys.length == 0 || keys[0] == null)return CompletableFuture.completedFuture(null);
+		RedisSerializer<String> keySerializer = keySerializer(getRedisTemplate());
+		byte[][] rawKeys = new byte[keys.length][];
+		for (int i = 0; i < keys.length; i++) {
+			rawKeys[i] = keySerializer.serialize(keys[i]);
+		}
+		if(rawKeys.length == 1 || !unlinkEnabled) {
+			return getDispatcher().submit(connection -> connection.keyCommands().del(rawKeys), raw -> null);
+		}
+		//批量删除使用UNLINK，由服务端后台释放内存不阻塞
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		getDispatcher().submit(connection -> connection.keyCommands().unlink(rawKeys), raw -> null).whenComplete((r,e) -> {
+			if(e == null) {
+				future.complete(null);
+			}else if(isUnlinkUnsupported(e)) {
+				getDispatcher().submit(connection -> connection.keyCommands().del(rawKeys), raw -> null).whenComplete((r2,e2) -> {
+					if(e2 == null)future.complete(null);else future.completeExceptionally(e2);
+				});
+			}else {
+				future.completeExceptionally(e);
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * 低版本redis不支持UNLINK，关闭后续使用
+	 */
+	private boolean isUnlinkUnsupported(Throwable e) {
+		while(e != null) {
+			if(e.getMessage() != null && e.getMessage().toLowerCase().contains("unknown command")) {
+				unlinkEnabled = false;
+				logger.warn("MENDMIX-TRACE-LOGGGING-->> redis server not support UNLINK,use DEL instead");
+				return true;
+			}
+			e = e.getCause();
+		}
+		return false;
+	}
+
+	private static RedisSerializer<String> keySerializer(RedisTemplate<String, ?> template) {
+		return (RedisSerializer<String>) template.getKeySerializer();
+	}
+	
+	/**
+	 * 默认序列化器带上key，压缩统计按key前缀归类
+	 */
+	private static byte[] serializeValue(RedisTemplate<String, Object> template, String key, Object value) {
+		RedisSerializer<?> valueSerializer = template.getValueSerializer();
+		if(valueSerializer instanceof KryoRedisSerializer) {
+			return ((KryoRedisSerializer) valueSerializer).serialize(key, value);
+		}
+		return ((RedisSerializer<Object>) valueSerializer).serialize(value);
+	}
+
+	@Override
+	public void setAll(Map<String, Object> keyValues, long expireSeconds) {
+		setAll(keyValues, key -> expireSeconds);
+	}
+
+	@Override
+	public void setAll(Map<String, Object> keyValues, Map<String, Long> keyExpireSeconds) {
+		setAll(keyValues, key -> {
+			Long expire = keyExpireSeconds.get(key);
+			return expire == null ? 0 : expire;
+		});
+	}
+
+	private void setAll(Map<String, Object> keyValues, ToLongFunction<String> expireSeconds) {
+		if(keyValues == null || keyValues.isEmpty())return;
+		RedisTemplate<String, Object> template = getRedisTemplate();
+		RedisSerializer<String> keySerializer = (RedisSerializer<String>) template.getKeySerializer();
+		ClusterSlotTable slotTable = getClusterSlotTable();
+		//jedis集群连接不支持pipeline，按槽位所在节点分组各自pipeline
+		if(slotTable != null) {
+			List<byte[]> rawKeys = new ArrayList<>(keyValues.size());
+			List<byte[]> rawValues = new ArrayList<>(keyValues.size());
+			List<Long> expires = new ArrayList<>(keyValues.size());
+			keyValues.forEach((key,value) -> {
+				if(value == null)return;
+				rawKeys.add(keySerializer.serialize(key));
+				rawValues.add(serializeValue(template, key, value));
+				expires.add(expireSeconds.applyAsLong(key));
+			});
+			RedisBatchCommand.setRawWithCluster(slotTable, rawKeys.toArray(new byte[0][]), rawValues.toArray(new byte[0][]), expires.stream().mapToLong(Long::longValue).toArray());
+			return;
+		}
+		template.executePipelined((RedisCallback<Object>) connection -> {
+			keyValues.forEach((key,value) -> {
+				if(value == null)return;
+				long expire = expireSeconds.applyAsLong(key);
+				Expiration expiration = expire > 0 ? Expiration.seconds(expire) : Expiration.persistent();
+				connection.stringCommands().set(keySerializer.serialize(key), serializeValue(template, key, value), expiration, SetOption.upsert());
+			});
+			return null;
+		});
+	}
+
+	/**
+	 * @return 非jedis集群连接返回null
+	 */
+	private ClusterSlotTable getClusterSlotTable() {
+		if(clusterChecked)return clusterSlotTable;
+		synchronized (this) {
+			if(!clusterChecked) {
+				RedisConnectionFactory connectionFactory = getRedisTemplate().getRequiredConnectionFactory();
+				if(connectionFactory instanceof JedisConnectionFactory && ((JedisConnectionFactory)connectionFactory).isRedisClusterAware()) {
+					//共用连接工厂的JedisCluster，关闭该连接不会释放
+					JedisClusterConnection connection = (JedisClusterConnection) connectionFactory.getClusterConnection();
+					clusterSlotTable = new ClusterSlotTable(connection.getNativeConnection());
+					connection.close();
+				}
+				clusterChecked = true;
+			}
+		}
+		return clusterSlotTable;
+	}
+
 	@Override
 	public void remove(String... keys) {
 		if(keys == null || keys.length == 0 || keys[0] == null)return;
 		if(keys.length == 1) {
 			getRedisTemplate().delete(keys[0]);
+		}else if(unlinkEnabled) {
+			//批量删除使用UNLINK，由服务端后台释放内存不阻塞
+			try {
+				getRedisTemplate().unlink(Arrays.asList(keys));
+			} catch (RuntimeException e) {
+				if(!isUnlinkUnsupported(e))throw e;
+				getRedisTemplate().delete(Arrays.asList(keys));
+			}
 		}else {
 			getRedisTemplate().delete(Arrays.asList(keys));
 		}
-		
 	}
 
 	@Override
@@ -173,5 +457,18 @@ public class RedisCacheAdapter implements CacheAdapter {
 	public Set<String> getKeys(String pattern) {
 		return getRedisTemplate().keys(pattern);
 	}
+
+	/**
+	 * 释放异步命令分发器（共用分发器在最后一个使用方关闭时停止）
+	 */
+	@Override
+	public void close() {
+		PipelinedCommandDispatcher current;
+		synchronized (this) {
+			current = dispatcher;
+			dispatcher = null;
+		}
+		if(current != null)current.close();
+	}
 	
 }
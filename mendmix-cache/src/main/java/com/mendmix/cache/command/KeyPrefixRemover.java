@@ -0,0 +1,223 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.cache.command;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.mendmix.cache.redis.JedisProvider;
+import com.mendmix.cache.redis.JedisProviderFactory;
+import com.mendmix.cache.redis.cluster.ClusterSlotTable;
+import com.mendmix.cache.redis.cluster.JedisClusterProvider;
+import com.mendmix.common.async.StandardThreadExecutor.StandardThreadFactory;
+import com.mendmix.common.util.ResourceUtils;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+
+/**
+ * 按key前缀删除
+ * <br>
+ * 在每个主节点上增量SCAN + UNLINK，替代阻塞服务端的KEYS命令；
+ * 支持批次大小、删除速率限制、进度回调及异步执行。
+ * <pre>
+ * KeyPrefixRemover remover = new KeyPrefixRemover(null, "User.");
+ * remover.setBatchSize(500);
+ * remover.setMaxKeysPerSecond(5000);
+ * remover.setProgressListener(r -> logger.info("removed:{}",r.getRemovedCount()));
+ * remover.executeAsync();
+ * </pre>
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月15日
+ */
+public class KeyPrefixRemover {
+
+	private static final Logger logger = LoggerFactory.getLogger(KeyPrefixRemover.class);
+
+	private static volatile ExecutorService asyncExecutor;
+
+	private final String groupName;
+	private final String keyPrefix;
+	private int batchSize = ResourceUtils.getInt("mendmix.cache.prefixRemove.batchSize", 500);
+	private int maxKeysPerSecond = ResourceUtils.getInt("mendmix.cache.prefixRemove.maxKeysPerSecond", 10000);
+	private Consumer<KeyPrefixRemover> progressListener;
+
+	private final AtomicLong scannedCount = new AtomicLong();
+	private final AtomicLong removedCount = new AtomicLong();
+	private volatile String currentNode;
+	private volatile boolean done;
+
+	public KeyPrefixRemover(String groupName, String keyPrefix) {
+		if(keyPrefix == null || keyPrefix.isEmpty()) {
+			throw new IllegalArgumentException("keyPrefix is required");
+		}
+		this.groupName = groupName;
+		this.keyPrefix = keyPrefix;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param maxKeysPerSecond 每秒最多删除key数量，小于等于0不限速
+	 */
+	public void setMaxKeysPerSecond(int maxKeysPerSecond) {
+		this.maxKeysPerSecond = maxKeysPerSecond;
+	}
+
+	/**
+	 * 每批删除完成后回调
+	 * @param progressListener
+	 */
+	public void setProgressListener(Consumer<KeyPrefixRemover> progressListener) {
+		this.progressListener = progressListener;
+	}
+
+	/**
+	 * 同步执行
+	 * @return 删除数量
+	 */
+	public long execute() {
+		RateLimiter rateLimiter = maxKeysPerSecond > 0 ? RateLimiter.create(maxKeysPerSecond) : null;
+		JedisProvider<?, ?> provider = JedisProviderFactory.getJedisProvider(groupName);
+		try {
+			if(provider instanceof JedisClusterProvider) {
+				ClusterSlotTable slotTable = ((JedisClusterProvider)provider).getSlotTable();
+				for (String node : slotTable.getMasterNodes()) {
+					JedisPool pool = slotTable.getNodePool(node);
+					if(pool == null)continue;
+					currentNode = node;
+					try(Jedis jedis = pool.getResource()){
+						scanAndRemove(jedis, true, rateLimiter);
+					}
+				}
+			}else {
+				try {
+					currentNode = provider.mode();
+					Object jedis = provider.get();
+					if(!(jedis instanceof Jedis)) {
+						throw new UnsupportedOperationException("removeByKeyPrefix not support mode:" + provider.mode());
+					}
+					scanAndRemove((Jedis) jedis, false, rateLimiter);
+				} finally {
+					provider.release();
+				}
+			}
+		} finally {
+			done = true;
+		}
+		logger.info("MENDMIX-TRACE-LOGGGING-->> removeByKeyPrefix finish -> prefix:{},scanned:{},removed:{}",keyPrefix,getScannedCount(),getRemovedCount());
+		return getRemovedCount();
+	}
+
+	/**
+	 * 异步执行
+	 * @return
+	 */
+	public CompletableFuture<Long> executeAsync() {
+		return CompletableFuture.supplyAsync(this::execute, getAsyncExecutor());
+	}
+
+	private void scanAndRemove(Jedis jedis,boolean cluster,RateLimiter rateLimiter) {
+		ScanParams params = new ScanParams().match(keyPrefix + "*").count(batchSize);
+		String cursor = ScanParams.SCAN_POINTER_START;
+		ScanResult<String> result;
+		do {
+			result = jedis.scan(cursor, params);
+			cursor = result.getCursor();
+			List<String> keys = result.getResult();
+			if(keys.isEmpty())continue;
+			scannedCount.addAndGet(keys.size());
+			if(rateLimiter != null)rateLimiter.acquire(keys.size());
+			if(cluster) {
+				//集群模式多key命令要求同slot，逐个key流水线执行
+				Pipeline pipeline = jedis.pipelined();
+				List<Response<Long>> responses = new ArrayList<>(keys.size());
+				for (String key : keys) {
+					responses.add(pipeline.unlink(key));
+				}
+				pipeline.sync();
+				for (Response<Long> response : responses) {
+					removedCount.addAndGet(response.get());
+				}
+			}else {
+				removedCount.addAndGet(jedis.unlink(keys.toArray(new String[0])));
+			}
+			if(progressListener != null) {
+				try {
+					progressListener.accept(this);
+				} catch (Exception e) {
+					logger.warn("MENDMIX-TRACE-LOGGGING-->> removeByKeyPrefix progressListener error",e);
+				}
+			}
+		} while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+	}
+
+	private static ExecutorService getAsyncExecutor() {
+		if(asyncExecutor != null)return asyncExecutor;
+		synchronized (KeyPrefixRemover.class) {
+			if(asyncExecutor == null) {
+				asyncExecutor = Executors.newSingleThreadExecutor(new StandardThreadFactory("keyPrefixRemover"));
+			}
+		}
+		return asyncExecutor;
+	}
+
+	public String getKeyPrefix() {
+		return keyPrefix;
+	}
+
+	public long getScannedCount() {
+		return scannedCount.get();
+	}
+
+	public long getRemovedCount() {
+		return removedCount.get();
+	}
+
+	/**
+	 * 当前正在处理的节点
+	 * @return
+	 */
+	public String getCurrentNode() {
+		return currentNode;
+	}
+
+	public boolean isDone() {
+		return done;
+	}
+
+	@Override
+	public String toString() {
+		return "KeyPrefixRemover [prefix=" + keyPrefix + ", node=" + currentNode + ", scanned=" + getScannedCount()
+				+ ", removed=" + getRemovedCount() + ", done=" + done + "]";
+	}
+}
@@ -31,6 +31,7 @@ import org.slf4j.LoggerFactory;
 
 import com.mendmix.cache.CacheExpires;
 import com.mendmix.cache.redis.JedisProviderFactory;
+import com.mendmix.cache.serializer.CacheValueCodec;
 import com.mendmix.common.ThreadLocalContext;
 import com.mendmix.common.util.SerializeUtils;
 
@@ -290,6 +291,15 @@ public abstract class RedisBase {
 		}
 	}
 	
+	/**
+	 * 序列化并按阈值压缩（仅用于值，集合成员需要按字节比较不压缩）
+	 * @param value
+	 * @return
+	 */
+	protected byte[] valueEncode(Object value) {
+		return CacheValueCodec.encode(key, valueSerialize(value));
+	}
+	
 	protected byte[][] valuesSerialize(Object... objects) {
 		try {
 			byte[][] many = new byte[objects.length][];
@@ -306,7 +316,7 @@ public abstract class RedisBase {
 	protected <T> T valueDerialize(byte[] bytes) {
 		if(bytes == null)return null;
 		try {
-			return (T)SerializeUtils.deserialize(bytes);
+			return (T)SerializeUtils.deserialize(CacheValueCodec.decode(bytes));
 		} catch (Exception e) {
 			remove();
 			logger.warn("MENDMIX-TRACE-LOGGGING-->> get key[{}] from redis is not null,but Deserialize error,message:{}",key,e);
@@ -16,16 +16,35 @@
 package com.mendmix.cache.command;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.mendmix.cache.redis.JedisProviderFactory;
+import com.mendmix.cache.redis.cluster.ClusterSlotTable;
+import com.mendmix.cache.redis.cluster.JedisClusterProvider;
+import com.mendmix.cache.serializer.CacheValueCodec;
+import com.mendmix.common.async.StandardThreadExecutor.StandardThreadFactory;
+import com.mendmix.common.util.ResourceUtils;
 import com.mendmix.common.util.SerializeUtils;
 
+import redis.clients.jedis.BinaryJedis;
+import redis.clients.jedis.BinaryJedisCluster;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
 import redis.clients.jedis.util.SafeEncoder;
 
 /**
@@ -39,6 +58,20 @@ public class RedisBatchCommand {
 	
 	protected static final String RESP_OK = "OK";
 	
+	//集群模式按节点并行执行pipeline，线程耗尽时由调用线程执行
+	private static volatile ThreadPoolExecutor nodeBatchExecutor;
+	
+	private interface NodeBatch {
+		/**
+		 * @return 被重定向（MOVED/ASK）的key下标
+		 */
+		List<Integer> execute(Pipeline pipeline,List<Integer> indexes);
+	}
+	
+	private interface KeyFallback {
+		void execute(BinaryJedisCluster jedisCluster,int index);
+	}
+	
 	/**
 	 * 指定组批量写入字符串
 	 * @param groupName 缓存组
@@ -83,25 +116,121 @@ public class RedisBatchCommand {
 	 */
 	public static boolean setObjectsWithGroup(String groupName,Map<String, Object> keyValueMap){
 		if(keyValueMap == null || keyValueMap.isEmpty())return false;
+		if(JedisProviderFactory.isCluster(groupName)){
+			return setObjectsWithGroup(groupName, keyValueMap, (Map<String, Long>)null);
+		}
 		byte[][] keysValues = new byte[keyValueMap.size() * 2][];
 		int index = 0;
 		for (String key : keyValueMap.keySet()) {
 			if(keyValueMap.get(key) == null)continue;
 			keysValues[index++] = SafeEncoder.encode(key);
-			keysValues[index++] = SerializeUtils.serialize(keyValueMap.get(key));
+			keysValues[index++] = CacheValueCodec.encode(key, SerializeUtils.serialize(keyValueMap.get(key)));
 		}
 		
         try {			
-        	if(JedisProviderFactory.isCluster(groupName)){
-        		return JedisProviderFactory.getMultiKeyBinaryJedisClusterCommands(groupName).mset(keysValues).equals(RESP_OK);
-        	}else{
-        		return JedisProviderFactory.getMultiKeyBinaryCommands(groupName).mset(keysValues).equals(RESP_OK);
-        	}
+        	return JedisProviderFactory.getMultiKeyBinaryCommands(groupName).mset(keysValues).equals(RESP_OK);
 		} finally {
 			JedisProviderFactory.getJedisProvider(groupName).release();
 		}
 	}
 	
+	/**
+	 * 指定组批量写入对象并设置统一过期时间（一次往返）
+	 * @param groupName 缓存组
+	 * @param keyValueMap
+	 * @param expireSeconds 过期时间（秒），小于等于0不过期
+	 * @return
+	 */
+	public static boolean setObjectsWithGroup(String groupName,Map<String, Object> keyValueMap,long expireSeconds){
+		if(keyValueMap == null || keyValueMap.isEmpty())return false;
+		Map<String, Long> expireMap = null;
+		if(expireSeconds > 0) {
+			expireMap = new HashMap<>(keyValueMap.size());
+			for (String key : keyValueMap.keySet()) {
+				expireMap.put(key, expireSeconds);
+			}
+		}
+		return setObjectsWithGroup(groupName, keyValueMap, expireMap);
+	}
+	
+	/**
+	 * 指定组批量写入对象，每个key单独过期时间（一次往返）<br>
+	 * 集群模式按节点分组并行pipeline，不受跨slot限制
+	 * @param groupName 缓存组
+	 * @param keyValueMap
+	 * @param keyExpireSeconds key -> 过期时间（秒），未指定或小于等于0不过期
+	 * @return
+	 */
+	public static boolean setObjectsWithGroup(String groupName,Map<String, Object> keyValueMap,Map<String, Long> keyExpireSeconds){
+		if(keyValueMap == null || keyValueMap.isEmpty())return false;
+		List<String> keyList = new ArrayList<>(keyValueMap.size());
+		for (String key : keyValueMap.keySet()) {
+			if(keyValueMap.get(key) != null)keyList.add(key);
+		}
+		final String[] keys = keyList.toArray(new String[0]);
+		final byte[][] byteKeys = SafeEncoder.encodeMany(keys);
+		NodeBatch batch = (pipeline,indexes) -> {
+			for (Integer index : indexes) {
+				byte[] value = CacheValueCodec.encode(keys[index], SerializeUtils.serialize(keyValueMap.get(keys[index])));
+				int expire = getExpireSeconds(keyExpireSeconds, keys[index]);
+				if(expire > 0) {
+					pipeline.setex(byteKeys[index], expire, value);
+				}else {
+					pipeline.set(byteKeys[index], value);
+				}
+			}
+			return failedIndexes(pipeline.syncAndReturnAll(), indexes, null);
+		};
+		if(JedisProviderFactory.isCluster(groupName)){
+			executeOnCluster(groupName, byteKeys, batch, (jedisCluster,index) -> {
+				byte[] value = CacheValueCodec.encode(keys[index], SerializeUtils.serialize(keyValueMap.get(keys[index])));
+				int expire = getExpireSeconds(keyExpireSeconds, keys[index]);
+				if(expire > 0) {
+					jedisCluster.setex(byteKeys[index], expire, value);
+				}else {
+					jedisCluster.set(byteKeys[index], value);
+				}
+			});
+			return true;
+		}
+		try {
+			BinaryJedis jedis = (BinaryJedis) JedisProviderFactory.getJedisProvider(groupName).getBinary();
+			List<Integer> failed = batch.execute(jedis.pipelined(), allIndexes(keys.length));
+			if(!failed.isEmpty()) {
+				logger.warn("MENDMIX-TRACE-LOGGGING-->> pipeline set error,failed keys:{}",failed.size());
+			}
+			return failed.isEmpty();
+		} finally {
+			JedisProviderFactory.getJedisProvider(groupName).release();
+		}
+	}
+	
+	/**
+	 * 集群批量写入已序列化的值，按节点分组并行pipeline（供不经过JedisProvider的集群连接使用）
+	 * @param slotTable
+	 * @param keys
+	 * @param values 与keys一一对应
+	 * @param expireSeconds 与keys一一对应，小于等于0不过期
+	 */
+	public static void setRawWithCluster(ClusterSlotTable slotTable,byte[][] keys,byte[][] values,long[] expireSeconds) {
+		executeOnCluster(slotTable, keys, (pipeline,indexes) -> {
+			for (Integer index : indexes) {
+				if(expireSeconds[index] > 0) {
+					pipeline.setex(keys[index], (int) expireSeconds[index], values[index]);
+				}else {
+					pipeline.set(keys[index], values[index]);
+				}
+			}
+			return failedIndexes(pipeline.syncAndReturnAll(), indexes, null);
+		}, (jedisCluster,index) -> {
+			if(expireSeconds[index] > 0) {
+				jedisCluster.setex(keys[index], (int) expireSeconds[index], values[index]);
+			}else {
+				jedisCluster.set(keys[index], values[index]);
+			}
+		});
+	}
+	
 	/**
 	 * 默认组批量写入对象
 	 * @param groupName 缓存组
@@ -168,18 +297,29 @@ public class RedisBatchCommand {
     	return removeObjectsWithGroup(null, keys);
 	}
 	
+	/**
+	 * 按key批量获取对象，结果顺序与keys一致（不存在为null）<br>
+	 * 集群模式按节点分组并行pipeline，不受跨slot限制
+	 * @param groupName
+	 * @param keys
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
 	public static <T> List<T> getObjectsWithGroup(String groupName, String... keys) {
 		byte[][] byteKeys = SafeEncoder.encodeMany(keys);
-
+		if (JedisProviderFactory.isCluster(groupName)) {
+			final Object[] results = new Object[keys.length];
+			executeOnCluster(groupName, byteKeys, (pipeline,indexes) -> {
+				for (Integer index : indexes) {
+					pipeline.get(byteKeys[index]);
+				}
+				return failedIndexes(pipeline.syncAndReturnAll(), indexes, (index,value) -> results[index] = valueDerialize((byte[]) value));
+			}, (jedisCluster,index) -> results[index] = valueDerialize(jedisCluster.get(byteKeys[index])));
+			return (List<T>) Arrays.asList(results);
+		}
 		try {
-			if (JedisProviderFactory.isCluster(groupName)) {
-				List<byte[]> bytes = JedisProviderFactory.getMultiKeyBinaryJedisClusterCommands(groupName)
-						.mget(byteKeys);
-				return listDerialize(bytes);
-			} else {
-				List<byte[]> bytes = JedisProviderFactory.getMultiKeyBinaryCommands(groupName).mget(byteKeys);
-				return listDerialize(bytes);
-			}
+			List<byte[]> bytes = JedisProviderFactory.getMultiKeyBinaryCommands(groupName).mget(byteKeys);
+			return listDerialize(bytes);
 		} finally {
 			JedisProviderFactory.getJedisProvider(groupName).release();
 		}
@@ -193,21 +333,141 @@ public class RedisBatchCommand {
 		removeByKeyPrefix(null, keyPrefix);
 	}
 	
+	/**
+	 * 按前缀删除（各主节点增量SCAN + UNLINK，按默认批次和速率限制同步执行）
+	 * @param group
+	 * @param keyPrefix
+	 */
 	public static void removeByKeyPrefix(String group,String keyPrefix){
-		try {			
-			Set<String> keys = JedisProviderFactory.getMultiKeyCommands(group).keys(keyPrefix +"*");
-			if(keys != null && keys.size() > 0){
-				RedisBatchCommand.removeObjectsWithGroup(group,keys.toArray(new String[0]));
+		new KeyPrefixRemover(group, keyPrefix).execute();
+	}
+	
+	/**
+	 * 异步按前缀删除
+	 * @param group
+	 * @param keyPrefix
+	 * @return 删除数量
+	 */
+	public static CompletableFuture<Long> removeByKeyPrefixAsync(String group,String keyPrefix){
+		return new KeyPrefixRemover(group, keyPrefix).executeAsync();
+	}
+
+	/**
+	 * 集群模式按节点分组，各节点pipeline并行执行；
+	 * 节点执行失败（节点切换等）时刷新槽位映射，该节点的key降级为逐个执行；
+	 * 部分key返回MOVED/ASK（槽位迁移）时刷新槽位映射，仅这些key降级为逐个执行；
+	 * 其他命令错误（WRONGTYPE、OOM等）直接抛出
+	 */
+	private static void executeOnCluster(String groupName,byte[][] keys,NodeBatch batch,KeyFallback fallback) {
+		JedisClusterProvider provider = (JedisClusterProvider) JedisProviderFactory.getJedisProvider(groupName);
+		executeOnCluster(provider.getSlotTable(), keys, batch, fallback);
+	}
+	
+	private static void executeOnCluster(ClusterSlotTable slotTable,byte[][] keys,NodeBatch batch,KeyFallback fallback) {
+		Map<String, List<Integer>> nodeIndexes = slotTable.groupByNode(keys);
+		List<Future<?>> futures = new ArrayList<>(nodeIndexes.size());
+		List<Runnable> tasks = new ArrayList<>(nodeIndexes.size());
+		for (String node : nodeIndexes.keySet()) {
+			List<Integer> indexes = nodeIndexes.get(node);
+			tasks.add(() -> {
+				JedisPool pool = slotTable.getNodePool(node);
+				List<Integer> failed = indexes;
+				if(pool != null) {
+					try (Jedis jedis = pool.getResource()) {
+						failed = batch.execute(jedis.pipelined(), indexes);
+					} catch (JedisDataException e) {
+						throw e;
+					} catch (Exception e) {
+						logger.warn("MENDMIX-TRACE-LOGGGING-->> pipeline on node[{}] error:{},fallback to cluster commands",node,e.getMessage());
+						slotTable.refresh();
+						failed = indexes;
+					}
+					if(failed.isEmpty())return;
+					if(failed != indexes) {
+						logger.info("MENDMIX-TRACE-LOGGGING-->> pipeline on node[{}] redirected keys:{},resend by cluster commands",node,failed.size());
+						slotTable.refresh();
+					}
+				}
+				for (Integer index : failed) {
+					fallback.execute(slotTable.getJedisCluster(), index);
+				}
+			});
+		}
+		if(tasks.size() == 1) {
+			tasks.get(0).run();
+			return;
+		}
+		ThreadPoolExecutor executor = getNodeBatchExecutor();
+		for (int i = 1; i < tasks.size(); i++) {
+			futures.add(executor.submit(tasks.get(i)));
+		}
+		tasks.get(0).run();
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} catch (Exception e) {
+				throw new RuntimeException(e.getCause() == null ? e : e.getCause());
 			}
-		} finally {
-			JedisProviderFactory.getJedisProvider(group).release();
 		}
 	}
+	
+	private static ThreadPoolExecutor getNodeBatchExecutor() {
+		if(nodeBatchExecutor != null)return nodeBatchExecutor;
+		synchronized (RedisBatchCommand.class) {
+			if(nodeBatchExecutor != null)return nodeBatchExecutor;
+			int maxThreads = ResourceUtils.getInt("mendmix.cache.batch.maxThreads", 16);
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS, 
+					new SynchronousQueue<>(), new StandardThreadFactory("redisNodeBatchExecutor"), 
+					new ThreadPoolExecutor.CallerRunsPolicy());
+			executor.allowCoreThreadTimeOut(true);
+			nodeBatchExecutor = executor;
+		}
+		return nodeBatchExecutor;
+	}
+	
+	/**
+	 * 逐个检查pipeline返回结果，收集MOVED/ASK重定向的key下标，其他错误直接抛出
+	 * @param results syncAndReturnAll返回结果，与indexes顺序一致
+	 * @param indexes
+	 * @param consumer 成功结果处理（可为null）
+	 * @return
+	 */
+	private static List<Integer> failedIndexes(List<Object> results,List<Integer> indexes,BiConsumer<Integer, Object> consumer){
+		List<Integer> failed = new ArrayList<>(0);
+		for (int i = 0; i < indexes.size(); i++) {
+			Object result = results.get(i);
+			if(result instanceof JedisRedirectionException) {
+				failed.add(indexes.get(i));
+			}else if(result instanceof JedisDataException) {
+				throw (JedisDataException) result;
+			}else if(consumer != null) {
+				consumer.accept(indexes.get(i), result);
+			}
+		}
+		return failed;
+	}
+	
+	private static int getExpireSeconds(Map<String, Long> keyExpireSeconds,String key) {
+		if(keyExpireSeconds == null)return 0;
+		Long expire = keyExpireSeconds.get(key);
+		return expire == null ? 0 : expire.intValue();
+	}
+	
+	private static List<Integer> allIndexes(int size){
+		List<Integer> indexes = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			indexes.add(i);
+		}
+		return indexes;
+	}
 
 	private static <T> T valueDerialize(byte[] bytes) {
 		if(bytes == null)return null;
 		try {
-			return (T)SerializeUtils.deserialize(bytes);
+			return (T)SerializeUtils.deserialize(CacheValueCodec.decode(bytes));
 		} catch (Exception e) {
 			return null;
 		}
@@ -81,7 +81,7 @@ public class RedisHashMap extends RedisBinaryCollection {
 		Set<String> keySet = datas.keySet();
 		for (String key : keySet) {
 			if(datas.get(key) == null)continue;
-			newDatas.put(SafeEncoder.encode(key), valueSerialize(datas.get(key)));
+			newDatas.put(SafeEncoder.encode(key), valueEncode(datas.get(key)));
 		}
 
 		boolean result = false;
@@ -159,9 +159,9 @@ public class RedisHashMap extends RedisBinaryCollection {
 		try {
 			if (isCluster(groupName)) {
 				result = getBinaryJedisClusterCommands(groupName)
-						.hset(keyBytes, SafeEncoder.encode(field), valueSerialize(value)) >= 0;
+						.hset(keyBytes, SafeEncoder.encode(field), valueEncode(value)) >= 0;
 			} else {
-				result = getBinaryJedisCommands(groupName).hset(keyBytes, SafeEncoder.encode(field), valueSerialize(value)) >= 0;
+				result = getBinaryJedisCommands(groupName).hset(keyBytes, SafeEncoder.encode(field), valueEncode(value)) >= 0;
 			}		
 			//设置超时时间
 			if(result)setExpireIfNot(expireTime);
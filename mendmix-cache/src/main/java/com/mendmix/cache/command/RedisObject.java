@@ -85,9 +85,9 @@ public class RedisObject extends RedisBase {
 		try {
 			boolean result = false;
 			if(isCluster(groupName)){
-				result = getBinaryJedisClusterCommands(groupName).set(keyBytes, valueSerialize(value)).equals(RESP_OK);
+				result = getBinaryJedisClusterCommands(groupName).set(keyBytes, valueEncode(value)).equals(RESP_OK);
 			}else{
-				result = getBinaryJedisCommands(groupName).set(keyBytes, valueSerialize(value)).equals(RESP_OK);
+				result = getBinaryJedisCommands(groupName).set(keyBytes, valueEncode(value)).equals(RESP_OK);
 			}
 			if(result){
 				result =  setExpire(seconds);
@@ -113,9 +113,9 @@ public class RedisObject extends RedisBase {
 		try {
 			boolean result = false;
 			if(isCluster(groupName)){
-				result = getBinaryJedisClusterCommands(groupName).set(keyBytes, valueSerialize(value)).equals(RESP_OK);;
+				result = getBinaryJedisClusterCommands(groupName).set(keyBytes, valueEncode(value)).equals(RESP_OK);;
 			}else{
-				result = getBinaryJedisCommands(groupName).set(keyBytes, valueSerialize(value)).equals(RESP_OK);
+				result = getBinaryJedisCommands(groupName).set(keyBytes, valueEncode(value)).equals(RESP_OK);
 			}
 			if(result){
 				result = setExpireAt(expireAt);
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.cache.local;
+
+/**
+ * 本地缓存节点（同时挂在访问顺序队列和时间轮上）
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月10日
+ */
+class CacheNode {
+
+	static final int WINDOW = 0;
+	static final int PROBATION = 1;
+	static final int PROTECTED = 2;
+
+	final String key;
+	volatile Object value;
+	//过期时间戳（毫秒），0表示永不过期
+	volatile long expireAt;
+
+	int queueType;
+	boolean retired;
+	//访问顺序队列
+	CacheNode prev;
+	CacheNode next;
+	//时间轮
+	CacheNode prevInTimer;
+	CacheNode nextInTimer;
+
+	CacheNode(String key, Object value, long expireAt) {
+		this.key = key;
+		this.value = value;
+		this.expireAt = expireAt;
+	}
+
+	static CacheNode sentinel() {
+		CacheNode sentinel = new CacheNode(null, null, 0);
+		sentinel.prev = sentinel.next = sentinel;
+		sentinel.prevInTimer = sentinel.nextInTimer = sentinel;
+		return sentinel;
+	}
+
+	boolean isExpired(long currentTimeMillis) {
+		return expireAt > 0 && expireAt <= currentTimeMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "[key=" + key + ", expireAt=" + expireAt + "]";
+	}
+}
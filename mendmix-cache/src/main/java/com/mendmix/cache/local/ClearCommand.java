@@ -15,12 +15,23 @@
  */
 package com.mendmix.cache.local;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
+import java.util.function.Predicate;
 
 import org.apache.commons.lang3.RandomStringUtils;
 
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
 import com.mendmix.common.util.JsonUtils;
 
 /**
@@ -37,6 +48,9 @@ public class ClearCommand implements Serializable {
 
 	private String cacheName;
 	private String key;
+	private List<String> keys;
+	//批量key较多时使用hash过滤器代替key列表
+	private String keyFilter;
 	private String origin;
 
 	private static String CURRENT_NODE_ID;
@@ -66,6 +80,22 @@ public class ClearCommand implements Serializable {
 		this.key = key;
 	}
 
+	public List<String> getKeys() {
+		return keys;
+	}
+
+	public void setKeys(List<String> keys) {
+		this.keys = keys;
+	}
+
+	public String getKeyFilter() {
+		return keyFilter;
+	}
+
+	public void setKeyFilter(String keyFilter) {
+		this.keyFilter = keyFilter;
+	}
+
 	public String getOrigin() {
 		return origin;
 	}
@@ -84,6 +114,47 @@ public class ClearCommand implements Serializable {
 		this.key = key;
 	}
 
+	/**
+	 * 合并同一缓存区域的多个key为一个指令
+	 * @param cacheName
+	 * @param keys
+	 * @param hashFilterThreshold key数量超过该值时使用hash过滤器（允许少量误删）
+	 * @return
+	 */
+	public static ClearCommand batch(String cacheName, Collection<String> keys, int hashFilterThreshold) {
+		if(keys.size() == 1) {
+			return new ClearCommand(cacheName, keys.iterator().next());
+		}
+		ClearCommand command = new ClearCommand(cacheName, null);
+		if(hashFilterThreshold > 0 && keys.size() > hashFilterThreshold) {
+			BloomFilter<CharSequence> filter = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), keys.size(), 0.01);
+			for (String key : keys) {
+				filter.put(key);
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try {
+				filter.writeTo(out);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			command.keyFilter = Base64.getEncoder().encodeToString(out.toByteArray());
+		}else {
+			command.keys = new ArrayList<>(keys);
+		}
+		return command;
+	}
+	
+	public Predicate<String> buildKeyMatcher() {
+		if(keyFilter == null)return null;
+		try {
+			byte[] bytes = Base64.getDecoder().decode(keyFilter);
+			BloomFilter<CharSequence> filter = BloomFilter.readFrom(new ByteArrayInputStream(bytes), Funnels.stringFunnel(StandardCharsets.UTF_8));
+			return k -> filter.mightContain(k);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	public String serialize() {
 		return JsonUtils.toJson(this);
 	}
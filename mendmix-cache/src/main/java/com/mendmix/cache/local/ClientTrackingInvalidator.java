@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.cache.local;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.mendmix.common.async.StandardThreadExecutor.StandardThreadFactory;
+
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.util.SafeEncoder;
+
+/**
+ * 基于redis 6 CLIENT TRACKING（BCAST模式）的失效通知
+ * <br>
+ * 当前jedis版本不支持RESP3，采用RESP2重定向方式：订阅连接订阅__redis__:invalidate，
+ * 另一个连接以REDIRECT指向订阅连接开启广播跟踪（可按前缀过滤）。跟踪连接定时PING，异常时触发整体重连。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月18日
+ */
+public class ClientTrackingInvalidator extends RedisNearCacheInvalidator {
+
+	private static final String INVALIDATE_CHANNEL = "__redis__:invalidate";
+	private static final String MESSAGE = "message";
+	private static final String SUBSCRIBE = "subscribe";
+
+	private volatile Jedis tracking;
+	private ScheduledExecutorService healthCheckExecutor;
+
+	public ClientTrackingInvalidator(String host, int port, String password, List<String> keyPrefixes) {
+		super(host, port, password, 0, keyPrefixes);
+	}
+
+	@Override
+	public void start(Listener listener) {
+		super.start(listener);
+		healthCheckExecutor = Executors.newSingleThreadScheduledExecutor(new StandardThreadFactory("nearCacheTrackingCheck"));
+		healthCheckExecutor.scheduleWithFixedDelay(() -> {
+			Jedis jedis = tracking;
+			if(jedis == null || !isActive())return;
+			try {
+				jedis.ping();
+			} catch (Exception e) {
+				logger.warn("MENDMIX-TRACE-LOGGGING-->> nearCache tracking connection broken,reconnect...");
+				reconnect();
+			}
+		}, 5, 5, TimeUnit.SECONDS);
+	}
+
+	@Override
+	protected void listen(Jedis subscriber, Listener listener) throws Exception {
+		Long clientId = (Long) subscriber.sendCommand(Protocol.Command.CLIENT, "ID");
+		tracking = connect();
+		tracking.sendCommand(Protocol.Command.CLIENT, buildTrackingArgs(clientId));
+		Client client = subscriber.getClient();
+		client.setTimeoutInfinite();
+		client.subscribe(INVALIDATE_CHANNEL);
+		while(true) {
+			List<Object> reply = client.getObjectMultiBulkReply();
+			String type = SafeEncoder.encode((byte[]) reply.get(0));
+			if(SUBSCRIBE.equals(type)) {
+				setActive(true, listener);
+			}else if(MESSAGE.equals(type)) {
+				Object keys = reply.get(2);
+				//flushdb/flushall
+				if(keys == null) {
+					listener.onInvalidateAll();
+				}else if(keys instanceof List) {
+					for (Object key : (List<?>) keys) {
+						listener.onInvalidate(SafeEncoder.encode((byte[]) key));
+					}
+				}else {
+					listener.onInvalidate(SafeEncoder.encode((byte[]) keys));
+				}
+			}
+		}
+	}
+
+	private String[] buildTrackingArgs(Long clientId) {
+		List<String> args = new ArrayList<>();
+		args.add("TRACKING");
+		args.add("ON");
+		args.add("REDIRECT");
+		args.add(String.valueOf(clientId));
+		args.add("BCAST");
+		if(keyPrefixes != null) {
+			for (String prefix : keyPrefixes) {
+				args.add("PREFIX");
+				args.add(prefix);
+			}
+		}
+		return args.toArray(new String[0]);
+	}
+
+	@Override
+	protected void onDisconnected() {
+		closeQuietly(tracking);
+		tracking = null;
+	}
+
+	@Override
+	public void close() {
+		if(healthCheckExecutor != null)healthCheckExecutor.shutdown();
+		super.close();
+		closeQuietly(tracking);
+	}
+}
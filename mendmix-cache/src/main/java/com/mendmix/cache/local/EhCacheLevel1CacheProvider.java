@@ -16,12 +16,17 @@
 package com.mendmix.cache.local;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 
 import net.sf.ehcache.Cache;
 import net.sf.ehcache.CacheManager;
 import net.sf.ehcache.Element;
+import net.sf.ehcache.statistics.LiveCacheStatistics;
 
 /**
  * @description <br>
@@ -71,6 +76,21 @@ public class EhCacheLevel1CacheProvider implements Level1CacheProvider {
 		getCacheHolder(cacheName).remove(key);
 	}
 
+	@Override
+	public void remove(String cacheName, Collection<String> keys) {
+		getCacheHolder(cacheName).removeAll(keys);
+	}
+
+	@Override
+	public void removeMatched(String cacheName, Predicate<String> keyMatcher) {
+		Cache cache = getCacheHolder(cacheName);
+		List<String> matchedKeys = new ArrayList<>();
+		for (Object key : cache.getKeysNoDuplicateCheck()) {
+			if(keyMatcher.test(key.toString()))matchedKeys.add(key.toString());
+		}
+		if(!matchedKeys.isEmpty())cache.removeAll(matchedKeys);
+	}
+
 	@Override
 	public void remove(String cacheName) {
 		getCacheHolder(cacheName).removeAll();
@@ -83,6 +103,12 @@ public class EhCacheLevel1CacheProvider implements Level1CacheProvider {
 		}
 	}
 	
+	@Override
+	public Level1CacheStats getStats(String cacheName) {
+		LiveCacheStatistics stats = getCacheHolder(cacheName).getLiveCacheStatistics();
+		return new Level1CacheStats(cacheName, stats.getCacheHitCount(), stats.getCacheMissCount(), stats.getEvictedCount() + stats.getExpiredCount(), stats.getSize());
+	}
+	
 	private Cache getCacheHolder(String cacheName){
 		return getAndNotexistsCreateCache(cacheName);
 	}
@@ -16,16 +16,18 @@
 package com.mendmix.cache.local;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Map;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 
 /**
  * 本地缓存服务
@@ -35,8 +37,6 @@ import com.google.common.cache.CacheBuilder;
  */
 public class GuavaLevel1CacheProvider implements Level1CacheProvider{
 	
-	private static final String _NULL = "NULL";
-
 	private static final Logger logger = LoggerFactory.getLogger(GuavaLevel1CacheProvider.class);
 	
 	private Map<String, Cache<String, Object>> caches = new ConcurrentHashMap<String, Cache<String,Object>>();
@@ -70,15 +70,7 @@ public class GuavaLevel1CacheProvider implements Level1CacheProvider{
 		try {			
 			Cache<String, Object> cache = getCacheHolder(cacheName);
 			if(cache != null){
-				Object result = cache.get(key, new Callable<Object>() {
-					@Override
-					public Object call() throws Exception {
-						return _NULL;
-					}
-				});
-				if(result != null && !_NULL.equals(result)){
-					return (T)result;
-				}
+				return (T) cache.getIfPresent(key);
 			}
 		} catch (Exception e) {
 			logger.warn("MENDMIX-TRACE-LOGGGING-->> get LEVEL1 cache error",e);
@@ -87,9 +79,25 @@ public class GuavaLevel1CacheProvider implements Level1CacheProvider{
 	}
 	
 	public void remove(String cacheName,String key){
-		Cache<String, Object> cache = getCacheHolder(cacheName);
+		Cache<String, Object> cache = caches.get(cacheName);
 		if(cache != null){
-			cache.invalidateAll();
+			cache.invalidate(key);
+		}
+	}
+	
+	@Override
+	public void remove(String cacheName, Collection<String> keys) {
+		Cache<String, Object> cache = caches.get(cacheName);
+		if(cache != null){
+			cache.invalidateAll(keys);
+		}
+	}
+
+	@Override
+	public void removeMatched(String cacheName, Predicate<String> keyMatcher) {
+		Cache<String, Object> cache = caches.get(cacheName);
+		if(cache != null){
+			cache.asMap().keySet().removeIf(keyMatcher);
 		}
 	}
 	
@@ -106,6 +114,7 @@ public class GuavaLevel1CacheProvider implements Level1CacheProvider{
 					.newBuilder()
 					.maximumSize(maxSize)
 					.expireAfterWrite(timeToLiveSeconds, TimeUnit.SECONDS)
+					.recordStats()
 					.build();
 			caches.put(cacheName, cache);
 		}
@@ -113,7 +122,10 @@ public class GuavaLevel1CacheProvider implements Level1CacheProvider{
 	}
 	
 	public  void remove(String cacheName){
-		
+		Cache<String, Object> cache = caches.get(cacheName);
+		if(cache != null){
+			cache.invalidateAll();
+		}
 	}
 	
 	public void clearAll(){
@@ -121,6 +133,14 @@ public class GuavaLevel1CacheProvider implements Level1CacheProvider{
 			cache.invalidateAll();
 		}
 	}
+	
+	@Override
+	public Level1CacheStats getStats(String cacheName) {
+		Cache<String, Object> cache = caches.get(cacheName);
+		if(cache == null)return new Level1CacheStats(cacheName, 0, 0, 0, 0);
+		CacheStats stats = cache.stats();
+		return new Level1CacheStats(cacheName, stats.hitCount(), stats.missCount(), stats.evictionCount(), cache.size());
+	}
 
 
 	@Override
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.cache.local;
+
+import java.util.List;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+
+/**
+ * 基于keyspace通知的失效通知（redis 6以下版本降级方案）
+ * <br>
+ * 需服务端开启：notify-keyspace-events K$gxe（或KA），该类不修改服务端配置。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月18日
+ */
+public class KeyspaceNotificationInvalidator extends RedisNearCacheInvalidator {
+
+	private final String channelPrefix;
+
+	public KeyspaceNotificationInvalidator(String host, int port, String password, int database, List<String> keyPrefixes) {
+		super(host, port, password, database, keyPrefixes);
+		this.channelPrefix = "__keyspace@" + database + "__:";
+	}
+
+	@Override
+	protected void listen(Jedis subscriber, Listener listener) throws Exception {
+		String[] patterns;
+		if(keyPrefixes == null || keyPrefixes.isEmpty()) {
+			patterns = new String[] {channelPrefix + "*"};
+		}else {
+			patterns = new String[keyPrefixes.size()];
+			for (int i = 0; i < patterns.length; i++) {
+				patterns[i] = channelPrefix + keyPrefixes.get(i) + "*";
+			}
+		}
+		JedisPubSub pubSub = new JedisPubSub() {
+			@Override
+			public void onPSubscribe(String pattern, int subscribedChannels) {
+				if(subscribedChannels == patterns.length)setActive(true, listener);
+			}
+
+			@Override
+			public void onPMessage(String pattern, String channel, String message) {
+				listener.onInvalidate(channel.substring(channelPrefix.length()));
+			}
+		};
+		subscriber.psubscribe(pubSub, patterns);
+	}
+}
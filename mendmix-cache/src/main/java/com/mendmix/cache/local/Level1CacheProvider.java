@@ -16,6 +16,8 @@
 package com.mendmix.cache.local;
 
 import java.io.Closeable;
+import java.util.Collection;
+import java.util.function.Predicate;
 
 /**
  * @description <br>
@@ -31,8 +33,19 @@ public interface Level1CacheProvider extends Closeable{
     
     void remove(String cacheName,String key);
     
+    void remove(String cacheName,Collection<String> keys);
+    
+    /**
+     * 删除匹配的key（用于按hash过滤器批量清除）
+     * @param cacheName
+     * @param keyMatcher
+     */
+    void removeMatched(String cacheName,Predicate<String> keyMatcher);
+    
     void remove(String cacheName);
     
     void clearAll();
     
+    Level1CacheStats getStats(String cacheName);
+    
 }
@@ -17,10 +17,16 @@ package com.mendmix.cache.local;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
 
 import org.apache.commons.lang3.Validate;
 import org.slf4j.Logger;
@@ -61,6 +67,16 @@ public class Level1CacheSupport implements InitializingBean, DisposableBean{
 	
 	private ScheduledExecutorService redisCheckTimer;
 	
+	//广播合并窗口（毫秒），小于等于0时每次变更立即广播
+	private long bcastWindowMillis = 50;
+	//单个区域合并key数超过该值时改为发送hash过滤器
+	private int bcastHashFilterThreshold = 500;
+	private ConcurrentHashMap<String, Set<String>> pendingKeys = new ConcurrentHashMap<>();
+	private ScheduledExecutorService bcastFlushTimer;
+	
+	private LongAdder publishedMessages = new LongAdder();
+	private LongAdder publishedKeys = new LongAdder();
+	
 	private Level1CacheProvider cacheProvider;
 	
 	private LocalCacheSyncListener listener;
@@ -86,9 +102,37 @@ public class Level1CacheSupport implements InitializingBean, DisposableBean{
 		cacheProvider.remove(cacheName, key);
 		logger.debug("MENDMIX-TRACE-LOGGGING-->> remove local LEVEL1 cache: cacheName:[{}], key:[{}]",cacheName,key);
 		if(!distributedMode)return true;
-		boolean publish = publish(channelName, new ClearCommand(cacheName, key).serialize());
+		if(bcastFlushTimer == null) {
+			return publish(cacheName, Arrays.asList(key));
+		}
+		//合并窗口内的清除指令统一广播
+		pendingKeys.compute(cacheName, (name,keys) -> {
+			if(keys == null)keys = new HashSet<>();
+			keys.add(key);
+			return keys;
+		});
+		return true;
+	}
+	
+	private void flushPendingCommands() {
+		for (String cacheName : pendingKeys.keySet()) {
+			Set<String> keys = pendingKeys.remove(cacheName);
+			if(keys == null || keys.isEmpty())continue;
+			try {
+				publish(cacheName, keys);
+			} catch (Exception e) {
+				logger.warn("MENDMIX-TRACE-LOGGGING-->> broadcast <clear-cache> command error,cacheName:{},keys:{}",cacheName,keys.size(),e);
+			}
+		}
+	}
+	
+	private boolean publish(String cacheName,Collection<String> keys){
+		ClearCommand command = ClearCommand.batch(cacheName, keys, bcastHashFilterThreshold);
+		boolean publish = publish(channelName, command.serialize());
+		publishedMessages.increment();
+		publishedKeys.add(keys.size());
 		if(publish){
-			logger.debug("MENDMIX-TRACE-LOGGGING-->> broadcast <clear-cache> command for key:[{}] by channelName:[{}]",key,channelName);			
+			logger.debug("MENDMIX-TRACE-LOGGGING-->> broadcast <clear-cache> command for cacheName:[{}],keys:[{}] by channelName:[{}]",cacheName,keys.size(),channelName);			
 		}
 		return publish;
 	}
@@ -129,6 +173,27 @@ public class Level1CacheSupport implements InitializingBean, DisposableBean{
 		cacheProvider.remove(cacheName, key);
 		logger.debug("MENDMIX-TRACE-LOGGGING-->> remove LEVEL1 cache,cacheName:{},key:{}",cacheName,key);
 	}
+	
+	/**
+	 * 各缓存区域命中、未命中及淘汰统计
+	 * @return
+	 */
+	public List<Level1CacheStats> getStats() {
+		if(cacheNames == null)return new ArrayList<>(0);
+		List<Level1CacheStats> stats = new ArrayList<>(cacheNames.size());
+		for (String cacheName : cacheNames) {
+			stats.add(cacheProvider.getStats(cacheName));
+		}
+		return stats;
+	}
+	
+	public long getPublishedMessages() {
+		return publishedMessages.sum();
+	}
+
+	public long getPublishedKeys() {
+		return publishedKeys.sum();
+	}
 
 	@Override
 	public void afterPropertiesSet() throws Exception {
@@ -182,12 +247,26 @@ public class Level1CacheSupport implements InitializingBean, DisposableBean{
 		poolConfig.setMaxTotal(10);
 		poolConfig.setMaxWaitMillis(30 * 1000);
 		pupJedisPool = new JedisPool(poolConfig, host, port, 3000, password);
+		
+		if(bcastWindowMillis > 0) {
+			bcastFlushTimer = Executors.newScheduledThreadPool(1);
+			bcastFlushTimer.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					flushPendingCommands();
+				}
+			}, bcastWindowMillis, bcastWindowMillis, TimeUnit.MILLISECONDS);
+		}
 	}
 
 	@Override
 	public void destroy() throws Exception {
 		if(cacheProvider != null)cacheProvider.close();
 		if(redisCheckTimer != null)redisCheckTimer.shutdown();
+		if(bcastFlushTimer != null) {
+			bcastFlushTimer.shutdown();
+			flushPendingCommands();
+		}
 		try {listener.unsubscribe();} catch (Exception e) {}
 		if(subJedisClient != null){
 			subJedisClient.close();
@@ -215,6 +294,16 @@ public class Level1CacheSupport implements InitializingBean, DisposableBean{
 		this.distributedMode = distributedMode;
 	}
 
+	public void setBcastWindowMillis(long bcastWindowMillis) {
+		this.bcastWindowMillis = bcastWindowMillis;
+	}
+
+
+	public void setBcastHashFilterThreshold(int bcastHashFilterThreshold) {
+		this.bcastHashFilterThreshold = bcastHashFilterThreshold;
+	}
+
+
 	public void setBcastScope(String bcastScope) {
 		this.channelName =  "clearLevel1_" + bcastScope;
 	}
@@ -246,7 +335,16 @@ public class Level1CacheSupport implements InitializingBean, DisposableBean{
 						if(command.isLocalCommand()){
 							return;
 						}
-						cacheProvider.remove(command.getCacheName(), command.getKey());
+						if(command.getKeys() != null) {
+							cacheProvider.remove(command.getCacheName(), command.getKeys());
+						}else if(command.getKeyFilter() != null) {
+							Predicate<String> keyMatcher = command.buildKeyMatcher();
+							cacheProvider.removeMatched(command.getCacheName(), keyMatcher);
+						}else if(command.getKey() != null) {
+							cacheProvider.remove(command.getCacheName(), command.getKey());
+						}else {
+							cacheProvider.remove(command.getCacheName());
+						}
 					} catch (Exception e) {}
 				}
 			}
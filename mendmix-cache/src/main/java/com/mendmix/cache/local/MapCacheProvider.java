@@ -16,19 +16,20 @@
 package com.mendmix.cache.local;
 
 import java.io.Closeable;
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
-import org.apache.commons.lang3.RandomUtils;
 
 /**
  * 缓存本地map实现
+ * <br>
+ * 容量有限的W-TinyLFU缓存：新写入先进入窗口LRU（约1%容量），窗口溢出的候选节点
+ * 与主区（分段LRU：考察区+保护区）的淘汰节点按访问频率竞争准入，超出容量时淘汰而不是报错。
+ * 每个key的过期时间挂在分层时间轮上，读写时顺带推进时间轮，过期清理开销与缓存大小无关。
  * 
  * @description <br>
  * @author <a href="mailto:vakinge@gmail.com">vakin</a>
@@ -36,22 +37,36 @@ import org.apache.commons.lang3.RandomUtils;
  */
 public class MapCacheProvider implements Closeable{
 
-	private Map<String, Object> cache = new ConcurrentHashMap<>();
-	private PriorityBlockingQueue<CacheKey> cacheKeys = new PriorityBlockingQueue<>();
+	private static final int ADMIT_HASHDOS_THRESHOLD = 6;
+	
+	private ConcurrentHashMap<String, CacheNode> cache = new ConcurrentHashMap<>();
 
 	private ScheduledExecutorService cleanScheduledExecutor = Executors.newScheduledThreadPool(1);
 	
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	
 	private int maxSize = 5000;
+	private int maxWindowSize;
+	private int maxProtectedSize;
+	
+	private int windowSize;
+	private int protectedSize;
 	
-	private AtomicInteger currentCacheSize = new AtomicInteger(0);
+	private final CacheNode windowQueue = CacheNode.sentinel();
+	private final CacheNode probationQueue = CacheNode.sentinel();
+	private final CacheNode protectedQueue = CacheNode.sentinel();
+	
+	private FrequencySketch sketch;
+	private TimerWheel timerWheel;
+	private final ReadBuffer readBuffer = new ReadBuffer();
 
 	public MapCacheProvider() {
 		this(1000);
 	}
 	
 	public MapCacheProvider(final long period,int maxSize) {
-		this(period);
 		this.maxSize = maxSize;
+		init(period);
 	}
 
 	/**
@@ -59,28 +74,26 @@ public class MapCacheProvider implements Closeable{
 	 *            检查过期间隔（毫秒）
 	 */
 	public MapCacheProvider(final long period) {
-		
+		init(period);
+	}
+	
+	private void init(final long period) {
+		maxWindowSize = Math.max(1, maxSize / 100);
+		maxProtectedSize = (int) ((maxSize - maxWindowSize) * 0.8);
+		sketch = new FrequencySketch(maxSize);
+		timerWheel = new TimerWheel(System.currentTimeMillis());
+		//读写路径会顺带清理过期数据，定时任务只处理长时间无读写的情况
 		cleanScheduledExecutor.scheduleAtFixedRate(new Runnable() {
 			@Override
 			public void run() {
-				CacheKey cacheKey = cacheKeys.poll();
-				if(cacheKey == null){
-					return;
+				evictionLock.lock();
+				try {
+					maintenance(System.currentTimeMillis());
+				} finally {
+					evictionLock.unlock();
 				}
-				
-				long currentTimeMils = System.currentTimeMillis();
-				if(cacheKey.expireAt > currentTimeMils){
-					//放回去
-					cacheKeys.add(cacheKey);
-					return;
-				}
-				// 过期的移除
-				cache.remove(cacheKey.key);
-				currentCacheSize.decrementAndGet();
-				
 			}
 		}, period, period, TimeUnit.MILLISECONDS);
-		
 	}
 
 	/**
@@ -92,12 +105,35 @@ public class MapCacheProvider implements Closeable{
 	 * @return
 	 */
 	public boolean set(String key, Object value, int timeout) {
-		
-		if(currentCacheSize.incrementAndGet() > maxSize)throw new RuntimeException("CacheSize over the max size");
-
-		cache.put(key, value);
-		if (timeout > 0) {
-			cacheKeys.add(new CacheKey(key, System.currentTimeMillis() + timeout * 1000));
+		long currentTimeMils = System.currentTimeMillis();
+		long expireAt = timeout > 0 ? currentTimeMils + timeout * 1000L : 0;
+		evictionLock.lock();
+		try {
+			maintenance(currentTimeMils);
+			CacheNode node = cache.get(key);
+			if(node != null){
+				node.value = value;
+				node.expireAt = expireAt;
+				if(expireAt > 0){
+					timerWheel.reschedule(node);
+				}else{
+					timerWheel.deschedule(node);
+				}
+				onAccess(node);
+				return true;
+			}
+			node = new CacheNode(key, value, expireAt);
+			cache.put(key, node);
+			sketch.increment(key);
+			node.queueType = CacheNode.WINDOW;
+			linkLast(windowQueue, node);
+			windowSize++;
+			if(expireAt > 0){
+				timerWheel.schedule(node);
+			}
+			evictEntries();
+		} finally {
+			evictionLock.unlock();
 		}
 		return true;
 	
@@ -105,113 +141,178 @@ public class MapCacheProvider implements Closeable{
 
 	@SuppressWarnings("unchecked")
 	public <T> T get(String key) {
-		return (T) cache.get(key);
+		CacheNode node = cache.get(key);
+		if(node == null)return null;
+		long currentTimeMils = System.currentTimeMillis();
+		if(node.isExpired(currentTimeMils)){
+			if(evictionLock.tryLock()){
+				try {
+					expireEntries(currentTimeMils);
+				} finally {
+					evictionLock.unlock();
+				}
+			}
+			return null;
+		}
+		Object value = node.value;
+		//访问记录写入缓冲，写满时批量回放，竞争时放弃本次回放不阻塞读
+		if(readBuffer.offer(node) && evictionLock.tryLock()){
+			try {
+				maintenance(currentTimeMils);
+			} finally {
+				evictionLock.unlock();
+			}
+		}
+		return (T) value;
 	}
 
 	public boolean remove(String key) {
-		Object removeObj = cache.remove(key);
-		if(removeObj != null){
-			cacheKeys.remove(new CacheKey(key, 0));
-			currentCacheSize.decrementAndGet();
+		evictionLock.lock();
+		try {
+			CacheNode node = cache.remove(key);
+			if(node != null){
+				retire(node);
+			}
+		} finally {
+			evictionLock.unlock();
 		}
 		return true;
 	}
 
 	public boolean exists(String key) {
-		return cache.containsKey(key);
+		CacheNode node = cache.get(key);
+		return node != null && !node.isExpired(System.currentTimeMillis());
+	}
+	
+	public int size() {
+		return cache.size();
 	}
 
 	public void close() {
 		cleanScheduledExecutor.shutdown();
 	}
-
-	private class CacheKey implements Comparable<CacheKey>{
-		String key;
-		long expireAt;
-
-		public CacheKey(String key, long expireAt) {
-			super();
-			this.key = key;
-			this.expireAt = expireAt;
-		}
-
-		@Override
-		public int hashCode() {
-			final int prime = 31;
-			int result = 1;
-			result = prime * result + getOuterType().hashCode();
-			result = prime * result + ((key == null) ? 0 : key.hashCode());
-			return result;
-		}
-
-		@Override
-		public boolean equals(Object obj) {
-			if (this == obj)
-				return true;
-			if (obj == null)
-				return false;
-			if (getClass() != obj.getClass())
-				return false;
-			CacheKey other = (CacheKey) obj;
-			if (!getOuterType().equals(other.getOuterType()))
-				return false;
-			if (key == null) {
-				if (other.key != null)
-					return false;
-			} else if (!key.equals(other.key))
-				return false;
-			return true;
-		}
-
-		private MapCacheProvider getOuterType() {
-			return MapCacheProvider.this;
+	
+	private void maintenance(long currentTimeMils) {
+		readBuffer.drainTo(node -> {
+			if(!node.retired)onAccess(node);
+		});
+		expireEntries(currentTimeMils);
+	}
+	
+	private void expireEntries(long currentTimeMils) {
+		timerWheel.advance(currentTimeMils, node -> {
+			if(cache.remove(node.key, node)){
+				retire(node);
+			}
+		});
+	}
+	
+	private void onAccess(CacheNode node) {
+		sketch.increment(node.key);
+		if(node.queueType == CacheNode.WINDOW){
+			moveToTail(windowQueue, node);
+		}else if(node.queueType == CacheNode.PROBATION){
+			//考察区再次命中晋升到保护区
+			unlink(node);
+			node.queueType = CacheNode.PROTECTED;
+			linkLast(protectedQueue, node);
+			protectedSize++;
+			while(protectedSize > maxProtectedSize){
+				CacheNode demoted = protectedQueue.next;
+				unlink(demoted);
+				protectedSize--;
+				demoted.queueType = CacheNode.PROBATION;
+				linkLast(probationQueue, demoted);
+			}
+		}else{
+			moveToTail(protectedQueue, node);
 		}
-
-		@Override
-		public int compareTo(CacheKey o) {
-			return Long.compare(this.expireAt, o.expireAt);
+	}
+	
+	private void evictEntries() {
+		//窗口溢出的节点作为候选进入考察区尾部
+		CacheNode firstCandidate = null;
+		while(windowSize > maxWindowSize){
+			CacheNode node = windowQueue.next;
+			unlink(node);
+			windowSize--;
+			node.queueType = CacheNode.PROBATION;
+			linkLast(probationQueue, node);
+			if(firstCandidate == null)firstCandidate = node;
 		}
-
-		@Override
-		public String toString() {
-			return "[key=" + key + ", expireAt=" + expireAt + "]";
+		
+		CacheNode candidate = firstCandidate;
+		while(cache.size() > maxSize){
+			CacheNode victim = probationQueue.next;
+			if(victim == probationQueue){
+				//考察区为空时从保护区或窗口淘汰
+				victim = protectedQueue.next != protectedQueue ? protectedQueue.next : windowQueue.next;
+				if(victim == windowQueue)break;
+				evict(victim);
+				continue;
+			}
+			if(candidate == null || candidate == victim || candidate.retired){
+				evict(victim);
+				candidate = null;
+				continue;
+			}
+			CacheNode nextCandidate = candidate.next == probationQueue ? null : candidate.next;
+			if(admit(candidate.key, victim.key)){
+				evict(victim);
+			}else{
+				evict(candidate);
+				candidate = nextCandidate;
+			}
 		}
-
 	}
-
-	public static void main(String[] args) {
-		final MapCacheProvider provider = new MapCacheProvider(100);
-		
-		provider.set("aa", "aa", 50);
-		provider.set("bb", "bb", 30);
-		System.out.println("cache size:" + provider.cache.size() + "-" + provider.currentCacheSize.get());
-		provider.remove("aa");
-		System.out.println("cache size:" + provider.cache.size() + "-" + provider.currentCacheSize.get());
-		
-		ExecutorService executorService = Executors.newFixedThreadPool(5);
-		
-		for (int i = 0; i < 500; i++) {
-			int expire = RandomUtils.nextInt(1, 30);
-			final String key = "key" + i + "_" + expire;
-			executorService.execute(new Runnable() {
-				@Override
-				public void run() {
-					provider.set(key, key, expire);
-					try {
-						Thread.sleep(TimeUnit.MILLISECONDS.toMillis(10));
-					} catch (Exception e) {
-					}
-				}
-			});
-			
+	
+	private boolean admit(String candidateKey, String victimKey) {
+		int victimFreq = sketch.frequency(victimKey);
+		int candidateFreq = sketch.frequency(candidateKey);
+		if(candidateFreq > victimFreq){
+			return true;
+		}else if(candidateFreq < ADMIT_HASHDOS_THRESHOLD){
+			return false;
 		}
-		
-		while(true){
-			if(provider.cache.isEmpty())break;
+		//防止hash碰撞攻击使热点victim永远无法被替换
+		return (ThreadLocalRandom.current().nextInt() & 127) == 0;
+	}
+	
+	private void evict(CacheNode node) {
+		cache.remove(node.key, node);
+		retire(node);
+	}
+	
+	private void retire(CacheNode node) {
+		if(node.retired)return;
+		node.retired = true;
+		unlink(node);
+		if(node.queueType == CacheNode.WINDOW){
+			windowSize--;
+		}else if(node.queueType == CacheNode.PROTECTED){
+			protectedSize--;
 		}
-		
-		provider.close();
-		executorService.shutdown();
+		timerWheel.deschedule(node);
+	}
+	
+	private static void linkLast(CacheNode sentinel, CacheNode node) {
+		node.prev = sentinel.prev;
+		node.next = sentinel;
+		sentinel.prev.next = node;
+		sentinel.prev = node;
+	}
+	
+	private static void unlink(CacheNode node) {
+		if(node.next == null)return;
+		node.prev.next = node.next;
+		node.next.prev = node.prev;
+		node.prev = null;
+		node.next = null;
+	}
+	
+	private static void moveToTail(CacheNode sentinel, CacheNode node) {
+		unlink(node);
+		linkLast(sentinel, node);
 	}
 
 }
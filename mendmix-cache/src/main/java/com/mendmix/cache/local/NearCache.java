@@ -0,0 +1,174 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.cache.local;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 近端缓存（redis前置的进程内缓存）
+ * <br>
+ * 容量有界（W-TinyLFU）且每个key最长缓存ttlSeconds；失效由{@link NearCacheInvalidator}驱动，
+ * 监听中断期间不提供缓存。回源期间收到失效通知的结果不写入，避免旧值覆盖。
+ * 命中时直接返回缓存的实例，只应存放不可变值（序列化字节、字符串等）。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月18日
+ */
+public class NearCache implements NearCacheInvalidator.Listener, Closeable {
+
+	private final int maxSize;
+	private final int ttlSeconds;
+	private final List<String> keyPrefixes;
+	private final NearCacheInvalidator invalidator;
+
+	private volatile MapCacheProvider store;
+	private final ConcurrentHashMap<String, Object> loadingTokens = new ConcurrentHashMap<>();
+
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder invalidationCount = new LongAdder();
+	private final LongAdder discardedLoadCount = new LongAdder();
+
+	/**
+	 * @param maxSize 最大条目数
+	 * @param ttlSeconds 单个key最长缓存时间
+	 * @param keyPrefixes 参与近端缓存的key前缀，为空表示全部
+	 * @param invalidator
+	 */
+	public NearCache(int maxSize, int ttlSeconds, List<String> keyPrefixes, NearCacheInvalidator invalidator) {
+		this.maxSize = maxSize;
+		this.ttlSeconds = ttlSeconds;
+		this.keyPrefixes = keyPrefixes;
+		this.invalidator = invalidator;
+		this.store = new MapCacheProvider(1000, maxSize);
+		invalidator.start(this);
+	}
+
+	public boolean isCacheable(String key) {
+		if(keyPrefixes == null || keyPrefixes.isEmpty())return true;
+		for (String prefix : keyPrefixes) {
+			if(key.startsWith(prefix))return true;
+		}
+		return false;
+	}
+
+	public <T> T get(String key) {
+		if(!invalidator.isActive())return null;
+		T value = store.get(key);
+		if(value != null) {
+			hitCount.increment();
+		}else {
+			missCount.increment();
+		}
+		return value;
+	}
+
+	/**
+	 * 回源前登记，与{@link #completeLoad(String, Object, Object)}配对
+	 * @param key
+	 * @return
+	 */
+	public Object beginLoad(String key) {
+		Object token = new Object();
+		loadingTokens.put(key, token);
+		return token;
+	}
+
+	/**
+	 * 回源完成，期间未失效才写入
+	 * @param key
+	 * @param token
+	 * @param value
+	 */
+	public void completeLoad(String key, Object token, Object value) {
+		if(value == null || !invalidator.isActive()) {
+			loadingTokens.remove(key, token);
+			return;
+		}
+		//先写入再确认，确认失败说明回源期间已失效
+		store.set(key, value, ttlSeconds);
+		if(!loadingTokens.remove(key, token)) {
+			store.remove(key);
+			discardedLoadCount.increment();
+		}
+	}
+
+	@Override
+	public void onInvalidate(String key) {
+		loadingTokens.remove(key);
+		store.remove(key);
+		invalidationCount.increment();
+	}
+
+	@Override
+	public void onInvalidateAll() {
+		loadingTokens.clear();
+		MapCacheProvider old = store;
+		store = new MapCacheProvider(1000, maxSize);
+		old.close();
+		invalidationCount.increment();
+	}
+
+	public int size() {
+		return store.size();
+	}
+
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	public long getInvalidationCount() {
+		return invalidationCount.sum();
+	}
+
+	public long getDiscardedLoadCount() {
+		return discardedLoadCount.sum();
+	}
+
+	/**
+	 * 节省的redis往返占比
+	 * @return
+	 */
+	public double getHitRatio() {
+		long hits = getHitCount();
+		long total = hits + getMissCount();
+		return total == 0 ? 0d : (double) hits / total;
+	}
+
+	public boolean isActive() {
+		return invalidator.isActive();
+	}
+
+	@Override
+	public void close() {
+		invalidator.close();
+		store.close();
+	}
+
+	@Override
+	public String toString() {
+		return "NearCache [size=" + size() + ", hit=" + getHitCount() + ", miss=" + getMissCount() + ", hitRatio="
+				+ getHitRatio() + ", invalidation=" + getInvalidationCount() + ", discardedLoad=" + getDiscardedLoadCount()
+				+ ", active=" + isActive() + "]";
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.cache.local;
+
+import java.io.Closeable;
+
+/**
+ * 近端缓存失效通知源
+ * <br>
+ * 内置redis CLIENT TRACKING及keyspace通知两种实现，测试或单机场景可替换为本地实现。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月18日
+ */
+public interface NearCacheInvalidator extends Closeable {
+
+	/**
+	 * 开始监听
+	 * @param listener
+	 */
+	void start(Listener listener);
+
+	/**
+	 * 是否正常监听中，未监听时近端缓存不可用（避免读到脏数据）
+	 * @return
+	 */
+	boolean isActive();
+
+	@Override
+	void close();
+
+	interface Listener {
+
+		void onInvalidate(String key);
+
+		/**
+		 * 全部失效（flush或重连期间可能丢失通知）
+		 */
+		void onInvalidateAll();
+	}
+}
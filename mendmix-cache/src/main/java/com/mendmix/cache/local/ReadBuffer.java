@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.cache.local;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * 读访问记录缓冲（按线程分段的有损环形队列）
+ * <br>
+ * 读操作只写入缓冲不加锁，缓冲写满时由持有淘汰锁的线程批量回放；
+ * 竞争激烈时丢弃部分访问记录，只影响频率统计精度，不影响正确性。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月10日
+ */
+class ReadBuffer {
+
+	private static final int BUFFER_SIZE = 16;
+	private static final int BUFFER_MASK = BUFFER_SIZE - 1;
+
+	private final Stripe[] stripes;
+	private final int stripeMask;
+
+	public ReadBuffer() {
+		int count = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1) << 1;
+		stripes = new Stripe[count];
+		for (int i = 0; i < count; i++) {
+			stripes[i] = new Stripe();
+		}
+		stripeMask = count - 1;
+	}
+
+	/**
+	 * @param node
+	 * @return 缓冲已满需要回放时返回true
+	 */
+	public boolean offer(CacheNode node) {
+		Stripe stripe = stripes[(int) (Thread.currentThread().getId() & stripeMask)];
+		long tail = stripe.writeCounter.get();
+		long size = tail - stripe.readCounter;
+		if (size >= BUFFER_SIZE) {
+			return true;
+		}
+		if (stripe.writeCounter.compareAndSet(tail, tail + 1)) {
+			stripe.buffer.lazySet((int) (tail & BUFFER_MASK), node);
+			return size + 1 >= BUFFER_SIZE;
+		}
+		return false;
+	}
+
+	/**
+	 * 回放访问记录（需持有淘汰锁）
+	 * @param consumer
+	 */
+	public void drainTo(Consumer<CacheNode> consumer) {
+		for (Stripe stripe : stripes) {
+			long head = stripe.readCounter;
+			long tail = stripe.writeCounter.get();
+			while (head < tail) {
+				int index = (int) (head & BUFFER_MASK);
+				CacheNode node = stripe.buffer.get(index);
+				if (node == null) {
+					break;
+				}
+				stripe.buffer.lazySet(index, null);
+				consumer.accept(node);
+				head++;
+			}
+			stripe.readCounter = head;
+		}
+	}
+
+	private static class Stripe {
+		final AtomicReferenceArray<CacheNode> buffer = new AtomicReferenceArray<>(BUFFER_SIZE);
+		final AtomicLong writeCounter = new AtomicLong();
+		volatile long readCounter;
+	}
+}
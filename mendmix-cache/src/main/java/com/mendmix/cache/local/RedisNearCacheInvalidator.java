@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.cache.local;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mendmix.common.async.StandardThreadExecutor.StandardThreadFactory;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * 基于redis订阅的失效通知源基类
+ * <br>
+ * 独立线程阻塞监听，连接断开后清空近端缓存并按间隔重连。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月18日
+ */
+public abstract class RedisNearCacheInvalidator implements NearCacheInvalidator {
+
+	protected static final Logger logger = LoggerFactory.getLogger(NearCacheInvalidator.class);
+
+	protected final String host;
+	protected final int port;
+	protected final String password;
+	protected final int database;
+	protected final List<String> keyPrefixes;
+
+	private long reconnectIntervalMillis = 5000;
+
+	private ExecutorService listenExecutor;
+	protected volatile Jedis subscriber;
+	private volatile boolean active;
+	private volatile boolean closed;
+
+	public RedisNearCacheInvalidator(String host, int port, String password, int database, List<String> keyPrefixes) {
+		this.host = host;
+		this.port = port;
+		this.password = password;
+		this.database = database;
+		this.keyPrefixes = keyPrefixes;
+	}
+
+	public void setReconnectIntervalMillis(long reconnectIntervalMillis) {
+		this.reconnectIntervalMillis = reconnectIntervalMillis;
+	}
+
+	@Override
+	public void start(Listener listener) {
+		listenExecutor = Executors.newSingleThreadExecutor(new StandardThreadFactory(getClass().getSimpleName()));
+		listenExecutor.execute(() -> {
+			while(!closed) {
+				try {
+					subscriber = connect();
+					listen(subscriber, listener);
+				} catch (Exception e) {
+					if(closed)break;
+					logger.warn("MENDMIX-TRACE-LOGGGING-->> nearCache invalidation listener[{}:{}] error:{}",host,port,e.getMessage());
+				} finally {
+					setActive(false, listener);
+					closeQuietly(subscriber);
+					subscriber = null;
+					onDisconnected();
+				}
+				try {
+					Thread.sleep(reconnectIntervalMillis);
+				} catch (InterruptedException e) {
+					break;
+				}
+			}
+		});
+	}
+
+	/**
+	 * 阻塞监听，订阅成功后调用{@link #setActive(boolean, Listener)}
+	 * @param subscriber
+	 * @param listener
+	 * @throws Exception
+	 */
+	protected abstract void listen(Jedis subscriber, Listener listener) throws Exception;
+
+	protected void onDisconnected() {}
+
+	/**
+	 * 状态切换时清空近端缓存：监听建立前的数据可能已过期，断开期间通知会丢失
+	 */
+	protected void setActive(boolean active, Listener listener) {
+		if(this.active == active)return;
+		listener.onInvalidateAll();
+		this.active = active;
+		logger.info("MENDMIX-TRACE-LOGGGING-->> nearCache invalidation listener[{}:{}] active:{}",host,port,active);
+	}
+
+	protected Jedis connect() {
+		Jedis jedis = new Jedis(host, port);
+		if(password != null)jedis.auth(password);
+		if(database > 0)jedis.select(database);
+		return jedis;
+	}
+
+	protected void closeQuietly(Jedis jedis) {
+		if(jedis == null)return;
+		try {
+			jedis.close();
+		} catch (Exception e) {}
+	}
+
+	/**
+	 * 主动断开当前订阅连接触发重连
+	 */
+	protected void reconnect() {
+		closeQuietly(subscriber);
+	}
+
+	@Override
+	public boolean isActive() {
+		return active;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		active = false;
+		closeQuietly(subscriber);
+		if(listenExecutor != null)listenExecutor.shutdownNow();
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.cache.local;
+
+import java.util.function.Consumer;
+
+/**
+ * 分层时间轮（按过期时间调度缓存节点）
+ * <br>
+ * 各层时间跨度约为：1秒、1分钟、1小时、18小时、6天，超出最大跨度的节点放入溢出桶。
+ * 推进时间轮时只处理已经走过的桶，到期节点回调淘汰，未到期节点降级到更精细的层，
+ * 因此过期处理开销只与到期及降级的节点数相关，与缓存总量无关。
+ * <font color="red">非线程安全，调用方需加锁</font>
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月10日
+ */
+class TimerWheel {
+
+	//每层桶数*单桶跨度不小于下一层单桶跨度，否则放入该层的节点会提前被取出重新调度
+	private static final int[] BUCKETS = { 64, 64, 32, 8, 1 };
+	//各层单桶跨度（毫秒）：2^10, 2^16, 2^22, 2^26, 2^29
+	private static final int[] SHIFT = { 10, 16, 22, 26, 29 };
+	private static final long[] SPANS = { 1L << 10, 1L << 16, 1L << 22, 1L << 26, 1L << 29, 1L << 29 };
+
+	private final CacheNode[][] wheel;
+	private long time;
+
+	public TimerWheel(long currentTimeMillis) {
+		this.time = currentTimeMillis;
+		wheel = new CacheNode[BUCKETS.length][];
+		for (int i = 0; i < wheel.length; i++) {
+			wheel[i] = new CacheNode[BUCKETS[i]];
+			for (int j = 0; j < wheel[i].length; j++) {
+				wheel[i][j] = CacheNode.sentinel();
+			}
+		}
+	}
+
+	/**
+	 * 推进时间轮，淘汰已到期节点
+	 * @param currentTimeMillis
+	 * @param evictor
+	 */
+	public void advance(long currentTimeMillis, Consumer<CacheNode> evictor) {
+		long previousTime = time;
+		time = currentTimeMillis;
+		for (int i = 0; i < SHIFT.length; i++) {
+			long previousTicks = previousTime >>> SHIFT[i];
+			long currentTicks = currentTimeMillis >>> SHIFT[i];
+			if (currentTicks - previousTicks <= 0L) {
+				break;
+			}
+			expire(i, previousTicks, currentTicks - previousTicks, evictor);
+		}
+	}
+
+	private void expire(int index, long previousTicks, long delta, Consumer<CacheNode> evictor) {
+		CacheNode[] timerWheel = wheel[index];
+		int mask = timerWheel.length - 1;
+		int steps = (int) Math.min(1 + delta, timerWheel.length);
+		int start = (int) (previousTicks & mask);
+		int end = start + steps;
+		for (int i = start; i < end; i++) {
+			CacheNode sentinel = timerWheel[i & mask];
+			CacheNode node = sentinel.nextInTimer;
+			sentinel.prevInTimer = sentinel;
+			sentinel.nextInTimer = sentinel;
+			while (node != sentinel) {
+				CacheNode next = node.nextInTimer;
+				node.prevInTimer = null;
+				node.nextInTimer = null;
+				if (node.expireAt - time <= 0) {
+					evictor.accept(node);
+				} else {
+					schedule(node);
+				}
+				node = next;
+			}
+		}
+	}
+
+	public void schedule(CacheNode node) {
+		CacheNode sentinel = findBucket(node.expireAt);
+		node.nextInTimer = sentinel;
+		node.prevInTimer = sentinel.prevInTimer;
+		sentinel.prevInTimer.nextInTimer = node;
+		sentinel.prevInTimer = node;
+	}
+
+	public void reschedule(CacheNode node) {
+		if (node.nextInTimer != null) {
+			unlink(node);
+		}
+		schedule(node);
+	}
+
+	public void deschedule(CacheNode node) {
+		if (node.nextInTimer != null) {
+			unlink(node);
+		}
+	}
+
+	private void unlink(CacheNode node) {
+		node.prevInTimer.nextInTimer = node.nextInTimer;
+		node.nextInTimer.prevInTimer = node.prevInTimer;
+		node.nextInTimer = null;
+		node.prevInTimer = null;
+	}
+
+	private CacheNode findBucket(long expireAt) {
+		long duration = expireAt - time;
+		int length = wheel.length - 1;
+		for (int i = 0; i < length; i++) {
+			if (duration < SPANS[i + 1]) {
+				long ticks = (expireAt >>> SHIFT[i]);
+				int index = (int) (ticks & (wheel[i].length - 1));
+				return wheel[i][index];
+			}
+		}
+		return wheel[length][0];
+	}
+}
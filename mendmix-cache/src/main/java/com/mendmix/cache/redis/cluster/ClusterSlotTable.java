@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.cache.redis.cluster;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.BinaryJedisCluster;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.util.JedisClusterCRC16;
+import redis.clients.jedis.util.SafeEncoder;
+
+/**
+ * 集群槽位-节点映射
+ * <br>
+ * 用于批量命令按节点分组后各自pipeline执行，收到MOVED/ASK时调用{@link #refresh()}重新加载。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月14日
+ */
+public class ClusterSlotTable {
+
+	private static final Logger logger = LoggerFactory.getLogger(ClusterSlotTable.class);
+
+	private static final int SLOT_COUNT = 16384;
+
+	private final BinaryJedisCluster jedisCluster;
+	private volatile String[] slotNodes;
+
+	public ClusterSlotTable(BinaryJedisCluster jedisCluster) {
+		this.jedisCluster = jedisCluster;
+	}
+
+	/**
+	 * 按节点分组
+	 * @param keys
+	 * @return 节点(host:port) -> 原始下标列表
+	 */
+	public Map<String, List<Integer>> groupByNode(byte[][] keys) {
+		String[] nodes = getSlotNodes();
+		Map<String, List<Integer>> result = new LinkedHashMap<>();
+		for (int i = 0; i < keys.length; i++) {
+			String node = nodes[JedisClusterCRC16.getSlot(keys[i])];
+			List<Integer> indexes = result.get(node);
+			if(indexes == null) {
+				indexes = new ArrayList<>();
+				result.put(node, indexes);
+			}
+			indexes.add(i);
+		}
+		return result;
+	}
+
+	/**
+	 * 所有持有槽位的主节点
+	 * @return
+	 */
+	public Set<String> getMasterNodes() {
+		Set<String> nodes = new LinkedHashSet<>();
+		for (String node : getSlotNodes()) {
+			if(node != null)nodes.add(node);
+		}
+		return nodes;
+	}
+
+	public BinaryJedisCluster getJedisCluster() {
+		return jedisCluster;
+	}
+
+	public JedisPool getNodePool(String node) {
+		return node == null ? null : jedisCluster.getClusterNodes().get(node);
+	}
+
+	@SuppressWarnings("unchecked")
+	public synchronized void refresh() {
+		String[] nodes = new String[SLOT_COUNT];
+		for (JedisPool pool : jedisCluster.getClusterNodes().values()) {
+			try (Jedis jedis = pool.getResource()) {
+				List<Object> slots = jedis.clusterSlots();
+				for (Object slotInfoObj : slots) {
+					List<Object> slotInfo = (List<Object>) slotInfoObj;
+					int start = ((Long) slotInfo.get(0)).intValue();
+					int end = ((Long) slotInfo.get(1)).intValue();
+					List<Object> master = (List<Object>) slotInfo.get(2);
+					String node = SafeEncoder.encode((byte[]) master.get(0)) + ":" + master.get(1);
+					for (int slot = start; slot <= end; slot++) {
+						nodes[slot] = node;
+					}
+				}
+				slotNodes = nodes;
+				return;
+			} catch (Exception e) {
+				logger.warn("MENDMIX-TRACE-LOGGGING-->> load cluster slots error,try next node",e);
+			}
+		}
+		//全部节点不可用时保留空映射，批量命令降级为逐key执行
+		if(slotNodes == null)slotNodes = nodes;
+	}
+
+	private String[] getSlotNodes() {
+		if(slotNodes == null) {
+			refresh();
+		}
+		return slotNodes;
+	}
+}
@@ -41,6 +41,7 @@ public class JedisClusterProvider implements JedisProvider<JedisCluster,BinaryJe
 	
 	private JedisCluster jedisCluster;
 	private BinaryJedisCluster binaryJedisCluster;
+	private ClusterSlotTable slotTable;
 	
 	private String groupName;
 	
@@ -54,6 +55,7 @@ public class JedisClusterProvider implements JedisProvider<JedisCluster,BinaryJe
 		Set<HostAndPort> nodes = this.parseHostAndPort(servers);
 		jedisCluster = new JedisCluster(nodes, timeout, maxRedirections,jedisPoolConfig);
 		binaryJedisCluster = new BinaryJedisCluster(nodes, timeout, maxRedirections,jedisPoolConfig);
+		slotTable = new ClusterSlotTable(binaryJedisCluster);
 	}
 
 	private Set<HostAndPort> parseHostAndPort(String[] servers){
@@ -83,6 +85,10 @@ public class JedisClusterProvider implements JedisProvider<JedisCluster,BinaryJe
 		return binaryJedisCluster;
 	}
 
+	public ClusterSlotTable getSlotTable() {
+		return slotTable;
+	}
+
 	@Override
 	public void release() {}
 
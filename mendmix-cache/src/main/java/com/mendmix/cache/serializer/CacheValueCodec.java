@@ -0,0 +1,255 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.cache.serializer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.luben.zstd.Zstd;
+import com.mendmix.common.util.ResourceUtils;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+/**
+ * 缓存值压缩编解码
+ * <br>
+ * 位于序列化与redis命令之间，超过阈值的值按配置压缩（lz4/zstd），压缩格式：
+ * <pre>
+ * [0x00][codec][原始长度(4字节)][压缩数据]
+ * </pre>
+ * kryo序列化结果首字节为0时仅表示null（长度为1），因此首字节0x00且长度大于头部长度可唯一标识压缩值，
+ * 未压缩的旧值原样读取。按key前缀（第一个":"之前）统计压缩率，无key信息的写入（如hash字段）归入{@value #OTHER_PREFIX}。
+ * <pre>
+ * mendmix.cache.compress.enabled=true
+ * mendmix.cache.compress.codec=lz4
+ * mendmix.cache.compress.threshold=4096
+ * </pre>
+ * 注意：开启前需确认所有读取方已升级。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月17日
+ */
+public class CacheValueCodec {
+
+	private static final Logger logger = LoggerFactory.getLogger(CacheValueCodec.class);
+
+	public static final String CODEC_LZ4 = "lz4";
+	public static final String CODEC_ZSTD = "zstd";
+
+	private static final byte MARKER = 0x00;
+	private static final byte TYPE_LZ4 = 1;
+	private static final byte TYPE_ZSTD = 2;
+	private static final int HEADER_SIZE = 6;
+	private static final int MAX_STATS_PREFIXES = 512;
+	private static final String OTHER_PREFIX = "_others_";
+
+	private static boolean enabled = ResourceUtils.getBoolean("mendmix.cache.compress.enabled", false);
+	private static int threshold = ResourceUtils.getInt("mendmix.cache.compress.threshold", 4096);
+	private static byte codecType = CODEC_ZSTD.equalsIgnoreCase(ResourceUtils.getProperty("mendmix.cache.compress.codec", CODEC_LZ4)) ? TYPE_ZSTD : TYPE_LZ4;
+	private static int zstdLevel = ResourceUtils.getInt("mendmix.cache.compress.zstdLevel", 3);
+	//压缩后不小于原始大小该比例时不压缩
+	private static double minSavingRatio = Double.parseDouble(ResourceUtils.getProperty("mendmix.cache.compress.minSavingRatio", "0.1"));
+
+	private static final Map<String, CompressStats> stats = new ConcurrentHashMap<>();
+
+	private CacheValueCodec() {}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void setEnabled(boolean enabled) {
+		CacheValueCodec.enabled = enabled;
+	}
+
+	public static void setThreshold(int threshold) {
+		CacheValueCodec.threshold = threshold;
+	}
+
+	public static void setCodec(String codec) {
+		codecType = CODEC_ZSTD.equalsIgnoreCase(codec) ? TYPE_ZSTD : TYPE_LZ4;
+	}
+
+	/**
+	 * 编码（按需压缩）
+	 * @param key 用于按前缀统计
+	 * @param bytes 序列化结果
+	 * @return
+	 */
+	public static byte[] encode(String key, byte[] bytes) {
+		if(!enabled || bytes == null || bytes.length < threshold)return bytes;
+		byte[] result;
+		try {
+			result = codecType == TYPE_ZSTD ? ZstdCodec.compress(bytes, zstdLevel) : Lz4Codec.compress(bytes);
+		} catch (Throwable e) {
+			//压缩库缺失等，关闭压缩避免重复报错
+			enabled = false;
+			logger.error("MENDMIX-TRACE-LOGGGING-->> cache value compress error,disabled",e);
+			return bytes;
+		}
+		CompressStats prefixStats = getStats(key);
+		if(result == null || result.length > bytes.length * (1 - minSavingRatio)) {
+			prefixStats.skipped.increment();
+			return bytes;
+		}
+		prefixStats.compressed.increment();
+		prefixStats.rawBytes.add(bytes.length);
+		prefixStats.compressedBytes.add(result.length);
+		return result;
+	}
+
+	/**
+	 * 解码，未压缩值原样返回
+	 * @param bytes
+	 * @return
+	 */
+	public static byte[] decode(byte[] bytes) {
+		if(!isCompressed(bytes))return bytes;
+		int rawLength = ((bytes[2] & 0xFF) << 24) | ((bytes[3] & 0xFF) << 16) | ((bytes[4] & 0xFF) << 8) | (bytes[5] & 0xFF);
+		if(bytes[1] == TYPE_ZSTD) {
+			return ZstdCodec.decompress(bytes, rawLength);
+		}
+		return Lz4Codec.decompress(bytes, rawLength);
+	}
+
+	public static boolean isCompressed(byte[] bytes) {
+		return bytes != null && bytes.length > HEADER_SIZE && bytes[0] == MARKER
+				&& (bytes[1] == TYPE_LZ4 || bytes[1] == TYPE_ZSTD);
+	}
+
+	/**
+	 * 按key前缀的压缩统计
+	 * @return
+	 */
+	public static Map<String, CompressStats> getStats() {
+		return Collections.unmodifiableMap(stats);
+	}
+
+	public static void resetStats() {
+		stats.clear();
+	}
+
+	private static CompressStats getStats(String key) {
+		String prefix = keyPrefix(key);
+		CompressStats prefixStats = stats.get(prefix);
+		if(prefixStats != null)return prefixStats;
+		if(stats.size() >= MAX_STATS_PREFIXES)prefix = OTHER_PREFIX;
+		return stats.computeIfAbsent(prefix, k -> new CompressStats());
+	}
+
+	private static String keyPrefix(String key) {
+		if(key == null)return OTHER_PREFIX;
+		int index = key.indexOf(':');
+		return index > 0 ? key.substring(0, index) : key;
+	}
+
+	private static void writeHeader(byte[] dest, byte type, int rawLength) {
+		dest[0] = MARKER;
+		dest[1] = type;
+		dest[2] = (byte) (rawLength >>> 24);
+		dest[3] = (byte) (rawLength >>> 16);
+		dest[4] = (byte) (rawLength >>> 8);
+		dest[5] = (byte) rawLength;
+	}
+
+	private static class Lz4Codec {
+		static final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+		static final LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+
+		static byte[] compress(byte[] bytes) {
+			int maxLength = compressor.maxCompressedLength(bytes.length);
+			byte[] dest = new byte[HEADER_SIZE + maxLength];
+			int length = compressor.compress(bytes, 0, bytes.length, dest, HEADER_SIZE, maxLength);
+			writeHeader(dest, TYPE_LZ4, bytes.length);
+			return Arrays.copyOf(dest, HEADER_SIZE + length);
+		}
+
+		static byte[] decompress(byte[] bytes, int rawLength) {
+			byte[] dest = new byte[rawLength];
+			decompressor.decompress(bytes, HEADER_SIZE, dest, 0, rawLength);
+			return dest;
+		}
+	}
+
+	private static class ZstdCodec {
+
+		static byte[] compress(byte[] bytes, int level) {
+			int maxLength = (int) Zstd.compressBound(bytes.length);
+			byte[] dest = new byte[HEADER_SIZE + maxLength];
+			long length = Zstd.compressByteArray(dest, HEADER_SIZE, maxLength, bytes, 0, bytes.length, level);
+			if(Zstd.isError(length))return null;
+			writeHeader(dest, TYPE_ZSTD, bytes.length);
+			return Arrays.copyOf(dest, HEADER_SIZE + (int) length);
+		}
+
+		static byte[] decompress(byte[] bytes, int rawLength) {
+			byte[] dest = new byte[rawLength];
+			long length = Zstd.decompressByteArray(dest, 0, rawLength, bytes, HEADER_SIZE, bytes.length - HEADER_SIZE);
+			if(Zstd.isError(length)) {
+				throw new IllegalStateException("zstd decompress error:" + Zstd.getErrorName(length));
+			}
+			return dest;
+		}
+	}
+
+	public static class CompressStats {
+		private final LongAdder compressed = new LongAdder();
+		private final LongAdder skipped = new LongAdder();
+		private final LongAdder rawBytes = new LongAdder();
+		private final LongAdder compressedBytes = new LongAdder();
+
+		public long getCompressedCount() {
+			return compressed.sum();
+		}
+
+		/**
+		 * 超过阈值但压缩收益不足未压缩的数量
+		 */
+		public long getSkippedCount() {
+			return skipped.sum();
+		}
+
+		public long getRawBytes() {
+			return rawBytes.sum();
+		}
+
+		public long getCompressedBytes() {
+			return compressedBytes.sum();
+		}
+
+		/**
+		 * 压缩率（压缩后/压缩前）
+		 */
+		public double getRatio() {
+			long raw = getRawBytes();
+			return raw == 0 ? 1d : (double) getCompressedBytes() / raw;
+		}
+
+		@Override
+		public String toString() {
+			return "CompressStats [compressed=" + getCompressedCount() + ", skipped=" + getSkippedCount() + ", rawBytes="
+					+ getRawBytes() + ", compressedBytes=" + getCompressedBytes() + ", ratio=" + getRatio() + "]";
+		}
+	}
+}
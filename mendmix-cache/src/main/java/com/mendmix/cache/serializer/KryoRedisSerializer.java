@@ -24,12 +24,24 @@ public class KryoRedisSerializer implements RedisSerializer<Object>{
 
 	@Override
 	public byte[] serialize(Object t) throws SerializationException {
-		return SerializeUtils.serialize(t);
+		//RedisSerializer无key信息，统计归入默认前缀
+		return serialize(null, t);
+	}
+	
+	/**
+	 * 带key序列化，压缩统计按key前缀归类
+	 * @param key
+	 * @param t
+	 * @return
+	 */
+	public byte[] serialize(String key, Object t) throws SerializationException {
+		return CacheValueCodec.encode(key, SerializeUtils.serialize(t));
 	}
 
 	@Override
 	public Object deserialize(byte[] bytes) throws SerializationException {
-		return SerializeUtils.deserialize(bytes);
+		if(bytes == null)return null;
+		return SerializeUtils.deserialize(CacheValueCodec.decode(bytes));
 	}
 
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.cache.serializer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.mendmix.cache.redis.JedisProviderFactory;
+import com.mendmix.common.serializer.ClassIdStore;
+import com.mendmix.common.util.ResourceUtils;
+
+import redis.clients.jedis.commands.JedisCommands;
+
+/**
+ * 基于redis hash的类ID存储，集群各节点共享
+ * <br>
+ * 序号字段自增分配ID，HSETNX保证并发注册同一类时ID唯一。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月16日
+ */
+public class RedisClassIdStore implements ClassIdStore {
+
+	private static final String SEQUENCE_FIELD = "@sequence";
+
+	private final String groupName;
+	private final String key;
+
+	public RedisClassIdStore() {
+		this(ResourceUtils.getProperty("mendmix.serializer.kryoRegistry.redisGroup"),
+				ResourceUtils.getProperty("mendmix.serializer.kryoRegistry.redisKey", "mendmix:kryo:classIds"));
+	}
+
+	public RedisClassIdStore(String groupName, String key) {
+		this.groupName = groupName;
+		this.key = key;
+	}
+
+	@Override
+	public Map<String, Integer> loadAll() {
+		try {
+			Map<String, String> values = getCommands().hgetAll(key);
+			Map<String, Integer> result = new HashMap<>(values.size());
+			for (Map.Entry<String, String> entry : values.entrySet()) {
+				if(SEQUENCE_FIELD.equals(entry.getKey()))continue;
+				result.put(entry.getKey(), Integer.parseInt(entry.getValue()));
+			}
+			return result;
+		} finally {
+			JedisProviderFactory.getJedisProvider(groupName).release();
+		}
+	}
+
+	@Override
+	public int register(String className) {
+		try {
+			JedisCommands commands = getCommands();
+			String exists = commands.hget(key, className);
+			if(exists != null)return Integer.parseInt(exists);
+			long id = commands.hincrBy(key, SEQUENCE_FIELD, 1);
+			if(commands.hsetnx(key, className, String.valueOf(id)) == 1) {
+				return (int) id;
+			}
+			//并发注册，以先写入的为准
+			return Integer.parseInt(commands.hget(key, className));
+		} finally {
+			JedisProviderFactory.getJedisProvider(groupName).release();
+		}
+	}
+
+	private JedisCommands getCommands() {
+		return JedisProviderFactory.getJedisCommands(groupName);
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.test.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import com.mendmix.cache.CacheAdapter;
+import com.mendmix.cache.adapter.LocalCacheAdapter;
+import com.mendmix.cache.adapter.RedisCacheAdapter;
+
+public class AsyncCacheAdapterTest {
+
+	@Test
+	public void testAsyncRoundTrip() throws Exception {
+		CacheAdapter cacheAdapter = new LocalCacheAdapter(3600);
+		cacheAdapter.setAsync("User.id:1", "vakin", 60).get(1, TimeUnit.SECONDS);
+		cacheAdapter.setStrAsync("User.id:2", "jim", 60).get(1, TimeUnit.SECONDS);
+		Assert.assertEquals("vakin", cacheAdapter.<String>getAsync("User.id:1").get(1, TimeUnit.SECONDS));
+		Assert.assertEquals("jim", cacheAdapter.getStrAsync("User.id:2").get(1, TimeUnit.SECONDS));
+
+		Map<String, String> values = cacheAdapter.<String>getAllAsync(Arrays.asList("User.id:2", "User.id:3", "User.id:1")).get(1, TimeUnit.SECONDS);
+		Assert.assertEquals(Arrays.asList("User.id:2", "User.id:1"), Arrays.asList(values.keySet().toArray()));
+
+		cacheAdapter.removeAsync("User.id:1").get(1, TimeUnit.SECONDS);
+		Assert.assertNull(cacheAdapter.getAsync("User.id:1").get(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testRemoveFallbackToDelWithoutUnlink() {
+		List<String> commands = new ArrayList<>();
+		//redis 4.0以下不支持UNLINK
+		RedisTemplate<String, Object> template = new RedisTemplate<String, Object>() {
+			@Override
+			public Long unlink(Collection<String> keys) {
+				commands.add("UNLINK" + keys);
+				throw new InvalidDataAccessApiUsageException("ERR unknown command 'UNLINK'");
+			}
+			@Override
+			public Long delete(Collection<String> keys) {
+				commands.add("DEL" + keys);
+				return (long) keys.size();
+			}
+		};
+		RedisCacheAdapter cacheAdapter = new RedisCacheAdapter(template, null);
+		cacheAdapter.remove("User.id:1", "User.id:2");
+		cacheAdapter.remove("User.id:3", "User.id:4");
+		Assert.assertEquals(Arrays.asList("UNLINK[User.id:1, User.id:2]", "DEL[User.id:1, User.id:2]", "DEL[User.id:3, User.id:4]"), commands);
+	}
+}
@@ -16,10 +16,14 @@
 package com.mendmix.test.cache;
 
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -30,6 +34,8 @@ import org.springframework.context.ApplicationContextAware;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import com.mendmix.cache.command.KeyPrefixRemover;
+import com.mendmix.cache.command.RedisBatchCommand;
 import com.mendmix.cache.command.RedisHashMap;
 import com.mendmix.cache.command.RedisNumber;
 import com.mendmix.cache.command.RedisObject;
@@ -80,6 +86,43 @@ public class CacheCommondTest implements ApplicationContextAware{
 		redisObject.remove();
 	}
 	
+	@Test
+	public void testRedisBatch() {
+		Map<String, Object> users = new LinkedHashMap<>();
+		Map<String, Long> expires = new HashMap<>();
+		for (int i = 1; i <= 20; i++) {
+			users.put("User.id:" + i, new User(i, "user" + i));
+			expires.put("User.id:" + i, 60L + i);
+		}
+		RedisBatchCommand.setObjectsWithGroup(null, users, expires);
+		List<User> list = RedisBatchCommand.getObjects("User.id:3","User.id:notexists","User.id:1");
+		Assert.assertEquals(3, list.get(0).getId().intValue());
+		Assert.assertNull(list.get(1));
+		Assert.assertEquals(1, list.get(2).getId().intValue());
+		Assert.assertTrue(new RedisObject("User.id:20").getTtl() > 60);
+		RedisBatchCommand.removeObjects(users.keySet().toArray(new String[0]));
+	}
+	
+	@Test
+	public void testRemoveByKeyPrefix() throws Exception {
+		for (int i = 0; i < 100; i++) {
+			new RedisString("prefixRemove:" + i).set("v" + i, 60);
+		}
+		KeyPrefixRemover remover = new KeyPrefixRemover(null, "prefixRemove:");
+		remover.setBatchSize(20);
+		List<Long> progress = new CopyOnWriteArrayList<>();
+		remover.setProgressListener(r -> progress.add(r.getRemovedCount()));
+		Assert.assertEquals(100L, remover.executeAsync().get().longValue());
+		Assert.assertTrue(remover.isDone());
+		//每批删除后回调，删除数量递增
+		Assert.assertFalse(progress.isEmpty());
+		for (int i = 1; i < progress.size(); i++) {
+			Assert.assertTrue(progress.get(i) >= progress.get(i - 1));
+		}
+		Assert.assertEquals(100L, progress.get(progress.size() - 1).longValue());
+		Assert.assertFalse(new RedisString("prefixRemove:1").exists());
+	}
+	
 	@Test
 	public void testRedisNumber(){
 		long increase = new RedisNumber("ins_test").increase(5);
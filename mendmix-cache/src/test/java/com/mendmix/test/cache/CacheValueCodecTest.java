@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.test.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mendmix.cache.serializer.CacheValueCodec;
+import com.mendmix.cache.serializer.KryoRedisSerializer;
+import com.mendmix.common.util.SerializeUtils;
+
+public class CacheValueCodecTest {
+
+	@Before
+	public void setUp() {
+		CacheValueCodec.setEnabled(true);
+		CacheValueCodec.setThreshold(256);
+		CacheValueCodec.resetStats();
+	}
+
+	@After
+	public void tearDown() {
+		CacheValueCodec.setEnabled(false);
+		CacheValueCodec.setCodec(CacheValueCodec.CODEC_LZ4);
+	}
+
+	@Test
+	public void testLz4RoundTrip() {
+		assertRoundTrip(CacheValueCodec.CODEC_LZ4);
+	}
+
+	@Test
+	public void testZstdRoundTrip() {
+		assertRoundTrip(CacheValueCodec.CODEC_ZSTD);
+	}
+
+	@Test
+	public void testSmallAndLegacyValues() {
+		byte[] small = SerializeUtils.serialize("vakin");
+		Assert.assertSame(small, CacheValueCodec.encode("User.name:1", small));
+		//开启前写入的大对象未压缩，原样读取
+		byte[] legacy = SerializeUtils.serialize(buildList());
+		Assert.assertFalse(CacheValueCodec.isCompressed(legacy));
+		Assert.assertSame(legacy, CacheValueCodec.decode(legacy));
+	}
+
+	@Test
+	public void testSerializerStatsByKeyPrefix() {
+		KryoRedisSerializer serializer = new KryoRedisSerializer();
+		List<String> list = buildList();
+		byte[] encoded = serializer.serialize("UserEntity.id:1", list);
+		Assert.assertTrue(CacheValueCodec.isCompressed(encoded));
+		Assert.assertEquals(list, serializer.deserialize(encoded));
+		Assert.assertEquals(1, CacheValueCodec.getStats().get("UserEntity.id").getCompressedCount());
+		Assert.assertNull(CacheValueCodec.getStats().get("_others_"));
+	}
+
+	private void assertRoundTrip(String codec) {
+		CacheValueCodec.setCodec(codec);
+		List<String> list = buildList();
+		byte[] raw = SerializeUtils.serialize(list);
+		byte[] encoded = CacheValueCodec.encode("UserEntityMapper.findByStatus:1", raw);
+		Assert.assertTrue(CacheValueCodec.isCompressed(encoded));
+		Assert.assertTrue(encoded.length < raw.length);
+		Assert.assertEquals(list, SerializeUtils.deserialize(CacheValueCodec.decode(encoded)));
+		CacheValueCodec.CompressStats stats = CacheValueCodec.getStats().get("UserEntityMapper.findByStatus");
+		Assert.assertEquals(1, stats.getCompressedCount());
+		Assert.assertTrue(stats.getRatio() < 1);
+	}
+
+	private List<String> buildList() {
+		List<String> list = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			list.add("user_" + (i % 10) + "@mendmix.com");
+		}
+		return list;
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.test.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.mendmix.cache.local.ClearCommand;
+import com.mendmix.cache.local.GuavaLevel1CacheProvider;
+import com.mendmix.cache.local.Level1CacheStats;
+
+public class Level1CacheTest {
+
+	@Test
+	public void testRemoveSingleKey() {
+		GuavaLevel1CacheProvider provider = new GuavaLevel1CacheProvider();
+		provider.set("User", "User.id:1", "u1");
+		provider.set("User", "User.id:2", "u2");
+		provider.remove("User", "User.id:1");
+		Assert.assertNull(provider.get("User", "User.id:1"));
+		Assert.assertEquals("u2", provider.get("User", "User.id:2"));
+
+		Level1CacheStats stats = provider.getStats("User");
+		Assert.assertEquals(1, stats.getHitCount());
+		Assert.assertEquals(1, stats.getMissCount());
+		Assert.assertEquals(1, stats.getSize());
+	}
+
+	@Test
+	public void testBatchClearCommand() {
+		ClearCommand command = ClearCommand.batch("User", Arrays.asList("User.id:1", "User.id:2"), 100);
+		command = ClearCommand.deserialize(command.serialize());
+		Assert.assertEquals(2, command.getKeys().size());
+		Assert.assertNull(command.getKeyFilter());
+
+		List<String> keys = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			keys.add("User.id:" + i);
+		}
+		command = ClearCommand.batch("User", keys, 100);
+		command = ClearCommand.deserialize(command.serialize());
+		Assert.assertNull(command.getKeys());
+
+		GuavaLevel1CacheProvider provider = new GuavaLevel1CacheProvider();
+		for (int i = 0; i < 1000; i++) {
+			provider.set("User", "User.id:" + i, i);
+		}
+		provider.set("User", "User.name:jack", "jack");
+		provider.removeMatched("User", command.buildKeyMatcher());
+		Assert.assertEquals(1, provider.getStats("User").getSize());
+	}
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.test.cache;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.mendmix.cache.local.MapCacheProvider;
+
+/**
+ * MapCacheProvider 新旧实现对比（W-TinyLFU + 时间轮 vs 优先队列轮询）
+ * <br>
+ * 原实现超过maxSize直接抛异常，对比时旧实现容量设为不限。
+ *
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月10日
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class MapCacheProviderBenchmark {
+
+	private static final int MAX_SIZE = 10000;
+	private static final int KEY_SPACE = MAX_SIZE * 4;
+
+	@Param({ "legacy", "tinylfu" })
+	public String impl;
+
+	private LegacyMapCacheProvider legacy;
+	private MapCacheProvider tinylfu;
+	private String[] keys;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		keys = new String[KEY_SPACE];
+		for (int i = 0; i < KEY_SPACE; i++) {
+			keys[i] = "User.id:" + i;
+		}
+		if ("legacy".equals(impl)) {
+			legacy = new LegacyMapCacheProvider(1000, Integer.MAX_VALUE);
+		} else {
+			tinylfu = new MapCacheProvider(1000, MAX_SIZE);
+		}
+		for (int i = 0; i < MAX_SIZE; i++) {
+			set(keys[i]);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		if (legacy != null)
+			legacy.close();
+		if (tinylfu != null)
+			tinylfu.close();
+	}
+
+	@Benchmark
+	public Object get() {
+		String key = nextKey();
+		return legacy != null ? legacy.get(key) : tinylfu.get(key);
+	}
+
+	@Benchmark
+	public boolean set() {
+		return set(nextKey());
+	}
+
+	@Benchmark
+	public Object readMostly() {
+		String key = nextKey();
+		if (ThreadLocalRandom.current().nextInt(10) == 0) {
+			return set(key);
+		}
+		return legacy != null ? legacy.get(key) : tinylfu.get(key);
+	}
+
+	@Benchmark
+	public boolean remove() {
+		String key = nextKey();
+		set(key);
+		return legacy != null ? legacy.remove(key) : tinylfu.remove(key);
+	}
+
+	private boolean set(String key) {
+		return legacy != null ? legacy.set(key, key, 60) : tinylfu.set(key, key, 60);
+	}
+
+	/**
+	 * 近似幂律分布：半数请求集中在前1%的key
+	 */
+	private String nextKey() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int index = random.nextBoolean() ? random.nextInt(KEY_SPACE / 100) : random.nextInt(KEY_SPACE);
+		return keys[index];
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(MapCacheProviderBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+}
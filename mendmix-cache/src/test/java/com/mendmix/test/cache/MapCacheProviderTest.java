@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.test.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.mendmix.cache.local.MapCacheProvider;
+
+public class MapCacheProviderTest {
+
+	@Test
+	public void testEvictInsteadOfFail() {
+		MapCacheProvider provider = new MapCacheProvider(1000, 100);
+		//热点key
+		for (int i = 0; i < 10; i++) {
+			provider.set("hot" + i, i, 0);
+			for (int j = 0; j < 10; j++) {
+				provider.get("hot" + i);
+			}
+		}
+		//大量一次性key扫描，期间热点key持续被访问
+		for (int i = 0; i < 10000; i++) {
+			provider.set("key" + i, i, 60);
+			provider.get("hot" + (i % 10));
+		}
+		Assert.assertTrue(provider.size() <= 100);
+		for (int i = 0; i < 10; i++) {
+			Assert.assertEquals(Integer.valueOf(i), provider.get("hot" + i));
+		}
+		provider.close();
+	}
+
+	@Test
+	public void testExpireAndRemove() throws InterruptedException {
+		MapCacheProvider provider = new MapCacheProvider(100, 1000);
+		provider.set("a", "a", 1);
+		provider.set("b", "b", 60);
+		provider.set("c", "c", 0);
+		Assert.assertTrue(provider.exists("a"));
+		provider.remove("b");
+		Assert.assertFalse(provider.exists("b"));
+		Thread.sleep(2100);
+		Assert.assertNull(provider.get("a"));
+		Assert.assertEquals("c", provider.get("c"));
+		Assert.assertEquals(1, provider.size());
+		provider.close();
+	}
+}
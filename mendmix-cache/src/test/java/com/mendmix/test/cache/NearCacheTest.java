@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.test.cache;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import com.mendmix.cache.adapter.NearCacheRedisAdapter;
+import com.mendmix.cache.local.NearCache;
+import com.mendmix.cache.local.NearCacheInvalidator;
+import com.mendmix.cache.serializer.KryoRedisSerializer;
+
+public class NearCacheTest {
+
+	private LocalInvalidator invalidator;
+	private NearCache nearCache;
+
+	@Before
+	public void setUp() {
+		invalidator = new LocalInvalidator();
+		nearCache = new NearCache(100, 60, Arrays.asList("SysConfig."), invalidator);
+		invalidator.active = true;
+	}
+
+	@After
+	public void tearDown() {
+		nearCache.close();
+	}
+
+	@Test
+	public void testHitAndInvalidate() {
+		Assert.assertTrue(nearCache.isCacheable("SysConfig.site"));
+		Assert.assertFalse(nearCache.isCacheable("User.id:1"));
+		Assert.assertNull(nearCache.get("SysConfig.site"));
+		nearCache.completeLoad("SysConfig.site", nearCache.beginLoad("SysConfig.site"), "mendmix");
+		Assert.assertEquals("mendmix", nearCache.get("SysConfig.site"));
+		invalidator.listener.onInvalidate("SysConfig.site");
+		Assert.assertNull(nearCache.get("SysConfig.site"));
+		Assert.assertEquals(1, nearCache.getHitCount());
+		Assert.assertEquals(2, nearCache.getMissCount());
+		Assert.assertEquals(1d / 3, nearCache.getHitRatio(), 0.0001);
+	}
+
+	@Test
+	public void testInvalidateDuringLoad() {
+		Object token = nearCache.beginLoad("SysConfig.site");
+		//回源期间其他节点写入
+		invalidator.listener.onInvalidate("SysConfig.site");
+		nearCache.completeLoad("SysConfig.site", token, "stale");
+		Assert.assertNull(nearCache.get("SysConfig.site"));
+		Assert.assertEquals(1, nearCache.getDiscardedLoadCount());
+	}
+
+	@Test
+	public void testBypassWhenInactive() {
+		nearCache.completeLoad("SysConfig.site", nearCache.beginLoad("SysConfig.site"), "mendmix");
+		invalidator.active = false;
+		Assert.assertNull(nearCache.get("SysConfig.site"));
+		invalidator.active = true;
+		invalidator.listener.onInvalidateAll();
+		Assert.assertNull(nearCache.get("SysConfig.site"));
+		Assert.assertEquals(0, nearCache.size());
+	}
+
+	@Test
+	public void testAdapterReturnsCopies() {
+		KryoRedisSerializer serializer = new KryoRedisSerializer();
+		Map<String, byte[]> redis = new HashMap<>();
+		redis.put("SysConfig.user", serializer.serialize(new User(1, "vakin")));
+		AtomicInteger redisReads = new AtomicInteger();
+		RedisTemplate<String, Object> template = new RedisTemplate<>();
+		template.setKeySerializer(new StringRedisSerializer());
+		template.setValueSerializer(serializer);
+		NearCacheRedisAdapter adapter = new NearCacheRedisAdapter(template, null, nearCache) {
+			@Override
+			protected byte[] getRaw(String key) {
+				redisReads.incrementAndGet();
+				return redis.get(key);
+			}
+
+			@Override
+			protected Map<String, byte[]> getAllRaw(List<String> keys) {
+				redisReads.incrementAndGet();
+				Map<String, byte[]> result = new LinkedHashMap<>();
+				for (String key : keys) {
+					if(redis.containsKey(key))result.put(key, redis.get(key));
+				}
+				return result;
+			}
+		};
+
+		User first = adapter.get("SysConfig.user");
+		//调用方修改返回对象不影响近端缓存
+		first.setName("changed");
+		User second = adapter.get("SysConfig.user");
+		Assert.assertNotSame(first, second);
+		Assert.assertEquals("vakin", second.getName());
+		Map<String, User> all = adapter.getAll(Arrays.asList("SysConfig.user"));
+		Assert.assertNotSame(second, all.get("SysConfig.user"));
+		Assert.assertEquals("vakin", all.get("SysConfig.user").getName());
+		Assert.assertEquals(1, redisReads.get());
+	}
+
+	private static class LocalInvalidator implements NearCacheInvalidator {
+		Listener listener;
+		volatile boolean active;
+
+		@Override
+		public void start(Listener listener) {
+			this.listener = listener;
+		}
+
+		@Override
+		public boolean isActive() {
+			return active;
+		}
+
+		@Override
+		public void close() {}
+	}
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.test.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import com.mendmix.cache.adapter.PipelinedCommandDispatcher;
+
+public class PipelinedCommandDispatcherTest {
+
+	private static final String ERROR = "ERROR";
+
+	@Test
+	public void testBatchingAndResultOrder() throws Exception {
+		FakeRedisTemplate template = new FakeRedisTemplate();
+		PipelinedCommandDispatcher dispatcher = new PipelinedCommandDispatcher(template, 1, 128, 1000);
+		try {
+			//第一条命令阻塞分发线程，后续命令排队后在同一pipeline中发送
+			CountDownLatch started = new CountDownLatch(1);
+			CountDownLatch release = new CountDownLatch(1);
+			CompletableFuture<Object> first = dispatcher.submit(connection -> {
+				started.countDown();
+				await(release);
+				return "first";
+			}, raw -> raw);
+			Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+			List<CompletableFuture<String>> futures = new ArrayList<>();
+			for (int i = 0; i < 10; i++) {
+				futures.add(dispatcher.submit(template.command("v" + i), raw -> "converted-" + raw));
+			}
+			release.countDown();
+			Assert.assertEquals("first", first.get(5, TimeUnit.SECONDS));
+			for (int i = 0; i < 10; i++) {
+				Assert.assertEquals("converted-v" + i, futures.get(i).get(5, TimeUnit.SECONDS));
+			}
+			Assert.assertEquals(Collections.singletonList(10), template.pipelineSizes);
+			Assert.assertEquals(2, dispatcher.getBatchCount());
+			Assert.assertEquals(0, dispatcher.getCallerRunsCount());
+		} finally {
+			dispatcher.close();
+		}
+	}
+
+	@Test
+	public void testPipelineErrorFallbackOneByOne() throws Exception {
+		FakeRedisTemplate template = new FakeRedisTemplate();
+		PipelinedCommandDispatcher dispatcher = new PipelinedCommandDispatcher(template, 1, 128, 1000);
+		try {
+			CountDownLatch release = blockDispatcher(dispatcher);
+			CompletableFuture<String> ok1 = dispatcher.submit(template.command("a"), raw -> (String) raw);
+			CompletableFuture<String> failed = dispatcher.submit(template.command(ERROR), raw -> (String) raw);
+			CompletableFuture<String> ok2 = dispatcher.submit(template.command("b"), raw -> (String) raw);
+			release.countDown();
+			
+			Assert.assertEquals("a", ok1.get(5, TimeUnit.SECONDS));
+			Assert.assertEquals("b", ok2.get(5, TimeUnit.SECONDS));
+			try {
+				failed.get(5, TimeUnit.SECONDS);
+				Assert.fail("error command should fail");
+			} catch (ExecutionException e) {
+				Assert.assertTrue(e.getCause() instanceof RedisSystemException);
+			}
+			//整批失败后逐条重试
+			Assert.assertEquals(1, template.pipelineSizes.size());
+			Assert.assertEquals(3 + 1, template.singleCount);
+		} finally {
+			dispatcher.close();
+		}
+	}
+
+	@Test
+	public void testConverterErrorOnlyFailsItsCommand() throws Exception {
+		FakeRedisTemplate template = new FakeRedisTemplate();
+		PipelinedCommandDispatcher dispatcher = new PipelinedCommandDispatcher(template, 1, 128, 1000);
+		try {
+			CountDownLatch release = blockDispatcher(dispatcher);
+			CompletableFuture<Object> failed = dispatcher.submit(template.command("a"), raw -> {
+				throw new IllegalStateException("bad value");
+			});
+			CompletableFuture<Object> ok = dispatcher.submit(template.command("b"), raw -> raw);
+			release.countDown();
+			Assert.assertEquals("b", ok.get(5, TimeUnit.SECONDS));
+			try {
+				failed.get(5, TimeUnit.SECONDS);
+				Assert.fail("converter error should fail");
+			} catch (ExecutionException e) {
+				Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+			}
+		} finally {
+			dispatcher.close();
+		}
+	}
+
+	@Test
+	public void testRejectWhenQueueFullOrClosed() throws Exception {
+		FakeRedisTemplate template = new FakeRedisTemplate();
+		PipelinedCommandDispatcher dispatcher = new PipelinedCommandDispatcher(template, 1, 128, 1);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		dispatcher.submit(connection -> {
+			started.countDown();
+			return await(release);
+		}, raw -> raw);
+		Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+		CompletableFuture<Object> queued = dispatcher.submit(template.command("queued"), raw -> raw);
+		//队列已满，直接失败，不在调用线程执行
+		CompletableFuture<Object> rejected = dispatcher.submit(template.command("rejected"), raw -> raw);
+		assertRejected(rejected);
+		release.countDown();
+		Assert.assertEquals("queued", queued.get(5, TimeUnit.SECONDS));
+		Assert.assertEquals(1, dispatcher.getRejectCount());
+		Assert.assertEquals(0, dispatcher.getCallerRunsCount());
+		//被拒绝的命令未执行
+		Assert.assertEquals(2, template.singleCount);
+
+		dispatcher.close();
+		Assert.assertTrue(dispatcher.isClosed());
+		assertRejected(dispatcher.submit(template.command("afterClose"), raw -> raw));
+		Assert.assertEquals(2, dispatcher.getRejectCount());
+	}
+
+	private static void assertRejected(CompletableFuture<Object> future) throws InterruptedException {
+		Assert.assertTrue(future.isDone());
+		try {
+			future.get();
+			Assert.fail("command should be rejected");
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+		}
+	}
+
+	@Test
+	public void testAcquireSharedByConnectionFactory() {
+		FakeRedisTemplate template = new FakeRedisTemplate();
+		FakeRedisTemplate sameFactoryTemplate = new FakeRedisTemplate();
+		sameFactoryTemplate.setConnectionFactory(template.getRequiredConnectionFactory());
+		PipelinedCommandDispatcher dispatcher = PipelinedCommandDispatcher.acquire(template);
+		Assert.assertSame(dispatcher, PipelinedCommandDispatcher.acquire(sameFactoryTemplate));
+		Assert.assertNotSame(dispatcher, PipelinedCommandDispatcher.acquire(new FakeRedisTemplate()));
+
+		dispatcher.close();
+		Assert.assertFalse(dispatcher.isClosed());
+		dispatcher.close();
+		Assert.assertTrue(dispatcher.isClosed());
+		//引用释放完后重新获取为新实例
+		PipelinedCommandDispatcher another = PipelinedCommandDispatcher.acquire(template);
+		Assert.assertNotSame(dispatcher, another);
+		another.close();
+	}
+
+	/**
+	 * 阻塞唯一的分发线程，使后续提交的命令排队
+	 */
+	private static CountDownLatch blockDispatcher(PipelinedCommandDispatcher dispatcher) throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		dispatcher.submit(connection -> {
+			started.countDown();
+			return await(release);
+		}, raw -> raw);
+		Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+		return release;
+	}
+
+	private static boolean await(CountDownLatch latch) {
+		try {
+			return latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * 不连接redis，命令直接返回预设结果；pipeline中任一命令出错则整批抛出异常
+	 */
+	private static class FakeRedisTemplate extends RedisTemplate<String, Object> {
+
+		final ThreadLocal<List<Object>> pipelineResults = new ThreadLocal<>();
+		final List<Integer> pipelineSizes = Collections.synchronizedList(new ArrayList<>());
+		volatile int singleCount;
+
+		FakeRedisTemplate() {
+			setConnectionFactory(new JedisConnectionFactory());
+		}
+
+		RedisCallback<Object> command(Object result) {
+			return connection -> {
+				List<Object> results = pipelineResults.get();
+				if(results != null) {
+					results.add(result);
+					return null;
+				}
+				if(ERROR.equals(result))throw new RedisSystemException(ERROR, null);
+				return result;
+			};
+		}
+
+		@Override
+		public List<Object> executePipelined(RedisCallback<?> action, RedisSerializer<?> resultSerializer) {
+			List<Object> results = new ArrayList<>();
+			pipelineResults.set(results);
+			try {
+				action.doInRedis(null);
+			} finally {
+				pipelineResults.remove();
+			}
+			pipelineSizes.add(results.size());
+			if(results.contains(ERROR))throw new RedisSystemException(ERROR, null);
+			return results;
+		}
+
+		@Override
+		public <T> T execute(RedisCallback<T> action) {
+			singleCount++;
+			return action.doInRedis(null);
+		}
+	}
+}
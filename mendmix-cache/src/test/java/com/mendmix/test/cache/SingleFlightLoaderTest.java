@@ -0,0 +1,112 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.test.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.mendmix.cache.SingleFlightLoader;
+import com.mendmix.cache.adapter.LocalCacheAdapter;
+
+public class SingleFlightLoaderTest {
+
+	@Test
+	public void testConcurrentMissLoadOnce() throws Exception {
+		LocalCacheAdapter cacheAdapter = new LocalCacheAdapter(3600);
+		SingleFlightLoader loader = new SingleFlightLoader(cacheAdapter, 3000, false);
+		AtomicInteger loadCount = new AtomicInteger();
+		int threads = 20;
+		CountDownLatch startLatch = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<String>> futures = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			futures.add(executor.submit(() -> {
+				startLatch.await();
+				return loader.load("User.id:1", () -> cacheAdapter.get("User.id:1"), () -> {
+					loadCount.incrementAndGet();
+					Thread.sleep(200);
+					cacheAdapter.set("User.id:1", "vakin", 60);
+					return "vakin";
+				});
+			}));
+		}
+		startLatch.countDown();
+		for (Future<String> future : futures) {
+			Assert.assertEquals("vakin", future.get(5, TimeUnit.SECONDS));
+		}
+		Assert.assertEquals(1, loadCount.get());
+		executor.shutdown();
+	}
+
+	@Test
+	public void testConcurrentMissNotExistsLoadOnce() throws Exception {
+		LocalCacheAdapter cacheAdapter = new LocalCacheAdapter(3600);
+		SingleFlightLoader loader = new SingleFlightLoader(cacheAdapter, 3000, false);
+		AtomicInteger loadCount = new AtomicInteger();
+		int threads = 20;
+		CountDownLatch startLatch = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<String>> futures = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			futures.add(executor.submit(() -> {
+				startLatch.await();
+				return loader.load("User.id:404", () -> cacheAdapter.get("User.id:404"), () -> {
+					loadCount.incrementAndGet();
+					Thread.sleep(200);
+					return null;
+				});
+			}));
+		}
+		startLatch.countDown();
+		for (Future<String> future : futures) {
+			Assert.assertNull(future.get(5, TimeUnit.SECONDS));
+		}
+		Assert.assertEquals(1, loadCount.get());
+		executor.shutdown();
+	}
+
+	@Test
+	public void testLeaderNullResultShared() throws Exception {
+		SingleFlightLoader loader = new SingleFlightLoader(new LocalCacheAdapter(3600), 3000, false);
+		SingleFlightLoader.Flight leader = loader.begin("k");
+		SingleFlightLoader.Flight follower = loader.begin("k");
+		leader.complete(null);
+		Assert.assertTrue(follower.await());
+		Assert.assertNull(follower.getResult());
+	}
+
+	@Test
+	public void testLeaderFailThenFallback() throws Exception {
+		SingleFlightLoader loader = new SingleFlightLoader(new LocalCacheAdapter(3600), 3000, false);
+		SingleFlightLoader.Flight leader = loader.begin("k");
+		SingleFlightLoader.Flight follower = loader.begin("k");
+		Assert.assertTrue(leader.isLeader());
+		Assert.assertFalse(follower.isLeader());
+		leader.fail();
+		Assert.assertFalse(follower.await());
+		//leader完成后重新开始新一轮加载
+		Assert.assertTrue(loader.begin("k").isLeader());
+	}
+}
@@ -15,11 +15,18 @@
  */
 package com.mendmix.common.async;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,6 +34,10 @@ import org.slf4j.LoggerFactory;
 import com.mendmix.common.async.StandardThreadExecutor.StandardThreadFactory;
 
 /**
+ * 延迟重试执行器
+ * <br>
+ * 时间轮负责计时，到期任务投递到有界线程池并发执行；失败按指数退避（等抖动）再次进入时间轮，
+ * 间隔为[unit*2^n/2, unit*2^n]，不超过maxRetryPeriod。可选{@link RetryLog}持久化记录重试过程。
  * @description <br>
  * @author <a href="mailto:vakinge@gmail.com">vakinge</a>
  * @date 2016年7月20日
@@ -34,117 +45,235 @@ import com.mendmix.common.async.StandardThreadExecutor.StandardThreadFactory;
 public class DelayRetryExecutor {
 
 	private static final Logger logger = LoggerFactory.getLogger("com.zvosframework");
+	
+	private static final int DEFAULT_MAX_PERIOD_FACTOR = 64;
 
 	// 重试时间间隔单元（毫秒）
-	private long retryPeriodUnit;
-	private int maxReties;
-	private int queueCapacity;
-
-	private final PriorityBlockingQueue<PriorityTask<?>> taskQueue = new PriorityBlockingQueue<PriorityTask<?>>(1000);
-
-	private ExecutorService executor;
+	private final long retryPeriodUnit;
+	private final long maxRetryPeriod;
+	private final int maxReties;
+	private final int queueCapacity;
+	private final long tickMillis;
+	
+	private final HashedWheelTimer timer;
+	private final ThreadPoolExecutor executor;
+	private final RetryLog retryLog;
+	//等待或执行中的任务
+	private final Map<String, DelayTask<?>> tasks = new ConcurrentHashMap<>();
+	private final AtomicInteger taskCount = new AtomicInteger();
 
 	private AtomicBoolean closed = new AtomicBoolean(false);
 	
+	private final LongAdder submitCount = new LongAdder();
+	private final LongAdder rejectCount = new LongAdder();
+	private final LongAdder retryCount = new LongAdder();
+	private final LongAdder successCount = new LongAdder();
+	private final LongAdder exhaustedCount = new LongAdder();
+	
 	public int getRetryTaskNums() {
-		return taskQueue.size();
+		return taskCount.get();
 	}
 
 	public DelayRetryExecutor(int poolSize,int queueCapacity, int retryPeriodUnitMs, int maxReties) {
-
+		this(poolSize, queueCapacity, retryPeriodUnitMs, (long)retryPeriodUnitMs * DEFAULT_MAX_PERIOD_FACTOR, maxReties, null);
+	}
+	
+	public DelayRetryExecutor(int poolSize,int queueCapacity, long retryPeriodUnitMs, long maxRetryPeriodMs, int maxReties) {
+		this(poolSize, queueCapacity, retryPeriodUnitMs, maxRetryPeriodMs, maxReties, null);
+	}
+	
+	/**
+	 * 
+	 * @param poolSize 执行线程数
+	 * @param queueCapacity 最大等待任务数
+	 * @param retryPeriodUnitMs 重试间隔单元（毫秒）
+	 * @param maxRetryPeriodMs 最大重试间隔（毫秒）
+	 * @param maxReties 默认最大执行次数
+	 * @param retryLog 重试日志（可为空）
+	 */
+	public DelayRetryExecutor(int poolSize,int queueCapacity, long retryPeriodUnitMs, long maxRetryPeriodMs, int maxReties, RetryLog retryLog) {
 		this.queueCapacity = queueCapacity;
 		this.retryPeriodUnit = retryPeriodUnitMs;
+		this.maxRetryPeriod = Math.max(maxRetryPeriodMs, retryPeriodUnitMs);
 		this.maxReties = maxReties;
-		executor = Executors.newFixedThreadPool(poolSize, new StandardThreadFactory("DelayRetryExecutor"));
-		executor.execute(new Runnable() {
-			@Override
-			public void run() {
-				while (!closed.get()) {
-					try {
-						PriorityTask<?> task = taskQueue.take();
-						// 空任务跳出循环
-						if (task.getConsumer() == null)
-							break;
-						if (task.nextFireTime - System.currentTimeMillis() > 0) {
-							TimeUnit.MILLISECONDS.sleep(1000);
-							taskQueue.put(task);
-							continue;
-						}
-						task.run();
-					} catch (Exception e) {
-						e.printStackTrace();
-					}
-				}
-			}
-		});
+		this.retryLog = retryLog;
+		//精度取间隔单元的1/10，限制在10~100ms
+		this.tickMillis = Math.min(100, Math.max(10, retryPeriodUnitMs / 10));
+		this.timer = new HashedWheelTimer("DelayRetryTimer", tickMillis, 512);
+		this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(queueCapacity), new StandardThreadFactory("DelayRetryExecutor"));
+	}
+	
+	public <T> boolean submit(String traceId, ICaller<T> caller) {
+		return submit(traceId, caller, maxReties);
 	}
 	
-	public <T> void submit(String traceId, ICaller<T> caller) {
-		int taskCount;
-		if ((taskCount = taskQueue.size()) > queueCapacity) {
-			logger.warn("ZVOS-FRAMEWORK-TRACE-LOGGGING-->> Retry queue task count:{} over max queueCapacity:{}", taskCount,queueCapacity);
-			return;
+	/**
+	 * 
+	 * @param traceId
+	 * @param caller
+	 * @param maxRetries 最大执行次数
+	 * @return 是否提交成功
+	 */
+	public <T> boolean submit(String traceId, ICaller<T> caller, int maxRetries) {
+		if(closed.get()) {
+			logger.warn("ZVOS-FRAMEWORK-TRACE-LOGGGING-->> DelayRetryExecutor closed,ignore traceId:{}", traceId);
+			return false;
 		}
-		taskQueue.add(new PriorityTask<>(traceId,caller));
+		int count;
+		if ((count = taskCount.get()) >= queueCapacity) {
+			rejectCount.increment();
+			logger.warn("ZVOS-FRAMEWORK-TRACE-LOGGGING-->> Retry queue task count:{} over max queueCapacity:{}", count,queueCapacity);
+			return false;
+		}
+		DelayTask<T> task = new DelayTask<>(traceId, caller, maxRetries);
+		taskCount.incrementAndGet();
+		submitCount.increment();
+		if(traceId != null)tasks.putIfAbsent(traceId, task);
+		try {
+			schedule(task);
+		} catch (IllegalStateException e) {
+			//检查后被关闭，时间轮已停止
+			taskCount.decrementAndGet();
+			if(traceId != null)tasks.remove(traceId, task);
+			logger.warn("ZVOS-FRAMEWORK-TRACE-LOGGGING-->> DelayRetryExecutor closed,ignore traceId:{}", traceId);
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * @param traceId
+	 * @return 是否在等待或执行中
+	 */
+	public boolean contains(String traceId) {
+		return tasks.containsKey(traceId);
+	}
+	
+	/**
+	 * @param traceId
+	 * @return 已执行次数，不存在返回-1
+	 */
+	public int getAttempts(String traceId) {
+		DelayTask<?> task = tasks.get(traceId);
+		return task == null ? -1 : task.attempts;
 	}
 	
 	public void close() {
-		closed.set(true);
-		// taskQueue里面没有任务会一直阻塞，所以先add一个新任务保证执行
-		taskQueue.add(new PriorityTask<>(null,null));
+		if(!closed.compareAndSet(false, true))return;
+		List<Runnable> unprocessed = timer.stop();
+		executor.shutdown();
 		try {
-			Thread.sleep(1000);
-		} catch (Exception e) {
+			executor.awaitTermination(1, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
-		executor.shutdown();
-		logger.info("ZVOS-FRAMEWORK-TRACE-LOGGGING-->> DelayRetryExecutor closed");
+		if(retryLog != null)retryLog.close();
+		logger.info("ZVOS-FRAMEWORK-TRACE-LOGGGING-->> DelayRetryExecutor closed,unprocessed tasks:{}",unprocessed.size());
+	}
+	
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new HashMap<>(8);
+		map.put("pending", getRetryTaskNums());
+		map.put("submitCount", submitCount.sum());
+		map.put("rejectCount", rejectCount.sum());
+		map.put("retryCount", retryCount.sum());
+		map.put("successCount", successCount.sum());
+		map.put("exhaustedCount", exhaustedCount.sum());
+		return map;
+	}
+	
+	@Override
+	public String toString() {
+		return "DelayRetryExecutor " + toMap();
 	}
 	
-	class PriorityTask<T> implements Runnable, Comparable<PriorityTask<T>> {
+	/**
+	 * 第n次失败后的等待时间
+	 */
+	long nextDelay(int attempts) {
+		long base = retryPeriodUnit << Math.min(attempts, 30);
+		if(base <= 0 || base > maxRetryPeriod)base = maxRetryPeriod;
+		long half = base / 2;
+		return half + ThreadLocalRandom.current().nextLong(base - half + 1);
+	}
+	
+	private void schedule(DelayTask<?> task) {
+		long delay = nextDelay(task.attempts);
+		task.nextFireTime = System.currentTimeMillis() + delay;
+		timer.newTimeout(() -> dispatch(task), delay);
+		if(retryLog != null) {
+			try {
+				retryLog.onScheduled(task.traceId, task.attempts, task.nextFireTime);
+			} catch (Exception e) {
+				logger.warn("ZVOS-FRAMEWORK-TRACE-LOGGGING-->> retryLog onScheduled error:{},traceId:{}", e.getMessage(), task.traceId);
+			}
+		}
+	}
+	
+	private void dispatch(DelayTask<?> task) {
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			//线程池繁忙，下个tick再投递
+			if(!closed.get())timer.newTimeout(() -> dispatch(task), tickMillis);
+		}
+	}
+	
+	private void finish(DelayTask<?> task, Exception error) {
+		if(retryLog != null) {
+			try {
+				retryLog.onFinished(task.traceId, task.attempts, error == null, error == null ? null : error.toString());
+			} catch (Exception e) {
+				logger.warn("ZVOS-FRAMEWORK-TRACE-LOGGGING-->> retryLog onFinished error:{},traceId:{}", e.getMessage(), task.traceId);
+			}
+		}
+		taskCount.decrementAndGet();
+		if(task.traceId != null)tasks.remove(task.traceId, task);
+	}
+	
+	private class DelayTask<T> implements Runnable {
 
-		String traceId;
+		final String traceId;
 		final ICaller<T> caller;
+		final int maxRetries;
 
-		int retryCount = 0;
-		long nextFireTime;
+		volatile int attempts = 0;
+		volatile long nextFireTime;
 
-		public PriorityTask(String traceId,ICaller<T> caller) {
-			this(traceId,caller, System.currentTimeMillis() + retryPeriodUnit);
-		}
-		
-		public PriorityTask(String traceId,ICaller<T> caller, long nextFireTime) {
+		public DelayTask(String traceId,ICaller<T> caller, int maxRetries) {
 			this.traceId = traceId;
 			this.caller = caller;
-			this.nextFireTime = nextFireTime;
-		}
-
-		public ICaller<T> getConsumer() {
-			return caller;
+			this.maxRetries = maxRetries;
 		}
 		
 		@Override
 		public void run() {
+			attempts++;
 			try {
-				logger.debug("ZVOS-FRAMEWORK-TRACE-LOGGGING-->> DelayRetry begin traceId:" + traceId);
+				logger.debug("ZVOS-FRAMEWORK-TRACE-LOGGGING-->> DelayRetry begin traceId:{},attempts:{}", traceId, attempts);
 				caller.call();
-				logger.debug("ZVOS-FRAMEWORK-TRACE-LOGGGING-->> DelayRetry successed traceId:" + traceId);
+				successCount.increment();
+				finish(this, null);
+				logger.debug("ZVOS-FRAMEWORK-TRACE-LOGGGING-->> DelayRetry successed traceId:{}", traceId);
 			} catch (Exception e) {
-				retryCount++;
-				if (retryCount == maxReties) {
-					logger.error(String.format("ZVOS-FRAMEWORK-TRACE-LOGGGING-->> DelayRetry maxReties over %s,traceId:%s ", maxReties,traceId),e);
+				if (attempts >= maxRetries || closed.get()) {
+					exhaustedCount.increment();
+					finish(this, e);
+					logger.error(String.format("ZVOS-FRAMEWORK-TRACE-LOGGGING-->> DelayRetry maxReties over %s,traceId:%s ", maxRetries,traceId),e);
+					return;
+				}
+				retryCount.increment();
+				// 重新放入时间轮
+				try {
+					schedule(this);
+				} catch (IllegalStateException stopped) {
+					exhaustedCount.increment();
+					finish(this, e);
 					return;
 				}
-				nextFireTime = nextFireTime + retryCount * retryPeriodUnit;
-				// 重新放入任务队列
-				taskQueue.add(this);
-				logger.debug("ZVOS-FRAMEWORK-TRACE-LOGGGING-->> DelayRetry error ,reAdd to queue traceId:{},retryCount:{}" + traceId,retryCount);
+				logger.debug("ZVOS-FRAMEWORK-TRACE-LOGGGING-->> DelayRetry error ,reAdd to queue traceId:{},retryCount:{}", traceId, attempts);
 			}
 		}
 
-		@Override
-		public int compareTo(PriorityTask<T> o) {
-			return (int) (this.nextFireTime - o.nextFireTime);
-		}
-
 	}
 }
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.common.async;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mendmix.common.async.StandardThreadExecutor.StandardThreadFactory;
+
+/**
+ * 时间轮定时器
+ * <br>
+ * 单线程按tick推进，到期任务在tick线程执行（只应做投递到线程池等轻量操作）。
+ * 新增任务先进入无锁队列，由tick线程放入对应槽位，延迟精度为一个tick。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class HashedWheelTimer {
+
+	private static final Logger logger = LoggerFactory.getLogger("com.mendmix.common.concurrent");
+
+	private final long tickNanos;
+	private final List<Timeout>[] wheel;
+	private final int mask;
+	private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pendingCount = new AtomicInteger();
+	private final List<Runnable> unprocessedTasks = new ArrayList<>();
+	private final Thread workerThread;
+	private final long startTime;
+	private volatile boolean stopped;
+	//只在tick线程访问
+	private long tick;
+
+	/**
+	 * @param name 线程名
+	 * @param tickMillis 每个tick时长（毫秒）
+	 * @param ticksPerWheel 槽位数（调整为2的幂）
+	 */
+	@SuppressWarnings("unchecked")
+	public HashedWheelTimer(String name, long tickMillis, int ticksPerWheel) {
+		if(tickMillis <= 0)throw new IllegalArgumentException("tickMillis must be greater than 0");
+		int size = 1;
+		while(size < ticksPerWheel)size <<= 1;
+		this.wheel = new List[size];
+		for (int i = 0; i < size; i++) {
+			wheel[i] = new LinkedList<>();
+		}
+		this.mask = size - 1;
+		this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+		this.startTime = System.nanoTime();
+		this.workerThread = new StandardThreadFactory(name).newThread(this::run);
+		this.workerThread.start();
+	}
+
+	/**
+	 * @param task 到期执行的任务
+	 * @param delayMillis 延迟（毫秒）
+	 * @return
+	 */
+	public Timeout newTimeout(Runnable task, long delayMillis) {
+		if(stopped)throw new IllegalStateException("timer stopped");
+		long deadline = System.nanoTime() - startTime + TimeUnit.MILLISECONDS.toNanos(Math.max(delayMillis, 0));
+		Timeout timeout = new Timeout(task, deadline);
+		pendingCount.incrementAndGet();
+		newTimeouts.add(timeout);
+		return timeout;
+	}
+
+	public int getPendingCount() {
+		return pendingCount.get();
+	}
+
+	/**
+	 * 停止定时器
+	 * @return 未到期的任务
+	 */
+	public List<Runnable> stop() {
+		stopped = true;
+		workerThread.interrupt();
+		try {
+			workerThread.join(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (unprocessedTasks) {
+			return new ArrayList<>(unprocessedTasks);
+		}
+	}
+
+	private void run() {
+		while(!stopped) {
+			long deadline = waitForNextTick();
+			if(deadline < 0)break;
+			transferTimeouts();
+			expireTimeouts(wheel[(int) (tick & mask)], deadline);
+			tick++;
+		}
+		synchronized (unprocessedTasks) {
+			for (List<Timeout> bucket : wheel) {
+				collectUnprocessed(bucket);
+			}
+			collectUnprocessed(newTimeouts);
+		}
+	}
+
+	private long waitForNextTick() {
+		long deadline = tickNanos * (tick + 1);
+		for (;;) {
+			long current = System.nanoTime() - startTime;
+			long sleepMillis = (deadline - current + 999999) / 1000000;
+			if(sleepMillis <= 0)return current;
+			try {
+				Thread.sleep(sleepMillis);
+			} catch (InterruptedException e) {
+				if(stopped)return -1;
+			}
+		}
+	}
+
+	private void transferTimeouts() {
+		//单次最多转移数量，避免持续提交时tick线程无法推进
+		for (int i = 0; i < 100000; i++) {
+			Timeout timeout = newTimeouts.poll();
+			if(timeout == null)break;
+			if(timeout.cancelled)continue;
+			long calculated = timeout.deadline / tickNanos;
+			timeout.remainingRounds = (calculated - tick) / wheel.length;
+			long ticks = Math.max(calculated, tick);
+			wheel[(int) (ticks & mask)].add(timeout);
+		}
+	}
+
+	private void expireTimeouts(List<Timeout> bucket, long deadline) {
+		Iterator<Timeout> iterator = bucket.iterator();
+		while(iterator.hasNext()) {
+			Timeout timeout = iterator.next();
+			if(timeout.cancelled) {
+				iterator.remove();
+				continue;
+			}
+			if(timeout.remainingRounds > 0) {
+				timeout.remainingRounds--;
+				continue;
+			}
+			if(timeout.deadline > deadline)continue;
+			iterator.remove();
+			if(!timeout.expire())continue;
+			pendingCount.decrementAndGet();
+			try {
+				timeout.task.run();
+			} catch (Throwable e) {
+				//任务异常不影响tick线程
+				logger.warn("MENDMIX-TRACE-LOGGGING-->> HashedWheelTimer task error",e);
+			}
+		}
+	}
+
+	private void collectUnprocessed(Iterable<Timeout> timeouts) {
+		for (Timeout timeout : timeouts) {
+			if(timeout.expire())unprocessedTasks.add(timeout.task);
+		}
+	}
+
+	public class Timeout {
+		final Runnable task;
+		final long deadline;
+		long remainingRounds;
+		volatile boolean cancelled;
+		private final AtomicInteger state = new AtomicInteger();
+
+		Timeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * @return 已到期或已取消返回false
+		 */
+		public boolean cancel() {
+			if(!state.compareAndSet(0, 1))return false;
+			cancelled = true;
+			pendingCount.decrementAndGet();
+			return true;
+		}
+
+		boolean expire() {
+			return state.compareAndSet(0, 2);
+		}
+
+		public boolean isCancelled() {
+			return cancelled;
+		}
+	}
+}
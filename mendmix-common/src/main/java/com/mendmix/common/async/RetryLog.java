@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.common.async;
+
+/**
+ * 重试日志（可持久化重试记录，重启后可据此恢复或排查）
+ * <br>
+ * 在提交及执行线程中同步调用，实现应尽量轻量；抛出的异常只记录警告，不影响重试。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public interface RetryLog {
+
+	/**
+	 * 任务进入（或再次进入）重试等待
+	 * @param traceId
+	 * @param attempts 已执行次数
+	 * @param nextFireTime 下次执行时间
+	 */
+	void onScheduled(String traceId, int attempts, long nextFireTime);
+
+	/**
+	 * 任务结束（成功或超过最大重试次数）
+	 * @param traceId
+	 * @param attempts
+	 * @param success
+	 * @param error 最后一次错误
+	 */
+	void onFinished(String traceId, int attempts, boolean success, String error);
+
+	void close();
+}
@@ -151,8 +151,14 @@ public class StandardThreadExecutor extends ThreadPoolExecutor {
 	    private final ThreadGroup group;
 	    private final AtomicInteger threadNumber = new AtomicInteger(1);
 	    private final String namePrefix;
+	    private final boolean daemon;
 
 	    public StandardThreadFactory(String namePrefix) {
+	    	this(namePrefix, false);
+	    }
+	    
+	    public StandardThreadFactory(String namePrefix,boolean daemon) {
+	    	this.daemon = daemon;
 	        SecurityManager s = System.getSecurityManager();
 	        group = (s != null) ? s.getThreadGroup() :
 	                              Thread.currentThread().getThreadGroup();
@@ -165,8 +171,8 @@ public class StandardThreadExecutor extends ThreadPoolExecutor {
 	        Thread t = new Thread(group, r,
 	                              namePrefix + threadNumber.getAndIncrement(),
 	                              0);
-	        if (t.isDaemon())
-	            t.setDaemon(false);
+	        if (t.isDaemon() != daemon)
+	            t.setDaemon(daemon);
 	        if (t.getPriority() != Thread.NORM_PRIORITY)
 	            t.setPriority(Thread.NORM_PRIORITY);
 	        return t;
@@ -26,6 +26,8 @@ public class Page<T> extends PageParams{
     private int pages;
     //结果集
     private List<T> data;
+    //游标分页的下一页游标，为空表示没有更多数据
+    private String nextCursor;
      
 	public Page() {}
 	
@@ -73,6 +75,14 @@ public class Page<T> extends PageParams{
 	public void setData(List<T> data) {
 		this.data = data;
 	}
+
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	public void setNextCursor(String nextCursor) {
+		this.nextCursor = nextCursor;
+	}
     
     
 }
@@ -26,6 +26,10 @@ public class PageParams {
     private int pageSize = 10;
     
     private List<OrderBy> orderBys;
+    //不查询总数（末页时仍返回实际总数，否则total为-1）
+    private boolean countFree;
+    //游标分页：非null时按游标分页，空字符串表示第一页，后续传入上一页返回的nextCursor
+    private String cursor;
     
 	public PageParams() {}
 
@@ -64,6 +68,22 @@ public class PageParams {
 		this.orderBys = orderBys;
 	}
 	
+	public boolean isCountFree() {
+		return countFree;
+	}
+
+	public void setCountFree(boolean countFree) {
+		this.countFree = countFree;
+	}
+
+	public String getCursor() {
+		return cursor;
+	}
+
+	public void setCursor(String cursor) {
+		this.cursor = cursor;
+	}
+
 	public PageParams orderBy(OrderBy orderBy) {
 		if(orderBy == null)return this;
 		if(this.orderBys == null)this.orderBys = new ArrayList<>(2);
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.common.serializer;
+
+import java.util.Map;
+
+/**
+ * 序列化类ID持久化存储
+ * <br>
+ * 用于{@link KryoRegistrySerializer}自动学习的类ID，多个节点共享缓存时必须使用共享存储，保证同一类在各节点ID一致。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月16日
+ */
+public interface ClassIdStore {
+
+	/**
+	 * 加载全部已分配的类ID
+	 * @return className -> id
+	 */
+	Map<String, Integer> loadAll();
+
+	/**
+	 * 分配类ID，已分配时返回原ID
+	 * @param className
+	 * @return 大于0的ID
+	 */
+	int register(String className);
+}
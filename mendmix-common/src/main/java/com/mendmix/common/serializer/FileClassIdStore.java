@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.common.serializer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import com.mendmix.common.util.ResourceUtils;
+
+/**
+ * 本地文件存储类ID
+ * <br>
+ * 仅适用于单实例或随应用分发同一文件的场景，多实例共享缓存请使用共享存储实现（如RedisClassIdStore）。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月16日
+ */
+public class FileClassIdStore implements ClassIdStore {
+
+	private final File file;
+
+	public FileClassIdStore() {
+		this(ResourceUtils.getProperty("mendmix.serializer.kryoRegistry.classIdFile",
+				System.getProperty("user.home") + File.separator + ".mendmix" + File.separator + "kryo-class-ids.properties"));
+	}
+
+	public FileClassIdStore(String path) {
+		this.file = new File(path);
+	}
+
+	@Override
+	public synchronized Map<String, Integer> loadAll() {
+		Properties properties = load();
+		Map<String, Integer> result = new HashMap<>(properties.size());
+		for (String name : properties.stringPropertyNames()) {
+			result.put(name, Integer.parseInt(properties.getProperty(name)));
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized int register(String className) {
+		Properties properties = load();
+		String exists = properties.getProperty(className);
+		if(exists != null)return Integer.parseInt(exists);
+		int maxId = 0;
+		for (String name : properties.stringPropertyNames()) {
+			maxId = Math.max(maxId, Integer.parseInt(properties.getProperty(name)));
+		}
+		int id = maxId + 1;
+		properties.setProperty(className, String.valueOf(id));
+		store(properties);
+		return id;
+	}
+
+	private Properties load() {
+		Properties properties = new Properties();
+		if(!file.exists())return properties;
+		try(InputStream in = new FileInputStream(file)) {
+			properties.load(in);
+		} catch (IOException e) {
+			throw new RuntimeException("load class ids error:" + file, e);
+		}
+		return properties;
+	}
+
+	private void store(Properties properties) {
+		File dir = file.getAbsoluteFile().getParentFile();
+		if(!dir.exists())dir.mkdirs();
+		File tmpFile = new File(dir, file.getName() + ".tmp");
+		try {
+			try(OutputStream out = new FileOutputStream(tmpFile)) {
+				properties.store(out, "kryo class ids");
+			}
+			Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new RuntimeException("store class ids error:" + file, e);
+		}
+	}
+}
@@ -0,0 +1,393 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.common.serializer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.Registration;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
+import com.esotericsoftware.kryo.io.ByteBufferOutput;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.DefaultClassResolver;
+import com.mendmix.common.util.ResourceUtils;
+
+/**
+ * 基于类ID注册表的Kryo序列化
+ * <br>
+ * 与{@link KryoPoolSerializer}相比：
+ * <ul>
+ * <li>已注册的类只写入变长整型ID而非完整类名，显著减小payload；</li>
+ * <li>每线程复用Kryo及读写缓冲区，提供直接写入调用方{@link ByteBuffer}/{@link OutputStream}的接口，避免中间数组拷贝；</li>
+ * <li>未注册的类仍按类名写入，且可读取{@link KryoPoolSerializer}写入的旧数据。</li>
+ * </ul>
+ * 类ID来源：配置的类列表（ID=100+序号，只能追加不能调整顺序），以及配置{@link ClassIdStore}后自动学习的类（ID=10000+存储分配ID）。
+ * 注意：包含ID的数据无法被未开启该模式的旧节点读取，需全部节点升级后再开启。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月16日
+ */
+public class KryoRegistrySerializer implements Serializer {
+
+	private static final Logger logger = LoggerFactory.getLogger(KryoRegistrySerializer.class);
+
+	//kryo内置注册ID均小于该值
+	public static final int CONFIGURED_ID_BASE = 100;
+	public static final int LEARNED_ID_BASE = 10000;
+
+	private static final int BUFFER_SIZE = 1024;
+	//超过该大小的缓冲区用完不保留，避免大对象长期占用线程内存
+	private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+	//同一未知ID重复加载存储的退避时间
+	private static final long MISS_RELOAD_MIN_BACKOFF_MILLIS = 100;
+	private static final long MISS_RELOAD_MAX_BACKOFF_MILLIS = 30000;
+	private static final int MAX_TRACKED_MISSES = 1024;
+
+	private final Map<String, Integer> classIds = new ConcurrentHashMap<>();
+	private final Map<Integer, String> idClasses = new ConcurrentHashMap<>();
+	private final Map<String, Integer> configuredClassIds;
+	private final ClassIdStore classIdStore;
+	private volatile boolean storeLoaded;
+	//未知ID -> 退避状态
+	private final Map<Integer, MissBackoff> missBackoffs = new ConcurrentHashMap<>();
+
+	private final ThreadLocal<KryoHolder> holders = ThreadLocal.withInitial(KryoHolder::new);
+
+	public KryoRegistrySerializer(List<String> registerClasses, ClassIdStore classIdStore) {
+		Map<String, Integer> configured = new HashMap<>();
+		if(registerClasses != null) {
+			for (int i = 0; i < registerClasses.size(); i++) {
+				configured.put(registerClasses.get(i), CONFIGURED_ID_BASE + i);
+			}
+		}
+		this.configuredClassIds = Collections.unmodifiableMap(configured);
+		this.classIdStore = classIdStore;
+		for (Map.Entry<String, Integer> entry : configured.entrySet()) {
+			putClassId(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * 按配置创建
+	 * <pre>
+	 * mendmix.serializer.kryoRegistry.classes=com.xx.User,com.xx.Order
+	 * mendmix.serializer.kryoRegistry.classIdStore=com.mendmix.cache.serializer.RedisClassIdStore
+	 * </pre>
+	 * @return
+	 */
+	public static KryoRegistrySerializer fromConfig() {
+		List<String> registerClasses = ResourceUtils.getList("mendmix.serializer.kryoRegistry.classes");
+		String storeClass = ResourceUtils.getProperty("mendmix.serializer.kryoRegistry.classIdStore");
+		ClassIdStore classIdStore = null;
+		if(storeClass != null && !storeClass.trim().isEmpty()) {
+			try {
+				classIdStore = (ClassIdStore) Class.forName(storeClass.trim()).newInstance();
+			} catch (Exception e) {
+				throw new IllegalArgumentException("init classIdStore error:" + storeClass, e);
+			}
+		}
+		return new KryoRegistrySerializer(registerClasses, classIdStore);
+	}
+
+	@Override
+	public String name() {
+		return "kryo_registry_ser";
+	}
+
+	@Override
+	public byte[] serialize(Object obj) throws IOException {
+		if (obj == null)throw new RuntimeException("obj can not be null");
+		KryoHolder holder = acquire();
+		try {
+			holder.output.reset();
+			holder.kryo.writeClassAndObject(holder.output, obj);
+			//byte[]接口调用方要求精确长度，这里是唯一一次拷贝
+			return holder.output.toBytes();
+		} finally {
+			release(holder);
+		}
+	}
+
+	/**
+	 * 序列化写入输出流（不产生中间数组）
+	 * @param obj
+	 * @param out
+	 * @return 写入字节数
+	 * @throws IOException
+	 */
+	public int serialize(Object obj, OutputStream out) throws IOException {
+		if (obj == null)throw new RuntimeException("obj can not be null");
+		KryoHolder holder = acquire();
+		try {
+			holder.output.reset();
+			holder.kryo.writeClassAndObject(holder.output, obj);
+			out.write(holder.output.getBuffer(), 0, holder.output.position());
+			return holder.output.position();
+		} finally {
+			release(holder);
+		}
+	}
+
+	/**
+	 * 序列化直接写入调用方缓冲区（从当前position开始，完成后position后移）
+	 * @param obj
+	 * @param buffer 剩余空间不足时抛出KryoException或BufferOverflowException
+	 * @return 写入字节数
+	 */
+	public int serialize(Object obj, ByteBuffer buffer) {
+		if (obj == null)throw new RuntimeException("obj can not be null");
+		KryoHolder holder = acquire();
+		try {
+			int start = buffer.position();
+			ByteBufferOutput output = new ByteBufferOutput(buffer, buffer.limit());
+			holder.kryo.writeClassAndObject(output, obj);
+			buffer.position(output.position());
+			return output.position() - start;
+		} finally {
+			release(holder);
+		}
+	}
+
+	@Override
+	public Object deserialize(byte[] bytes) throws IOException {
+		if (bytes == null) throw new RuntimeException("bytes can not be null");
+		return deserialize(bytes, 0, bytes.length);
+	}
+
+	public Object deserialize(byte[] bytes, int offset, int length) {
+		KryoHolder holder = acquire();
+		try {
+			holder.input.setBuffer(bytes, offset, length);
+			return holder.kryo.readClassAndObject(holder.input);
+		} finally {
+			holder.input.setBuffer(holder.emptyBuffer);
+			release(holder);
+		}
+	}
+
+	/**
+	 * 从缓冲区当前position读取，完成后position后移
+	 * @param buffer
+	 * @return
+	 */
+	public Object deserialize(ByteBuffer buffer) {
+		if(buffer.hasArray()) {
+			KryoHolder holder = acquire();
+			try {
+				int start = buffer.arrayOffset() + buffer.position();
+				holder.input.setBuffer(buffer.array(), start, buffer.remaining());
+				Object value = holder.kryo.readClassAndObject(holder.input);
+				buffer.position(buffer.position() + holder.input.position() - start);
+				return value;
+			} finally {
+				holder.input.setBuffer(holder.emptyBuffer);
+				release(holder);
+			}
+		}
+		KryoHolder holder = acquire();
+		try {
+			ByteBufferInput input = new ByteBufferInput(buffer);
+			Object value = holder.kryo.readClassAndObject(input);
+			buffer.position(input.position());
+			return value;
+		} finally {
+			release(holder);
+		}
+	}
+
+	/**
+	 * 从输入流读取（会预读，输入流剩余数据不保证可继续使用）
+	 * @param in
+	 * @return
+	 */
+	public Object deserialize(InputStream in) {
+		KryoHolder holder = acquire();
+		try {
+			holder.streamInput.setInputStream(in);
+			return holder.kryo.readClassAndObject(holder.streamInput);
+		} finally {
+			holder.streamInput.setInputStream(null);
+			release(holder);
+		}
+	}
+
+	/**
+	 * 当前已知的类ID
+	 * @return
+	 */
+	public Map<String, Integer> getClassIds() {
+		return Collections.unmodifiableMap(classIds);
+	}
+
+	private KryoHolder acquire() {
+		KryoHolder holder = holders.get();
+		//自定义序列化器内嵌套调用时不复用线程缓冲区
+		if(holder.inUse)return new KryoHolder();
+		holder.inUse = true;
+		return holder;
+	}
+
+	private void release(KryoHolder holder) {
+		if(holder.output.getBuffer().length > MAX_RETAINED_BUFFER_SIZE) {
+			holder.output.setBuffer(new byte[BUFFER_SIZE], -1);
+		}
+		holder.inUse = false;
+	}
+
+	private void putClassId(String className, int id) {
+		classIds.put(className, id);
+		idClasses.put(id, className);
+	}
+
+	private Integer resolveClassId(Class<?> type) {
+		String className = type.getName();
+		Integer id = classIds.get(className);
+		if(id != null || classIdStore == null)return id;
+		if(type.isSynthetic() || className.contains("$$"))return null;
+		try {
+			loadStoreIfNecessary();
+			id = classIds.get(className);
+			if(id != null)return id;
+			id = LEARNED_ID_BASE + classIdStore.register(className);
+			putClassId(className, id);
+			return id;
+		} catch (Exception e) {
+			//注册失败写入类名，不影响序列化
+			logger.warn("MENDMIX-TRACE-LOGGGING-->> register kryo classId error,class:{}",className,e);
+			return null;
+		}
+	}
+
+	/**
+	 * 本地未知的ID（其他节点新学习的类）强制重新加载存储；同一ID重新加载后仍未知则按指数退避，避免异常数据频繁访问存储
+	 */
+	private String resolveClassName(int id) {
+		String className = idClasses.get(id);
+		if(className != null || classIdStore == null || id < LEARNED_ID_BASE)return className;
+		if(missBackoffs.size() > MAX_TRACKED_MISSES)missBackoffs.clear();
+		MissBackoff backoff = missBackoffs.computeIfAbsent(id, k -> new MissBackoff());
+		synchronized (backoff) {
+			className = idClasses.get(id);
+			if(className != null || System.currentTimeMillis() < backoff.nextReloadTime)return className;
+			try {
+				reloadStore();
+			} catch (Exception e) {
+				logger.warn("MENDMIX-TRACE-LOGGGING-->> reload kryo classIds error",e);
+			}
+			className = idClasses.get(id);
+			if(className != null) {
+				missBackoffs.remove(id);
+				return className;
+			}
+			backoff.delayMillis = backoff.delayMillis == 0 ? MISS_RELOAD_MIN_BACKOFF_MILLIS : Math.min(backoff.delayMillis * 2, MISS_RELOAD_MAX_BACKOFF_MILLIS);
+			backoff.nextReloadTime = System.currentTimeMillis() + backoff.delayMillis;
+			return null;
+		}
+	}
+
+	private void loadStoreIfNecessary() {
+		if(storeLoaded)return;
+		synchronized (this) {
+			if(!storeLoaded)reloadStore();
+		}
+	}
+
+	private synchronized void reloadStore() {
+		Map<String, Integer> stored = classIdStore.loadAll();
+		for (Map.Entry<String, Integer> entry : stored.entrySet()) {
+			if(configuredClassIds.containsKey(entry.getKey()))continue;
+			putClassId(entry.getKey(), LEARNED_ID_BASE + entry.getValue());
+		}
+		storeLoaded = true;
+	}
+
+	private static class MissBackoff {
+		long delayMillis;
+		long nextReloadTime;
+	}
+
+	private class KryoHolder {
+		final Kryo kryo;
+		final Output output = new Output(BUFFER_SIZE, -1);
+		final Input input = new Input();
+		final Input streamInput = new Input(BUFFER_SIZE);
+		final byte[] emptyBuffer = new byte[0];
+		boolean inUse;
+
+		KryoHolder() {
+			kryo = new Kryo(new RegistryClassResolver(), null);
+			kryo.setReferences(false);
+			kryo.setRegistrationRequired(false);
+			kryo.setWarnUnregisteredClasses(false);
+			for (Map.Entry<String, Integer> entry : configuredClassIds.entrySet()) {
+				try {
+					Class<?> type = Class.forName(entry.getKey(), false, kryo.getClassLoader());
+					kryo.register(type, entry.getValue());
+				} catch (ClassNotFoundException e) {
+					logger.warn("MENDMIX-TRACE-LOGGGING-->> kryo register class not found:{}",entry.getKey());
+				}
+			}
+		}
+	}
+
+	/**
+	 * 写入时为未注册类分配ID，读取时按ID延迟注册
+	 */
+	private class RegistryClassResolver extends DefaultClassResolver {
+
+		@SuppressWarnings("rawtypes")
+		@Override
+		public Registration registerImplicit(Class type) {
+			Integer id = resolveClassId(type);
+			if(id == null || getRegistration(id) != null)return super.registerImplicit(type);
+			return register(new Registration(type, kryo.getDefaultSerializer(type), id));
+		}
+
+		@Override
+		public Registration readClass(Input input) {
+			int position = input.position();
+			int classId = input.readVarInt(true);
+			input.setPosition(position);
+			//0:null 1:类名 其余为ID+2
+			if(classId > 1 && getRegistration(classId - 2) == null) {
+				String className = resolveClassName(classId - 2);
+				if(className == null) {
+					throw new KryoException("Encountered unknown class ID: " + (classId - 2) + ", not found in classIdStore");
+				}
+				try {
+					Class<?> type = Class.forName(className, false, kryo.getClassLoader());
+					register(new Registration(type, kryo.getDefaultSerializer(type), classId - 2));
+				} catch (ClassNotFoundException e) {
+					logger.warn("MENDMIX-TRACE-LOGGGING-->> kryo class not found:{},id:{}",className,classId - 2);
+				}
+			}
+			return super.readClass(input);
+		}
+	}
+}
@@ -16,8 +16,11 @@
 package com.mendmix.common.util;
 
 import java.io.IOException;
+import java.io.OutputStream;
 
 import com.mendmix.common.serializer.KryoPoolSerializer;
+import com.mendmix.common.serializer.KryoRegistrySerializer;
+import com.mendmix.common.serializer.Serializer;
 
 /**
  * @description <br>
@@ -26,7 +29,14 @@ import com.mendmix.common.serializer.KryoPoolSerializer;
  */
 public class SerializeUtils {
 
-	static KryoPoolSerializer serializer = new KryoPoolSerializer();
+	//开启类ID注册表模式前需确保所有读取方已升级
+	static Serializer serializer = ResourceUtils.getBoolean("mendmix.serializer.kryoRegistry.enabled", false) 
+			? KryoRegistrySerializer.fromConfig() : new KryoPoolSerializer();
+	
+	public static Serializer getSerializer() {
+		return serializer;
+	}
+	
     /**
      * 序列化
      *
@@ -41,6 +51,24 @@ public class SerializeUtils {
 		}
     }
 
+    /**
+     * 序列化写入输出流
+     *
+     * @param object
+     * @param out
+     */
+    public static void serialize(Object object, OutputStream out) {
+    	try {
+    		if(serializer instanceof KryoRegistrySerializer) {
+    			((KryoRegistrySerializer)serializer).serialize(object, out);
+    		}else {
+    			out.write(serializer.serialize(object));
+    		}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+    }
+
     /**
      * 反序列化
      *
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.common.async;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class DelayRetryExecutorTest {
+
+	private DelayRetryExecutor executor;
+
+	@After
+	public void tearDown() {
+		if(executor != null)executor.close();
+	}
+
+	@Test
+	public void testBackoffBounds() {
+		executor = new DelayRetryExecutor(1, 10, 100, 1000, 3);
+		for (int attempts = 0; attempts < 40; attempts++) {
+			long base = Math.min(100L << Math.min(attempts, 30), 1000);
+			for (int i = 0; i < 200; i++) {
+				long delay = executor.nextDelay(attempts);
+				Assert.assertTrue("attempts " + attempts + " delay " + delay, delay >= base / 2 && delay <= base);
+			}
+		}
+	}
+
+	@Test
+	public void testMaxRetryPeriodNotLessThanUnit() {
+		executor = new DelayRetryExecutor(1, 10, 100, 10, 3);
+		for (int i = 0; i < 200; i++) {
+			long delay = executor.nextDelay(5);
+			Assert.assertTrue(delay >= 50 && delay <= 100);
+		}
+	}
+
+	@Test
+	public void testRetryUntilSuccess() throws InterruptedException {
+		executor = new DelayRetryExecutor(2, 10, 10, 40, 5);
+		AtomicInteger calls = new AtomicInteger();
+		CountDownLatch latch = new CountDownLatch(1);
+		Assert.assertTrue(executor.submit("task-1", () -> {
+			if(calls.incrementAndGet() < 3)throw new IllegalStateException("failed");
+			latch.countDown();
+			return null;
+		}));
+		Assert.assertTrue(executor.contains("task-1"));
+		Assert.assertTrue(latch.await(2, TimeUnit.SECONDS));
+		waitFinished("task-1");
+
+		Assert.assertEquals(3, calls.get());
+		Assert.assertEquals(-1, executor.getAttempts("task-1"));
+		Assert.assertEquals(0, executor.getRetryTaskNums());
+		Assert.assertEquals(1L, executor.toMap().get("submitCount"));
+		Assert.assertEquals(2L, executor.toMap().get("retryCount"));
+		Assert.assertEquals(1L, executor.toMap().get("successCount"));
+		Assert.assertEquals(0L, executor.toMap().get("exhaustedCount"));
+	}
+
+	@Test
+	public void testAttemptsExhausted() throws InterruptedException {
+		executor = new DelayRetryExecutor(2, 10, 10, 40, 5);
+		AtomicInteger calls = new AtomicInteger();
+		CountDownLatch blocker = new CountDownLatch(1);
+		CountDownLatch secondCall = new CountDownLatch(1);
+		executor.submit("task-1", () -> {
+			if(calls.incrementAndGet() == 2) {
+				secondCall.countDown();
+				blocker.await();
+			}
+			throw new IllegalStateException("failed");
+		}, 3);
+		//执行中可查询已执行次数
+		Assert.assertTrue(secondCall.await(2, TimeUnit.SECONDS));
+		Assert.assertEquals(2, executor.getAttempts("task-1"));
+		blocker.countDown();
+		waitFinished("task-1");
+
+		Assert.assertEquals(3, calls.get());
+		Assert.assertEquals(2L, executor.toMap().get("retryCount"));
+		Assert.assertEquals(0L, executor.toMap().get("successCount"));
+		Assert.assertEquals(1L, executor.toMap().get("exhaustedCount"));
+		Assert.assertEquals(0, executor.getRetryTaskNums());
+	}
+
+	@Test
+	public void testRejectOverCapacity() {
+		executor = new DelayRetryExecutor(1, 2, 10000, 10000, 3);
+		Assert.assertTrue(executor.submit("task-1", () -> null));
+		Assert.assertTrue(executor.submit("task-2", () -> null));
+		Assert.assertFalse(executor.submit("task-3", () -> null));
+		Assert.assertFalse(executor.contains("task-3"));
+		Assert.assertEquals(2, executor.getRetryTaskNums());
+		Assert.assertEquals(2L, executor.toMap().get("submitCount"));
+		Assert.assertEquals(1L, executor.toMap().get("rejectCount"));
+
+		executor.close();
+		Assert.assertFalse(executor.submit("task-4", () -> null));
+	}
+
+	@Test
+	public void testRetryLogRecorded() throws InterruptedException {
+		List<String> records = Collections.synchronizedList(new ArrayList<>());
+		AtomicInteger closed = new AtomicInteger();
+		executor = new DelayRetryExecutor(1, 10, 10, 40, 5, new RetryLog() {
+			@Override
+			public void onScheduled(String traceId, int attempts, long nextFireTime) {
+				records.add("S:" + traceId + ":" + attempts);
+			}
+			@Override
+			public void onFinished(String traceId, int attempts, boolean success, String error) {
+				records.add("F:" + traceId + ":" + attempts + ":" + success);
+			}
+			@Override
+			public void close() {
+				closed.incrementAndGet();
+			}
+		});
+		AtomicInteger calls = new AtomicInteger();
+		executor.submit("task-1", () -> {
+			if(calls.incrementAndGet() < 2)throw new IllegalStateException("failed");
+			return null;
+		});
+		waitFinished("task-1");
+		Assert.assertEquals(Arrays.asList("S:task-1:0", "S:task-1:1", "F:task-1:2:true"), records);
+		executor.close();
+		Assert.assertEquals(1, closed.get());
+	}
+
+	private void waitFinished(String traceId) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 2000;
+		while(executor.contains(traceId) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		Assert.assertFalse(executor.contains(traceId));
+	}
+}
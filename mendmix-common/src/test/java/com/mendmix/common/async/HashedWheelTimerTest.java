@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.common.async;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.mendmix.common.async.HashedWheelTimer.Timeout;
+
+/**
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class HashedWheelTimerTest {
+
+	private static final long TICK_MILLIS = 10;
+	//调度误差上限（tick精度+线程调度）
+	private static final long TOLERANCE_MILLIS = 200;
+
+	private HashedWheelTimer timer;
+
+	@After
+	public void tearDown() {
+		if(timer != null)timer.stop();
+	}
+
+	@Test
+	public void testExpireAcrossRounds() throws InterruptedException {
+		//3个槽位调整为4，延迟跨越多圈
+		timer = new HashedWheelTimer("test-timer", TICK_MILLIS, 3);
+		long[] delays = {0, 5, 25, 45, 95, 170, 335};
+		List<Long> fired = Collections.synchronizedList(new ArrayList<>());
+		ConcurrentHashMap<Long, Long> elapsed = new ConcurrentHashMap<>();
+		CountDownLatch latch = new CountDownLatch(delays.length);
+		long start = System.nanoTime();
+		for (long delay : delays) {
+			timer.newTimeout(() -> {
+				elapsed.put(delay, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+				fired.add(delay);
+				latch.countDown();
+			}, delay);
+		}
+		Assert.assertTrue(latch.await(2, TimeUnit.SECONDS));
+		for (long delay : delays) {
+			long actual = elapsed.get(delay);
+			Assert.assertTrue("delay " + delay + " fired at " + actual, actual >= delay);
+			Assert.assertTrue("delay " + delay + " fired at " + actual, actual <= delay + TOLERANCE_MILLIS);
+		}
+		//同一tick内的任务可能同时到期，只校验跨tick的顺序
+		for (int i = 1; i < fired.size(); i++) {
+			Assert.assertTrue(fired.get(i) + TICK_MILLIS >= fired.get(i - 1));
+		}
+		Assert.assertEquals(0, timer.getPendingCount());
+	}
+
+	@Test
+	public void testTaskErrorNotStopTimer() throws InterruptedException {
+		timer = new HashedWheelTimer("test-timer", TICK_MILLIS, 8);
+		CountDownLatch latch = new CountDownLatch(1);
+		timer.newTimeout(() -> {throw new IllegalStateException("test");}, 10);
+		timer.newTimeout(latch::countDown, 30);
+		Assert.assertTrue(latch.await(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testCancel() throws InterruptedException {
+		timer = new HashedWheelTimer("test-timer", TICK_MILLIS, 8);
+		AtomicInteger runCount = new AtomicInteger();
+		Timeout timeout = timer.newTimeout(runCount::incrementAndGet, 50);
+		Assert.assertEquals(1, timer.getPendingCount());
+		Assert.assertTrue(timeout.cancel());
+		Assert.assertFalse(timeout.cancel());
+		Assert.assertTrue(timeout.isCancelled());
+		Assert.assertEquals(0, timer.getPendingCount());
+
+		CountDownLatch latch = new CountDownLatch(1);
+		Timeout expired = timer.newTimeout(latch::countDown, 10);
+		Assert.assertTrue(latch.await(1, TimeUnit.SECONDS));
+		//已到期不能取消
+		Assert.assertFalse(expired.cancel());
+		Thread.sleep(100);
+		Assert.assertEquals(0, runCount.get());
+		Assert.assertEquals(0, timer.getPendingCount());
+	}
+
+	@Test
+	public void testStop() {
+		timer = new HashedWheelTimer("test-timer", TICK_MILLIS, 8);
+		Runnable task1 = () -> {};
+		Runnable task2 = () -> {};
+		timer.newTimeout(task1, 10000);
+		timer.newTimeout(task2, 60000);
+		timer.newTimeout(() -> {}, 10000).cancel();
+
+		List<Runnable> unprocessed = timer.stop();
+		Assert.assertEquals(2, unprocessed.size());
+		Assert.assertTrue(unprocessed.contains(task1));
+		Assert.assertTrue(unprocessed.contains(task2));
+		try {
+			timer.newTimeout(() -> {}, 10);
+			Assert.fail("timer stopped");
+		} catch (IllegalStateException e) {}
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.serlalize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.esotericsoftware.kryo.KryoException;
+import com.mendmix.common.serializer.ClassIdStore;
+import com.mendmix.common.serializer.KryoPoolSerializer;
+import com.mendmix.common.serializer.KryoRegistrySerializer;
+
+import test.BaseUser;
+import test.User;
+
+/**
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月16日
+ */
+public class KryoRegistrySerializerTest {
+
+	@Test
+	public void testConfiguredIdRoundTrip() throws Exception {
+		KryoRegistrySerializer serializer = new KryoRegistrySerializer(Arrays.asList(User.class.getName()), null);
+		User user = new User(1000, "vakin");
+		byte[] bytes = serializer.serialize(user);
+		//只写入ID，不包含类名
+		Assert.assertFalse(new String(bytes, StandardCharsets.ISO_8859_1).contains(User.class.getName()));
+		Assert.assertTrue(bytes.length < new KryoPoolSerializer().serialize(user).length);
+		assertUserEquals(user, (User) serializer.deserialize(bytes));
+		Assert.assertEquals(Integer.valueOf(KryoRegistrySerializer.CONFIGURED_ID_BASE), serializer.getClassIds().get(User.class.getName()));
+	}
+
+	@Test
+	public void testLearnedIdResolvedByOtherNode() throws Exception {
+		InMemoryClassIdStore store = new InMemoryClassIdStore();
+		KryoRegistrySerializer writer = new KryoRegistrySerializer(null, store);
+		KryoRegistrySerializer reader = new KryoRegistrySerializer(null, store);
+		//读取节点先加载过存储
+		reader.deserialize(reader.serialize(new BaseUser()));
+
+		User user = new User(1001, "jim");
+		byte[] bytes = writer.serialize(user);
+		Assert.assertTrue(writer.getClassIds().get(User.class.getName()) >= KryoRegistrySerializer.LEARNED_ID_BASE);
+		//本地未知的ID强制重新加载存储
+		assertUserEquals(user, (User) reader.deserialize(bytes));
+		Assert.assertEquals(writer.getClassIds().get(User.class.getName()), reader.getClassIds().get(User.class.getName()));
+	}
+
+	@Test
+	public void testUnknownIdReloadBackoff() throws Exception {
+		byte[] bytes = new KryoRegistrySerializer(null, new InMemoryClassIdStore()).serialize(new User(1002, "lucy"));
+		InMemoryClassIdStore emptyStore = new InMemoryClassIdStore();
+		KryoRegistrySerializer reader = new KryoRegistrySerializer(null, emptyStore);
+		for (int i = 0; i < 3; i++) {
+			try {
+				reader.deserialize(bytes);
+				Assert.fail("unknown class id should fail");
+			} catch (KryoException e) {
+				Assert.assertTrue(e.getMessage().contains("unknown class ID"));
+			}
+		}
+		//首次未命中重新加载，之后退避期内不再访问存储
+		Assert.assertEquals(1, emptyStore.loadCount.get());
+	}
+
+	@Test
+	public void testReadLegacyKryoPoolPayload() throws Exception {
+		User user = new User(1003, "legacy");
+		byte[] legacy = new KryoPoolSerializer().serialize(user);
+		KryoRegistrySerializer serializer = new KryoRegistrySerializer(Arrays.asList(User.class.getName()), new InMemoryClassIdStore());
+		assertUserEquals(user, (User) serializer.deserialize(legacy));
+	}
+
+	@Test
+	public void testStreamApis() throws Exception {
+		KryoRegistrySerializer serializer = new KryoRegistrySerializer(Arrays.asList(User.class.getName()), null);
+		User user = new User(1004, "stream");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int size = serializer.serialize(user, out);
+		Assert.assertEquals(out.size(), size);
+		Assert.assertArrayEquals(serializer.serialize(user), out.toByteArray());
+		assertUserEquals(user, (User) serializer.deserialize(new ByteArrayInputStream(out.toByteArray())));
+	}
+
+	@Test
+	public void testByteBufferApis() throws Exception {
+		KryoRegistrySerializer serializer = new KryoRegistrySerializer(Arrays.asList(User.class.getName()), null);
+		User first = new User(1005, "heap");
+		User second = new User(1006, "direct");
+		for (ByteBuffer buffer : new ByteBuffer[] {ByteBuffer.allocate(1024), ByteBuffer.allocateDirect(1024)}) {
+			//position非0起始写入
+			buffer.put((byte) 9);
+			int firstSize = serializer.serialize(first, buffer);
+			int secondSize = serializer.serialize(second, buffer);
+			Assert.assertEquals(1 + firstSize + secondSize, buffer.position());
+			buffer.flip();
+			Assert.assertEquals(9, buffer.get());
+			assertUserEquals(first, (User) serializer.deserialize(buffer));
+			Assert.assertEquals(1 + firstSize, buffer.position());
+			assertUserEquals(second, (User) serializer.deserialize(buffer));
+			Assert.assertFalse(buffer.hasRemaining());
+		}
+		//数组偏移
+		byte[] bytes = serializer.serialize(first);
+		byte[] padded = new byte[bytes.length + 3];
+		System.arraycopy(bytes, 0, padded, 2, bytes.length);
+		assertUserEquals(first, (User) serializer.deserialize(padded, 2, bytes.length));
+		ByteBuffer slice = ByteBuffer.wrap(padded, 2, bytes.length).slice();
+		assertUserEquals(first, (User) serializer.deserialize(slice));
+		Assert.assertFalse(slice.hasRemaining());
+	}
+
+	private static void assertUserEquals(User expected, User actual) {
+		Assert.assertEquals(expected.getId(), actual.getId());
+		Assert.assertEquals(expected.getName(), actual.getName());
+		Assert.assertEquals(expected.getEmail(), actual.getEmail());
+		Assert.assertEquals(expected.getCreatedAt(), actual.getCreatedAt());
+	}
+
+	private static class InMemoryClassIdStore implements ClassIdStore {
+
+		final Map<String, Integer> ids = new HashMap<>();
+		final AtomicInteger loadCount = new AtomicInteger();
+
+		@Override
+		public synchronized Map<String, Integer> loadAll() {
+			loadCount.incrementAndGet();
+			return Collections.unmodifiableMap(new HashMap<>(ids));
+		}
+
+		@Override
+		public synchronized int register(String className) {
+			return ids.computeIfAbsent(className, k -> ids.size() + 1);
+		}
+	}
+}
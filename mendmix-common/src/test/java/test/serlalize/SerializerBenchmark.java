@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.serlalize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.mendmix.common.serializer.FSTSerializer;
+import com.mendmix.common.serializer.JavaSerializer;
+import com.mendmix.common.serializer.KryoPoolSerializer;
+import com.mendmix.common.serializer.KryoRegistrySerializer;
+import com.mendmix.common.serializer.Serializer;
+
+import test.User;
+
+/**
+ * 序列化方式对比：kryo_pool / kryo_registry / fst / java
+ * <br>
+ * 吞吐量之外可加 -prof gc 观察分配速率；payload大小在setup时打印。
+ *
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月16日
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class SerializerBenchmark {
+
+	@Param({"kryo_pool", "kryo_registry", "fst", "java"})
+	private String serializerName;
+
+	private Serializer serializer;
+	private List<User> data;
+	private byte[] bytes;
+
+	@Setup
+	public void setup() throws IOException {
+		switch (serializerName) {
+		case "kryo_pool":
+			serializer = new KryoPoolSerializer();
+			break;
+		case "kryo_registry":
+			serializer = new KryoRegistrySerializer(Arrays.asList(ArrayList.class.getName(), User.class.getName()), null);
+			break;
+		case "fst":
+			serializer = new FSTSerializer();
+			break;
+		default:
+			serializer = new JavaSerializer();
+		}
+		data = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			data.add(new User(i + 1000, "user" + i));
+		}
+		bytes = serializer.serialize(data);
+		System.out.println(serializerName + " payload size:" + bytes.length);
+	}
+
+	@Benchmark
+	public byte[] serialize() throws IOException {
+		return serializer.serialize(data);
+	}
+
+	@Benchmark
+	public Object deserialize() throws IOException {
+		return serializer.deserialize(bytes);
+	}
+
+	/**
+	 * 仅kryo_registry支持直接写入缓冲区，其他方式按byte[]后拷贝对比
+	 */
+	@Benchmark
+	public int serializeToBuffer(BufferState state) throws IOException {
+		ByteBuffer buffer = state.buffer;
+		buffer.clear();
+		if(serializer instanceof KryoRegistrySerializer) {
+			return ((KryoRegistrySerializer)serializer).serialize(data, buffer);
+		}
+		byte[] result = serializer.serialize(data);
+		buffer.put(result);
+		return result.length;
+	}
+
+	@State(Scope.Thread)
+	public static class BufferState {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(SerializerBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+}
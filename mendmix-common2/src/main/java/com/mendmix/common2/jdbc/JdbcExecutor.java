@@ -28,6 +28,11 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import javax.sql.DataSource;
 
@@ -170,19 +175,8 @@ public class JdbcExecutor {
 				}
 			}
 			rs = ps.executeQuery();
-			ResultSetMetaData rsmd = rs.getMetaData();
-			int columnCount = rsmd.getColumnCount();
-			Object value;
 			while (rs.next()) {
-				Map<String, Object> map = new HashMap<String, Object>();
-				for (int i = 1; i <= columnCount; i++) {
-					value = rs.getObject(i);
-					if(value instanceof LocalDateTime) {
-						value = Date.from(((LocalDateTime)value).atZone( ZoneId.systemDefault()).toInstant());
-					}
-					map.put(StringConverter.toCamelCase(rsmd.getColumnLabel(i)), value);
-				}
-				result.add(map);
+				result.add(toMap(rs));
 			}
 		} catch (SQLException e) {
 			throw new RuntimeException(e);
@@ -281,6 +275,103 @@ public class JdbcExecutor {
 		}
 	}
 	
+	/**
+	 * 流式查询，结果逐行读取，内存占用与结果集大小无关
+	 * <br>
+	 * 返回的Stream持有数据库连接，必须关闭（try-with-resources）
+	 * @param sql
+	 * @param args
+	 * @param fetchSize mysql使用Integer.MIN_VALUE逐行读取；postgresql等按fetchSize分批读取
+	 * @param converter
+	 * @return
+	 */
+	public <T> Stream<T> queryForStream(String sql, Object[] args,int fetchSize,ResultConverter<T> converter) {
+		Connection con = null;
+		ResultSet rs = null;
+		PreparedStatement ps = null;
+		boolean restoreAutoCommit = false;
+		try {
+			con = getconnnection();
+			//postgresql只有关闭自动提交fetchSize才生效
+			if(fetchSize > 0 && con.getAutoCommit()) {
+				con.setAutoCommit(false);
+				restoreAutoCommit = true;
+			}
+			ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			ps.setFetchSize(fetchSize);
+			if (args != null) {
+				for (int i = 0; i < args.length; i++) {
+					ps.setObject((i + 1), args[i]);
+				}
+			}
+			rs = ps.executeQuery();
+		} catch (SQLException e) {
+			closeStream(rs, ps, con, restoreAutoCommit);
+			throw new RuntimeException(e);
+		}
+		final ResultSet resultSet = rs;
+		final PreparedStatement statement = ps;
+		final Connection connection = con;
+		final boolean autoCommit = restoreAutoCommit;
+		Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+			@Override
+			public boolean tryAdvance(Consumer<? super T> action) {
+				try {
+					if(!resultSet.next())return false;
+				} catch (SQLException e) {
+					throw new RuntimeException(e);
+				}
+				action.accept(converter.convert(resultSet));
+				return true;
+			}
+		};
+		return StreamSupport.stream(spliterator, false).onClose(() -> closeStream(resultSet, statement, connection, autoCommit));
+	}
+	
+	/**
+	 * 流式查询，返回Map（字段名转驼峰）
+	 */
+	public Stream<Map<String, Object>> queryForStream(String sql, Object[] args,int fetchSize) {
+		return queryForStream(sql, args, fetchSize, rs -> {
+			try {
+				return toMap(rs);
+			} catch (SQLException e) {
+				throw new RuntimeException(e);
+			}
+		});
+	}
+	
+	/**
+	 * 流式查询，逐行回调
+	 */
+	public <T> void queryForEach(String sql, Object[] args,int fetchSize,ResultConverter<T> converter,Consumer<T> consumer) {
+		try(Stream<T> stream = queryForStream(sql, args, fetchSize, converter)){
+			stream.forEach(consumer);
+		}
+	}
+	
+	private static Map<String, Object> toMap(ResultSet rs) throws SQLException {
+		ResultSetMetaData rsmd = rs.getMetaData();
+		int columnCount = rsmd.getColumnCount();
+		Map<String, Object> map = new HashMap<String, Object>(columnCount * 2);
+		Object value;
+		for (int i = 1; i <= columnCount; i++) {
+			value = rs.getObject(i);
+			if(value instanceof LocalDateTime) {
+				value = Date.from(((LocalDateTime)value).atZone( ZoneId.systemDefault()).toInstant());
+			}
+			map.put(StringConverter.toCamelCase(rsmd.getColumnLabel(i)), value);
+		}
+		return map;
+	}
+	
+	private void closeStream(ResultSet rs, Statement st, Connection con,boolean restoreAutoCommit) {
+		try {if (rs != null)rs.close();} catch (Exception e) {}
+		try {if (st != null)st.close();} catch (Exception e) {}
+		try {if (con != null && restoreAutoCommit)con.setAutoCommit(true);} catch (Exception e) {}
+		try {if (con != null)con.close();} catch (Exception e) {}
+	}
+	
 	public void close(ResultSet rs, Statement st, Connection con) {
 		try {if (rs != null)rs.close();} catch (Exception e) {}
 		try {if (st != null)st.close();} catch (Exception e) {}
@@ -42,6 +42,28 @@ public class MybatisConfigs {
 	public static final String DB_TYPE = "mendmix.dbType";
 	public static final String CACHE_ENABLED = "mendmix.mybatis.cache.enabled";
 	public static final String CACHE_EXPIRE_SECONDS = "mendmix.mybatis.cache.expireSeconds";
+	public static final String CACHE_REFRESH_AHEAD_ENABLED = "mendmix.mybatis.cache.refreshAhead.enabled";
+	public static final String CACHE_REFRESH_AHEAD_BETA = "mendmix.mybatis.cache.refreshAhead.beta";
+	public static final String CACHE_REFRESH_MAX_THREADS = "mendmix.mybatis.cache.refreshAhead.maxThreads";
+	public static final String CACHE_REFRESH_QUEUE_CAPACITY = "mendmix.mybatis.cache.refreshAhead.queueCapacity";
+	public static final String CACHE_GROUP_CLEAR_BATCH_SIZE = "mendmix.mybatis.cache.groupClear.batchSize";
+	public static final String CACHE_GROUP_CLEAR_MAX_KEYS_PER_SECOND = "mendmix.mybatis.cache.groupClear.maxKeysPerSecond";
+	public static final String CACHE_INSERT_WRITE_THROUGH = "mendmix.mybatis.cache.insertWriteThrough";
+	public static final String CACHE_EVICT_BATCH_SIZE = "mendmix.mybatis.cache.evict.batchSize";
+	public static final String CACHE_EVICT_QUEUE_CAPACITY = "mendmix.mybatis.cache.evict.queueCapacity";
+	public static final String PAGINATION_COUNT_CACHE_SECONDS = "mendmix.mybatis.pagination.countCacheSeconds";
+	public static final String PAGINATION_COUNT_CACHE_SIZE = "mendmix.mybatis.pagination.countCacheSize";
+	public static final String PAGINATION_COUNT_OPTIMIZE_JOIN = "mendmix.mybatis.pagination.countOptimizeJoin";
+	public static final String CURSOR_FETCH_SIZE = "mendmix.mybatis.cursor.fetchSize";
+	public static final String BATCH_WRITE_CHUNK_SIZE = "mendmix.mybatis.batchWrite.chunkSize";
+	public static final String REPLICA_SELECT_POLICY = "mendmix.mybatis.replica.selectPolicy";
+	public static final String REPLICA_MAX_LAG_SECONDS = "mendmix.mybatis.replica.maxLagSeconds";
+	public static final String REPLICA_LAG_PROBE_INTERVAL = "mendmix.mybatis.replica.lagProbe.intervalSeconds";
+	public static final String REPLICA_LAG_PROBE_SQL = "mendmix.mybatis.replica.lagProbe.sql";
+	public static final String READ_YOUR_WRITES_MILLIS = "mendmix.mybatis.rwRoute.readYourWritesMillis";
+	public static final String METRICS_ENABLED = "mendmix.mybatis.metrics.enabled";
+	public static final String METRICS_SLOW_SQL_MILLIS = "mendmix.mybatis.metrics.slowSqlMillis";
+	public static final String METRICS_SLOW_SQL_SAMPLES = "mendmix.mybatis.metrics.slowSqlSamples";
 	public static final String TENANT_ENABLED = "mendmix.mybatis.tenant.enabled";
 	public static final String TENANT_IGNORE_USER_TYPE = "mendmix.mybatis.tenant.ignoreUserType";
 	public static final String TENANT_COLUMN_NAME = "mendmix.mybatis.tenant.columnName";
@@ -159,6 +159,23 @@ public class MybatisRuntimeContext {
 		vals.master = true;
 	}
 	
+	/**
+	 * 记录当前上下文的写操作（读己之写）
+	 */
+	public static void markWrite() {
+		MybatisRuntimeContext.getDataSourceContextVals().lastWriteTime = System.currentTimeMillis();
+	}
+	
+	/**
+	 * 当前上下文是否在最近一次写操作后的windowMillis内
+	 * @param windowMillis
+	 * @return
+	 */
+	public static boolean isWithinWriteWindow(long windowMillis) {
+		long lastWriteTime = MybatisRuntimeContext.getDataSourceContextVals().lastWriteTime;
+		return lastWriteTime > 0 && System.currentTimeMillis() - lastWriteTime <= windowMillis;
+	}
+	
 	public static boolean isUseMaster() {
 		Boolean master = MybatisRuntimeContext.getDataSourceContextVals().master;
 		return master == null ? true : master;
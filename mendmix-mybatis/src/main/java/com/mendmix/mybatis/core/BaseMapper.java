@@ -23,10 +23,12 @@ import org.apache.ibatis.annotations.ResultMap;
 import org.apache.ibatis.annotations.ResultType;
 import org.apache.ibatis.annotations.SelectProvider;
 import org.apache.ibatis.annotations.UpdateProvider;
+import org.apache.ibatis.cursor.Cursor;
 
 import com.mendmix.mybatis.crud.provider.CountByExampleProvider;
 import com.mendmix.mybatis.crud.provider.SelectByExampleProvider;
 import com.mendmix.mybatis.crud.provider.UpdateWithVersionProvider;
+import com.mendmix.mybatis.plugin.batch.BatchWriteExecutor;
 
 /**
  * @description <br>
@@ -76,7 +78,7 @@ public abstract interface BaseMapper<T extends BaseEntity, ID extends Serializab
 	void deleteByPrimaryKey(ID id);
 	
 	/**
-	 * 批量插入
+	 * 批量插入（生成单条多行sql，大批量使用{@link BatchWriteExecutor#insertList(Class, List)}分块写入）
 	 * @param entities
 	 */
 	void insertList(List<T> entities);
@@ -93,6 +95,17 @@ public abstract interface BaseMapper<T extends BaseEntity, ID extends Serializab
 	@ResultMap("BaseResultMap")
 	List<T> selectByExample(T example);
 	
+	/**
+	 * 流式查询（游标），结果逐行读取，内存占用与结果集大小无关
+	 * <br>
+	 * 需在事务内（或同一SqlSession内）遍历并关闭游标；fetchSize见mendmix.mybatis.cursor.fetchSize
+	 * @param example 查询条件，全部字段为空时查询全表
+	 * @return
+	 */
+	@SelectProvider(type = SelectByExampleProvider.class, method = "cursorByExample")
+	@ResultMap("BaseResultMap")
+	Cursor<T> cursorByExample(T example);
+	
 	int batchUpdateByPrimaryKeys(@Param("ids")List<ID> ids,@Param("example") T example);
 	
 }
@@ -36,6 +36,17 @@ import com.mendmix.mybatis.metadata.MetadataHelper;
 public class SelectByExampleProvider extends AbstractExpressBuilder{
 
 	public String selectByExample(Object example) throws Exception {
+		return buildSelectSql(example, true);
+	}
+	
+	/**
+	 * 流式查询允许无条件（全表导出）
+	 */
+	public String cursorByExample(Object example) throws Exception {
+		return buildSelectSql(example, false);
+	}
+
+	private String buildSelectSql(Object example,boolean requireCondition) throws Exception {
 		EntityMetadata entityMapper = MetadataHelper.getEntityMapper(example.getClass());
 		Set<ColumnMetadata> columns = entityMapper.getColumns();
 		SQL sql = new SQL().SELECT("*").FROM(entityMapper.getTable().getName());
@@ -46,7 +57,10 @@ public class SelectByExampleProvider extends AbstractExpressBuilder{
 			if(value == null)continue;
 			appendWhere(whereBuilder,column);
 		}
-		if(whereBuilder.length() == 0)throw new IllegalArgumentException("至少包含一个查询条件");
+		if(whereBuilder.length() == 0) {
+			if(requireCondition)throw new IllegalArgumentException("至少包含一个查询条件");
+			return sql.toString();
+		}
 		//
 //		if(DbType.MYSQL.name().equalsIgnoreCase(MybatisConfigs.getDbType("default"))){
 //			whereBuilder.append(" LIMIT 20000");
@@ -27,4 +27,5 @@ package com.mendmix.mybatis.datasource;
 public class DataSourceContextVals {
 	public String tenantId;
 	public Boolean master; //
+	public long lastWriteTime; //最近一次写操作时间
 }
@@ -27,6 +27,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
@@ -35,22 +36,27 @@ import org.springframework.jdbc.datasource.AbstractDataSource;
 import com.mendmix.common.GlobalConstants;
 import com.mendmix.common.GlobalRuntimeContext;
 import com.mendmix.common.MendmixBaseException;
-import com.mendmix.common.model.RoundRobinSelecter;
 import com.mendmix.common.util.BeanUtils;
 import com.mendmix.common.util.ResourceUtils;
 import com.mendmix.mybatis.MybatisConfigs;
 import com.mendmix.mybatis.MybatisRuntimeContext;
 import com.mendmix.mybatis.datasource.builder.DruidDataSourceBuilder;
+import com.mendmix.mybatis.datasource.replica.ReplicaGroup;
+import com.mendmix.mybatis.datasource.replica.ReplicaLagProbe;
+import com.mendmix.mybatis.datasource.replica.ReplicaNode;
+import com.mendmix.mybatis.datasource.replica.ReplicaSelector;
 import com.mendmix.spring.InstanceFactory;
 
 /**
  * 自动路由多数据源（读写分离/多租户）
+ * <br>
+ * 从库按mendmix.mybatis.replica.selectPolicy选择（默认leastOutstanding），复制延迟超过maxLagSeconds的从库暂时不参与选择。
  * @description <br>
  * @author <a href="mailto:vakinge@gmail.com">vakin</a>
  * @date 2015年11月18日
  * @Copyright (c) 2015, jwww
  */
-public class MultiRouteDataSource extends AbstractDataSource implements ApplicationContextAware,InitializingBean{  
+public class MultiRouteDataSource extends AbstractDataSource implements ApplicationContextAware,InitializingBean,DisposableBean{  
 
 	private static final Logger logger = LoggerFactory.getLogger(MultiRouteDataSource.class);
 
@@ -62,8 +68,11 @@ public class MultiRouteDataSource extends AbstractDataSource implements Applicat
 
 	private String group;
 	private boolean dsKeyWithTenant = false;
-	//每个master对应slave数
-	private Map<String, RoundRobinSelecter> slaveNumSelecters = new HashMap<>();
+	//每个master对应的slave
+	private Map<String, ReplicaGroup> replicaGroups = new HashMap<>();
+	private Map<String, ReplicaNode> replicaNodes = new HashMap<>();
+	private ReplicaSelector replicaSelector;
+	private ReplicaLagProbe replicaLagProbe;
 	
 	
 	public MultiRouteDataSource() {
@@ -78,6 +87,7 @@ public class MultiRouteDataSource extends AbstractDataSource implements Applicat
 	@Override
 	public void afterPropertiesSet() throws Exception {
 		List<DataSourceConfig> dsConfigs = DataSoureConfigHolder.getConfigs(group);
+		replicaSelector = ReplicaSelector.create(MybatisConfigs.getProperty(group, MybatisConfigs.REPLICA_SELECT_POLICY, "leastOutstanding"));
 
 		for (DataSourceConfig dataSourceConfig : dsConfigs) {			
 			registerRealDataSource(dataSourceConfig);
@@ -91,6 +101,8 @@ public class MultiRouteDataSource extends AbstractDataSource implements Applicat
 			throw new IllegalArgumentException("Property 'targetDataSources' is required");
 		}
 		
+		startReplicaLagProbe();
+		
 		logger.info("MENDMIX-TRACE-LOGGGING-->> init multiRouteDataSource[{}] finished -> dsKeyWithTenant:{}",group,dsKeyWithTenant);
 	}
 
@@ -103,14 +115,17 @@ public class MultiRouteDataSource extends AbstractDataSource implements Applicat
 			throw new MendmixBaseException("Can't get [tentantId] from currentContext");
 		}
 		if(!useMaster) {
-			if(slaveNumSelecters.isEmpty()) {
+			if(replicaGroups.isEmpty()) {
 				useMaster = true;
 			}else {
 				String subGroup = dsKeyWithTenant ? group + GlobalConstants.UNDER_LINE + tenantId : group;
-				if(!slaveNumSelecters.containsKey(subGroup)) {
+				ReplicaGroup replicaGroup = replicaGroups.get(subGroup);
+				//无可用从库（全部延迟过高）时读主库
+				ReplicaNode replica = replicaGroup == null ? null : replicaGroup.select();
+				if(replica == null) {
 					useMaster = true;
 				}else {
-					index = slaveNumSelecters.get(subGroup).select();
+					index = replica.getIndex();
 				}
 			}
 		}
@@ -119,12 +134,18 @@ public class MultiRouteDataSource extends AbstractDataSource implements Applicat
 
 	@Override
 	public Connection getConnection() throws SQLException {
-		return determineTargetDataSource().getConnection();
+		String lookupKey = currentDataSourceKey();
+		Connection connection = lookupDataSource(lookupKey).getConnection();
+		ReplicaNode replica = replicaNodes.get(lookupKey);
+		return replica == null ? connection : replica.track(connection);
 	}
 
 	@Override
 	public Connection getConnection(String username, String password) throws SQLException {
-		return determineTargetDataSource().getConnection(username, password);
+		String lookupKey = currentDataSourceKey();
+		Connection connection = lookupDataSource(lookupKey).getConnection(username, password);
+		ReplicaNode replica = replicaNodes.get(lookupKey);
+		return replica == null ? connection : replica.track(connection);
 	}
 
 	@Override
@@ -142,7 +163,10 @@ public class MultiRouteDataSource extends AbstractDataSource implements Applicat
 	}
 
 	protected DataSource determineTargetDataSource() {
-		String lookupKey = currentDataSourceKey();
+		return lookupDataSource(currentDataSourceKey());
+	}
+	
+	private DataSource lookupDataSource(String lookupKey) {
 		DataSource dataSource = targetDataSources.get(lookupKey);
 	    if (dataSource == null) {
 			throw new MendmixBaseException("Cannot determine target DataSource for lookup key [" + lookupKey + "]");
@@ -178,18 +202,35 @@ public class MultiRouteDataSource extends AbstractDataSource implements Applicat
 
 		String dsKey = config.dataSourceKey();
 		targetDataSources.put(dsKey, dataSource);
-		//保存slave节点数
+		//保存slave节点
 		if(dsKey.contains(DataSourceConfig.SLAVE_KEY)) {
 			String subGroup = StringUtils.splitByWholeSeparator(dsKey, "_slave")[0];
-			if(slaveNumSelecters.containsKey(subGroup)) {
-				slaveNumSelecters.get(subGroup).incrNode();
-			}else {
-				slaveNumSelecters.put(subGroup, new RoundRobinSelecter(1));
-			}
+			ReplicaNode replica = new ReplicaNode(dsKey, config.getIndex(), dataSource);
+			replicaGroups.computeIfAbsent(subGroup, k -> new ReplicaGroup(k, replicaSelector)).addNode(replica);
+			replicaNodes.put(dsKey, replica);
 		}
 		logger.info("MENDMIX-TRACE-LOGGGING-->> register realDataSource[{}] finished! -> config:{}",config.dataSourceKey(),config.toString());
 	}
 
+	private void startReplicaLagProbe() {
+		if(replicaGroups.isEmpty())return;
+		int intervalSeconds = Integer.parseInt(MybatisConfigs.getProperty(group, MybatisConfigs.REPLICA_LAG_PROBE_INTERVAL, "5"));
+		String probeSql = MybatisConfigs.getProperty(group, MybatisConfigs.REPLICA_LAG_PROBE_SQL, ReplicaLagProbe.defaultProbeSql(MybatisConfigs.getDbType(group)));
+		if(intervalSeconds <= 0 || StringUtils.isBlank(probeSql))return;
+		long maxLagSeconds = Long.parseLong(MybatisConfigs.getProperty(group, MybatisConfigs.REPLICA_MAX_LAG_SECONDS, "5"));
+		replicaLagProbe = new ReplicaLagProbe(replicaGroups.values(), probeSql, maxLagSeconds, intervalSeconds);
+		logger.info("MENDMIX-TRACE-LOGGGING-->> start replica lag probe -> group:{},maxLagSeconds:{},intervalSeconds:{}",group,maxLagSeconds,intervalSeconds);
+	}
+	
+	public Map<String, ReplicaGroup> getReplicaGroups() {
+		return replicaGroups;
+	}
+
+	@Override
+	public void destroy() {
+		if(replicaLagProbe != null)replicaLagProbe.close();
+	}
+
 	private void mergeGlobalDataSourceConfig(DataSourceConfig config) {
 		String groupName = config.getGroup();
 		DataSourceConfig globalConfig = ResourceUtils.getBean("db.", DataSourceConfig.class);
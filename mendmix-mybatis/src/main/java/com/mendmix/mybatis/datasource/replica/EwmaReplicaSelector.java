@@ -0,0 +1,50 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.mybatis.datasource.replica;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * EWMA耗时加权（peak EWMA）：随机取两个节点，选择 EWMA耗时 * (进行中请求数 + 1) 较小的
+ * <br>
+ * 随机两选一避免所有请求同时涌向当前最快节点。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class EwmaReplicaSelector implements ReplicaSelector {
+
+	@Override
+	public ReplicaNode select(List<ReplicaNode> nodes) {
+		int size = nodes.size();
+		if(size == 1)return nodes.get(0);
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int first = random.nextInt(size);
+		int second = random.nextInt(size - 1);
+		if(second >= first)second++;
+		long now = System.nanoTime();
+		ReplicaNode a = nodes.get(first);
+		ReplicaNode b = nodes.get(second);
+		return score(a, now) <= score(b, now) ? a : b;
+	}
+	
+	private static double score(ReplicaNode node,long now) {
+		//没有样本的节点优先试探
+		return node.getEwmaNanos(now) * (node.getOutstanding() + 1);
+	}
+
+}
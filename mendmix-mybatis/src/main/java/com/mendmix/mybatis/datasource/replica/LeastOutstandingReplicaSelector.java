@@ -0,0 +1,48 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.mybatis.datasource.replica;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 进行中请求数最少优先，相同时轮询
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class LeastOutstandingReplicaSelector implements ReplicaSelector {
+
+	private final AtomicInteger counter = new AtomicInteger();
+	
+	@Override
+	public ReplicaNode select(List<ReplicaNode> nodes) {
+		int size = nodes.size();
+		int start = (counter.getAndIncrement() & Integer.MAX_VALUE) % size;
+		ReplicaNode selected = null;
+		int min = Integer.MAX_VALUE;
+		ReplicaNode node;
+		for (int i = 0; i < size; i++) {
+			node = nodes.get((start + i) % size);
+			if(node.getOutstanding() < min) {
+				min = node.getOutstanding();
+				selected = node;
+			}
+		}
+		return selected;
+	}
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.mybatis.datasource.replica;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 同一主库下的从库集合
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class ReplicaGroup {
+
+	private final String name;
+	private final ReplicaSelector selector;
+	private final List<ReplicaNode> nodes = new CopyOnWriteArrayList<>();
+	private volatile List<ReplicaNode> availableNodes = Collections.emptyList();
+	
+	public ReplicaGroup(String name, ReplicaSelector selector) {
+		this.name = name;
+		this.selector = selector;
+	}
+
+	public void addNode(ReplicaNode node) {
+		nodes.add(node);
+		refreshAvailable();
+	}
+	
+	/**
+	 * @return 无可用从库时返回null
+	 */
+	public ReplicaNode select() {
+		List<ReplicaNode> candidates = availableNodes;
+		if(candidates.isEmpty())return null;
+		if(candidates.size() == 1)return candidates.get(0);
+		return selector.select(candidates);
+	}
+	
+	void refreshAvailable() {
+		List<ReplicaNode> list = new ArrayList<>(nodes.size());
+		for (ReplicaNode node : nodes) {
+			if(node.isAvailable())list.add(node);
+		}
+		availableNodes = Collections.unmodifiableList(list);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public List<ReplicaNode> getNodes() {
+		return Collections.unmodifiableList(nodes);
+	}
+
+	public int getAvailableCount() {
+		return availableNodes.size();
+	}
+}
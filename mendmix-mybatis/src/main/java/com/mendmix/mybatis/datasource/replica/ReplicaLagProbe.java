@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.mybatis.datasource.replica;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mendmix.common.async.StandardThreadExecutor.StandardThreadFactory;
+import com.mendmix.mybatis.datasource.DatabaseType;
+
+/**
+ * 从库复制延迟探测
+ * <br>
+ * 定时在每个从库执行探测sql，延迟超过maxLagSeconds（或复制中断）的从库移出选择范围，恢复后重新加入；
+ * 探测失败（如无权限）或延迟未知时保持节点当前状态。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class ReplicaLagProbe implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(ReplicaLagProbe.class);
+	
+	private static final String[] MYSQL_LAG_COLUMNS = {"Seconds_Behind_Master","Seconds_Behind_Source"};
+	
+	private final Collection<ReplicaGroup> groups;
+	private final String probeSql;
+	private final long maxLagSeconds;
+	private final ScheduledExecutorService executor;
+	
+	public ReplicaLagProbe(Collection<ReplicaGroup> groups, String probeSql, long maxLagSeconds, int intervalSeconds) {
+		this.groups = groups;
+		this.probeSql = probeSql;
+		this.maxLagSeconds = maxLagSeconds;
+		this.executor = Executors.newSingleThreadScheduledExecutor(new StandardThreadFactory("replicaLagProbe"));
+		this.executor.scheduleWithFixedDelay(this::probeAll, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+	}
+	
+	/**
+	 * 默认探测sql，不支持的数据库返回null
+	 * @param dbType
+	 * @return
+	 */
+	public static String defaultProbeSql(String dbType) {
+		if(DatabaseType.mysql.name().equals(dbType)) {
+			return "SHOW SLAVE STATUS";
+		}else if(DatabaseType.postgresql.name().equals(dbType)) {
+			//主库（非recovery状态）延迟为0
+			return "SELECT CASE WHEN NOT pg_is_in_recovery() THEN 0 "
+					+ "WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 "
+					+ "ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) END";
+		}
+		return null;
+	}
+
+	void probeAll() {
+		for (ReplicaGroup group : groups) {
+			boolean changed = false;
+			for (ReplicaNode node : group.getNodes()) {
+				long lagSeconds = probe(node);
+				node.setLagSeconds(lagSeconds);
+				boolean available = lagSeconds == ReplicaNode.LAG_UNKNOWN ? node.isAvailable() : lagSeconds <= maxLagSeconds;
+				if(available != node.isAvailable()) {
+					node.setAvailable(available);
+					changed = true;
+					logger.warn("MENDMIX-TRACE-LOGGGING-->> replica[{}] {} -> lagSeconds:{}", node.getDataSourceKey(), available ? "recovered" : "removed", lagSeconds);
+				}
+			}
+			if(changed)group.refreshAvailable();
+		}
+	}
+	
+	private long probe(ReplicaNode node) {
+		try(Connection connection = node.getDataSource().getConnection();
+				Statement statement = connection.createStatement()) {
+			statement.setQueryTimeout(5);
+			try(ResultSet rs = statement.executeQuery(probeSql)) {
+				//非从库
+				if(!rs.next())return 0;
+				int columnIndex = lagColumnIndex(rs.getMetaData());
+				Object value = rs.getObject(columnIndex > 0 ? columnIndex : 1);
+				if(value == null) {
+					//mysql复制中断；其他（如pg尚未回放）视为未知
+					return columnIndex > 0 ? Long.MAX_VALUE : ReplicaNode.LAG_UNKNOWN;
+				}
+				return (long) Math.ceil(Double.parseDouble(value.toString()));
+			}
+		} catch (Exception e) {
+			logger.debug("MENDMIX-TRACE-LOGGGING-->> probe replica[{}] lag error:{}", node.getDataSourceKey(), e.getMessage());
+			return ReplicaNode.LAG_UNKNOWN;
+		}
+	}
+	
+	/**
+	 * @return mysql延迟列下标，非mysql返回-1（取第一列）
+	 */
+	private static int lagColumnIndex(ResultSetMetaData metaData) throws Exception {
+		for (int i = 1; i <= metaData.getColumnCount(); i++) {
+			for (String column : MYSQL_LAG_COLUMNS) {
+				if(column.equalsIgnoreCase(metaData.getColumnLabel(i)))return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.mybatis.datasource.replica;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+/**
+ * 从库节点运行状态
+ * <br>
+ * 以连接从获取到关闭的时长作为一次读请求耗时，统计进行中请求数和EWMA耗时；
+ * 长时间没有请求的节点EWMA逐渐衰减，避免一次慢请求后永远不被选中。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class ReplicaNode {
+
+	private static final double EWMA_ALPHA = 0.3;
+	private static final long EWMA_DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+	
+	public static final long LAG_UNKNOWN = -1;
+
+	private final String dataSourceKey;
+	private final int index;
+	private final DataSource dataSource;
+	
+	private final AtomicInteger outstanding = new AtomicInteger();
+	private volatile double ewmaNanos;
+	private volatile long lastSampleNanos;
+	private volatile long lagSeconds = LAG_UNKNOWN;
+	private volatile boolean available = true;
+
+	public ReplicaNode(String dataSourceKey, int index, DataSource dataSource) {
+		this.dataSourceKey = dataSourceKey;
+		this.index = index;
+		this.dataSource = dataSource;
+	}
+
+	public String getDataSourceKey() {
+		return dataSourceKey;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public DataSource getDataSource() {
+		return dataSource;
+	}
+
+	public int getOutstanding() {
+		return outstanding.get();
+	}
+
+	/**
+	 * 按距上次采样的时间衰减后的EWMA耗时
+	 * @param nowNanos
+	 * @return
+	 */
+	public double getEwmaNanos(long nowNanos) {
+		double ewma = ewmaNanos;
+		if(ewma == 0)return 0;
+		long idle = nowNanos - lastSampleNanos;
+		return idle <= 0 ? ewma : ewma * Math.exp(-(double) idle / EWMA_DECAY_NANOS);
+	}
+
+	public long getLagSeconds() {
+		return lagSeconds;
+	}
+
+	void setLagSeconds(long lagSeconds) {
+		this.lagSeconds = lagSeconds;
+	}
+
+	public boolean isAvailable() {
+		return available;
+	}
+
+	void setAvailable(boolean available) {
+		this.available = available;
+	}
+
+	void recordLatency(long nanos) {
+		double ewma = ewmaNanos;
+		ewmaNanos = ewma == 0 ? nanos : ewma + EWMA_ALPHA * (nanos - ewma);
+		lastSampleNanos = System.nanoTime();
+	}
+
+	/**
+	 * 包装连接，关闭时记录耗时
+	 * @param connection
+	 * @return
+	 */
+	public Connection track(Connection connection) {
+		outstanding.incrementAndGet();
+		final long start = System.nanoTime();
+		final AtomicBoolean released = new AtomicBoolean();
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+			if("close".equals(method.getName()) && released.compareAndSet(false, true)) {
+				outstanding.decrementAndGet();
+				recordLatency(System.nanoTime() - start);
+			}
+			try {
+				return method.invoke(connection, args);
+			} catch (InvocationTargetException e) {
+				throw e.getTargetException();
+			}
+		});
+	}
+
+	@Override
+	public String toString() {
+		return "ReplicaNode [dataSourceKey=" + dataSourceKey + ", outstanding=" + outstanding.get() + ", ewmaMillis="
+				+ TimeUnit.NANOSECONDS.toMillis((long) ewmaNanos) + ", lagSeconds=" + lagSeconds + ", available=" + available + "]";
+	}
+}
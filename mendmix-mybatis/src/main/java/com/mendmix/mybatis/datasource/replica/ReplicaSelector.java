@@ -0,0 +1,50 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.mybatis.datasource.replica;
+
+import java.util.List;
+
+/**
+ * 从库选择策略
+ * <br>
+ * 内置：roundRobin、leastOutstanding（进行中请求最少）、ewma（EWMA耗时 * (进行中请求数+1) 最小），也可配置实现类全名
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public interface ReplicaSelector {
+
+	/**
+	 * @param nodes 可用节点（非空）
+	 * @return
+	 */
+	ReplicaNode select(List<ReplicaNode> nodes);
+	
+	public static ReplicaSelector create(String policy) {
+		if("roundRobin".equals(policy)) {
+			return new RoundRobinReplicaSelector();
+		}else if("leastOutstanding".equals(policy)) {
+			return new LeastOutstandingReplicaSelector();
+		}else if("ewma".equals(policy)) {
+			return new EwmaReplicaSelector();
+		}
+		try {
+			return (ReplicaSelector) Class.forName(policy).newInstance();
+		} catch (Exception e) {
+			throw new IllegalArgumentException("invalid replica select policy:" + policy, e);
+		}
+	}
+}
@@ -16,6 +16,7 @@
 package com.mendmix.mybatis.plugin;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.ibatis.executor.Executor;
@@ -24,6 +25,7 @@ import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.mapping.SqlCommandType;
 import org.apache.ibatis.plugin.Invocation;
 
+import com.mendmix.cache.SingleFlightLoader;
 import com.mendmix.common.model.PageParams;
 import com.mendmix.mybatis.plugin.cache.QueryCacheMethodMetadata;
 import com.mendmix.mybatis.plugin.pagination.PageExecutor;
@@ -34,6 +36,7 @@ public class InvocationVals {
 	public static final String DOT = ".";
 	
 	private String concurrentLockKey;
+	private SingleFlightLoader.Flight loadFlight;
 	private Executor executor;
 	private Object[] args;
 	private MappedStatement mappedStatement;
@@ -42,6 +45,7 @@ public class InvocationVals {
 	private boolean select;
 	private String sql;
 	private boolean sqlRewrited;
+	private boolean cursorQuery;
 	
 	private Map<String, String[]> dataPermValues;
 	
@@ -51,6 +55,10 @@ public class InvocationVals {
 	private QueryCacheMethodMetadata queryMethodMetadata;
 	private String cacheKey;
 	private PageParams pageParam;
+	//未命中缓存开始回源的时间
+	private long cacheLoadStartTime;
+	//按条件更新前查询到的待清理主键缓存key（查询失败为null）
+	private List<String> evictCacheKeys;
 	
 	public InvocationVals(Invocation invocation) {
 		args = invocation.getArgs();
@@ -63,7 +71,9 @@ public class InvocationVals {
 		//
 		mapperNameSpace = mappedStatement.getId().substring(0, mappedStatement.getId().lastIndexOf(DOT));
 		//
-		if(select = mappedStatement.getSqlCommandType().equals(SqlCommandType.SELECT)) {
+		//queryCursor(ms, parameter, rowBounds)
+		cursorQuery = args.length == 3;
+		if((select = mappedStatement.getSqlCommandType().equals(SqlCommandType.SELECT)) && !cursorQuery) {
 			this.pageParam = PageExecutor.getPageParams();
 			if(this.pageParam == null && PaginationHandler.pageMappedStatements.containsKey(mappedStatement.getId())) {
 				if(parameter instanceof Map){
@@ -85,6 +95,14 @@ public class InvocationVals {
 		return executor;
 	}
 
+	public SingleFlightLoader.Flight getLoadFlight() {
+		return loadFlight;
+	}
+
+	public void setLoadFlight(SingleFlightLoader.Flight loadFlight) {
+		this.loadFlight = loadFlight;
+	}
+
 	public String getConcurrentLockKey() {
 		return concurrentLockKey;
 	}
@@ -152,6 +170,22 @@ public class InvocationVals {
 		return cacheKey;
 	}
 
+	public long getCacheLoadStartTime() {
+		return cacheLoadStartTime;
+	}
+
+	public void setCacheLoadStartTime(long cacheLoadStartTime) {
+		this.cacheLoadStartTime = cacheLoadStartTime;
+	}
+
+	public List<String> getEvictCacheKeys() {
+		return evictCacheKeys;
+	}
+
+	public void setEvictCacheKeys(List<String> evictCacheKeys) {
+		this.evictCacheKeys = evictCacheKeys;
+	}
+
 	public PageParams getPageParam() {
 		return pageParam;
 	}
@@ -160,6 +194,10 @@ public class InvocationVals {
 		return sqlRewrited;
 	}
 
+	public boolean isCursorQuery() {
+		return cursorQuery;
+	}
+
 	public Map<String, String[]> getDataPermValues() {
 		return dataPermValues;
 	}
@@ -15,6 +15,7 @@
  */
 package com.mendmix.mybatis.plugin;
 
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -23,6 +24,7 @@ import java.util.List;
 import java.util.Properties;
 
 import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.statement.StatementHandler;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.plugin.Interceptor;
 import org.apache.ibatis.plugin.Intercepts;
@@ -35,9 +37,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.DisposableBean;
 
+import com.mendmix.mybatis.MybatisConfigs;
 import com.mendmix.mybatis.core.InterceptorHandler;
 import com.mendmix.mybatis.plugin.autofield.AutoFieldFillHandler;
 import com.mendmix.mybatis.plugin.cache.CacheHandler;
+import com.mendmix.mybatis.plugin.cursor.CursorQueryHandler;
+import com.mendmix.mybatis.plugin.metrics.SqlMetricsRegistry;
+import com.mendmix.mybatis.plugin.metrics.SqlMetricsRegistry.InvocationMetrics;
 import com.mendmix.mybatis.plugin.pagination.PaginationHandler;
 import com.mendmix.mybatis.plugin.rewrite.SqlRewriteHandler;
 import com.mendmix.mybatis.plugin.rwseparate.RwRouteHandler;
@@ -52,7 +58,13 @@ import com.mendmix.mybatis.plugin.rwseparate.RwRouteHandler;
 @Intercepts({ 
 	//@Signature(type = StatementHandler.class, method = "prepare", args = {Connection.class, Integer.class}),
     @Signature(type = Executor.class, method = "update", args = { MappedStatement.class, Object.class }),  
-    @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class }) })  
+    @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class }),
+    @Signature(type = Executor.class, method = "queryCursor", args = {MappedStatement.class, Object.class, RowBounds.class }),
+    //jdbc耗时统计
+    @Signature(type = StatementHandler.class, method = "query", args = {Statement.class, ResultHandler.class }),
+    @Signature(type = StatementHandler.class, method = "queryCursor", args = {Statement.class }),
+    @Signature(type = StatementHandler.class, method = "update", args = {Statement.class }),
+    @Signature(type = StatementHandler.class, method = "batch", args = {Statement.class }) })  
 public class MendmixMybatisInterceptor implements Interceptor,DisposableBean{
 
 	protected static final Logger logger = LoggerFactory.getLogger("com.mendmix.mybatis");
@@ -62,12 +74,17 @@ public class MendmixMybatisInterceptor implements Interceptor,DisposableBean{
 	
 	private static boolean cacheEnabled,rwRouteEnabled;
 	
+	private boolean metricsEnabled;
+	
 	public MendmixMybatisInterceptor(String groupName, String[] hanlderNames) {
 		this.groupName = groupName;
+		//默认关闭，开启后包装StatementHandler统计jdbc耗时
+		this.metricsEnabled = MybatisConfigs.getBoolean(groupName, MybatisConfigs.METRICS_ENABLED, false);
 		//
 		this.interceptorHandlers.add(new SqlRewriteHandler());
 		this.interceptorHandlers.add(new AutoFieldFillHandler());
 		this.interceptorHandlers.add(new PaginationHandler());
+		this.interceptorHandlers.add(new CursorQueryHandler());
 		
 		this.setInterceptorHandlers(hanlderNames);
 	}
@@ -107,40 +124,63 @@ public class MendmixMybatisInterceptor implements Interceptor,DisposableBean{
 	@Override
 	public Object intercept(Invocation invocation) throws Throwable {
 		
+		if(invocation.getTarget() instanceof StatementHandler) {
+			return SqlMetricsRegistry.proceedJdbc(invocation);
+		}
+		
 		InvocationVals invocationVal = new InvocationVals(invocation);
+		InvocationMetrics metrics = metricsEnabled ? SqlMetricsRegistry.begin(invocationVal.getMappedStatement().getId()) : null;
 		
-		Object result = null;
+		Object result = null;
 		boolean cacheHited = false;
+		boolean error = false;
 		try {
 			for (InterceptorHandler handler : interceptorHandlers) {
+				if(metrics != null)metrics.startPhase();
 				result = handler.onInterceptor(invocationVal);
-				if(result != null) {
+				if(metrics != null)metrics.endPhase(phaseName(handler));
+				if(result != null) {
 					cacheHited = handler.getClass() == CacheHandler.class;
 					break;
 				}
 			}
 			
 			if(result == null){
+				if(metrics != null)metrics.startPhase();
 				result = invocation.proceed();
+				if(metrics != null)metrics.endPhase(SqlMetricsRegistry.PHASE_EXECUTOR);
 			}
 
 			return result;
+		} catch (Throwable e) {
+			error = true;
+			throw e;
 		} finally {
-			for (InterceptorHandler handler : interceptorHandlers) {
+			for (InterceptorHandler handler : interceptorHandlers) {
 				if(cacheHited && handler.getClass() == CacheHandler.class)continue;
+				if(metrics != null)metrics.startPhase();
 				try {					
 					handler.onFinished(invocationVal,result);
 				} catch (Exception e) {
 					e.printStackTrace();
 				}
+				if(metrics != null)metrics.endPhase(phaseName(handler));
+			}
+			if(metrics != null) {
+				Boolean cacheHit = invocationVal.getQueryMethodMetadata() == null ? null : cacheHited;
+				SqlMetricsRegistry.end(metrics, invocationVal.getSql(), result, error, cacheHit);
 			}
 		}
 		
 	}
+	
+	private static String phaseName(InterceptorHandler handler) {
+		return handler.getClass().getSimpleName();
+	}
 
 	@Override
 	public Object plugin(Object target) {
-		if (target instanceof Executor) {
+		if (target instanceof Executor || (metricsEnabled && target instanceof StatementHandler)) {
             return Plugin.wrap(target, this);
         } else {
             return target;
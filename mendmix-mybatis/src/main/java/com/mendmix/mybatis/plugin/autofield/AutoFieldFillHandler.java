@@ -17,12 +17,14 @@ package com.mendmix.mybatis.plugin.autofield;
 
 import java.io.Serializable;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.function.Function;
 
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
@@ -68,11 +70,11 @@ public class AutoFieldFillHandler implements InterceptorHandler {
 	private static final String ATTR_CONTEXT_NAME = "__attr_cxt_name";
 	private static final String ATTR_VALUE_CONTEXT_NAME = "__attrval_cxt_name:%s:%s";
 
-	private static Map<String, Field[]> methodFieldMappings = new HashMap<>();
+	private static Map<String, FieldAccessor[]> methodFieldMappings = new HashMap<>();
 	
-	private  IDGenerator idGenerator;
+	private static volatile IDGenerator idGenerator;
 	
-	private IDGenerator getIdGenerator() {
+	private static IDGenerator getIdGenerator() {
 		if(idGenerator != null)return idGenerator;
 		synchronized (AutoFieldFillHandler.class) {
 			idGenerator = InstanceFactory.getInstance(IDGenerator.class);
@@ -95,57 +97,80 @@ public class AutoFieldFillHandler implements InterceptorHandler {
 		
 		String tenantColumn = MybatisConfigs.getTenantColumnName(context.getGroupName());
 		for (MapperMetadata mm : mappers) {
-			Field[] createdFields = new Field[4];
-			Field[] updatedFields = new Field[3];
-			Field[] fields = FieldUtils.getAllFields(mm.getEntityClass());
-			for (Field field : fields) {
-				if(field.isAnnotationPresent(Id.class) && !field.isAnnotationPresent(GeneratedValue.class)) {
-					field.setAccessible(true);
-					createdFields[0] = field;
-				}else if(field.isAnnotationPresent(CreatedBy.class)) {
-					field.setAccessible(true);
-					createdFields[1] = field;
-				}else if(field.isAnnotationPresent(CreatedAt.class)) {
-					field.setAccessible(true);
-					createdFields[2] = field;
-				}else if(field.isAnnotationPresent(UpdatedBy.class)) {
-					field.setAccessible(true);
-					updatedFields[1] = field;
-				}else if(field.isAnnotationPresent(UpdatedAt.class)) {
-					field.setAccessible(true);
-					updatedFields[2] = field;
-				}else if(tenantColumn != null) {
-					boolean isTenantField = field.getName().equals(tenantColumn);
-					if(!isTenantField) {
-						Optional<Entry<String, String>> optional = mm.getPropToColumnMappings().entrySet().stream().filter(e -> {
-							return e.getValue().equalsIgnoreCase(tenantColumn);
-						}).findFirst();
-						//
-						isTenantField = optional.isPresent() && field.getName().equals(optional.get().getKey());
-					}
-					if(isTenantField) {
-						field.setAccessible(true);
-						createdFields[3] = field;
-					}
+			registerMapper(mm, tenantColumn, FieldAccessor::of);
+		}
+        
+	}
+
+	/**
+	 * 解析实体自动填充字段，注册到对应的mapper方法
+	 * @param mm
+	 * @param tenantColumn
+	 * @param accessorFactory 字段读写器创建方式
+	 */
+	static void registerMapper(MapperMetadata mm, String tenantColumn, Function<Field, FieldAccessor> accessorFactory) {
+		FieldAccessor[] createdFields = new FieldAccessor[4];
+		FieldAccessor[] updatedFields = new FieldAccessor[3];
+		Field[] fields = FieldUtils.getAllFields(mm.getEntityClass());
+		for (Field field : fields) {
+			if(field.isAnnotationPresent(Id.class) && !field.isAnnotationPresent(GeneratedValue.class)) {
+				createdFields[0] = accessorFactory.apply(field);
+			}else if(field.isAnnotationPresent(CreatedBy.class)) {
+				createdFields[1] = accessorFactory.apply(field);
+			}else if(field.isAnnotationPresent(CreatedAt.class)) {
+				createdFields[2] = accessorFactory.apply(field);
+			}else if(field.isAnnotationPresent(UpdatedBy.class)) {
+				updatedFields[1] = accessorFactory.apply(field);
+			}else if(field.isAnnotationPresent(UpdatedAt.class)) {
+				updatedFields[2] = accessorFactory.apply(field);
+			}else if(tenantColumn != null) {
+				boolean isTenantField = field.getName().equals(tenantColumn);
+				if(!isTenantField) {
+					Optional<Entry<String, String>> optional = mm.getPropToColumnMappings().entrySet().stream().filter(e -> {
+						return e.getValue().equalsIgnoreCase(tenantColumn);
+					}).findFirst();
+					//
+					isTenantField = optional.isPresent() && field.getName().equals(optional.get().getKey());
+				}
+				if(isTenantField) {
+					createdFields[3] = accessorFactory.apply(field);
 				}
 			}
-	
-			String keyPrefix = mm.getMapperClass().getName() + ".";
-			if(hasAnyValue(createdFields)) {
-	        	methodFieldMappings.put(keyPrefix + "insert", createdFields);
-	        	methodFieldMappings.put(keyPrefix + "insertSelective", createdFields);
-	        	methodFieldMappings.put(keyPrefix + INSERT_LIST_METHOD_NAME, createdFields);
-	        }
-			if(hasAnyValue(updatedFields)) {
-	        	methodFieldMappings.put(keyPrefix + "updateByPrimaryKey", updatedFields);
-	        	methodFieldMappings.put(keyPrefix + "updateByPrimaryKeySelective", updatedFields);
-	        	methodFieldMappings.put(keyPrefix + "updateByPrimaryKeyWithVersion", updatedFields);
-	        }
 		}
-        
+
+		String keyPrefix = mm.getMapperClass().getName() + ".";
+		if(hasAnyValue(createdFields)) {
+        	methodFieldMappings.put(keyPrefix + "insert", createdFields);
+        	methodFieldMappings.put(keyPrefix + "insertSelective", createdFields);
+        	methodFieldMappings.put(keyPrefix + INSERT_LIST_METHOD_NAME, createdFields);
+        }
+		if(hasAnyValue(updatedFields)) {
+        	methodFieldMappings.put(keyPrefix + "updateByPrimaryKey", updatedFields);
+        	methodFieldMappings.put(keyPrefix + "updateByPrimaryKeySelective", updatedFields);
+        	methodFieldMappings.put(keyPrefix + "updateByPrimaryKeyWithVersion", updatedFields);
+        }
 	}
 
 
+	/**
+	 * 批量预分配主键（从IDGenerator按块获取），已有主键的不处理
+	 * @param insertMsId 插入方法id
+	 * @param entities
+	 */
+	public static void preallocateIds(String insertMsId,List<?> entities) {
+		FieldAccessor[] fields = methodFieldMappings.get(insertMsId);
+		if(fields == null || fields[0] == null || entities.isEmpty() || getIdGenerator() == null)return;
+		List<Object> noIdEntities = new ArrayList<>(entities.size());
+		for (Object entity : entities) {
+			if(isNullValue(entity, fields[0]))noIdEntities.add(entity);
+		}
+		if(noIdEntities.isEmpty())return;
+		List<Serializable> ids = idGenerator.nextIds(noIdEntities.size());
+		for (int i = 0; i < noIdEntities.size(); i++) {
+			fields[0].set(noIdEntities.get(i), ids.get(i));
+		}
+	}
+
 	@SuppressWarnings("unchecked")
 	@Override
 	public Object onInterceptor(InvocationVals invocation) throws Throwable {
@@ -158,32 +183,46 @@ public class AutoFieldFillHandler implements InterceptorHandler {
 		
         final MappedStatement orignMappedStatement = invocation.getMappedStatement();
         
-        Field[] fields = methodFieldMappings.get(orignMappedStatement.getId());
+        FieldAccessor[] fields = methodFieldMappings.get(orignMappedStatement.getId());
 		if(fields == null) return null;
 
 		boolean updateCommand = SqlCommandType.UPDATE.equals(invocation.getMappedStatement().getSqlCommandType());
+		//上下文值每次调用只取一次，批量插入时所有记录共用
+		FillValues values = new FillValues(fields, dynaFieldEnabled);
 		if(orignMappedStatement.getId().endsWith(INSERT_LIST_METHOD_NAME)) {
 			if(parameter instanceof Map) {
 				try {
 					List<Object> list = (List<Object>) ((Map<String, Object>)parameter).get("arg0");
+					preallocateIds(orignMappedStatement.getId(), list);
 					for (Object obj : list) {
-						setFieldValue(fields,obj,updateCommand);
+						setFieldValue(fields,obj,updateCommand,values);
 					}
 				} catch (Exception e) {
-					e.printStackTrace();
+					logger.error("MENDMIX-TRACE-LOGGGING-->> autofield fill error,mapperId:" + orignMappedStatement.getId(),e);
 				}
 			}
 		}else {
-			setFieldValue(fields,parameter,updateCommand);
+			setFieldValue(fields,parameter,updateCommand,values);
 		}
 		
 		return null;
 	}
 
-	
+	private static class FillValues {
+		final String userId;
+		final Date now;
+		final String tenantId;
+		final boolean dynaFieldEnabled;
+
+		FillValues(FieldAccessor[] fields, boolean dynaFieldEnabled) {
+			this.userId = fields[1] == null ? null : CurrentRuntimeContext.getCurrentUserId();
+			this.now = fields[2] == null ? null : new Date();
+			this.tenantId = fields.length > 3 && fields[3] != null ? CurrentRuntimeContext.getTenantId() : null;
+			this.dynaFieldEnabled = dynaFieldEnabled;
+		}
+	}
 
-	private void setFieldValue(Field[] fields, Object parameter,boolean updateCommand) throws Exception {
-		String tmpVal;
+	private void setFieldValue(FieldAccessor[] fields, Object parameter,boolean updateCommand,FillValues values) throws Exception {
 		if(fields[0] != null && getIdGenerator() != null && isNullValue(parameter, fields[0])) {
 			Serializable id = idGenerator.nextId();
 //			if(fields[0].getType() == int.class || fields[0].getType() == Integer.class){
@@ -194,34 +233,34 @@ public class AutoFieldFillHandler implements InterceptorHandler {
 			fields[0].set(parameter, id);
 		}
 		
-		if(fields[1] != null && (tmpVal = CurrentRuntimeContext.getCurrentUserId()) != null && (updateCommand || isNullValue(parameter, fields[1]))) {
-			try {fields[1].set(parameter, tmpVal);} catch (Exception e) {}
+		if(fields[1] != null && values.userId != null && (updateCommand || isNullValue(parameter, fields[1]))) {
+			try {fields[1].set(parameter, values.userId);} catch (Exception e) {}
 		}
 		
 		if(fields[2] != null && (updateCommand || isNullValue(parameter, fields[2]))) {
-			try {fields[2].set(parameter, new Date());} catch (Exception e) {}
+			try {fields[2].set(parameter, new Date(values.now.getTime()));} catch (Exception e) {}
 		}
 		
-		if(fields.length > 3 && fields[3] != null && (tmpVal = CurrentRuntimeContext.getTenantId()) != null && (updateCommand || isNullValue(parameter, fields[3]))) {
-			fields[3].set(parameter, tmpVal);
+		if(fields.length > 3 && fields[3] != null && values.tenantId != null && (updateCommand || isNullValue(parameter, fields[3]))) {
+			fields[3].set(parameter, values.tenantId);
 		}
 		
 		//
-		setDynaFieldValues(parameter);
+		if(values.dynaFieldEnabled)setDynaFieldValues(parameter);
 	}
 
 	
-	private boolean isNullValue(Object obj,Field field) {
+	private static boolean isNullValue(Object obj,FieldAccessor field) {
 		try {
-			Object value = field.get(field);
+			Object value = field.get(obj);
 			return value == null || StringUtils.isBlank(value.toString());
 		} catch (Exception e) {
 			return true;
 		}
 	}
 	
-	private boolean hasAnyValue(Field[] fields) {
-		for (Field field : fields) {
+	private static boolean hasAnyValue(FieldAccessor[] fields) {
+		for (FieldAccessor field : fields) {
 			if(field != null)return true;
 		}
 		return false;
@@ -236,19 +275,8 @@ public class AutoFieldFillHandler implements InterceptorHandler {
 	}
 	
 	private Object readFieldValue(final Object target, final String fieldName) {
-		Field field;
-		try {
-			Class<?> clazz = target.getClass();
-			field = FieldUtils.getDeclaredField(clazz, fieldName, true);
-			while(field == null && clazz.getSuperclass() != null) {
-				clazz = clazz.getSuperclass();
-				field = FieldUtils.getDeclaredField(clazz, fieldName, true);
-			}
-			if(field == null)return null;
-			return field.get(target);
-		} catch (IllegalAccessException e) {
-			throw new RuntimeException(e);
-		}
+		FieldAccessor accessor = FieldAccessor.of(target.getClass(), fieldName);
+		return accessor == null ? null : accessor.get(target);
 	}
 	
 	
@@ -257,7 +285,9 @@ public class AutoFieldFillHandler implements InterceptorHandler {
 		if(dynaValueMap != null) {
 			dynaValueMap.forEach( (k,v) -> {
 				try {
-					FieldUtils.writeDeclaredField(entity, k, v, true);
+					FieldAccessor accessor = FieldAccessor.of(entity.getClass(), k);
+					if(accessor == null)throw new IllegalArgumentException("Cannot locate declared field " + entity.getClass().getName() + "." + k);
+					accessor.set(entity, v);
 				} catch (Exception e) {
 					e.printStackTrace();
 				}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.mybatis.plugin.autofield;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.reflect.FieldUtils;
+
+/**
+ * 字段读写器
+ * <br>
+ * 启动时将字段转换为MethodHandle（类型擦除为Object），省去{@link Field#set}每次调用的访问检查和参数校验。
+ * MethodHandle保存在实例字段中，JIT不会将其作为常量折叠，开销仍高于直接赋值。
+ * 无法创建MethodHandle时退回{@link Field}反射读写。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class FieldAccessor {
+
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+	//按类+字段名缓存，不存在的字段也缓存（NONE）
+	private static final Map<Class<?>, Map<String, FieldAccessor>> classAccessors = new ConcurrentHashMap<>();
+	private static final FieldAccessor NONE = new FieldAccessor(null, null, null);
+
+	private final Field field;
+	private final MethodHandle getter;
+	private final MethodHandle setter;
+
+	private FieldAccessor(Field field, MethodHandle getter, MethodHandle setter) {
+		this.field = field;
+		this.getter = getter;
+		this.setter = setter;
+	}
+
+	public static FieldAccessor of(Field field) {
+		if(field == null)return null;
+		field.setAccessible(true);
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			return new FieldAccessor(field, lookup.unreflectGetter(field).asType(GETTER_TYPE), lookup.unreflectSetter(field).asType(SETTER_TYPE));
+		} catch (IllegalAccessException e) {
+			return reflect(field);
+		}
+	}
+
+	/**
+	 * 基于{@link Field}反射的读写器
+	 */
+	static FieldAccessor reflect(Field field) {
+		field.setAccessible(true);
+		return new ReflectFieldAccessor(field);
+	}
+
+	/**
+	 * 按字段名查找（含父类）
+	 * @param clazz
+	 * @param fieldName
+	 * @return 字段不存在返回null
+	 */
+	public static FieldAccessor of(Class<?> clazz, String fieldName) {
+		Map<String, FieldAccessor> accessors = classAccessors.computeIfAbsent(clazz, k -> new ConcurrentHashMap<>());
+		FieldAccessor accessor = accessors.computeIfAbsent(fieldName, k -> {
+			Field field = FieldUtils.getField(clazz, fieldName, true);
+			return field == null ? NONE : of(field);
+		});
+		return accessor == NONE ? null : accessor;
+	}
+
+	public Field getField() {
+		return field;
+	}
+
+	public Object get(Object target) {
+		try {
+			return (Object) getter.invokeExact(target);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public void set(Object target, Object value) {
+		try {
+			setter.invokeExact(target, value);
+		} catch (ClassCastException e) {
+			throw new IllegalArgumentException("Can not set " + field.getType().getName() + " field " + field.getDeclaringClass().getSimpleName() + "." + field.getName() + " to " + value.getClass().getName());
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "FieldAccessor [" + field + "]";
+	}
+
+	private static class ReflectFieldAccessor extends FieldAccessor {
+
+		ReflectFieldAccessor(Field field) {
+			super(field, null, null);
+		}
+
+		@Override
+		public Object get(Object target) {
+			try {
+				return getField().get(target);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		@Override
+		public void set(Object target, Object value) {
+			try {
+				getField().set(target, value);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+}
@@ -16,8 +16,23 @@
 package com.mendmix.mybatis.plugin.autofield;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 
 public interface IDGenerator {
 
 	Serializable nextId();
+	
+	/**
+	 * 按块分配主键（批量写入时使用），号段等实现可覆盖为一次分配
+	 * @param count
+	 * @return
+	 */
+	default List<Serializable> nextIds(int count) {
+		List<Serializable> ids = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			ids.add(nextId());
+		}
+		return ids;
+	}
 }
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.mybatis.plugin.batch;
+
+import java.io.Serializable;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.defaults.DefaultSqlSessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.mendmix.mybatis.MybatisConfigs;
+import com.mendmix.mybatis.crud.CrudMethods;
+import com.mendmix.mybatis.metadata.MapperMetadata;
+import com.mendmix.mybatis.parser.MybatisMapperParser;
+import com.mendmix.mybatis.plugin.autofield.AutoFieldFillHandler;
+
+/**
+ * 分块批量写入
+ * <br>
+ * 代替一次生成超大多行sql的insertList/batchUpdateByPrimaryKeys：按chunkSize(mendmix.mybatis.batchWrite.chunkSize)分块，
+ * 每块通过ExecutorType.BATCH执行单行语句并flush一次（单条sql解析一次，不会超过max_allowed_packet）。
+ * mysql需在jdbc url开启rewriteBatchedStatements=true，驱动会将同一块重写为多行插入。
+ * <br>
+ * 在spring事务内执行时使用当前事务连接，所有块随事务一起提交或回滚；
+ * 不在事务内时连接为自动提交，每块flush后即单独提交，中途失败时之前的块已写入不会回滚（见{@link BatchWriteResult#isTransactional()}），
+ * 需要整体原子性时调用方应开启事务。
+ * <br>
+ * 插入前按块从IDGenerator预分配主键。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class BatchWriteExecutor {
+
+	private static final Logger logger = LoggerFactory.getLogger("com.mendmix.mybatis");
+	
+	private static final String DEFAULT_CHUNK_SIZE = "500";
+	
+	private static Map<String, SqlSessionFactory> sessionFactories = new ConcurrentHashMap<>();
+	private static Map<String, Integer> chunkSizes = new ConcurrentHashMap<>();
+	
+	public static void register(String group,Configuration configuration) {
+		sessionFactories.put(group, new DefaultSqlSessionFactory(configuration));
+		chunkSizes.put(group, Integer.parseInt(MybatisConfigs.getProperty(group, MybatisConfigs.BATCH_WRITE_CHUNK_SIZE, DEFAULT_CHUNK_SIZE)));
+	}
+	
+	/**
+	 * 批量插入
+	 * @param mapperClass
+	 * @param entities
+	 * @return
+	 */
+	public static BatchWriteResult insertList(Class<?> mapperClass,List<?> entities) {
+		String msId = mapperClass.getName() + "." + CrudMethods.insert.name();
+		return execute(mapperClass, entities, 0, (session,chunk) -> {
+			AutoFieldFillHandler.preallocateIds(msId, chunk);
+			for (Object entity : chunk) {
+				session.insert(msId, entity);
+			}
+		});
+	}
+	
+	/**
+	 * 按主键批量更新（每个实体各自的值）
+	 * @param mapperClass
+	 * @param entities
+	 * @param selective 只更新非空字段
+	 * @return
+	 */
+	public static BatchWriteResult updateListByPrimaryKey(Class<?> mapperClass,List<?> entities,boolean selective) {
+		String msId = mapperClass.getName() + "." + (selective ? CrudMethods.updateByPrimaryKeySelective : CrudMethods.updateByPrimaryKey).name();
+		return execute(mapperClass, entities, 0, (session,chunk) -> {
+			for (Object entity : chunk) {
+				session.update(msId, entity);
+			}
+		});
+	}
+	
+	/**
+	 * 按主键列表批量更新为相同的值（分块执行batchUpdateByPrimaryKeys）
+	 * @param mapperClass
+	 * @param ids
+	 * @param example
+	 * @return
+	 */
+	public static BatchWriteResult batchUpdateByPrimaryKeys(Class<?> mapperClass,List<? extends Serializable> ids,Object example) {
+		String msId = mapperClass.getName() + ".batchUpdateByPrimaryKeys";
+		return execute(mapperClass, ids, 0, (session,chunk) -> {
+			Map<String, Object> param = new HashMap<>(4);
+			param.put("ids", chunk);
+			param.put("example", example);
+			session.update(msId, param);
+		});
+	}
+	
+	/**
+	 * @param mapperClass
+	 * @param items
+	 * @param chunkSize 小于等于0使用全局配置
+	 * @param chunkWriter 将一块数据写入session（不需要flush）
+	 * @return
+	 */
+	public static <T> BatchWriteResult execute(Class<?> mapperClass,List<T> items,int chunkSize,BiConsumer<SqlSession, List<T>> chunkWriter) {
+		MapperMetadata mapperMetadata = MybatisMapperParser.getMapperMetadata(mapperClass.getName());
+		if(mapperMetadata == null)throw new IllegalArgumentException("not mapper class:" + mapperClass.getName());
+		String group = mapperMetadata.getGroup();
+		SqlSessionFactory sessionFactory = sessionFactories.get(group);
+		if(sessionFactory == null)throw new IllegalStateException("BatchWriteExecutor not registered for group:" + group);
+		if(chunkSize <= 0)chunkSize = chunkSizes.get(group);
+		
+		BatchWriteResult result = new BatchWriteResult(mapperClass.getSimpleName(), TransactionSynchronizationManager.isActualTransactionActive());
+		if(items == null || items.isEmpty())return result;
+		
+		try(SqlSession session = sessionFactory.openSession(ExecutorType.BATCH)) {
+			long start;
+			int rows;
+			for (int from = 0; from < items.size(); from += chunkSize) {
+				List<T> chunk = items.subList(from, Math.min(from + chunkSize, items.size()));
+				start = System.currentTimeMillis();
+				chunkWriter.accept(session, chunk);
+				rows = sumUpdateCounts(session.flushStatements());
+				result.addChunk(chunk.size(), rows, System.currentTimeMillis() - start);
+				if(logger.isDebugEnabled()) {
+					logger.debug("MENDMIX-TRACE-LOGGGING-->> batch write chunk[{}] -> mapper:{},size:{},rows:{},useTime:{}", result.getChunks(), mapperClass.getSimpleName(), chunk.size(), rows, result.getLastChunkMillis());
+				}
+			}
+			//spring事务内由事务提交，否则每块flush时已自动提交
+			session.commit();
+		}
+		if(logger.isDebugEnabled())logger.debug("MENDMIX-TRACE-LOGGGING-->> batch write finished -> {}",result);
+		return result;
+	}
+	
+	private static int sumUpdateCounts(List<BatchResult> batchResults) {
+		int rows = 0;
+		for (BatchResult batchResult : batchResults) {
+			for (int count : batchResult.getUpdateCounts()) {
+				//rewriteBatchedStatements重写后返回SUCCESS_NO_INFO
+				if(count == Statement.SUCCESS_NO_INFO) {
+					rows++;
+				}else if(count > 0) {
+					rows += count;
+				}
+			}
+		}
+		return rows;
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.mybatis.plugin.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分块批量写入结果
+ * <br>
+ * 非事务内执行时每块单独提交，见{@link #isTransactional()}
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class BatchWriteResult {
+
+	private String mapperName;
+	private boolean transactional;
+	private int items;
+	private int rows;
+	private long totalMillis;
+	private long maxChunkMillis;
+	private List<Long> chunkMillis = new ArrayList<>();
+	
+	public BatchWriteResult(String mapperName,boolean transactional) {
+		this.mapperName = mapperName;
+		this.transactional = transactional;
+	}
+
+	void addChunk(int size,int rows,long useMillis) {
+		this.items += size;
+		this.rows += rows;
+		this.totalMillis += useMillis;
+		this.maxChunkMillis = Math.max(maxChunkMillis, useMillis);
+		this.chunkMillis.add(useMillis);
+	}
+
+	/**
+	 * 是否在spring事务内执行
+	 * <br>
+	 * true：所有块随外层事务一起提交或回滚；false：每块flush后单独提交，失败时之前的块不会回滚
+	 * @return
+	 */
+	public boolean isTransactional() {
+		return transactional;
+	}
+
+	public int getItems() {
+		return items;
+	}
+
+	/**
+	 * 影响行数（驱动重写批量语句时按每条1行计）
+	 * @return
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	public int getChunks() {
+		return chunkMillis.size();
+	}
+
+	public long getTotalMillis() {
+		return totalMillis;
+	}
+
+	public long getMaxChunkMillis() {
+		return maxChunkMillis;
+	}
+
+	public long getLastChunkMillis() {
+		return chunkMillis.isEmpty() ? 0 : chunkMillis.get(chunkMillis.size() - 1);
+	}
+
+	/**
+	 * 每块耗时（毫秒）
+	 * @return
+	 */
+	public List<Long> getChunkMillis() {
+		return chunkMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "BatchWriteResult [mapper=" + mapperName + ", transactional=" + transactional + ", items=" + items + ", rows=" + rows + ", chunks=" + getChunks()
+				+ ", totalMillis=" + totalMillis + ", maxChunkMillis=" + maxChunkMillis + "]";
+	}
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.mybatis.plugin.cache;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.mendmix.cache.CacheUtils;
+import com.mendmix.common.async.StandardThreadExecutor.StandardThreadFactory;
+
+/**
+ * 缓存批量清理
+ * <br>
+ * 事务内待删除的key按事务收集去重，提交后入队；后台线程批量取出排队的key，跨请求去重后一次多key删除（一次往返）。
+ * 需要在提交后执行的清理任务（按条件查询受影响主键、清理缓存组）同样延后到提交后。
+ * <br>
+ * 队列满时由调用线程直接删除。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class CacheEvictionPipeline implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger("com.mendmix.mybatis.plugin.cache");
+
+	private final int maxBatchSize;
+	private final BlockingQueue<EvictRequest> queue;
+	private final ExecutorService evictExecutor;
+	private volatile boolean closed;
+
+	private final AtomicInteger pendingKeys = new AtomicInteger();
+	private final LongAdder requestKeyCount = new LongAdder();
+	private final LongAdder evictedKeyCount = new LongAdder();
+	private final LongAdder batchCount = new LongAdder();
+	private final LongAdder callerRunsCount = new LongAdder();
+	private final LongAdder errorCount = new LongAdder();
+	private final AtomicLong lastLagMillis = new AtomicLong();
+	private final AtomicLong maxLagMillis = new AtomicLong();
+
+	/**
+	 * @param maxBatchSize 单次删除最大key数
+	 * @param queueCapacity 排队请求上限
+	 */
+	public CacheEvictionPipeline(int maxBatchSize, int queueCapacity) {
+		this.maxBatchSize = maxBatchSize;
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.evictExecutor = Executors.newSingleThreadExecutor(new StandardThreadFactory("cacheEvictionPipeline"));
+		this.evictExecutor.execute(this::evictLoop);
+	}
+
+	/**
+	 * 事务提交后删除（无事务立即入队）
+	 * @param keys
+	 */
+	public void evictAfterCommit(String... keys) {
+		if(keys == null || keys.length == 0)return;
+		PendingEvictions pending = currentPendingEvictions();
+		if(pending == null) {
+			evict(Arrays.asList(keys));
+			return;
+		}
+		pending.keys.addAll(Arrays.asList(keys));
+	}
+
+	/**
+	 * 事务提交后执行（无事务立即执行），回滚则不执行
+	 * @param task
+	 */
+	public void runAfterCommit(Runnable task) {
+		PendingEvictions pending = currentPendingEvictions();
+		if(pending == null) {
+			task.run();
+			return;
+		}
+		pending.tasks.add(task);
+	}
+
+	/**
+	 * 入队删除
+	 * @param keys
+	 */
+	public void evict(Collection<String> keys) {
+		if(keys.isEmpty())return;
+		requestKeyCount.add(keys.size());
+		EvictRequest request = new EvictRequest(keys.toArray(new String[0]));
+		pendingKeys.addAndGet(request.keys.length);
+		if(closed || !queue.offer(request)) {
+			pendingKeys.addAndGet(-request.keys.length);
+			callerRunsCount.increment();
+			remove(request.keys, request.enqueueTime);
+		}
+	}
+
+	private PendingEvictions currentPendingEvictions() {
+		if(!TransactionSynchronizationManager.isSynchronizationActive())return null;
+		PendingEvictions pending = (PendingEvictions) TransactionSynchronizationManager.getResource(this);
+		if(pending == null) {
+			pending = new PendingEvictions();
+			TransactionSynchronizationManager.bindResource(this, pending);
+			TransactionSynchronizationManager.registerSynchronization(new PendingEvictionsSynchronization(pending));
+		}
+		return pending;
+	}
+
+	private void evictLoop() {
+		List<EvictRequest> requests = new ArrayList<>();
+		while(!closed) {
+			try {
+				requests.add(queue.take());
+			} catch (InterruptedException e) {
+				break;
+			}
+			queue.drainTo(requests);
+			evictBatch(requests);
+			requests.clear();
+		}
+		queue.drainTo(requests);
+		evictBatch(requests);
+	}
+
+	private void evictBatch(List<EvictRequest> requests) {
+		if(requests.isEmpty())return;
+		//同一key多次更新只删除一次
+		Set<String> keys = new LinkedHashSet<>();
+		long oldestEnqueueTime = Long.MAX_VALUE;
+		int requestKeys = 0;
+		for (EvictRequest request : requests) {
+			keys.addAll(Arrays.asList(request.keys));
+			oldestEnqueueTime = Math.min(oldestEnqueueTime, request.enqueueTime);
+			requestKeys += request.keys.length;
+		}
+		List<String> keyList = new ArrayList<>(keys);
+		for (int i = 0; i < keyList.size(); i += maxBatchSize) {
+			List<String> batch = keyList.subList(i, Math.min(i + maxBatchSize, keyList.size()));
+			remove(batch.toArray(new String[0]), oldestEnqueueTime);
+		}
+		pendingKeys.addAndGet(-requestKeys);
+	}
+
+	private void remove(String[] keys, long enqueueTime) {
+		if(keys.length == 0)return;
+		try {
+			CacheUtils.remove(keys);
+			evictedKeyCount.add(keys.length);
+			batchCount.increment();
+		} catch (Exception e) {
+			errorCount.increment();
+			logger.warn("MENDMIX-TRACE-LOGGGING-->> evict cache keys[{}] error:{}",keys.length,e.getMessage());
+		}
+		long lag = System.currentTimeMillis() - enqueueTime;
+		lastLagMillis.set(lag);
+		maxLagMillis.accumulateAndGet(lag, Math::max);
+		if(logger.isDebugEnabled())logger.debug("MENDMIX-TRACE-LOGGGING-->>  auto_cache_process evictKeys -> keys:{},lagMillis:{}",keys.length,lag);
+	}
+
+	/**
+	 * 排队中待删除的key数
+	 * @return
+	 */
+	public int getQueueDepth() {
+		return pendingKeys.get();
+	}
+
+	/**
+	 * 当前最早排队请求已等待时间
+	 * @return
+	 */
+	public long getCurrentLagMillis() {
+		EvictRequest head = queue.peek();
+		return head == null ? 0 : System.currentTimeMillis() - head.enqueueTime;
+	}
+
+	/**
+	 * 最近一次删除时最早请求的等待时间
+	 * @return
+	 */
+	public long getLastLagMillis() {
+		return lastLagMillis.get();
+	}
+
+	public long getMaxLagMillis() {
+		return maxLagMillis.get();
+	}
+
+	public long getRequestKeyCount() {
+		return requestKeyCount.sum();
+	}
+
+	public long getEvictedKeyCount() {
+		return evictedKeyCount.sum();
+	}
+
+	public long getBatchCount() {
+		return batchCount.sum();
+	}
+
+	public long getCallerRunsCount() {
+		return callerRunsCount.sum();
+	}
+
+	public long getErrorCount() {
+		return errorCount.sum();
+	}
+
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("queueDepth", getQueueDepth());
+		map.put("currentLagMillis", getCurrentLagMillis());
+		map.put("lastLagMillis", getLastLagMillis());
+		map.put("maxLagMillis", getMaxLagMillis());
+		map.put("requestKeys", getRequestKeyCount());
+		map.put("evictedKeys", getEvictedKeyCount());
+		map.put("batches", getBatchCount());
+		map.put("callerRuns", getCallerRunsCount());
+		map.put("errors", getErrorCount());
+		return map;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		evictExecutor.shutdownNow();
+		try {
+			evictExecutor.awaitTermination(3, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "CacheEvictionPipeline " + toMap();
+	}
+
+	private static class EvictRequest {
+		final String[] keys;
+		final long enqueueTime = System.currentTimeMillis();
+
+		EvictRequest(String[] keys) {
+			this.keys = keys;
+		}
+	}
+
+	private static class PendingEvictions {
+		final Set<String> keys = new LinkedHashSet<>();
+		final List<Runnable> tasks = new ArrayList<>(2);
+	}
+
+	private class PendingEvictionsSynchronization implements TransactionSynchronization {
+
+		final PendingEvictions pending;
+
+		PendingEvictionsSynchronization(PendingEvictions pending) {
+			this.pending = pending;
+		}
+
+		@Override
+		public void suspend() {
+			TransactionSynchronizationManager.unbindResource(CacheEvictionPipeline.this);
+		}
+
+		@Override
+		public void resume() {
+			TransactionSynchronizationManager.bindResource(CacheEvictionPipeline.this, pending);
+		}
+
+		@Override
+		public void afterCommit() {
+			evict(pending.keys);
+			for (Runnable task : pending.tasks) {
+				try {
+					task.run();
+				} catch (Exception e) {
+					logger.warn("MENDMIX-TRACE-LOGGGING-->> run after commit eviction task error",e);
+				}
+			}
+		}
+
+		@Override
+		public void afterCompletion(int status) {
+			TransactionSynchronizationManager.unbindResourceIfPossible(CacheEvictionPipeline.this);
+		}
+	}
+}
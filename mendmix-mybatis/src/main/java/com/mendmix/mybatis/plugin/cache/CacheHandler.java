@@ -29,9 +29,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import javax.persistence.Id;
@@ -41,6 +41,7 @@ import javax.sql.DataSource;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.reflect.FieldUtils;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.executor.BatchExecutor;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.mapping.ParameterMapping;
@@ -48,8 +49,11 @@ import org.apache.ibatis.mapping.SqlCommandType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.RateLimiter;
 import com.mendmix.cache.CacheExpires;
 import com.mendmix.cache.CacheUtils;
+import com.mendmix.cache.SingleFlightLoader;
+import com.mendmix.cache.SingleFlightLoader.Flight;
 import com.mendmix.common.CurrentRuntimeContext;
 import com.mendmix.common.GlobalConstants;
 import com.mendmix.common.async.StandardThreadExecutor.StandardThreadFactory;
@@ -91,7 +95,6 @@ public class CacheHandler implements InterceptorHandler {
 	protected static final Logger logger = LoggerFactory.getLogger("com.mendmix.mybatis.plugin.cache");
 
 	public static final String CURRENT_USER_CONTEXT_NAME = "currentUser";
-	private static final String BLOCK_ON_CONCURRENT_LOCK_RETURN = "_block_on_concurrentLock";
 	public static final String NAME = "cache";
 	public final static long IN_1MINS = 60;
     public final static long IN_1HOUR = 60 * 60;
@@ -123,6 +126,22 @@ public class CacheHandler implements InterceptorHandler {
 	
 	private ExecutorService cleanCacheExecutor = Executors.newFixedThreadPool(1, new StandardThreadFactory("cleanCacheExecutor"));
 	
+	//主键缓存是否开启提前刷新
+	private boolean refreshAheadEnabled;
+	private double refreshAheadBeta;
+	private CacheRefreshExecutor refreshExecutor;
+	//缓存组清理批次大小及速率限制（每秒删除key数）
+	private int groupClearBatchSize = 1000;
+	private RateLimiter groupClearRateLimiter;
+	//新增记录提交后写入缓存
+	private boolean insertWriteThrough;
+	private TransactionalCacheWriter cacheWriter = new TransactionalCacheWriter();
+	//更新后缓存清理（每个数据源独立）
+	private CacheEvictionPipeline evictionPipeline;
+	private static Map<String, CacheEvictionPipeline> evictionPipelines = new ConcurrentHashMap<>();
+	//排队中的缓存组清理，避免批量更新时重复清理同一组
+	private Set<String> pendingGroupClears = ConcurrentHashMap.newKeySet();
+	
 	@Override
 	public void start(MendmixMybatisInterceptor context) {
 		
@@ -141,6 +160,20 @@ public class CacheHandler implements InterceptorHandler {
 		}
 		
 		defaultCacheExpire = Long.parseLong(MybatisConfigs.getProperty(context.getGroupName(), MybatisConfigs.CACHE_EXPIRE_SECONDS, "0"));
+		refreshAheadEnabled = MybatisConfigs.getBoolean(context.getGroupName(), MybatisConfigs.CACHE_REFRESH_AHEAD_ENABLED, false);
+		refreshAheadBeta = Double.parseDouble(MybatisConfigs.getProperty(context.getGroupName(), MybatisConfigs.CACHE_REFRESH_AHEAD_BETA, "1.0"));
+		int refreshMaxThreads = Integer.parseInt(MybatisConfigs.getProperty(context.getGroupName(), MybatisConfigs.CACHE_REFRESH_MAX_THREADS, "2"));
+		int refreshQueueCapacity = Integer.parseInt(MybatisConfigs.getProperty(context.getGroupName(), MybatisConfigs.CACHE_REFRESH_QUEUE_CAPACITY, "1000"));
+		refreshExecutor = new CacheRefreshExecutor(refreshMaxThreads, refreshQueueCapacity);
+		groupClearBatchSize = Integer.parseInt(MybatisConfigs.getProperty(context.getGroupName(), MybatisConfigs.CACHE_GROUP_CLEAR_BATCH_SIZE, "1000"));
+		int groupClearMaxKeysPerSecond = Integer.parseInt(MybatisConfigs.getProperty(context.getGroupName(), MybatisConfigs.CACHE_GROUP_CLEAR_MAX_KEYS_PER_SECOND, "10000"));
+		//同一数据源的所有缓存组清理共用限速
+		groupClearRateLimiter = groupClearMaxKeysPerSecond > 0 ? RateLimiter.create(groupClearMaxKeysPerSecond) : null;
+		insertWriteThrough = MybatisConfigs.getBoolean(context.getGroupName(), MybatisConfigs.CACHE_INSERT_WRITE_THROUGH, true);
+		int evictBatchSize = Integer.parseInt(MybatisConfigs.getProperty(context.getGroupName(), MybatisConfigs.CACHE_EVICT_BATCH_SIZE, "500"));
+		int evictQueueCapacity = Integer.parseInt(MybatisConfigs.getProperty(context.getGroupName(), MybatisConfigs.CACHE_EVICT_QUEUE_CAPACITY, "10000"));
+		evictionPipeline = new CacheEvictionPipeline(evictBatchSize, evictQueueCapacity);
+		evictionPipelines.put(context.getGroupName(), evictionPipeline);
 
 		List<MapperMetadata> mappers = MybatisMapperParser.getMapperMetadatas(context.getGroupName());
 		
@@ -189,9 +222,10 @@ public class CacheHandler implements InterceptorHandler {
 
 		MappedStatement mt = invocationVal.getMappedStatement(); 
 
-		boolean getLock = false;
 		String cacheKey = null;
 		if(mt.getSqlCommandType().equals(SqlCommandType.SELECT)){	
+			//游标查询结果不缓存
+			if(invocationVal.isCursorQuery())return null;
 			//事务方法内部的查询不走缓存
 			if(MybatisRuntimeContext.isTransactionalOn()){
 				if(logger.isDebugEnabled())logger.debug("MENDMIX-TRACE-LOGGGING-->>  auto_cache_process skipCache[isTransactionalOn] -> mapperId:{}",mt.getId());
@@ -205,67 +239,118 @@ public class CacheHandler implements InterceptorHandler {
 			invocationVal.setQueryCacheMetadata(metadata);
 			cacheKey = genarateQueryCacheKey(invocationVal,metadata.keyPattern, invocationVal.getParameter());
 			invocationVal.setCacheKey(cacheKey);
-
-			//并发控制防止缓存穿透
-			if(!metadata.concurrency){
-				String concurrentLockKey = "concurrent:" + cacheKey;
-				invocationVal.setConcurrentLockKey(concurrentLockKey);
-				getLock = CacheUtils.setIfAbsent(concurrentLockKey, "1", 30,TimeUnit.SECONDS);
-				if(!getLock){
-					if(logger.isDebugEnabled())logger.debug("MENDMIX-TRACE-LOGGGING-->>  auto_cache_process notGetConcurrentLock -> mapperId:{}",mt.getId());
-					return BLOCK_ON_CONCURRENT_LOCK_RETURN;
-				}
-				if(logger.isDebugEnabled())logger.debug("MENDMIX-TRACE-LOGGGING-->>  auto_cache_process getConcurrentLock -> mapperId:{}",mt.getId());
+			//后台提前刷新：直接回源，由onFinished写回缓存
+			if(CacheRefreshExecutor.isRefreshing()) {
+				invocationVal.setCacheLoadStartTime(System.currentTimeMillis());
+				return null;
 			}
-			
-			Object cacheObject = null;
-			boolean nullPlaceholder = false;
-			//
-			if(!metadata.isSecondQueryById()){
-				//从缓存读取
-				cacheObject = CacheUtils.get(cacheKey);
-				nullPlaceholder = nullValueCache && NULL_PLACEHOLDER.equals(cacheObject);
-				if(StringUtils.isNotBlank(metadata.refKey) && (nullPlaceholder || cacheObject == null)){
-					cacheObject = CacheUtils.get(metadata.refKey);
-					nullPlaceholder = nullValueCache && NULL_PLACEHOLDER.equals(cacheObject);
-				}
-				if(nullPlaceholder){
-					if(logger.isDebugEnabled())logger.debug("MENDMIX-TRACE-LOGGGING-->>  auto_cache_process hitCache -> mapperId:{},cacheKey:{}",mt.getId(),cacheKey);
-				}else if(cacheObject != null){
-					if(logger.isDebugEnabled())logger.debug("MENDMIX-TRACE-LOGGGING-->>  auto_cache_process hitCache -> mapperId:{},cacheKey:{}",mt.getId(),cacheKey);
-				}
-			}else{
-				//新根据缓存KEY找到与按ID缓存的KEY
-				String refCacheKey = nullValueCache ? CacheUtils.get(cacheKey) : CacheUtils.getStr(cacheKey);
-				if(refCacheKey != null){
-					if(nullPlaceholder = (nullValueCache && NULL_PLACEHOLDER.equals(refCacheKey))){
-						cacheObject = NULL_PLACEHOLDER;
-					}else{						
-						cacheObject = CacheUtils.get(refCacheKey);
-						if(cacheObject != null && logger.isDebugEnabled())logger.debug("MENDMIX-TRACE-LOGGGING-->>  auto_cache_process  hitRefCache -> mapperId:{},cacheKey:{},refCacheKey:{}",mt.getId(),cacheKey,refCacheKey);
-					}
-				}
+
+			Object[] rawHolder = metadata.refreshAhead ? new Object[1] : null;
+			Object cacheObject = readCache(mt, metadata, cacheKey, rawHolder);
+			//临近过期提前刷新，本次仍返回旧值
+			if(cacheObject != null && metadata.refreshAhead && refreshExecutor.shouldRefresh(metadata, cacheKey, rawHolder[0])) {
+				refreshExecutor.submit(mt, invocationVal.getParameter(), metadata, cacheKey);
 			}
-			
-			if(nullPlaceholder){
-				cacheObject = new ArrayList<>(0);
-			}else if(cacheObject != null && !(cacheObject instanceof Collection)){						
-				cacheObject = Arrays.asList(cacheObject);
+			if(cacheObject == null)invocationVal.setCacheLoadStartTime(System.currentTimeMillis());
+			//并发控制防止缓存击穿：同一key只有一个请求回源，其余请求等待其结果
+			if(cacheObject == null && !metadata.concurrency){
+				cacheObject = awaitOrLeadLoad(invocationVal, metadata, cacheKey);
 			}
 			
 			return cacheObject;
 		} 
+		//按条件更新或删除：执行前在当前事务连接内查出受影响的主键（执行后已删除或条件列已变更的记录查不到）
+		if(!mt.getSqlCommandType().equals(SqlCommandType.INSERT) && !updatePkCacheMethods.containsKey(mt.getId())) {
+			String mapperClassName = invocationVal.getMapperNameSpace();
+			if(cacheEnableMappers.contains(mapperClassName) || customUpdateCacheMapppings.containsKey(mt.getId())) {
+				invocationVal.setEvictCacheKeys(queryAffectedIdCacheKeys(invocationVal, mapperClassName));
+			}
+		}
 		
 		return null;
 	
 	}
 	
 
+	/**
+	 * @param rawHolder 不为空时放入按cacheKey读取的原始缓存值（可能为{@link RefreshableCacheValue}）
+	 */
+	private Object readCache(MappedStatement mt,QueryCacheMethodMetadata metadata,String cacheKey,Object[] rawHolder) {
+		Object cacheObject = null;
+		boolean nullPlaceholder = false;
+		//
+		if(!metadata.isSecondQueryById()){
+			//从缓存读取
+			cacheObject = CacheUtils.get(cacheKey);
+			if(rawHolder != null)rawHolder[0] = cacheObject;
+			cacheObject = RefreshableCacheValue.unwrap(cacheObject);
+			nullPlaceholder = nullValueCache && NULL_PLACEHOLDER.equals(cacheObject);
+			if(StringUtils.isNotBlank(metadata.refKey) && (nullPlaceholder || cacheObject == null)){
+				cacheObject = RefreshableCacheValue.unwrap(CacheUtils.get(metadata.refKey));
+				nullPlaceholder = nullValueCache && NULL_PLACEHOLDER.equals(cacheObject);
+			}
+			if(nullPlaceholder){
+				if(logger.isDebugEnabled())logger.debug("MENDMIX-TRACE-LOGGGING-->>  auto_cache_process hitCache -> mapperId:{},cacheKey:{}",mt.getId(),cacheKey);
+			}else if(cacheObject != null){
+				if(logger.isDebugEnabled())logger.debug("MENDMIX-TRACE-LOGGGING-->>  auto_cache_process hitCache -> mapperId:{},cacheKey:{}",mt.getId(),cacheKey);
+			}
+		}else{
+			//新根据缓存KEY找到与按ID缓存的KEY
+			String refCacheKey = nullValueCache ? CacheUtils.get(cacheKey) : CacheUtils.getStr(cacheKey);
+			if(refCacheKey != null){
+				if(nullPlaceholder = (nullValueCache && NULL_PLACEHOLDER.equals(refCacheKey))){
+					cacheObject = NULL_PLACEHOLDER;
+				}else{						
+					cacheObject = RefreshableCacheValue.unwrap(CacheUtils.get(refCacheKey));
+					if(cacheObject != null && logger.isDebugEnabled())logger.debug("MENDMIX-TRACE-LOGGGING-->>  auto_cache_process  hitRefCache -> mapperId:{},cacheKey:{},refCacheKey:{}",mt.getId(),cacheKey,refCacheKey);
+				}
+			}
+		}
+		
+		if(nullPlaceholder){
+			cacheObject = new ArrayList<>(0);
+		}else if(cacheObject != null && !(cacheObject instanceof Collection)){						
+			cacheObject = Arrays.asList(cacheObject);
+		}
+		return cacheObject;
+	}
+	
+	private Object awaitOrLeadLoad(InvocationVals invocationVal,QueryCacheMethodMetadata metadata,String cacheKey) {
+		MappedStatement mt = invocationVal.getMappedStatement(); 
+		SingleFlightLoader loader = CacheUtils.getSingleFlightLoader();
+		Flight flight = loader.begin(cacheKey);
+		if(!flight.isLeader()) {
+			if(flight.await() && flight.getResult() instanceof List) {
+				if(logger.isDebugEnabled())logger.debug("MENDMIX-TRACE-LOGGGING-->>  auto_cache_process joinLoadFlight -> mapperId:{},cacheKey:{}",mt.getId(),cacheKey);
+				return new ArrayList<>((List<?>)flight.getResult());
+			}
+			//等待超时或leader查询失败，各自回源
+			return null;
+		}
+		if(loader.tryAcquireLease(cacheKey)) {
+			if(loader.isDistributedLease()) {
+				invocationVal.setConcurrentLockKey(SingleFlightLoader.LEASE_KEY_PREFIX + cacheKey);
+			}
+			invocationVal.setLoadFlight(flight);
+			if(logger.isDebugEnabled())logger.debug("MENDMIX-TRACE-LOGGGING-->>  auto_cache_process getConcurrentLock -> mapperId:{}",mt.getId());
+			return null;
+		}
+		//其他节点正在回源，等待其写入缓存
+		if(logger.isDebugEnabled())logger.debug("MENDMIX-TRACE-LOGGGING-->>  auto_cache_process notGetConcurrentLock -> mapperId:{}",mt.getId());
+		Object cacheObject = loader.awaitCache(() -> readCache(mt, metadata, cacheKey, null));
+		if(cacheObject != null) {
+			flight.complete(cacheObject);
+			return cacheObject;
+		}
+		invocationVal.setLoadFlight(flight);
+		return null;
+	}
+	
 	@SuppressWarnings("rawtypes")
 	@Override
 	public void onFinished(InvocationVals invocationVal,Object result) {
+		final Object queryResult = result;
 		try {
-			if(BLOCK_ON_CONCURRENT_LOCK_RETURN.equals(result))return;
 			MappedStatement mt = invocationVal.getMappedStatement(); 
 			
 			QueryCacheMethodMetadata metadata = null;
@@ -274,6 +359,12 @@ public class CacheHandler implements InterceptorHandler {
 				if((metadata = invocationVal.getQueryMethodMetadata()) == null)return;
 	
 				final String cacheKey = invocationVal.getCacheKey();
+				//未命中回源耗时（提前刷新的delta）
+				long loadMillis = 0;
+				if(invocationVal.getCacheLoadStartTime() > 0) {
+					loadMillis = System.currentTimeMillis() - invocationVal.getCacheLoadStartTime();
+					metadata.recordLoadMillis(loadMillis);
+				}
 				if(result instanceof List){
 					List list = (List)result;
 					if(list.isEmpty()){
@@ -286,13 +377,18 @@ public class CacheHandler implements InterceptorHandler {
 				}
 				//
 				if(!metadata.isSecondQueryById()){
-					CacheUtils.set(cacheKey,result, metadata.getExpire());
+					if(metadata.refreshAhead) {
+						long expire = metadata.getExpire();
+						CacheUtils.set(cacheKey,new RefreshableCacheValue(result, expire, loadMillis), expire);
+					}else {						
+						CacheUtils.set(cacheKey,result, metadata.getExpire());
+					}
 					if(logger.isDebugEnabled())logger.debug("MENDMIX-TRACE-LOGGGING-->>  auto_cache_process addCache -> mapperId:{},cacheKey:{}",mt.getId(),cacheKey);
                     
 					if(metadata.isPk){
 						//唯一索引（业务上）
 						cacheUniqueSelectRef(invocationVal,result, mt, cacheKey);
-					}else if(metadata.groupRalated){//结果为集合的情况，增加key到cacheGroup
+					}else if(metadata.groupRalated && !CacheRefreshExecutor.isRefreshing()){//结果为集合的情况，增加key到cacheGroup
 						CacheUtils.addStrItemToList(metadata.cacheGroupKey, cacheKey);
 					}
 				}else{
@@ -316,31 +412,27 @@ public class CacheHandler implements InterceptorHandler {
 				if(result != null && ((int)result) == 0)return;
 				//更新方法移除缓存，避免事务回滚导致缓存不一致，所以更新方法直接移除缓存
 				if(mt.getSqlCommandType().equals(SqlCommandType.INSERT)) {
-					//TODO 写入缓存 ，考虑回滚
+					//事务提交后写入缓存，回滚丢弃（批量执行模式下此时尚未写入数据库，不处理）
+					if(insertWriteThrough && cacheEnableMappers.contains(mapperClassName) 
+							&& !Integer.valueOf(BatchExecutor.BATCH_UPDATE_RETURN_VALUE).equals(result)) {
+						writeThroughInserted(invocationVal, mapperClassName);
+					}
 				}else {
+					//同一事务内先插入后更新，不再写入插入时的值
+					cacheWriter.discard(mapperClassName);
 					if(updatePkCacheMethods.containsKey(mt.getId())){
 						UpdateByPkCacheMethodMetadata updateMethodCache = updatePkCacheMethods.get(mt.getId());
 						String idCacheKey = genarateQueryCacheKey(invocationVal,updateMethodCache.keyPattern,invocationVal.getParameter());
 						CacheUtils.remove(idCacheKey);
+						//提交后再删除一次，避免提交前被并发查询以旧值回填
+						evictionPipeline.evictAfterCommit(idCacheKey);
 					}else {
-						//针对按条件更新或者删除的方法，按查询条件查询相关内容，然后清理对应主键缓存内容
-						MapperMetadata mapperMeta = MybatisMapperParser.getMapperMetadata(mapperClassName);
-						final Object parameter = invocationVal.getArgs()[1];
-						BoundSql boundSql = mt.getBoundSql(parameter);
-						String orignSql = boundSql.getSql();
-						ColumnMetadata idColumn = mapperMeta.getEntityMetadata().getIdColumn();
-						SqlMetadata sqlMetadata = MybatisSqlUtils.rewriteAsSelectPkField(orignSql, idColumn.getColumn());
-						//
-						String tenantId = CurrentRuntimeContext.getTenantId();
-						cleanCacheExecutor.execute(new Runnable() {
-							@Override
-							public void run() {
-								if(tenantId != null) {
-									CurrentRuntimeContext.setTenantId(tenantId);
-								}
-								removeCacheByDyncQuery(mapperMeta,boundSql, sqlMetadata);
-							}
-						});
+						//针对按条件更新或者删除的方法，执行前已查出相关主键，提交后清理对应主键缓存内容
+						//未能查出主键时由下面的缓存组清理（提交后异步执行）兜底，不在当前事务内同步清理
+						List<String> idCacheKeys = invocationVal.getEvictCacheKeys();
+						if(idCacheKeys != null && !idCacheKeys.isEmpty()) {
+							evictionPipeline.evictAfterCommit(idCacheKeys.toArray(new String[0]));
+						}
 					}
 				}
 				//删除同一cachegroup关联缓存
@@ -351,6 +443,14 @@ public class CacheHandler implements InterceptorHandler {
 				}
 			}
 		} finally {
+			//唤醒等待同一key查询结果的请求（查询异常时结果为null，等待者各自回源）
+			if(invocationVal.getLoadFlight() != null) {
+				if(queryResult == null) {
+					invocationVal.getLoadFlight().fail();
+				}else {
+					invocationVal.getLoadFlight().complete(queryResult);
+				}
+			}
 			//清除并发控制锁
 			if(invocationVal.getConcurrentLockKey() != null){
 				CacheUtils.remove(invocationVal.getConcurrentLockKey());
@@ -365,7 +465,25 @@ public class CacheHandler implements InterceptorHandler {
 	 * @param cacheKey
 	 */
 	private void cacheUniqueSelectRef(InvocationVals invocationVal,Object object, MappedStatement mt, String cacheKey) {
-		Collection<QueryCacheMethodMetadata> mcs = queryCacheMethods.get(mt.getId().substring(0, mt.getId().lastIndexOf(InvocationVals.DOT))).values();
+		String mapperClassName = mt.getId().substring(0, mt.getId().lastIndexOf(InvocationVals.DOT));
+		Map<String, QueryCacheMethodMetadata> refKeys = generateUniqueRefKeys(invocationVal, mapperClassName, object, cacheKey);
+		refKeys.forEach((fieldCacheKey,methodCache) -> {
+			cacheFieldRefKey(fieldCacheKey,cacheKey, methodCache.getExpire());
+			if(logger.isDebugEnabled())logger.debug("MENDMIX-TRACE-LOGGGING-->>  auto_cache_process addRefCache -> mapperId:{},cacheKey:{},refkey:{}",mt.getId(),fieldCacheKey,cacheKey);
+		});
+	}
+	
+	/**
+	 * 生成其他唯一结果查询方法的缓存key
+	 * @param invocationVal
+	 * @param mapperClassName
+	 * @param object
+	 * @param cacheKey 主键缓存key
+	 * @return 缓存key -> 查询方法
+	 */
+	private Map<String, QueryCacheMethodMetadata> generateUniqueRefKeys(InvocationVals invocationVal,String mapperClassName,Object object, String cacheKey) {
+		Map<String, QueryCacheMethodMetadata> refKeys = new HashMap<>(4);
+		Collection<QueryCacheMethodMetadata> mcs = queryCacheMethods.get(mapperClassName).values();
 		outter:for (QueryCacheMethodMetadata methodCache : mcs) {
 			if(!methodCache.isSecondQueryById())continue;
 			try {	
@@ -375,14 +493,48 @@ public class CacheHandler implements InterceptorHandler {
 					cacheFieldValues[i] = ReflectUtils.getObjectValue(object, methodCache.fieldNames[i]);
 					if(cacheFieldValues[i] == null)continue outter;
 				}
-				String fieldCacheKey = genarateQueryCacheKey(invocationVal,methodCache.keyPattern , cacheFieldValues);
-				
-				cacheFieldRefKey(fieldCacheKey,cacheKey, methodCache.getExpire());
-				if(logger.isDebugEnabled())logger.debug("MENDMIX-TRACE-LOGGGING-->>  auto_cache_process addRefCache -> mapperId:{},cacheKey:{},refkey:{}",mt.getId(),fieldCacheKey,cacheKey);
+				refKeys.put(genarateQueryCacheKey(invocationVal,methodCache.keyPattern , cacheFieldValues), methodCache);
 			} catch (Exception e) {
 				logger.warn("MENDMIX-TRACE-LOGGGING-->> cacheUniqueSelectRef:"+cacheKey,e);
 			}
 		}
+		return refKeys;
+	}
+	
+	/**
+	 * 新增记录写入缓存（主键及唯一索引引用）
+	 * <br>
+	 * 仅全字段插入（insert、insertList）写入实体，insertSelective未赋值字段可能由数据库默认值填充，只写入唯一索引引用
+	 * （覆盖之前缓存的空值占位）。
+	 * @param invocationVal
+	 * @param mapperClassName
+	 */
+	@SuppressWarnings("unchecked")
+	private void writeThroughInserted(InvocationVals invocationVal,String mapperClassName) {
+		String methodName = invocationVal.getMappedStatement().getId().substring(mapperClassName.length() + 1);
+		boolean fullColumns = CrudMethods.insert.name().equals(methodName) || CrudMethods.insertList.name().equals(methodName);
+		if(!fullColumns && !CrudMethods.insertSelective.name().equals(methodName))return;
+		QueryCacheMethodMetadata pkMetadata = queryCacheMethods.get(mapperClassName).get(mapperClassName + "." + CrudMethods.selectByPrimaryKey.name());
+		Object parameter = invocationVal.getParameter();
+		List<Object> entities;
+		if(parameter instanceof BaseEntity) {
+			entities = Arrays.asList(parameter);
+		}else if(parameter instanceof Map && ((Map<String, Object>)parameter).get("arg0") instanceof List) {
+			entities = (List<Object>) ((Map<String, Object>)parameter).get("arg0");
+		}else {
+			return;
+		}
+		for (Object entity : entities) {
+			if(!(entity instanceof BaseEntity) || ((BaseEntity)entity).getId() == null)continue;
+			String idCacheKey = genarateQueryCacheKey(invocationVal, pkMetadata.keyPattern, entity);
+			if(fullColumns) {
+				cacheWriter.write(mapperClassName, idCacheKey, entity, pkMetadata.getExpire(), false);
+			}
+			generateUniqueRefKeys(invocationVal, mapperClassName, entity, idCacheKey).forEach((fieldCacheKey,methodCache) -> {
+				cacheWriter.write(mapperClassName, fieldCacheKey, idCacheKey, methodCache.getExpire(), !nullValueCache);
+			});
+			if(logger.isDebugEnabled())logger.debug("MENDMIX-TRACE-LOGGGING-->>  auto_cache_process writeThrough -> mapperId:{},idCacheKey:{}",invocationVal.getMappedStatement().getId(),idCacheKey);
+		}
 	}
 	
 	/**
@@ -401,18 +553,21 @@ public class CacheHandler implements InterceptorHandler {
 	
 	
 	/**
-	 * 根据动态查询内容清理缓存
-	 * @param sqlMetadata 查询主键列表SQL语句信息
-	 * @param parameter 参数
-	 * @throws Exception 
+	 * 按更新条件查询受影响的主键缓存key
+	 * @return 查询失败返回null
 	 */
-	private void removeCacheByDyncQuery(MapperMetadata mapperMeta,BoundSql boundSql,SqlMetadata sqlMetadata) {
-		Connection connection = null;
+	private List<String> queryAffectedIdCacheKeys(InvocationVals invocationVal,String mapperClassName) {
+		MapperMetadata mapperMeta = MybatisMapperParser.getMapperMetadata(mapperClassName);
+		if(mapperMeta == null)return null;
 		PreparedStatement statement = null;
 		ResultSet rs = null;
 		try {
+			BoundSql boundSql = invocationVal.getMappedStatement().getBoundSql(invocationVal.getParameter());
+			ColumnMetadata idColumn = mapperMeta.getEntityMetadata().getIdColumn();
+			SqlMetadata sqlMetadata = MybatisSqlUtils.rewriteAsSelectPkField(boundSql.getSql(), idColumn.getColumn());
 			parseDyncQueryParameters(boundSql, sqlMetadata);
-			connection = dataSource.getConnection();
+			//使用当前事务的连接，由事务管理关闭
+			Connection connection = invocationVal.getExecutor().getTransaction().getConnection();
 			statement = connection.prepareStatement(sqlMetadata.getSql());
 			
 			List<Object> parameters = sqlMetadata.getParameters();
@@ -421,30 +576,23 @@ public class CacheHandler implements InterceptorHandler {
 			}
 			
 			rs = statement.executeQuery();
-			List<String> ids = new ArrayList<>();
+			List<String> idCacheKeys = new ArrayList<>();
+			String entityName = mapperMeta.getEntityClass().getSimpleName();
 			while (rs.next()) {
-				ids.add(rs.getString(1));
+				idCacheKeys.add(entityName + ID_CACHEKEY_JOIN + rs.getString(1));
 			}
-			if(ids != null && !ids.isEmpty()){
-				List<String> idCacheKeys = ids.stream().map(id -> {
-					return mapperMeta.getEntityClass().getSimpleName() + ID_CACHEKEY_JOIN + id.toString();
-				}).collect(Collectors.toList());
-				CacheUtils.remove(idCacheKeys.toArray(new String[0]));
-				if(logger.isDebugEnabled()) {
-					logger.debug("remove cacheKeys:{}",idCacheKeys);
-				}
+			if(logger.isDebugEnabled()) {
+				logger.debug("MENDMIX-TRACE-LOGGGING-->> affected cacheKeys:{}",idCacheKeys);
 			}
+			return idCacheKeys;
 		} catch (Exception e) {
-			e.printStackTrace();
-			final String groupName = mapperMeta.getEntityClass().getSimpleName();
-			clearCacheGroup(groupName);
+			logger.warn("MENDMIX-TRACE-LOGGGING-->> query affected ids error:{},mapperId:{}",e.getMessage(),invocationVal.getMappedStatement().getId());
+			return null;
 		}finally {
-			try {rs.close();} catch (Exception e2) {}
-			try {statement.close();} catch (Exception e2) {}
-			try {connection.close();} catch (Exception e2) {}
+			try {if(rs != null)rs.close();} catch (Exception e2) {}
+			try {if(statement != null)statement.close();} catch (Exception e2) {}
 		}
-	}
-	
+	}	
 	private void parseDyncQueryParameters(BoundSql boundSql,SqlMetadata sqlMetadata) throws Exception {
 		List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
 		Object parameterObject = boundSql.getParameterObject();
@@ -492,12 +640,17 @@ public class CacheHandler implements InterceptorHandler {
 		MapperMetadata entityInfo = MybatisMapperParser.getMapperMetadata(mapperClassName);
 		if(entityInfo == null)return;
 		final String groupName = entityInfo.getEntityClass().getSimpleName();
-		cleanCacheExecutor.execute(new Runnable() {
-			@Override
-			public void run() {
-				clearCacheGroup(groupName);
-				if(logger.isDebugEnabled())logger.debug("MENDMIX-TRACE-LOGGGING-->>  auto_cache_process removeGroupCache -> mapperId:{},groupName:{}",msId,groupName);
-			}
+		evictionPipeline.runAfterCommit(() -> {
+			//已有未开始的清理任务，合并
+			if(!pendingGroupClears.add(groupName))return;
+			cleanCacheExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					pendingGroupClears.remove(groupName);
+					clearCacheGroup(groupName);
+					if(logger.isDebugEnabled())logger.debug("MENDMIX-TRACE-LOGGGING-->>  auto_cache_process removeGroupCache -> mapperId:{},groupName:{}",msId,groupName);
+				}
+			});
 		});
 	}
 	
@@ -507,7 +660,7 @@ public class CacheHandler implements InterceptorHandler {
 	 */
 	private void removeCustomRelateCache(String updateId) {
 		final List<String> queryMethods = customUpdateCacheMapppings.get(updateId);
-		cleanCacheExecutor.execute(new Runnable() {
+		evictionPipeline.runAfterCommit(() -> cleanCacheExecutor.execute(new Runnable() {
 			@Override
 			public void run() {
 				QueryCacheMethodMetadata metadata;
@@ -517,7 +670,7 @@ public class CacheHandler implements InterceptorHandler {
 					clearCacheGroup(metadata.cacheGroupKey,prefix);
 				}
 			}
-		});
+		}));
 	}
 	
 	/**
@@ -620,6 +773,8 @@ public class CacheHandler implements InterceptorHandler {
 				methodCache.methodName = mapperClass.getName() + "." + CrudMethods.selectByPrimaryKey.name();
 				methodCache.expire = defaultCacheExpire;
 				methodCache.cacheGroupKey = entityClass.getSimpleName() + GROUPKEY_SUFFIX;
+				methodCache.refreshAhead = refreshAheadEnabled;
+				methodCache.refreshBeta = refreshAheadBeta;
 				break;
 			}
 		}
@@ -675,6 +830,14 @@ public class CacheHandler implements InterceptorHandler {
 			methodCache.refKey = cacheAnnotation.refKey()[0];
 		}
 		
+		//后台刷新无法还原调用方的上下文参数，按用户/上下文范围的缓存不支持提前刷新
+		if(cacheAnnotation.refreshAhead() && methodCache.contextParam != null){
+			logger.warn("MENDMIX-TRACE-LOGGGING-->> @Cache(refreshAhead = true) not supported with userScope or scopeContext,ignore refreshAhead:{}",methodCache.methodName);
+		}else if(!methodCache.uniqueIndex) {//唯一索引只缓存主键引用，随主键缓存刷新
+			methodCache.refreshAhead = cacheAnnotation.refreshAhead();
+			methodCache.refreshBeta = cacheAnnotation.refreshBeta();
+		}
+		
 		if(methodCache.contextParam != null && evictOnMethods.length == 0){
 			evictOnMethods = new String[]{"*"};
 		}
@@ -784,11 +947,16 @@ public class CacheHandler implements InterceptorHandler {
 		 list.add(queryMethodName);
 	}
 	
+	/**
+	 * 清理缓存组（按每秒key数限速，会阻塞调用线程，应在cleanCacheExecutor中执行）
+	 * @param groupName
+	 * @param prefixs
+	 */
 	public void clearCacheGroup(final String groupName,String ...prefixs) {
 		String cacheGroupKey = groupName.endsWith(CacheHandler.GROUPKEY_SUFFIX) ? groupName : groupName + CacheHandler.GROUPKEY_SUFFIX;
 		int keyCount = (int) CacheUtils.getListSize(cacheGroupKey);
 		if(keyCount <= 0)return;
-		int batchSize = 1000;
+		int batchSize = groupClearBatchSize;
 	    //保护策略
 		if(keyCount > batchSize) {
 			CacheUtils.setExpire(cacheGroupKey, CacheExpires.todayEndSeconds());
@@ -812,16 +980,43 @@ public class CacheHandler implements InterceptorHandler {
 				}).collect(Collectors.toList());
 			}
 			if(keys.isEmpty())continue;
-			//
+			//限速，避免大缓存组清理占满共享redis
+			if(groupClearRateLimiter != null)groupClearRateLimiter.acquire(keys.size());
 			CacheUtils.remove(keys.toArray(new String[0]));
 			if(logger.isDebugEnabled()) {
-				logger.debug("_clearGroupKey -> group:{},keys:{}",groupName,Arrays.toString(keys.toArray()));
+				logger.debug("_clearGroupKey -> group:{},progress:{}/{},keys:{}",groupName,toIndex,keyCount,Arrays.toString(keys.toArray()));
 			}
 		}
 	}
 	
+	public CacheRefreshExecutor getRefreshExecutor() {
+		return refreshExecutor;
+	}
+	
+	public TransactionalCacheWriter getCacheWriter() {
+		return cacheWriter;
+	}
+	
+	public CacheEvictionPipeline getEvictionPipeline() {
+		return evictionPipeline;
+	}
+	
+	/**
+	 * @return 数据源分组 -> 缓存清理队列
+	 */
+	public static Map<String, CacheEvictionPipeline> getEvictionPipelines() {
+		return evictionPipelines;
+	}
+	
 	@Override
-	public void close() {}
+	public void close() {
+		if(refreshExecutor != null)refreshExecutor.close();
+		//关闭后的删除请求由调用线程直接执行
+		if(evictionPipeline != null) {
+			evictionPipelines.values().remove(evictionPipeline);
+			evictionPipeline.close();
+		}
+	}
 
 	@Override
 	public int interceptorOrder() {
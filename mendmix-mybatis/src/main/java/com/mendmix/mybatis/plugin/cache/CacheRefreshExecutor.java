@@ -0,0 +1,180 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.mybatis.plugin.cache;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.defaults.DefaultSqlSessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mendmix.cache.CacheUtils;
+import com.mendmix.cache.SingleFlightLoader;
+import com.mendmix.common.CurrentRuntimeContext;
+import com.mendmix.common.ThreadLocalContext;
+import com.mendmix.common.async.StandardThreadExecutor.StandardThreadFactory;
+
+/**
+ * 缓存提前刷新（stale-while-revalidate）
+ * <br>
+ * 缓存临近过期时按XFetch算法随机提前触发刷新：剩余时间 <= delta * beta * -ln(random)，
+ * 过期时间与delta（该值实际回源耗时，不低于1秒）随缓存值保存（{@link RefreshableCacheValue}），命中时无需再查询TTL。刷新期间调用方继续读取旧值，
+ * 后台通过原MappedStatement重新查询并由{@link CacheHandler#onFinished}写回缓存。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月13日
+ */
+public class CacheRefreshExecutor {
+
+	private static final Logger logger = LoggerFactory.getLogger("com.mendmix.mybatis.plugin.cache");
+
+	private static final String CONTEXT_REFRESHING_KEY = "_ctx_cache_refreshing_";
+	private static final long MIN_DELTA_MILLIS = 1000;
+
+	private final ThreadPoolExecutor executor;
+	private final Set<String> refreshingKeys = ConcurrentHashMap.newKeySet();
+	private final Map<Configuration, SqlSessionFactory> sessionFactories = new ConcurrentHashMap<>();
+
+	private final LongAdder scheduledCount = new LongAdder();
+	private final LongAdder successCount = new LongAdder();
+	private final LongAdder failureCount = new LongAdder();
+	private final LongAdder rejectedCount = new LongAdder();
+
+	public CacheRefreshExecutor(int maxThreads,int queueCapacity) {
+		maxThreads = Math.max(1, maxThreads);
+		executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(queueCapacity),
+				new StandardThreadFactory("cacheRefreshExecutor"),
+				new ThreadPoolExecutor.AbortPolicy());
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * 当前线程是否后台刷新任务
+	 * @return
+	 */
+	public static boolean isRefreshing() {
+		return Boolean.parseBoolean(ThreadLocalContext.getStringValue(CONTEXT_REFRESHING_KEY));
+	}
+
+	/**
+	 * XFetch判断是否需要提前刷新
+	 * @param metadata
+	 * @param cacheKey
+	 * @param cacheValue 缓存值（非{@link RefreshableCacheValue}时不刷新，如更新时写入的值）
+	 * @return
+	 */
+	public boolean shouldRefresh(QueryCacheMethodMetadata metadata,String cacheKey,Object cacheValue) {
+		if(!(cacheValue instanceof RefreshableCacheValue) || refreshingKeys.contains(cacheKey))return false;
+		RefreshableCacheValue value = (RefreshableCacheValue) cacheValue;
+		long ttlMillis = value.getExpireAt() - System.currentTimeMillis();
+		//已过期
+		if(ttlMillis <= 0)return false;
+		double delta = Math.max(value.getLoadMillis() > 0 ? value.getLoadMillis() : metadata.loadMillis, MIN_DELTA_MILLIS);
+		double rnd = 1d - Math.random();
+		return ttlMillis <= delta * metadata.refreshBeta * -Math.log(rnd);
+	}
+
+	/**
+	 * 提交后台刷新任务
+	 * @param mt
+	 * @param parameter
+	 * @param metadata
+	 * @param cacheKey
+	 */
+	public void submit(MappedStatement mt,Object parameter,QueryCacheMethodMetadata metadata,String cacheKey) {
+		if(!refreshingKeys.add(cacheKey))return;
+		final Map<String, String> contextHeaders = CurrentRuntimeContext.getContextHeaders();
+		try {
+			executor.execute(() -> refresh(mt, parameter, metadata, cacheKey, contextHeaders));
+			scheduledCount.increment();
+		} catch (RejectedExecutionException e) {
+			refreshingKeys.remove(cacheKey);
+			rejectedCount.increment();
+		}
+	}
+
+	private void refresh(MappedStatement mt,Object parameter,QueryCacheMethodMetadata metadata,String cacheKey,Map<String, String> contextHeaders) {
+		SingleFlightLoader loader = CacheUtils.getSingleFlightLoader();
+		//其他节点正在刷新
+		if(!loader.tryAcquireLease(cacheKey)) {
+			refreshingKeys.remove(cacheKey);
+			return;
+		}
+		long start = System.currentTimeMillis();
+		try {
+			CurrentRuntimeContext.addContextHeaders(contextHeaders);
+			ThreadLocalContext.set(CONTEXT_REFRESHING_KEY, Boolean.TRUE.toString());
+			try(SqlSession session = getSqlSessionFactory(mt.getConfiguration()).openSession()) {
+				session.selectList(mt.getId(), parameter);
+			}
+			successCount.increment();
+			if(logger.isDebugEnabled())logger.debug("MENDMIX-TRACE-LOGGGING-->>  auto_cache_process refreshAhead -> mapperId:{},cacheKey:{},useTime:{}",mt.getId(),cacheKey,System.currentTimeMillis() - start);
+		} catch (Exception e) {
+			failureCount.increment();
+			logger.warn("MENDMIX-TRACE-LOGGGING-->>  auto_cache_process refreshAhead error -> mapperId:{},cacheKey:{}",mt.getId(),cacheKey,e);
+		} finally {
+			ThreadLocalContext.unset();
+			refreshingKeys.remove(cacheKey);
+			loader.releaseLease(cacheKey);
+		}
+	}
+
+	private SqlSessionFactory getSqlSessionFactory(Configuration configuration) {
+		return sessionFactories.computeIfAbsent(configuration, DefaultSqlSessionFactory::new);
+	}
+
+	public long getScheduledCount() {
+		return scheduledCount.sum();
+	}
+
+	public long getSuccessCount() {
+		return successCount.sum();
+	}
+
+	public long getFailureCount() {
+		return failureCount.sum();
+	}
+
+	public long getRejectedCount() {
+		return rejectedCount.sum();
+	}
+
+	public int getQueueSize() {
+		return executor.getQueue().size();
+	}
+
+	public void close() {
+		executor.shutdown();
+	}
+
+	@Override
+	public String toString() {
+		return "CacheRefreshExecutor [scheduled=" + getScheduledCount() + ", success=" + getSuccessCount() + ", failure="
+				+ getFailureCount() + ", rejected=" + getRejectedCount() + ", queueSize=" + getQueueSize() + "]";
+	}
+}
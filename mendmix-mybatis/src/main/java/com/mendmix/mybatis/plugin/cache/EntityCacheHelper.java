@@ -60,7 +60,7 @@ public class EntityCacheHelper {
 		
 		String entityClassName = entityClass.getSimpleName();
 		key = entityClassName + InvocationVals.DOT + key;
-		T result = CacheUtils.get(key);
+		T result = (T) RefreshableCacheValue.unwrap(CacheUtils.get(key));
 		if(result == null){
 			try {				
 				result = dataCaller.call();
@@ -43,6 +43,9 @@ public class QueryCacheMethodMetadata {
 	String contextParam;  
 	boolean concurrency = true;
 	String refKey;
+	boolean refreshAhead = false;//临近过期提前刷新
+	double refreshBeta = 1.0;
+	volatile long loadMillis;//回源耗时（毫秒）
 	public QueryCacheMethodMetadata() {}
 
 	public long getExpire() {
@@ -54,6 +57,11 @@ public class QueryCacheMethodMetadata {
 		return expire + (rnd > expire ? RandomUtils.nextLong(0, expire) : rnd);
 	}
 	
+	void recordLoadMillis(long millis) {
+		//指数加权平均，平滑偶发慢查询
+		loadMillis = loadMillis == 0 ? millis : (loadMillis * 7 + millis) / 8;
+	}
+	
 	/**
 	 * 是否需要通过关联主键二次查询
 	 * @return
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.mybatis.plugin.cache;
+
+import java.io.Serializable;
+
+/**
+ * 开启提前刷新的查询缓存值
+ * <br>
+ * 随值保存过期时间与本次回源耗时，命中时直接判断是否需要提前刷新，无需再查询剩余过期时间。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月13日
+ */
+public class RefreshableCacheValue implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private Object value;
+	private long expireAt;//过期时间点（毫秒）
+	private long loadMillis;//回源耗时（毫秒）
+
+	public RefreshableCacheValue() {}
+
+	public RefreshableCacheValue(Object value, long expireSeconds, long loadMillis) {
+		this.value = value;
+		this.expireAt = System.currentTimeMillis() + expireSeconds * 1000;
+		this.loadMillis = loadMillis;
+	}
+
+	public Object getValue() {
+		return value;
+	}
+
+	public void setValue(Object value) {
+		this.value = value;
+	}
+
+	public long getExpireAt() {
+		return expireAt;
+	}
+
+	public void setExpireAt(long expireAt) {
+		this.expireAt = expireAt;
+	}
+
+	public long getLoadMillis() {
+		return loadMillis;
+	}
+
+	public void setLoadMillis(long loadMillis) {
+		this.loadMillis = loadMillis;
+	}
+
+	/**
+	 * 取出原始缓存值
+	 * @param cacheValue
+	 * @return
+	 */
+	public static Object unwrap(Object cacheValue) {
+		return cacheValue instanceof RefreshableCacheValue ? ((RefreshableCacheValue) cacheValue).value : cacheValue;
+	}
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.mybatis.plugin.cache;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.mendmix.cache.CacheAdapter;
+import com.mendmix.cache.CacheUtils;
+import com.mendmix.common.util.SerializeUtils;
+
+/**
+ * 事务感知的缓存写入
+ * <br>
+ * 事务内的写入先按事务暂存，提交后对象值按各自过期时间一次批量写入（pipeline），回滚则丢弃；无事务时直接写入。
+ * 暂存时即序列化对象快照，之后调用方对实体的修改不影响提交后写入的值。
+ * 同一事务内后续对该实体的更新/删除会丢弃其暂存内容，避免提交后写入旧值。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class TransactionalCacheWriter {
+
+	private static final Logger logger = LoggerFactory.getLogger("com.mendmix.mybatis.plugin.cache");
+
+	private final CacheAdapter cacheAdapter;
+	private final LongAdder writeCount = new LongAdder();
+	private final LongAdder flushCount = new LongAdder();
+	private final LongAdder discardCount = new LongAdder();
+
+	public TransactionalCacheWriter() {
+		this(CacheUtils.getCacheAdapter());
+	}
+
+	public TransactionalCacheWriter(CacheAdapter cacheAdapter) {
+		this.cacheAdapter = cacheAdapter;
+	}
+
+	/**
+	 * 写入缓存
+	 * @param group 所属实体（用于同一事务内丢弃）
+	 * @param key
+	 * @param value
+	 * @param expireSeconds
+	 * @param strValue 是否按字符串写入
+	 */
+	public void write(String group, String key, Object value, long expireSeconds, boolean strValue) {
+		PendingWrites pending = currentPendingWrites();
+		if(pending == null) {
+			PendingWrites writes = new PendingWrites(false);
+			writes.add(group, key, value, expireSeconds, strValue);
+			writeAll(writes);
+			return;
+		}
+		if(!strValue) {
+			try {
+				value = SerializeUtils.serialize(value);
+			} catch (Exception e) {
+				//无法快照的对象不写入，首次查询时加载
+				logger.warn("MENDMIX-TRACE-LOGGGING-->> snapshot cache value error:{},key:{}",e.getMessage(),key);
+				return;
+			}
+		}
+		pending.add(group, key, value, expireSeconds, strValue);
+	}
+
+	/**
+	 * 丢弃当前事务内该实体的暂存写入
+	 * @param group
+	 */
+	public void discard(String group) {
+		if(!TransactionSynchronizationManager.isSynchronizationActive())return;
+		PendingWrites pending = (PendingWrites) TransactionSynchronizationManager.getResource(this);
+		if(pending == null)return;
+		int discarded = pending.discard(group);
+		if(discarded > 0) {
+			discardCount.add(discarded);
+			if(logger.isDebugEnabled())logger.debug("MENDMIX-TRACE-LOGGGING-->>  auto_cache_process discardPendingWrites -> group:{},keys:{}",group,discarded);
+		}
+	}
+
+	private PendingWrites currentPendingWrites() {
+		if(!TransactionSynchronizationManager.isSynchronizationActive())return null;
+		PendingWrites pending = (PendingWrites) TransactionSynchronizationManager.getResource(this);
+		if(pending == null) {
+			pending = new PendingWrites(true);
+			TransactionSynchronizationManager.bindResource(this, pending);
+			TransactionSynchronizationManager.registerSynchronization(new PendingWritesSynchronization(pending));
+		}
+		return pending;
+	}
+
+	private void writeAll(PendingWrites pending) {
+		if(pending.isEmpty())return;
+		try {
+			if(!pending.objectValues.isEmpty()) {
+				Map<String, Object> values = pending.objectValues;
+				if(pending.snapshot) {
+					values = new LinkedHashMap<>(values.size());
+					for (Map.Entry<String, Object> entry : pending.objectValues.entrySet()) {
+						values.put(entry.getKey(), SerializeUtils.deserialize((byte[]) entry.getValue()));
+					}
+				}
+				cacheAdapter.setAll(values, pending.objectExpires);
+				writeCount.add(values.size());
+			}
+			for (Map.Entry<String, StrValue> entry : pending.strValues.entrySet()) {
+				cacheAdapter.setStr(entry.getKey(), entry.getValue().value, entry.getValue().expireSeconds);
+				writeCount.increment();
+			}
+			flushCount.increment();
+		} catch (Exception e) {
+			//写入失败只影响首次命中，不影响业务
+			logger.warn("MENDMIX-TRACE-LOGGGING-->> flush cache writes error:{}",e.getMessage());
+		}
+	}
+
+	public long getWriteCount() {
+		return writeCount.sum();
+	}
+
+	public long getFlushCount() {
+		return flushCount.sum();
+	}
+
+	public long getDiscardCount() {
+		return discardCount.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "TransactionalCacheWriter [writes=" + getWriteCount() + ", flushes=" + getFlushCount() + ", discards="
+				+ getDiscardCount() + "]";
+	}
+
+	private class PendingWritesSynchronization implements TransactionSynchronization {
+
+		final PendingWrites pending;
+
+		PendingWritesSynchronization(PendingWrites pending) {
+			this.pending = pending;
+		}
+
+		@Override
+		public void suspend() {
+			TransactionSynchronizationManager.unbindResource(TransactionalCacheWriter.this);
+		}
+
+		@Override
+		public void resume() {
+			TransactionSynchronizationManager.bindResource(TransactionalCacheWriter.this, pending);
+		}
+
+		@Override
+		public void afterCommit() {
+			writeAll(pending);
+		}
+
+		@Override
+		public void afterCompletion(int status) {
+			TransactionSynchronizationManager.unbindResourceIfPossible(TransactionalCacheWriter.this);
+			if(status != STATUS_COMMITTED && !pending.isEmpty()) {
+				discardCount.add(pending.size());
+			}
+		}
+	}
+
+	private static class StrValue {
+		final String value;
+		final long expireSeconds;
+
+		StrValue(String value, long expireSeconds) {
+			this.value = value;
+			this.expireSeconds = expireSeconds;
+		}
+	}
+
+	private static class PendingWrites {
+		//各key过期时间不同（含随机偏移），按key记录后一次批量写入
+		final Map<String, Object> objectValues = new LinkedHashMap<>();
+		final Map<String, Long> objectExpires = new HashMap<>();
+		final Map<String, StrValue> strValues = new LinkedHashMap<>();
+		final Map<String, Set<String>> groupKeys = new HashMap<>();
+		//对象值为序列化快照
+		final boolean snapshot;
+
+		PendingWrites(boolean snapshot) {
+			this.snapshot = snapshot;
+		}
+
+		void add(String group, String key, Object value, long expireSeconds, boolean strValue) {
+			if(strValue) {
+				strValues.put(key, new StrValue((String) value, expireSeconds));
+			}else {
+				objectValues.put(key, value);
+				objectExpires.put(key, expireSeconds);
+			}
+			groupKeys.computeIfAbsent(group, k -> new HashSet<>()).add(key);
+		}
+
+		int discard(String group) {
+			Set<String> keys = groupKeys.remove(group);
+			if(keys == null)return 0;
+			objectValues.keySet().removeAll(keys);
+			objectExpires.keySet().removeAll(keys);
+			strValues.keySet().removeAll(keys);
+			return keys.size();
+		}
+
+		int size() {
+			return strValues.size() + objectValues.size();
+		}
+
+		boolean isEmpty() {
+			return size() == 0;
+		}
+	}
+}
@@ -74,4 +74,17 @@ public @interface Cache {
 	 * @return
 	 */
 	String[] refKey() default {};
+	
+	/**
+	 * 是否开启临近过期提前刷新（后台刷新期间继续返回旧值）<br>
+	 * 不支持userScope、scopeContext范围的缓存
+	 * @return
+	 */
+	boolean refreshAhead() default false;
+	
+	/**
+	 * 提前刷新系数，越大越早触发刷新（XFetch算法beta参数）
+	 * @return
+	 */
+	double refreshBeta() default 1.0;
 }
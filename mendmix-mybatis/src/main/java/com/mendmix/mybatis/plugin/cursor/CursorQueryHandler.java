@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.mybatis.plugin.cursor;
+
+import java.util.Collections;
+import java.util.Iterator;
+
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.session.RowBounds;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mendmix.mybatis.MybatisConfigs;
+import com.mendmix.mybatis.core.InterceptorHandler;
+import com.mendmix.mybatis.datasource.DatabaseType;
+import com.mendmix.mybatis.plugin.InvocationVals;
+import com.mendmix.mybatis.plugin.MendmixMybatisInterceptor;
+import com.mendmix.mybatis.plugin.rewrite.SqlRewriteHandler;
+
+/**
+ * 游标（流式）查询
+ * <br>
+ * 使用{@link SqlRewriteHandler}改写后的sql（租户、数据权限等）执行queryCursor，并设置fetchSize；
+ * mysql默认fetchSize为Integer.MIN_VALUE（逐行读取），其他数据库默认1000（postgresql需在事务内才生效）。
+ * mapper方法已指定fetchSize的以方法为准。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class CursorQueryHandler implements InterceptorHandler {
+
+	private static final Logger logger = LoggerFactory.getLogger("com.mendmix.mybatis");
+	
+	private static final String DEFAULT_FETCH_SIZE = "1000";
+	
+	private Integer fetchSize;
+
+	@Override
+	public void start(MendmixMybatisInterceptor context) {
+		String dbType = MybatisConfigs.getDbType(context.getGroupName());
+		//mysql驱动只有Integer.MIN_VALUE才逐行读取，否则一次加载全部结果
+		String defaultFetchSize = DatabaseType.mysql.name().equals(dbType) ? String.valueOf(Integer.MIN_VALUE) : DEFAULT_FETCH_SIZE;
+		fetchSize = Integer.valueOf(MybatisConfigs.getProperty(context.getGroupName(), MybatisConfigs.CURSOR_FETCH_SIZE, defaultFetchSize));
+		logger.info("MENDMIX-TRACE-LOGGGING-->> cursor query fetchSize:{}",fetchSize);
+	}
+
+	@Override
+	public Object onInterceptor(InvocationVals invocation) throws Throwable {
+		if(!invocation.isCursorQuery() || !invocation.isSelect())return null;
+		//改写后无需查询数据库
+		if(invocation.getSql() == null)return EmptyCursor.INSTANCE;
+		
+		MappedStatement mappedStatement = invocation.getMappedStatement();
+		if(!invocation.isSqlRewrited() && mappedStatement.getFetchSize() != null)return null;
+		
+		BoundSql boundSql;
+		if(invocation.isSqlRewrited()) {
+			boundSql = new BoundSql(mappedStatement.getConfiguration(), invocation.getSql(),invocation.getBoundSql().getParameterMappings(), invocation.getParameter());
+			SqlRewriteHandler.copyForeachAdditionlParams(invocation.getBoundSql(), boundSql);
+		}else {
+			boundSql = invocation.getBoundSql();
+		}
+		Integer statementFetchSize = mappedStatement.getFetchSize() == null ? fetchSize : mappedStatement.getFetchSize();
+		MappedStatement cursorStatement = buildCursorMappedStatement(mappedStatement, boundSql, statementFetchSize);
+		RowBounds rowBounds = (RowBounds) invocation.getArgs()[2];
+		return invocation.getExecutor().queryCursor(cursorStatement, invocation.getParameter(), rowBounds);
+	}
+
+	/**
+	 * 复制原MappedStatement，sql固定为本次(改写后)的boundSql，不注册到configuration
+	 */
+	private static MappedStatement buildCursorMappedStatement(MappedStatement ms,BoundSql boundSql,Integer fetchSize) {
+		MappedStatement.Builder builder = new MappedStatement.Builder(ms.getConfiguration(), ms.getId(), parameterObject -> boundSql, ms.getSqlCommandType());
+		builder.resource(ms.getResource());
+		builder.fetchSize(fetchSize);
+		builder.statementType(ms.getStatementType());
+		builder.timeout(ms.getTimeout());
+		builder.parameterMap(ms.getParameterMap());
+		builder.resultMaps(ms.getResultMaps());
+		builder.resultSetType(ms.getResultSetType());
+		builder.resultOrdered(ms.isResultOrdered());
+		builder.databaseId(ms.getDatabaseId());
+		builder.lang(ms.getLang());
+		builder.cache(ms.getCache());
+		builder.flushCacheRequired(ms.isFlushCacheRequired());
+		builder.useCache(false);
+		return builder.build();
+	}
+
+	@Override
+	public void onFinished(InvocationVals invocation, Object result) {}
+
+	@Override
+	public void close() {}
+
+	@Override
+	public int interceptorOrder() {
+		//在sql改写之后执行
+		return 4;
+	}
+	
+	private static class EmptyCursor implements Cursor<Object> {
+		
+		static final EmptyCursor INSTANCE = new EmptyCursor();
+
+		@Override
+		public Iterator<Object> iterator() {
+			return Collections.emptyIterator();
+		}
+
+		@Override
+		public boolean isOpen() {
+			return false;
+		}
+
+		@Override
+		public boolean isConsumed() {
+			return true;
+		}
+
+		@Override
+		public int getCurrentIndex() {
+			return -1;
+		}
+
+		@Override
+		public void close() {}
+	}
+
+}
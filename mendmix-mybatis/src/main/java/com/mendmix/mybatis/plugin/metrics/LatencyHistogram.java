@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.mybatis.plugin.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 固定分桶耗时直方图（无锁，百分位取所在桶上界）
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class LatencyHistogram {
+
+	//桶上界（微秒）
+	private static final long[] BUCKET_BOUNDS = {
+			100, 250, 500, 
+			1_000, 2_500, 5_000, 
+			10_000, 25_000, 50_000, 
+			100_000, 250_000, 500_000, 
+			1_000_000, 2_500_000, 5_000_000, 
+			10_000_000, Long.MAX_VALUE };
+
+	private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS.length];
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalMicros = new LongAdder();
+	private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+	
+	public LatencyHistogram() {
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+	
+	public void record(long nanos) {
+		long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+		int index = 0;
+		while(micros > BUCKET_BOUNDS[index])index++;
+		buckets[index].increment();
+		count.increment();
+		totalMicros.add(micros);
+		maxMicros.accumulate(micros);
+	}
+	
+	public long getCount() {
+		return count.sum();
+	}
+	
+	public double getAvgMillis() {
+		long count = getCount();
+		return count == 0 ? 0 : totalMicros.sum() / 1000d / count;
+	}
+	
+	public double getMaxMillis() {
+		return maxMicros.get() / 1000d;
+	}
+	
+	/**
+	 * @param percentile 0-1
+	 * @return 毫秒
+	 */
+	public double getPercentileMillis(double percentile) {
+		long count = getCount();
+		if(count == 0)return 0;
+		long threshold = (long) Math.ceil(count * percentile);
+		long accumulated = 0;
+		for (int i = 0; i < buckets.length; i++) {
+			accumulated += buckets[i].sum();
+			if(accumulated >= threshold) {
+				//最后一个桶无上界，取最大值
+				return i == buckets.length - 1 ? getMaxMillis() : Math.min(BUCKET_BOUNDS[i], maxMicros.get()) / 1000d;
+			}
+		}
+		return getMaxMillis();
+	}
+	
+	public void reset() {
+		for (LongAdder bucket : buckets) {
+			bucket.reset();
+		}
+		count.reset();
+		totalMicros.reset();
+		maxMicros.reset();
+	}
+	
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<>(8);
+		map.put("count", getCount());
+		map.put("avgMillis", getAvgMillis());
+		map.put("p50Millis", getPercentileMillis(0.5));
+		map.put("p95Millis", getPercentileMillis(0.95));
+		map.put("p99Millis", getPercentileMillis(0.99));
+		map.put("maxMillis", getMaxMillis());
+		return map;
+	}
+}
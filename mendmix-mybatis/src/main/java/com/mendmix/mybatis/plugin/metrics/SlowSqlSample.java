@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.mybatis.plugin.metrics;
+
+import java.util.Map;
+
+/**
+ * 慢sql样本
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class SlowSqlSample {
+
+	private String statementId;
+	private String sql;
+	private double useMillis;
+	private long rows;
+	private long timestamp;
+	private Map<String, Double> phaseMillis;
+
+	public SlowSqlSample(String statementId, String sql, double useMillis, long rows, Map<String, Double> phaseMillis) {
+		this.statementId = statementId;
+		this.sql = sql;
+		this.useMillis = useMillis;
+		this.rows = rows;
+		this.phaseMillis = phaseMillis;
+		this.timestamp = System.currentTimeMillis();
+	}
+
+	public String getStatementId() {
+		return statementId;
+	}
+
+	public String getSql() {
+		return sql;
+	}
+
+	public double getUseMillis() {
+		return useMillis;
+	}
+
+	public long getRows() {
+		return rows;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public Map<String, Double> getPhaseMillis() {
+		return phaseMillis;
+	}
+}
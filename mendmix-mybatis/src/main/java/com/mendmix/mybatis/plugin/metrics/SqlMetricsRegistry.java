@@ -0,0 +1,192 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.mybatis.plugin.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.plugin.Invocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mendmix.common.model.Page;
+import com.mendmix.common.util.ResourceUtils;
+import com.mendmix.mybatis.MybatisConfigs;
+
+/**
+ * sql执行统计（mendmix.mybatis.metrics.enabled=true开启）
+ * <br>
+ * 按MappedStatement统计总耗时及各阶段耗时（各拦截处理器、executor、jdbc）、缓存命中率、返回行数，
+ * 耗时超过mendmix.mybatis.metrics.slowSqlMillis的记录慢sql样本（改写后的sql）。
+ * 处理器阶段耗时不包含其内部执行的jdbc耗时（如分页、sql改写后直接查询）。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class SqlMetricsRegistry {
+
+	private static final Logger logger = LoggerFactory.getLogger("com.mendmix.mybatis");
+	
+	public static final String PHASE_EXECUTOR = "executor";
+	public static final String PHASE_JDBC = "jdbc";
+	
+	private static final long slowSqlNanos = TimeUnit.MILLISECONDS.toNanos(ResourceUtils.getLong(MybatisConfigs.METRICS_SLOW_SQL_MILLIS, 1000));
+	private static final int maxSlowSamples = ResourceUtils.getInt(MybatisConfigs.METRICS_SLOW_SQL_SAMPLES, 100);
+
+	private static final Map<String, StatementMetrics> statements = new ConcurrentHashMap<>();
+	private static final ConcurrentLinkedDeque<SlowSqlSample> slowSamples = new ConcurrentLinkedDeque<>();
+	private static final ThreadLocal<InvocationMetrics> current = new ThreadLocal<>();
+	
+	/**
+	 * 开始统计一次调用（嵌套调用各自统计）
+	 * @param statementId
+	 * @return
+	 */
+	public static InvocationMetrics begin(String statementId) {
+		InvocationMetrics metrics = new InvocationMetrics(statementId, current.get());
+		current.set(metrics);
+		return metrics;
+	}
+	
+	/**
+	 * 结束统计
+	 * @param metrics
+	 * @param sql 实际执行（改写后）的sql
+	 * @param result
+	 * @param error
+	 * @param cacheHit 未查缓存为null
+	 */
+	public static void end(InvocationMetrics metrics,String sql,Object result,boolean error,Boolean cacheHit) {
+		if(metrics.parent == null) {
+			current.remove();
+		}else {
+			current.set(metrics.parent);
+		}
+		long nanos = System.nanoTime() - metrics.start;
+		if(metrics.jdbcNanos > 0)metrics.addPhase(PHASE_JDBC, metrics.jdbcNanos);
+		long rows = countRows(result);
+		boolean slow = nanos >= slowSqlNanos;
+		
+		StatementMetrics statementMetrics = statements.computeIfAbsent(metrics.statementId, StatementMetrics::new);
+		for (Map.Entry<String, Long> entry : metrics.phaseNanos.entrySet()) {
+			statementMetrics.recordPhase(entry.getKey(), entry.getValue());
+		}
+		statementMetrics.record(nanos, rows, error, cacheHit, slow);
+		
+		if(slow) {
+			Map<String, Double> phaseMillis = new LinkedHashMap<>(metrics.phaseNanos.size());
+			metrics.phaseNanos.forEach((k,v) -> phaseMillis.put(k, v / 1000000d));
+			SlowSqlSample sample = new SlowSqlSample(metrics.statementId, sql, nanos / 1000000d, rows, phaseMillis);
+			slowSamples.addFirst(sample);
+			while(slowSamples.size() > maxSlowSamples) {
+				slowSamples.pollLast();
+			}
+			logger.warn("MENDMIX-TRACE-LOGGGING-->> slow sql -> mapperId:{},useMillis:{},rows:{},phases:{},sql:{}", metrics.statementId, sample.getUseMillis(), rows, phaseMillis, sql);
+		}
+	}
+	
+	/**
+	 * 统计jdbc执行（StatementHandler）耗时，计入当前调用
+	 * @param invocation
+	 * @return
+	 * @throws Throwable
+	 */
+	public static Object proceedJdbc(Invocation invocation) throws Throwable {
+		InvocationMetrics metrics = current.get();
+		if(metrics == null)return invocation.proceed();
+		long start = System.nanoTime();
+		try {
+			return invocation.proceed();
+		} finally {
+			metrics.jdbcNanos += System.nanoTime() - start;
+		}
+	}
+	
+	private static long countRows(Object result) {
+		if(result instanceof List) {
+			List<?> list = (List<?>) result;
+			if(list.size() == 1 && list.get(0) instanceof Page) {
+				List<?> data = ((Page<?>) list.get(0)).getData();
+				return data == null ? 0 : data.size();
+			}
+			return list.size();
+		}
+		if(result instanceof Number) {
+			//批量执行模式返回BATCH_UPDATE_RETURN_VALUE（负数），不计行数
+			return Math.max(0, ((Number) result).longValue());
+		}
+		return 0;
+	}
+	
+	public static StatementMetrics getStatementMetrics(String statementId) {
+		return statements.get(statementId);
+	}
+	
+	public static Collection<StatementMetrics> getAllStatementMetrics() {
+		return statements.values();
+	}
+	
+	public static List<SlowSqlSample> getSlowSamples() {
+		return new ArrayList<>(slowSamples);
+	}
+	
+	public static void reset() {
+		statements.clear();
+		slowSamples.clear();
+	}
+	
+	/**
+	 * 单次调用的阶段耗时
+	 */
+	public static class InvocationMetrics {
+		final String statementId;
+		final InvocationMetrics parent;
+		final long start = System.nanoTime();
+		final Map<String, Long> phaseNanos = new LinkedHashMap<>(8);
+		long jdbcNanos;
+		
+		private long phaseStart;
+		private long phaseJdbcStart;
+		
+		InvocationMetrics(String statementId,InvocationMetrics parent) {
+			this.statementId = statementId;
+			this.parent = parent;
+		}
+		
+		public void startPhase() {
+			phaseStart = System.nanoTime();
+			phaseJdbcStart = jdbcNanos;
+		}
+		
+		/**
+		 * 结束阶段，扣除期间的jdbc耗时
+		 * @param phase
+		 */
+		public void endPhase(String phase) {
+			addPhase(phase, System.nanoTime() - phaseStart - (jdbcNanos - phaseJdbcStart));
+		}
+		
+		void addPhase(String phase,long nanos) {
+			phaseNanos.merge(phase, nanos, Long::sum);
+		}
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.mybatis.plugin.metrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.mendmix.common.model.WrapperResponse;
+import com.mendmix.common.util.JsonUtils;
+import com.mendmix.common.util.WebUtils;
+import com.mendmix.mybatis.plugin.cache.CacheEvictionPipeline;
+import com.mendmix.mybatis.plugin.cache.CacheHandler;
+
+/**
+ * sql执行统计查询
+ * <br>
+ * /mybatis/metrics/statements：各MappedStatement统计（按总耗时倒序）
+ * /mybatis/metrics/slow：慢sql样本
+ * /mybatis/metrics/cacheEviction：缓存清理队列深度及延迟
+ * /mybatis/metrics/reset：清空统计（POST）
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+//@WebServlet(urlPatterns = "/mybatis/metrics/*", description = "sql执行统计")
+public class SqlMetricsServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+	
+	public static final String DEFAULT_URI = "/mybatis/metrics/*";
+
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+		doPost(req, resp);
+	}
+
+	@Override
+	protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+		if (!WebUtils.isInternalRequest(req)) {
+			WebUtils.responseOutJson(resp, JsonUtils.toJson(new WrapperResponse<>(403, "外网禁止访问")));
+			return;
+		}
+		String act = req.getPathInfo() == null ? "statements" : req.getPathInfo().substring(1);
+		Object result;
+		if("slow".equals(act)) {
+			result = SqlMetricsRegistry.getSlowSamples();
+		}else if("cacheEviction".equals(act)) {
+			Map<String, Object> pipelines = new HashMap<>();
+			for (Map.Entry<String, CacheEvictionPipeline> entry : CacheHandler.getEvictionPipelines().entrySet()) {
+				pipelines.put(entry.getKey(), entry.getValue().toMap());
+			}
+			result = pipelines;
+		}else if("POST".equals(req.getMethod()) && "reset".equals(act)) {
+			SqlMetricsRegistry.reset();
+			result = new WrapperResponse<>();
+		}else {
+			List<StatementMetrics> statements = new ArrayList<>(SqlMetricsRegistry.getAllStatementMetrics());
+			statements.sort(Comparator.comparingDouble((StatementMetrics m) -> m.getLatency().getAvgMillis() * m.getLatency().getCount()).reversed());
+			List<Map<String, Object>> list = new ArrayList<>(statements.size());
+			for (StatementMetrics metrics : statements) {
+				list.add(metrics.toMap());
+			}
+			result = list;
+		}
+		WebUtils.responseOutJson(resp, JsonUtils.toJson(result));
+	}
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.mybatis.plugin.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个MappedStatement的执行统计
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class StatementMetrics {
+
+	private final String statementId;
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final Map<String, LatencyHistogram> phases = new ConcurrentHashMap<>();
+	private final LongAdder errors = new LongAdder();
+	private final LongAdder rows = new LongAdder();
+	private final LongAdder cacheLookups = new LongAdder();
+	private final LongAdder cacheHits = new LongAdder();
+	private final LongAdder slowCount = new LongAdder();
+	
+	public StatementMetrics(String statementId) {
+		this.statementId = statementId;
+	}
+
+	void recordPhase(String phase,long nanos) {
+		phases.computeIfAbsent(phase, k -> new LatencyHistogram()).record(nanos);
+	}
+
+	void record(long nanos,long rows,boolean error,Boolean cacheHit,boolean slow) {
+		latency.record(nanos);
+		if(error)errors.increment();
+		if(rows > 0)this.rows.add(rows);
+		if(cacheHit != null) {
+			cacheLookups.increment();
+			if(cacheHit)cacheHits.increment();
+		}
+		if(slow)slowCount.increment();
+	}
+
+	public String getStatementId() {
+		return statementId;
+	}
+
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	public Map<String, LatencyHistogram> getPhases() {
+		return phases;
+	}
+
+	public long getErrors() {
+		return errors.sum();
+	}
+
+	public long getRows() {
+		return rows.sum();
+	}
+
+	public double getCacheHitRatio() {
+		long lookups = cacheLookups.sum();
+		return lookups == 0 ? 0 : (double) cacheHits.sum() / lookups;
+	}
+
+	public long getSlowCount() {
+		return slowCount.sum();
+	}
+	
+	public void reset() {
+		latency.reset();
+		phases.clear();
+		errors.reset();
+		rows.reset();
+		cacheLookups.reset();
+		cacheHits.reset();
+		slowCount.reset();
+	}
+
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<>(12);
+		map.put("statementId", statementId);
+		map.putAll(latency.toMap());
+		map.put("errors", getErrors());
+		map.put("rows", getRows());
+		map.put("cacheLookups", cacheLookups.sum());
+		map.put("cacheHitRatio", getCacheHitRatio());
+		map.put("slowCount", getSlowCount());
+		Map<String, Object> phaseMap = new LinkedHashMap<>(phases.size());
+		phases.forEach((k,v) -> phaseMap.put(k, v.toMap()));
+		map.put("phases", phaseMap);
+		return map;
+	}
+}
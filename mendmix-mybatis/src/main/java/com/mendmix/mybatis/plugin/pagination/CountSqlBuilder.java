@@ -0,0 +1,248 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.mybatis.plugin.pagination;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import net.sf.jsqlparser.expression.Alias;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.ExpressionVisitorAdapter;
+import net.sf.jsqlparser.expression.Function;
+import net.sf.jsqlparser.expression.operators.relational.ExpressionList;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.select.FromItem;
+import net.sf.jsqlparser.statement.select.Join;
+import net.sf.jsqlparser.statement.select.OrderByElement;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+import net.sf.jsqlparser.statement.select.Select;
+import net.sf.jsqlparser.statement.select.SelectBody;
+import net.sf.jsqlparser.statement.select.SelectExpressionItem;
+import net.sf.jsqlparser.statement.select.SelectItem;
+import net.sf.jsqlparser.statement.select.SetOperationList;
+import net.sf.jsqlparser.statement.select.SubSelect;
+
+/**
+ * 基于语法树的count sql生成
+ * <br>
+ * 简单查询直接改写为select count(1)并去掉order by；含分组、去重、聚合、union等的查询去掉order by后包一层子查询；
+ * 解析失败时降级为{@link PageSqlUtils#getCountSql(String)}。
+ * <br>
+ * optimizeJoin开启时去掉未被查询条件及其他关联引用的left join（一对多关联会改变总数，需确认关联表为一对一时开启）。
+ * 生成结果按原sql缓存。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class CountSqlBuilder {
+
+	private static final Logger logger = LoggerFactory.getLogger(CountSqlBuilder.class);
+
+	private static final String COUNT_ALIAS = "tmp_count";
+
+	private final boolean optimizeJoin;
+	private final Cache<String, String> countSqlCache;
+
+	public CountSqlBuilder(boolean optimizeJoin, int cacheSize) {
+		this.optimizeJoin = optimizeJoin;
+		this.countSqlCache = CacheBuilder.newBuilder().maximumSize(cacheSize).build();
+	}
+
+	public String getCountSql(String sql) {
+		String countSql = countSqlCache.getIfPresent(sql);
+		if(countSql == null) {
+			countSql = parseCountSql(sql);
+			countSqlCache.put(sql, countSql);
+		}
+		return countSql;
+	}
+
+	private String parseCountSql(String sql) {
+		Select select;
+		try {
+			Statement statement = CCJSqlParserUtil.parse(sql);
+			if(!(statement instanceof Select))return PageSqlUtils.getCountSql(sql);
+			select = (Select) statement;
+		} catch (Exception e) {
+			logger.debug("MENDMIX-TRACE-LOGGGING-->> parse count sql error:{},fallback to regex",e.getMessage());
+			return PageSqlUtils.getCountSql(sql);
+		}
+		SelectBody selectBody = select.getSelectBody();
+		if(selectBody instanceof SetOperationList) {
+			SetOperationList operationList = (SetOperationList) selectBody;
+			if(!containsParameter(operationList.getOrderByElements()))operationList.setOrderByElements(null);
+		}
+		if(!(selectBody instanceof PlainSelect)) {
+			return wrapCountSql(select.toString());
+		}
+		PlainSelect plainSelect = (PlainSelect) selectBody;
+		//去掉的部分不能包含参数占位，否则参数错位
+		if(!containsParameter(plainSelect.getOrderByElements())) {
+			plainSelect.setOrderByElements(null);
+		}
+		if(select.getWithItemsList() != null || !isSimpleSelect(plainSelect)) {
+			return wrapCountSql(select.toString());
+		}
+		if(optimizeJoin)removeUnusedJoins(plainSelect);
+		plainSelect.setSelectItems(Collections.singletonList(countItem()));
+		return plainSelect.toString();
+	}
+
+	private static boolean isSimpleSelect(PlainSelect select) {
+		if(select.getDistinct() != null
+				|| select.getGroupBy() != null
+				|| select.getHaving() != null
+				|| select.getLimit() != null
+				|| select.getOffset() != null
+				|| select.getFetch() != null
+				|| select.getTop() != null
+				|| select.getOrderByElements() != null
+				|| select.isForUpdate()) {
+			return false;
+		}
+		AggregateVisitor visitor = new AggregateVisitor();
+		for (SelectItem item : select.getSelectItems()) {
+			if(!(item instanceof SelectExpressionItem))continue;
+			Expression expression = ((SelectExpressionItem) item).getExpression();
+			if(expression.toString().contains("?"))return false;
+			expression.accept(visitor);
+			if(visitor.aggregate)return false;
+		}
+		return true;
+	}
+
+	private static boolean isAggregateFunction(Function function) {
+		String name = function.getName().toUpperCase(Locale.ROOT);
+		return name.equals("COUNT") || name.equals("SUM") || name.equals("AVG") || name.equals("MAX") || name.equals("MIN")
+				|| name.equals("GROUP_CONCAT") || name.equals("STRING_AGG") || name.equals("LISTAGG");
+	}
+
+	private static boolean containsParameter(List<OrderByElement> orderByElements) {
+		if(orderByElements == null)return false;
+		for (OrderByElement element : orderByElements) {
+			if(element.toString().contains("?"))return true;
+		}
+		return false;
+	}
+
+	/**
+	 * 去掉未被引用的left join（从后往前，被后续关联条件引用的保留）
+	 */
+	private static void removeUnusedJoins(PlainSelect select) {
+		List<Join> joins = select.getJoins();
+		if(joins == null || joins.isEmpty())return;
+		//查询条件包含子查询时可能关联引用，不处理
+		if(select.getWhere() != null && select.getWhere().toString().toUpperCase(Locale.ROOT).contains("SELECT"))return;
+		List<Join> remainJoins = new ArrayList<>(joins);
+		boolean changed = false;
+		for (int i = remainJoins.size() - 1; i >= 0; i--) {
+			Join join = remainJoins.get(i);
+			if(!join.isLeft() || join.isSimple() || join.getOnExpression() == null || join.getUsingColumns() != null)continue;
+			if(join.toString().contains("?"))continue;
+			FromItem rightItem = join.getRightItem();
+			if(!(rightItem instanceof Table) && !(rightItem instanceof SubSelect))continue;
+			String name = referenceName(rightItem);
+			if(name == null)continue;
+			List<Expression> expressions = new ArrayList<>(remainJoins.size());
+			if(select.getWhere() != null)expressions.add(select.getWhere());
+			for (Join other : remainJoins) {
+				if(other != join && other.getOnExpression() != null)expressions.add(other.getOnExpression());
+			}
+			if(!isUnreferenced(name, expressions))continue;
+			remainJoins.remove(i);
+			changed = true;
+		}
+		if(changed)select.setJoins(remainJoins.isEmpty() ? null : remainJoins);
+	}
+
+	private static String referenceName(FromItem item) {
+		Alias alias = item.getAlias();
+		if(alias != null)return alias.getName();
+		return item instanceof Table ? ((Table) item).getName() : null;
+	}
+
+	/**
+	 * @return true表示确定未被引用（无表前缀的字段无法判断归属，视为引用）
+	 */
+	private static boolean isUnreferenced(String name, List<Expression> expressions) {
+		ReferenceVisitor visitor = new ReferenceVisitor(name);
+		for (Expression expression : expressions) {
+			expression.accept(visitor);
+			if(visitor.referenced)return false;
+		}
+		return true;
+	}
+
+	private static SelectItem countItem() {
+		Function count = new Function();
+		count.setName("count");
+		count.setParameters(new ExpressionList(Collections.singletonList(new Column("1"))));
+		return new SelectExpressionItem(count);
+	}
+
+	private static String wrapCountSql(String sql) {
+		return "SELECT count(1) FROM (" + sql + ") " + COUNT_ALIAS;
+	}
+
+	private static class ReferenceVisitor extends ExpressionVisitorAdapter {
+		final String name;
+		boolean referenced;
+
+		ReferenceVisitor(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public void visit(Column column) {
+			Table table = column.getTable();
+			if(table == null || table.getName() == null) {
+				referenced = true;
+				return;
+			}
+			if(table.getName().equalsIgnoreCase(name)) {
+				referenced = true;
+			}
+		}
+	}
+
+	private static class AggregateVisitor extends ExpressionVisitorAdapter {
+		boolean aggregate;
+
+		@Override
+		public void visit(Function function) {
+			if(isAggregateFunction(function)) {
+				aggregate = true;
+				return;
+			}
+			super.visit(function);
+		}
+	}
+
+	public long size() {
+		return countSqlCache.size();
+	}
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.mybatis.plugin.pagination;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
+
+import com.mendmix.common.MendmixBaseException;
+import com.mendmix.common.model.OrderBy;
+import com.mendmix.common.model.OrderBy.OrderType;
+import com.mendmix.common.model.PageParams;
+import com.mendmix.common.util.JsonUtils;
+import com.mendmix.mybatis.metadata.ColumnMetadata;
+import com.mendmix.mybatis.metadata.MapperMetadata;
+import com.mendmix.mybatis.plugin.rewrite.SqlRewriteHandler;
+
+import net.sf.jsqlparser.JSQLParserException;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.Parenthesis;
+import net.sf.jsqlparser.expression.operators.conditional.AndExpression;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.select.FromItem;
+import net.sf.jsqlparser.statement.select.OrderByElement;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+import net.sf.jsqlparser.statement.select.Select;
+
+/**
+ * 游标（keyset/seek）分页
+ * <br>
+ * 按排序字段 + 主键定位上一页最后一行：排序方向一致时生成 (sort_col, id) > (?, ?)，否则展开为 OR 条件；
+ * 每页只扫描pageSize+1行，与页码无关。游标为不透明字符串，包含排序结构摘要与最后一行的排序值。
+ * <br>
+ * 要求排序字段非空；不查询总数。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class KeysetPagination {
+
+	private static final String MARKER_PREFIX = "__MX_KS_";
+	private static final String PARAM_PREFIX = "__keyset_";
+
+	public static class SortKey {
+		final String property;
+		final String column;
+		final boolean asc;
+
+		SortKey(String property, String column, boolean asc) {
+			this.property = property;
+			this.column = column;
+			this.asc = asc;
+		}
+	}
+
+	/**
+	 * 排序字段 + 主键（未包含时追加，方向与最后一个排序字段一致，无排序字段时按主键ASC）
+	 */
+	public static List<SortKey> resolveSortKeys(MapperMetadata mapperMeta, PageParams pageParams) {
+		ColumnMetadata idColumn = mapperMeta == null ? null : mapperMeta.getEntityMetadata().getIdColumn();
+		if(idColumn == null) {
+			throw new MendmixBaseException("keyset pagination requires entity primary key");
+		}
+		Map<String, String> prop2ColumnMappings = mapperMeta.getEntityMetadata().getProp2ColumnMappings();
+		List<SortKey> keys = new ArrayList<>(3);
+		boolean withId = false;
+		boolean asc = true;
+		if(pageParams.getOrderBys() != null) {
+			for (OrderBy orderBy : pageParams.getOrderBys()) {
+				if(orderBy == null)continue;
+				String column = prop2ColumnMappings.get(orderBy.getField());
+				if(column == null)column = orderBy.getField();
+				//与常规分页排序一致：未指定按DESC
+				asc = OrderType.ASC.name().equalsIgnoreCase(orderBy.getSortType());
+				keys.add(new SortKey(orderBy.getField(), column, asc));
+				if(column.equalsIgnoreCase(idColumn.getColumn())) {
+					withId = true;
+					break;
+				}
+			}
+		}
+		if(!withId) {
+			keys.add(new SortKey(idColumn.getProperty(), idColumn.getColumn(), asc));
+		}
+		return keys;
+	}
+
+	/**
+	 * 生成带定位条件、排序及limit的查询
+	 * @param configuration
+	 * @param boundSql 原查询
+	 * @param sql 原sql（可能已被改写）
+	 * @param keys
+	 * @param cursorValues 为空表示第一页
+	 * @param pageSqlBuilder 追加limit
+	 * @return
+	 */
+	public static BoundSql buildSeekBoundSql(Configuration configuration, BoundSql boundSql, String sql, List<SortKey> keys,
+			Object[] cursorValues, Function<String, String> pageSqlBuilder) {
+		Statement statement;
+		try {
+			statement = CCJSqlParserUtil.parse(sql);
+		} catch (JSQLParserException e) {
+			throw new MendmixBaseException("keyset pagination parse sql error:" + e.getMessage());
+		}
+		if(!(statement instanceof Select) || !(((Select) statement).getSelectBody() instanceof PlainSelect)) {
+			throw new MendmixBaseException("keyset pagination only support simple select");
+		}
+		PlainSelect select = (PlainSelect) ((Select) statement).getSelectBody();
+		String qualifier = qualifier(select.getFromItem());
+		if(cursorValues != null) {
+			Expression seekExpression = buildSeekExpression(keys, qualifier);
+			select.setWhere(select.getWhere() == null ? seekExpression : new AndExpression(new Parenthesis(select.getWhere()), seekExpression));
+		}
+		List<OrderByElement> orderByElements = new ArrayList<>(keys.size());
+		for (SortKey key : keys) {
+			OrderByElement element = new OrderByElement();
+			element.setExpression(new Column(qualifier == null ? key.column : qualifier + "." + key.column));
+			element.setAsc(key.asc);
+			orderByElements.add(element);
+		}
+		select.setOrderByElements(orderByElements);
+
+		//占位替换为参数，并按其在sql中的位置插入参数映射
+		String seekSql = select.toString();
+		StringBuilder builder = new StringBuilder(seekSql.length());
+		List<ParameterMapping> parameterMappings = new ArrayList<>(boundSql.getParameterMappings());
+		List<String> insertProperties = new ArrayList<>(2);
+		List<Integer> insertPositions = new ArrayList<>(2);
+		boolean inLiteral = false;
+		int paramIndex = 0;
+		for (int i = 0; i < seekSql.length(); i++) {
+			char c = seekSql.charAt(i);
+			if(!inLiteral && seekSql.startsWith("'" + MARKER_PREFIX, i)) {
+				int end = seekSql.indexOf("__'", i + MARKER_PREFIX.length() + 1);
+				insertPositions.add(paramIndex++);
+				insertProperties.add(PARAM_PREFIX + seekSql.substring(i + MARKER_PREFIX.length() + 1, end));
+				builder.append('?');
+				i = end + 2;
+				continue;
+			}
+			if(c == '\'') {
+				inLiteral = !inLiteral;
+			}else if(c == '?' && !inLiteral) {
+				paramIndex++;
+			}
+			builder.append(c);
+		}
+		for (int i = 0; i < insertPositions.size(); i++) {
+			Object value = cursorValues[Integer.parseInt(insertProperties.get(i).substring(PARAM_PREFIX.length()))];
+			parameterMappings.add(insertPositions.get(i), new ParameterMapping.Builder(configuration, insertProperties.get(i), value.getClass()).build());
+		}
+
+		BoundSql seekBoundSql = new BoundSql(configuration, pageSqlBuilder.apply(builder.toString()), parameterMappings, boundSql.getParameterObject());
+		SqlRewriteHandler.copyForeachAdditionlParams(boundSql, seekBoundSql);
+		if(cursorValues != null) {
+			for (int i = 0; i < cursorValues.length; i++) {
+				seekBoundSql.setAdditionalParameter(PARAM_PREFIX + i, cursorValues[i]);
+			}
+		}
+		return seekBoundSql;
+	}
+
+	private static String qualifier(FromItem fromItem) {
+		if(fromItem.getAlias() != null)return fromItem.getAlias().getName();
+		if(fromItem instanceof Table)return ((Table) fromItem).getName();
+		return null;
+	}
+
+	private static Expression buildSeekExpression(List<SortKey> keys, String qualifier) {
+		String[] columns = new String[keys.size()];
+		boolean sameDirection = true;
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = qualifier == null ? keys.get(i).column : qualifier + "." + keys.get(i).column;
+			if(keys.get(i).asc != keys.get(0).asc)sameDirection = false;
+		}
+		StringBuilder builder = new StringBuilder();
+		if(columns.length == 1) {
+			builder.append(columns[0]).append(keys.get(0).asc ? " > " : " < ").append(marker(0));
+		}else if(sameDirection) {
+			//行比较
+			builder.append('(').append(String.join(", ", columns)).append(')').append(keys.get(0).asc ? " > " : " < ").append('(');
+			for (int i = 0; i < columns.length; i++) {
+				if(i > 0)builder.append(", ");
+				builder.append(marker(i));
+			}
+			builder.append(')');
+		}else {
+			//(c1 > ?) OR (c1 = ? AND c2 < ?) ...
+			for (int i = 0; i < columns.length; i++) {
+				if(i > 0)builder.append(" OR ");
+				builder.append('(');
+				for (int j = 0; j < i; j++) {
+					builder.append(columns[j]).append(" = ").append(marker(j)).append(" AND ");
+				}
+				builder.append(columns[i]).append(keys.get(i).asc ? " > " : " < ").append(marker(i));
+				builder.append(')');
+			}
+		}
+		try {
+			return new Parenthesis(CCJSqlParserUtil.parseCondExpression(builder.toString()));
+		} catch (JSQLParserException e) {
+			throw new MendmixBaseException("keyset pagination build seek condition error:" + e.getMessage());
+		}
+	}
+
+	private static String marker(int index) {
+		return "'" + MARKER_PREFIX + index + "__'";
+	}
+
+	/**
+	 * 由最后一行生成下一页游标
+	 */
+	public static String encodeCursor(Configuration configuration, Object row, List<SortKey> keys) {
+		MetaObject metaObject = configuration.newMetaObject(row);
+		List<String> items = new ArrayList<>(keys.size() + 1);
+		items.add(shapeOf(keys));
+		for (SortKey key : keys) {
+			Object value = null;
+			if(metaObject.hasGetter(key.property)) {
+				value = metaObject.getValue(key.property);
+			}else if(row instanceof Map) {
+				value = ((Map<?, ?>) row).get(key.column);
+			}
+			if(value == null) {
+				throw new MendmixBaseException("keyset pagination sort value is null:" + key.property);
+			}
+			items.add(encodeValue(value));
+		}
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(JsonUtils.toJson(items).getBytes(StandardCharsets.UTF_8));
+	}
+
+	public static Object[] decodeCursor(String cursor, List<SortKey> keys) {
+		List<String> items;
+		try {
+			items = JsonUtils.toList(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8), String.class);
+		} catch (Exception e) {
+			throw new MendmixBaseException("invalid pagination cursor");
+		}
+		if(items == null || items.size() != keys.size() + 1 || !shapeOf(keys).equals(items.get(0))) {
+			throw new MendmixBaseException("invalid pagination cursor");
+		}
+		Object[] values = new Object[keys.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = decodeValue(items.get(i + 1));
+		}
+		return values;
+	}
+
+	private static String shapeOf(List<SortKey> keys) {
+		StringBuilder builder = new StringBuilder();
+		for (SortKey key : keys) {
+			builder.append(key.column).append(key.asc ? '+' : '-');
+		}
+		return Integer.toHexString(builder.toString().hashCode());
+	}
+
+	private static String encodeValue(Object value) {
+		if(value instanceof Long)return "L:" + value;
+		if(value instanceof Integer || value instanceof Short || value instanceof Byte)return "I:" + value;
+		if(value instanceof BigDecimal)return "D:" + ((BigDecimal) value).toPlainString();
+		if(value instanceof Double || value instanceof Float)return "F:" + value;
+		if(value instanceof Boolean)return "B:" + value;
+		if(value instanceof Date)return "T:" + ((Date) value).getTime();
+		if(value instanceof LocalDateTime)return "LT:" + value;
+		if(value instanceof LocalDate)return "LD:" + value;
+		return "S:" + value;
+	}
+
+	private static Object decodeValue(String item) {
+		int index = item.indexOf(':');
+		if(index < 0)throw new MendmixBaseException("invalid pagination cursor");
+		String type = item.substring(0, index);
+		String value = item.substring(index + 1);
+		try {
+			switch (type) {
+			case "L": return Long.valueOf(value);
+			case "I": return Integer.valueOf(value);
+			case "D": return new BigDecimal(value);
+			case "F": return Double.valueOf(value);
+			case "B": return Boolean.valueOf(value);
+			case "T": return new Date(Long.parseLong(value));
+			case "LT": return LocalDateTime.parse(value);
+			case "LD": return LocalDate.parse(value);
+			case "S": return value;
+			default: throw new MendmixBaseException("invalid pagination cursor");
+			}
+		} catch (RuntimeException e) {
+			if(e instanceof MendmixBaseException)throw e;
+			throw new MendmixBaseException("invalid pagination cursor");
+		}
+	}
+}
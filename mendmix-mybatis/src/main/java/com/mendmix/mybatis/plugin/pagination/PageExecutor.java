@@ -17,6 +17,7 @@ package com.mendmix.mybatis.plugin.pagination;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 import com.mendmix.common.model.Page;
 import com.mendmix.common.model.PageParams;
@@ -55,7 +56,28 @@ public class PageExecutor {
 		for (E e : page.getData()) {
 			convertDatas.add(dataLoader.convert(e));
 		}
-		return new Page<>(pageParams, page.getTotal(), convertDatas);
+		Page<V> convertPage = new Page<>(pageParams, page.getTotal(), convertDatas);
+		//未查询总数标记及游标分页的下一页游标
+		convertPage.setPages(page.getPages());
+		convertPage.setNextCursor(page.getNextCursor());
+		return convertPage;
+	}
+	
+	/**
+	 * 按游标逐页遍历（导出等深度翻页场景），每页耗时与页码无关
+	 * @param pageParams 排序字段与每页数量
+	 * @param dataLoader
+	 * @param consumer 每页数据
+	 */
+	public static <T> void scroll(PageParams pageParams,PageDataLoader<T> dataLoader,Consumer<List<T>> consumer){
+		String cursor = pageParams.getCursor() == null ? "" : pageParams.getCursor();
+		Page<T> page;
+		do {
+			pageParams.setCursor(cursor);
+			page = doPagination(pageParams, dataLoader);
+			if(!page.getData().isEmpty())consumer.accept(page.getData());
+			cursor = page.getNextCursor();
+		} while (cursor != null);
 	}
 	
 	public static PageParams getPageParams(){
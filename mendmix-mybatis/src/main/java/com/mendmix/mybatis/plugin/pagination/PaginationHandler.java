@@ -21,6 +21,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.ibatis.cache.CacheKey;
 import org.apache.ibatis.executor.Executor;
@@ -35,6 +37,8 @@ import org.apache.ibatis.session.RowBounds;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.mendmix.common.model.Page;
 import com.mendmix.common.model.PageParams;
 import com.mendmix.mybatis.MybatisConfigs;
@@ -66,13 +70,32 @@ public class PaginationHandler implements InterceptorHandler {
 	public static  Map<String,Boolean> pageMappedStatements = new HashMap<>();
 	
 	private DatabaseType dbType = DatabaseType.mysql;
+	
+	private CountSqlBuilder countSqlBuilder;
+	//<count语句CacheKey,总数>
+	private Cache<CacheKey, Long> countCache;
+	
+	private final LongAdder countQueryCount = new LongAdder();
+	private final LongAdder countCacheHitCount = new LongAdder();
+	private final LongAdder countSkippedCount = new LongAdder();
 
 	@Override
 	public void start(MendmixMybatisInterceptor context) {
 
 		this.dbType = DatabaseType.valueOf(MybatisConfigs.getDbType(context.getGroupName()));
 		
-		logger.info("MENDMIX-TRACE-LOGGGING-->> dbType:{}",dbType.name());
+		boolean optimizeJoin = MybatisConfigs.getBoolean(context.getGroupName(), MybatisConfigs.PAGINATION_COUNT_OPTIMIZE_JOIN, false);
+		countSqlBuilder = new CountSqlBuilder(optimizeJoin, 2048);
+		int countCacheSeconds = Integer.parseInt(MybatisConfigs.getProperty(context.getGroupName(), MybatisConfigs.PAGINATION_COUNT_CACHE_SECONDS, "0"));
+		if(countCacheSeconds > 0) {
+			int countCacheSize = Integer.parseInt(MybatisConfigs.getProperty(context.getGroupName(), MybatisConfigs.PAGINATION_COUNT_CACHE_SIZE, "10000"));
+			countCache = CacheBuilder.newBuilder()
+					.maximumSize(countCacheSize)
+					.expireAfterWrite(countCacheSeconds, TimeUnit.SECONDS)
+					.build();
+		}
+		
+		logger.info("MENDMIX-TRACE-LOGGGING-->> dbType:{},countOptimizeJoin:{},countCacheSeconds:{}",dbType.name(),optimizeJoin,countCacheSeconds);
 		
 		List<MapperMetadata> mappers = MybatisMapperParser.getMapperMetadatas(context.getGroupName());
 		for (MapperMetadata e : mappers) {
@@ -116,12 +139,28 @@ public class PaginationHandler implements InterceptorHandler {
 			return list;
 		}
 		final ResultHandler resultHandler = (ResultHandler) invocation.getArgs() [3];
-        //查询总数
-        Long total = executeQueryCount(invocation, resultHandler);
+		if(pageParams.getCursor() != null) {
+			List<Page<?>> list = new ArrayList<Page<?>>(1);
+			list.add(executeKeysetQuery(invocation, resultHandler));
+			return list;
+		}
         //查询分页数据
         List<?> datas = executeQuery(invocation, resultHandler);	        
+        //不足一页说明已到末页，总数可直接算出（超出末页的空页除外）
+        Long total;
+        if(datas.size() < pageParams.getPageSize() && (!datas.isEmpty() || pageParams.getPageNo() <= 1)) {
+        	total = (long) pageParams.offset() + datas.size();
+        	countSkippedCount.increment();
+        }else if(pageParams.isCountFree()) {
+        	total = -1L;
+        	countSkippedCount.increment();
+        }else {
+        	//查询总数
+        	total = executeQueryCount(invocation, resultHandler);
+        }
 
         Page<Object> page = new Page<Object>(pageParams,total,(List<Object>) datas);	
+        if(total < 0)page.setPages(-1);
 		
 		List<Page<?>> list = new ArrayList<Page<?>>(1);
 		list.add(page);
@@ -138,24 +177,63 @@ public class PaginationHandler implements InterceptorHandler {
         Object parameter = invocation.getParameter();
         BoundSql boundSql = invocation.getBoundSql();
         
-		CacheKey countKey = executor.createCacheKey(countMappedStatement, parameter, RowBounds.DEFAULT, boundSql);
-		
 		// count sql
-		String countSql = PageSqlUtils.getCountSql(invocation.getSql());
+		String countSql = countSqlBuilder.getCountSql(invocation.getSql());
 		
 		BoundSql countBoundSql = new BoundSql(countMappedStatement.getConfiguration(), countSql, boundSql.getParameterMappings(),
 				parameter);
 		//
 		SqlRewriteHandler.copyForeachAdditionlParams(boundSql, countBoundSql);
+		
+		CacheKey countKey = executor.createCacheKey(countMappedStatement, parameter, RowBounds.DEFAULT, countBoundSql);
+		if(countCache != null) {
+			Long count = countCache.getIfPresent(countKey);
+			if(count != null) {
+				countCacheHitCount.increment();
+				return count;
+			}
+		}
 		// 执行 count 查询
+		countQueryCount.increment();
 		Object countResultList = executor.query(countMappedStatement, parameter, RowBounds.DEFAULT, resultHandler, countKey,
 				countBoundSql);
+		Long count;
 		try {
-			Long count = (Long) ((List) countResultList).get(0);
-			return count;
+			count = (Long) ((List) countResultList).get(0);
 		} catch (IndexOutOfBoundsException e) {
-			return 0L;
+			count = 0L;
 		}
+		if(countCache != null && count != null)countCache.put(countKey, count);
+		return count;
+	}
+	
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private Page<Object> executeKeysetQuery(InvocationVals invocation, ResultHandler resultHandler) throws SQLException {
+		PageParams pageParams = invocation.getPageParam();
+		MappedStatement mappedStatement = invocation.getMappedStatement();
+		Configuration configuration = mappedStatement.getConfiguration();
+		
+		MapperMetadata mapperMeta = MybatisMapperParser.getMapperMetadata(invocation.getMapperNameSpace());
+		List<KeysetPagination.SortKey> keys = KeysetPagination.resolveSortKeys(mapperMeta, pageParams);
+		Object[] cursorValues = pageParams.getCursor().isEmpty() ? null : KeysetPagination.decodeCursor(pageParams.getCursor(), keys);
+		//多取一行判断是否还有下一页
+		PageParams limitParams = new PageParams(1, pageParams.getPageSize() + 1);
+		BoundSql seekBoundSql = KeysetPagination.buildSeekBoundSql(configuration, invocation.getBoundSql(), invocation.getSql(), keys, cursorValues, 
+				sql -> PageSqlUtils.getLimitSQL(dbType, sql, limitParams));
+		
+		List<Object> datas = invocation.getExecutor().query(mappedStatement, invocation.getParameter(), RowBounds.DEFAULT, resultHandler, null, seekBoundSql);
+		boolean hasMore = datas.size() > pageParams.getPageSize();
+		if(hasMore) {
+			datas = new ArrayList<>(datas.subList(0, pageParams.getPageSize()));
+		}
+		countSkippedCount.increment();
+		long total = hasMore || cursorValues != null ? -1 : datas.size();
+		Page<Object> page = new Page<Object>(pageParams, total, datas);
+		if(total < 0)page.setPages(-1);
+		if(hasMore) {
+			page.setNextCursor(KeysetPagination.encodeCursor(configuration, datas.get(datas.size() - 1), keys));
+		}
+		return page;
 	}
 	
 	@SuppressWarnings("rawtypes")
@@ -234,6 +312,18 @@ public class PaginationHandler implements InterceptorHandler {
     }
     
 
+	public long getCountQueryCount() {
+		return countQueryCount.sum();
+	}
+
+	public long getCountCacheHitCount() {
+		return countCacheHitCount.sum();
+	}
+
+	public long getCountSkippedCount() {
+		return countSkippedCount.sum();
+	}
+
 	@Override
 	public void onFinished(InvocationVals invocation, Object result) {
 		
@@ -17,6 +17,7 @@ package com.mendmix.mybatis.plugin.rewrite;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -55,6 +56,8 @@ import com.mendmix.mybatis.metadata.MapperMetadata;
 import com.mendmix.mybatis.parser.MybatisMapperParser;
 import com.mendmix.mybatis.plugin.InvocationVals;
 import com.mendmix.mybatis.plugin.MendmixMybatisInterceptor;
+import com.mendmix.mybatis.plugin.rewrite.SqlRewriteTemplate.SlotRegistry;
+import com.mendmix.mybatis.plugin.rewrite.SqlRewriteTemplate.SlotType;
 
 import net.sf.jsqlparser.JSQLParserException;
 import net.sf.jsqlparser.expression.BinaryExpression;
@@ -118,9 +121,16 @@ public class SqlRewriteHandler implements InterceptorHandler {
 	private String deptPropName;
 	private String ownerColumnName;
 	private List<String> deptMappedStatements = new ArrayList<>();
+	
+	private SqlRewriteTemplateCache templateCache;
 
 	@Override
 	public void start(MendmixMybatisInterceptor context) {
+		
+		int templateCacheSize = ResourceUtils.getInt("mendmix.mybatis.sqlRewrite.templateCacheSize", 2048);
+		if(templateCacheSize > 0) {
+			templateCache = new SqlRewriteTemplateCache(templateCacheSize);
+		}
 	
 		dynaDataPermEnaled = MybatisConfigs.isDataPermissionEnabled(context.getGroupName());
 		columnSharddingTenant = MybatisConfigs.isColumnSharddingTenant(context.getGroupName());
@@ -186,6 +196,7 @@ public class SqlRewriteHandler implements InterceptorHandler {
 		if(softDeleteFalseValue != null)logBuilder.append("\n - softDeleteFalseValue:").append(softDeleteFalseValue);
 		logBuilder.append("\n - globalDataPermColumnMappings:").append(globalDataPermColumnMappings);
 		logBuilder.append("\n - tableDataPermColumnMappings:").append(tableDataPermColumnMappings);
+		logBuilder.append("\n - templateCacheSize:").append(templateCacheSize);
 		logger.info(logBuilder.toString());
 	}
 	
@@ -247,6 +258,8 @@ public class SqlRewriteHandler implements InterceptorHandler {
 		rewriteSql(invocation,rewriteStrategy);
 		
 		if(invocation.getPageParam() != null)return null;
+		//游标查询由CursorQueryHandler执行
+		if(invocation.isCursorQuery())return null;
         //不查数据库直接返回
 		if(invocation.getSql() == null) {
 			List<Object> list = new ArrayList<>(1);
@@ -340,23 +353,80 @@ public class SqlRewriteHandler implements InterceptorHandler {
 			logger.debug("_mybatis_sqlRewrite_trace start -> statementId:{},rewriteStrategy:{}",JsonUtils.toJson(rewriteStrategy));
 		}
 			
+		String templateKey = templateCache == null ? null : buildTemplateKey(invocation, rewriteStrategy);
+		SqlRewriteTemplate template = templateKey == null ? null : templateCache.get(templateKey, orignSql);
+		if(template == null) {
+			template = buildRewriteTemplate(invocation, rewriteStrategy);
+			if(templateKey != null)templateCache.put(templateKey, template);
+		}
+		if(template.isUnparseable())return;
+		//
+		invocation.setRewriteSql(template.render(invocation.getDataPermValues()));
+	}
+	
+	private SqlRewriteTemplate buildRewriteTemplate(InvocationVals invocation,SqlRewriteStrategy rewriteStrategy) {
+		String orignSql = invocation.getSql();
 		SelectBody selectBody = null;
 		try {
 			Statement stmt = CCJSqlParserUtil.parse(orignSql);
 			selectBody = ((Select)stmt).getSelectBody();
 		} catch (JSQLParserException e) {
 			logger.error("PARSER_ERROR["+orignSql+"]",e);
-			return;
+			return SqlRewriteTemplate.unparseable(orignSql);
 		}
-		
-		handleSelectRewrite(selectBody, invocation,rewriteStrategy);
-		//
-		invocation.setRewriteSql(selectBody.toString());
+		SlotRegistry slots = new SlotRegistry();
+		handleSelectRewrite(selectBody, invocation,rewriteStrategy,slots);
+		return SqlRewriteTemplate.compile(orignSql, selectBody.toString(), slots);
+	}
+	
+	private String buildTemplateKey(InvocationVals invocation,SqlRewriteStrategy rewriteStrategy) {
+		boolean withOwner = ownerColumnName != null && CurrentRuntimeContext.getCurrentUser() != null;
+		return buildTemplateKey(invocation.getMappedStatement().getId(), invocation.getSql(), rewriteStrategy, invocation.getPageParam(), invocation.getDataPermValues(), withOwner);
+	}
+
+	/**
+	 * 模板key：除具体权限值外所有影响改写结果的因素
+	 * @param withOwner 是否追加当前创建人条件
+	 */
+	static String buildTemplateKey(String statementId,String orignSql,SqlRewriteStrategy rewriteStrategy,PageParams pageParam,Map<String, String[]> dataPermValues,boolean withOwner) {
+		StringBuilder key = new StringBuilder(128);
+		key.append(statementId)
+		   .append('#').append(orignSql.hashCode()).append(':').append(orignSql.length())
+		   .append('#').append(rewriteStrategy.shapeKey());
+		if(pageParam != null && pageParam.getOrderBys() != null) {
+			key.append("#O");
+			for (OrderBy orderBy : pageParam.getOrderBys()) {
+				if(orderBy == null)continue;
+				key.append(orderBy.getField()).append(' ').append(orderBy.getSortType()).append(',');
+			}
+		}
+		if(dataPermValues != null) {
+			List<String> shapes = new ArrayList<>(dataPermValues.size());
+			String[] values;
+			for (Entry<String, String[]> entry : dataPermValues.entrySet()) {
+				values = entry.getValue();
+				if(values == null || values.length == 0) {
+					shapes.add(entry.getKey() + "=E");
+				}else if(values.length > 1) {
+					shapes.add(entry.getKey() + "=N");
+				}else {
+					shapes.add(entry.getKey() + (values[0].endsWith(QUERY_FUZZY_CHAR) ? "=L" : "=1"));
+				}
+			}
+			Collections.sort(shapes);
+			key.append("#P").append(shapes);
+			if(withOwner)key.append("#U");
+		}
+		return key.toString();
+	}
+	
+	public SqlRewriteTemplateCache getTemplateCache() {
+		return templateCache;
 	}
 
 	
 	
-	private void handleSelectRewrite(SelectBody selectBody,InvocationVals invocation,SqlRewriteStrategy strategy) {
+	private void handleSelectRewrite(SelectBody selectBody,InvocationVals invocation,SqlRewriteStrategy strategy,SlotRegistry slots) {
 		Map<String, String[]> dataPermValues = invocation.getDataPermValues();
 		if(selectBody instanceof PlainSelect) {
 			PlainSelect select = (PlainSelect)selectBody;
@@ -370,7 +440,7 @@ public class SqlRewriteHandler implements InterceptorHandler {
 					logger.trace("_mybatis_sqlRewrite_trace processMainTable ->table:{}",table.getName());
 				}
 				//
-				Expression newWhereExpression = handleTableDataPermission(select.getWhere(), table, dataPermValues,strategy,false);
+				Expression newWhereExpression = handleTableDataPermission(select.getWhere(), table, dataPermValues,strategy,false,slots);
 				select.setWhere(newWhereExpression);
 				//
 				handleTableOrderBy(select, table, invocation);
@@ -384,10 +454,10 @@ public class SqlRewriteHandler implements InterceptorHandler {
 								logger.trace("_mybatis_sqlRewrite_trace processJoinTable ->table:{}",table.getName());
 							}
 							if(join.isInner()) {
-								newWhereExpression = handleTableDataPermission(select.getWhere(), table, dataPermValues, strategy,true);
+								newWhereExpression = handleTableDataPermission(select.getWhere(), table, dataPermValues, strategy,true,slots);
 								select.setWhere(newWhereExpression);
 							}else {
-								newWhereExpression = handleTableDataPermission(join.getOnExpression(), table, dataPermValues, strategy,true);
+								newWhereExpression = handleTableDataPermission(join.getOnExpression(), table, dataPermValues, strategy,true,slots);
 								join.setOnExpression(newWhereExpression);
 							}
 						}else {
@@ -397,7 +467,7 @@ public class SqlRewriteHandler implements InterceptorHandler {
 				}
 			}else if(fromItem instanceof SubSelect) {
 				SubSelect subSelect = (SubSelect) fromItem;
-				handleSelectRewrite(subSelect.getSelectBody() ,invocation,strategy);
+				handleSelectRewrite(subSelect.getSelectBody() ,invocation,strategy,slots);
 			}
 		}else if(selectBody instanceof SetOperationList) {
 			SetOperationList optList = (SetOperationList) selectBody;
@@ -407,12 +477,12 @@ public class SqlRewriteHandler implements InterceptorHandler {
 			}
 			List<SelectBody> selects = optList.getSelects();
 			for (SelectBody body : selects) {
-				handleSelectRewrite(body,invocation,strategy);
+				handleSelectRewrite(body,invocation,strategy,slots);
 			}
 		}
 	}
 	
-	private Expression handleTableDataPermission(Expression whereExpression,Table table,Map<String, String[]> dataMapping,SqlRewriteStrategy strategy,boolean isJoin) {
+	private Expression handleTableDataPermission(Expression whereExpression,Table table,Map<String, String[]> dataMapping,SqlRewriteStrategy strategy,boolean isJoin,SlotRegistry slots) {
 		
 		Map<String, String> columnMapping = null;
 		boolean handleDataPerm = !isJoin || strategy.isHandleJoin() || strategy.hasTableStrategy(table.getName());
@@ -442,6 +512,7 @@ public class SqlRewriteHandler implements InterceptorHandler {
 		Expression permExpression = null;
 		String column;
 		String[] values;
+		SlotType slotType;
 		Set<String> fieldNames = columnMapping.keySet();
 		boolean withSoftDelete = false;
 		boolean withPermission = false;
@@ -456,10 +527,12 @@ public class SqlRewriteHandler implements InterceptorHandler {
 				currentTenantId = CurrentRuntimeContext.getTenantId();
 				if(currentTenantId == null)throw new MendmixBaseException("无法获取当前租户ID");
 				values = new String[] {currentTenantId};
+				slotType = SlotType.TENANT;
 			}else {
 				if(dataMapping == null || !dataMapping.containsKey(fieldName))continue;
 				column = columnMapping.get(fieldName);
 				values = dataMapping.get(fieldName);
+				slotType = values != null && values.length > 1 ? SlotType.PERM_VALUES : SlotType.PERM_VALUE;
 				//
 				if(!withPermission)withPermission = true;
 			}
@@ -471,7 +544,7 @@ public class SqlRewriteHandler implements InterceptorHandler {
 				permExpression = equalsTo;
 				//break; 后面条件不处理 ，mybatis占位符可以出错
 			}else {
-				permExpression = handleColumnDataPermCondition(table, permExpression, column,values);
+				permExpression = handleColumnDataPermCondition(table, permExpression, column,values,slots.slot(slotType, fieldName));
 			}
 			
 			if(logger.isTraceEnabled()) {
@@ -486,11 +559,11 @@ public class SqlRewriteHandler implements InterceptorHandler {
 				Expression createdByExpr;
 				EqualsTo userEquals = new EqualsTo();
 				userEquals.setLeftExpression(new Column(table, ownerColumnName));
-				userEquals.setRightExpression(new StringValue(currentUser.getId()));
+				userEquals.setRightExpression(slots.slot(SlotType.OWNER, null));
 				if(currentTenantId != null) {
 					EqualsTo tenantEquals = new EqualsTo();
 					tenantEquals.setLeftExpression(new Column(table, tenantColumnName));
-					tenantEquals.setRightExpression(new StringValue(currentTenantId));
+					tenantEquals.setRightExpression(slots.slot(SlotType.TENANT, null));
 					createdByExpr = new Parenthesis(new AndExpression(tenantEquals, userEquals));
 				}else {
 					createdByExpr = userEquals;
@@ -516,7 +589,10 @@ public class SqlRewriteHandler implements InterceptorHandler {
 	}
 
 	
-	private  Expression handleColumnDataPermCondition(Table table,Expression orginExpression,String columnName,String[] values){
+	/**
+	 * @param valueSlot 权限值占位，多个值时整体替换IN列表内容
+	 */
+	private  Expression handleColumnDataPermCondition(Table table,Expression orginExpression,String columnName,String[] values,StringValue valueSlot){
 		Expression newExpression = orginExpression;
 		Column column = new Column(table, columnName);
 		if (values.length == 1) {
@@ -524,11 +600,11 @@ public class SqlRewriteHandler implements InterceptorHandler {
 			if(values[0].endsWith(QUERY_FUZZY_CHAR)) {
 				expression = new LikeExpression();
 				expression.setLeftExpression(column);
-				expression.setRightExpression(new StringValue(values[0]));
+				expression.setRightExpression(valueSlot);
 			}else {
 				expression = new EqualsTo();
 				expression.setLeftExpression(column);
-				expression.setRightExpression(new StringValue(values[0]));
+				expression.setRightExpression(valueSlot);
 			}
 
 			if(orginExpression == null) {
@@ -541,10 +617,8 @@ public class SqlRewriteHandler implements InterceptorHandler {
 				}
 			}
 		} else {
-			ExpressionList expressionList = new ExpressionList(new ArrayList<>(values.length));
-			for (String value : values) {
-				expressionList.getExpressions().add(new StringValue(value));
-			}
+			ExpressionList expressionList = new ExpressionList(new ArrayList<>(1));
+			expressionList.getExpressions().add(valueSlot);
 			InExpression inExpression = new InExpression(column, expressionList);
 			newExpression = orginExpression == null ? inExpression : new AndExpression(orginExpression,inExpression);
 		}
@@ -568,7 +642,7 @@ public class SqlRewriteHandler implements InterceptorHandler {
 			if (columnName == null)
 				columnName = orderBy.getField();
 			orderByElement = new OrderByElement();
-			orderByElement.setAsc(OrderType.ASC.name().equals(orderBy.getSortType()));
+			orderByElement.setAsc(OrderType.ASC.name().equalsIgnoreCase(orderBy.getSortType()));
 			orderByElement.setExpression(new Column(table, columnName));
 			orderByElements.add(orderByElement);
 			if (logger.isTraceEnabled()) {
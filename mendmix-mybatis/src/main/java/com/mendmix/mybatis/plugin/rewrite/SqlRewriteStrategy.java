@@ -1,7 +1,9 @@
 package com.mendmix.mybatis.plugin.rewrite;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 
 import com.mendmix.mybatis.plugin.rewrite.annotation.DataPermission;
 import com.mendmix.mybatis.plugin.rewrite.annotation.TablePermissionStrategy;
@@ -30,6 +32,8 @@ public class SqlRewriteStrategy {
 	
 	private Map<String, TablePermissionStrategy> tableStrategies;
 	
+	private String tableStrategiesKey;
+	
 	public void setDataPermission(DataPermission annotation) {
 		ignoreColumnPerm = annotation.ignore();
 		handleJoin = annotation.handleJoin();
@@ -111,5 +115,31 @@ public class SqlRewriteStrategy {
 		return handleJoin;
 	}
 	
+	/**
+	 * 影响改写结果的策略结构
+	 * @return
+	 */
+	public String shapeKey() {
+		StringBuilder builder = new StringBuilder(16);
+		builder.append(ignoreTenant ? 1 : 0)
+		       .append(ignoreSoftDelete ? 1 : 0)
+		       .append(allMatch ? 1 : 0)
+		       .append(handleOrderBy ? 1 : 0)
+		       .append(handleJoin ? 1 : 0);
+		if(tableStrategies != null && !tableStrategies.isEmpty()) {
+			if(tableStrategiesKey == null) {
+				StringBuilder strategiesKey = new StringBuilder();
+				for (TablePermissionStrategy strategy : new TreeMap<>(tableStrategies).values()) {
+					strategiesKey.append('[').append(strategy.table())
+					       .append(Arrays.toString(strategy.columns()))
+					       .append(strategy.handleOwner()).append(']');
+				}
+				tableStrategiesKey = strategiesKey.toString();
+			}
+			builder.append(tableStrategiesKey);
+		}
+		return builder.toString();
+	}
+	
 	
 }
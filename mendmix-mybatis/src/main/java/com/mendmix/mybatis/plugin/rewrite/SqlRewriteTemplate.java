@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.mybatis.plugin.rewrite;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.mendmix.common.CurrentRuntimeContext;
+import com.mendmix.common.MendmixBaseException;
+import com.mendmix.common.model.AuthUser;
+
+import net.sf.jsqlparser.expression.StringValue;
+
+/**
+ * 重写后的sql模板
+ * <br>
+ * 改写时权限值（租户、数据权限、创建人）以占位值写入语法树，输出后按占位切分为片段；
+ * 相同结构的查询直接用当前上下文的值拼接，不再解析和改写。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class SqlRewriteTemplate {
+
+	private static final String SLOT_PREFIX = "__MX_RW_SLOT_";
+	private static final Pattern SLOT_PATTERN = Pattern.compile("'" + SLOT_PREFIX + "(\\d+)__'");
+
+	public enum SlotType {
+		/** 单个数据权限值 */
+		PERM_VALUE,
+		/** 多个数据权限值（IN列表） */
+		PERM_VALUES,
+		TENANT,
+		OWNER
+	}
+
+	/**
+	 * 改写过程中登记占位
+	 */
+	public static class SlotRegistry {
+		private final List<SlotType> types = new ArrayList<>();
+		private final List<String> fields = new ArrayList<>();
+
+		public StringValue slot(SlotType type, String field) {
+			types.add(type);
+			fields.add(field);
+			return new StringValue(SLOT_PREFIX + (types.size() - 1) + "__");
+		}
+	}
+
+	private final String originSql;
+	private final String[] segments;
+	private final SlotType[] slotTypes;
+	private final String[] slotFields;
+	private final int length;
+
+	private SqlRewriteTemplate(String originSql, String[] segments, SlotType[] slotTypes, String[] slotFields) {
+		this.originSql = originSql;
+		this.segments = segments;
+		this.slotTypes = slotTypes;
+		this.slotFields = slotFields;
+		int length = 0;
+		if(segments != null) {
+			for (String segment : segments) {
+				length += segment.length();
+			}
+		}
+		this.length = length;
+	}
+
+	/**
+	 * @param originSql 原sql
+	 * @param rewriteSql 带占位的改写结果
+	 * @param registry
+	 * @return
+	 */
+	public static SqlRewriteTemplate compile(String originSql, String rewriteSql, SlotRegistry registry) {
+		List<String> segments = new ArrayList<>(registry.types.size() + 1);
+		List<SlotType> slotTypes = new ArrayList<>(registry.types.size());
+		List<String> slotFields = new ArrayList<>(registry.types.size());
+		//输出顺序与登记顺序不一定一致，部分占位也可能被丢弃
+		Matcher matcher = SLOT_PATTERN.matcher(rewriteSql);
+		int start = 0;
+		while(matcher.find()) {
+			segments.add(rewriteSql.substring(start, matcher.start()));
+			int index = Integer.parseInt(matcher.group(1));
+			slotTypes.add(registry.types.get(index));
+			slotFields.add(registry.fields.get(index));
+			start = matcher.end();
+		}
+		segments.add(rewriteSql.substring(start));
+		return new SqlRewriteTemplate(originSql, segments.toArray(new String[0]), slotTypes.toArray(new SlotType[0]), slotFields.toArray(new String[0]));
+	}
+
+	/**
+	 * 无法解析的sql，不改写
+	 * @param originSql
+	 * @return
+	 */
+	public static SqlRewriteTemplate unparseable(String originSql) {
+		return new SqlRewriteTemplate(originSql, null, null, null);
+	}
+
+	public String getOriginSql() {
+		return originSql;
+	}
+
+	public boolean isUnparseable() {
+		return segments == null;
+	}
+
+	public String render(Map<String, String[]> dataPermValues) {
+		StringBuilder builder = new StringBuilder(length + slotTypes.length * 16);
+		for (int i = 0; i < segments.length; i++) {
+			builder.append(segments[i]);
+			if(i < slotTypes.length) {
+				appendSlotValue(builder, slotTypes[i], slotFields[i], dataPermValues);
+			}
+		}
+		return builder.toString();
+	}
+
+	private void appendSlotValue(StringBuilder builder, SlotType type, String field, Map<String, String[]> dataPermValues) {
+		switch (type) {
+		case TENANT:
+			String tenantId = CurrentRuntimeContext.getTenantId();
+			if(tenantId == null)throw new MendmixBaseException("无法获取当前租户ID");
+			appendLiteral(builder, tenantId);
+			break;
+		case OWNER:
+			AuthUser currentUser = CurrentRuntimeContext.getCurrentUser();
+			appendLiteral(builder, currentUser.getId());
+			break;
+		case PERM_VALUE:
+			appendLiteral(builder, dataPermValues.get(field)[0]);
+			break;
+		case PERM_VALUES:
+			String[] values = dataPermValues.get(field);
+			for (int i = 0; i < values.length; i++) {
+				if(i > 0)builder.append(", ");
+				appendLiteral(builder, values[i]);
+			}
+			break;
+		}
+	}
+
+	private static void appendLiteral(StringBuilder builder, String value) {
+		//与语法树输出保持一致
+		builder.append(new StringValue(value).toString());
+	}
+}
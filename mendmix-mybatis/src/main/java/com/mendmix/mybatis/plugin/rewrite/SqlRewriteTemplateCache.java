@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.mybatis.plugin.rewrite;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * sql重写模板缓存（容量有界）
+ * <br>
+ * key：statementId + 原sql摘要 + 改写结构（策略、排序、权限值形态等），命中时再比对原sql防止摘要冲突。
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class SqlRewriteTemplateCache {
+
+	private final Cache<String, SqlRewriteTemplate> cache;
+
+	public SqlRewriteTemplateCache(int maxSize) {
+		this.cache = CacheBuilder.newBuilder()
+				.maximumSize(maxSize)
+				.recordStats()
+				.build();
+	}
+
+	public SqlRewriteTemplate get(String key, String originSql) {
+		SqlRewriteTemplate template = cache.getIfPresent(key);
+		if(template == null || !template.getOriginSql().equals(originSql))return null;
+		return template;
+	}
+
+	public void put(String key, SqlRewriteTemplate template) {
+		cache.put(key, template);
+	}
+
+	public long size() {
+		return cache.size();
+	}
+
+	public CacheStats getStats() {
+		return cache.stats();
+	}
+
+	public double getHitRatio() {
+		return cache.stats().hitRate();
+	}
+
+	public void clear() {
+		cache.invalidateAll();
+	}
+
+	@Override
+	public String toString() {
+		CacheStats stats = cache.stats();
+		return "SqlRewriteTemplateCache [size=" + size() + ", hit=" + stats.hitCount() + ", miss=" + stats.missCount()
+				+ ", hitRatio=" + stats.hitRate() + ", eviction=" + stats.evictionCount() + "]";
+	}
+}
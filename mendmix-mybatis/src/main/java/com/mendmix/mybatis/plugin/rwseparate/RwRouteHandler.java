@@ -21,6 +21,7 @@ import org.apache.ibatis.mapping.SqlCommandType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mendmix.mybatis.MybatisConfigs;
 import com.mendmix.mybatis.MybatisRuntimeContext;
 import com.mendmix.mybatis.core.InterceptorHandler;
 import com.mendmix.mybatis.plugin.InvocationVals;
@@ -40,6 +41,9 @@ public class RwRouteHandler implements InterceptorHandler {
 
 	public static final String NAME = "rwRoute";
 	
+	//写操作后一段时间内同一上下文的读请求走主库（读己之写）
+	private long readYourWritesMillis;
+	
 	@Override
 	public Object onInterceptor(InvocationVals invocation) throws Throwable {
 		
@@ -52,14 +56,18 @@ public class RwRouteHandler implements InterceptorHandler {
 		
 		//读方法
 		if(ms.getSqlCommandType().equals(SqlCommandType.SELECT)){
+			if(readYourWritesMillis > 0 && MybatisRuntimeContext.isWithinWriteWindow(readYourWritesMillis)) {
+				MybatisRuntimeContext.useMaster();
+				logger.debug("MENDMIX-TRACE-LOGGGING-->> Method[{}] use Master Strategy[readYourWrites]..",ms.getId());
 			//!selectKey 为自增id查询主键(SELECT LAST_INSERT_ID() )方法，使用主库
-			if(!ms.getId().contains(SelectKeyGenerator.SELECT_KEY_SUFFIX)){				
+			}else if(!ms.getId().contains(SelectKeyGenerator.SELECT_KEY_SUFFIX)){				
 				MybatisRuntimeContext.useSlave();
 				logger.debug("MENDMIX-TRACE-LOGGGING-->> Method[{} use Slave Strategy..",ms.getId());
 			}
 		}else{
 			logger.debug("MENDMIX-TRACE-LOGGGING-->> Method[{}] use Master Strategy..",ms.getId());
 			MybatisRuntimeContext.useMaster();
+			MybatisRuntimeContext.markWrite();
 		}
 		
 		return null;
@@ -69,7 +77,9 @@ public class RwRouteHandler implements InterceptorHandler {
 	public void onFinished(InvocationVals invocation,Object result) {}
 
 	@Override
-	public void start(MendmixMybatisInterceptor context) {}
+	public void start(MendmixMybatisInterceptor context) {
+		readYourWritesMillis = Long.parseLong(MybatisConfigs.getProperty(context.getGroupName(), MybatisConfigs.READ_YOUR_WRITES_MILLIS, "3000"));
+	}
 
 
 	@Override
@@ -28,6 +28,7 @@ import com.mendmix.mybatis.crud.GeneralSqlGenerator;
 import com.mendmix.mybatis.metadata.MapperMetadata;
 import com.mendmix.mybatis.parser.MybatisMapperParser;
 import com.mendmix.mybatis.plugin.MendmixMybatisInterceptor;
+import com.mendmix.mybatis.plugin.batch.BatchWriteExecutor;
 
 /**
  * @description <br>
@@ -76,6 +77,8 @@ public class MendmixMybatisEnhancer {
 		MendmixMybatisInterceptor interceptor = new MendmixMybatisInterceptor(group, hanlderNames);
 		configuration.addInterceptor(interceptor);
 		interceptor.afterRegister();
+		
+		BatchWriteExecutor.register(group, configuration);
 
 		logger.info("MENDMIX-TRACE-LOGGGING-->> JeesuiteMybatisEnhancer finshed -> group:{},hanlderNames:{}", group, hanlderNames);
 
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.example;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.session.Configuration;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.mendmix.common.MendmixBaseException;
+import com.mendmix.common.model.OrderBy;
+import com.mendmix.common.model.PageParams;
+import com.mendmix.example.dao.entity.ExampleStaffEntity;
+import com.mendmix.example.dao.mapper.ExampleStaffEntityMapper;
+import com.mendmix.mybatis.metadata.MapperMetadata;
+import com.mendmix.mybatis.plugin.pagination.KeysetPagination;
+import com.mendmix.mybatis.plugin.pagination.KeysetPagination.SortKey;
+
+/**
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class KeysetPaginationTest {
+
+	private static final Function<String, String> NO_LIMIT = sql -> sql;
+	
+	private final Configuration configuration = new Configuration();
+	private final MapperMetadata mapperMeta = new MapperMetadata(ExampleStaffEntityMapper.class.getName());
+
+	@Test
+	public void testFirstPageOnlyAppendsOrderBy() {
+		List<SortKey> keys = sortKeys(new OrderBy("deptId", "ASC"));
+		BoundSql boundSql = boundSql("SELECT * FROM staff WHERE status = ?", "status");
+		BoundSql seek = KeysetPagination.buildSeekBoundSql(configuration, boundSql, boundSql.getSql(), keys, null, NO_LIMIT);
+		Assert.assertEquals("SELECT * FROM staff WHERE status = ? ORDER BY staff.dept_id, staff.id", seek.getSql());
+		Assert.assertEquals(Arrays.asList("status"), properties(seek));
+	}
+
+	@Test
+	public void testSameDirectionUsesRowComparison() {
+		List<SortKey> keys = sortKeys(new OrderBy("deptId", "DESC"));
+		BoundSql boundSql = boundSql("SELECT * FROM staff WHERE status = ?", "status");
+		BoundSql seek = KeysetPagination.buildSeekBoundSql(configuration, boundSql, boundSql.getSql(), keys, new Object[] {"d1", 10}, NO_LIMIT);
+		Assert.assertEquals("SELECT * FROM staff WHERE (status = ?) AND ((staff.dept_id, staff.id) < (?, ?)) ORDER BY staff.dept_id DESC, staff.id DESC", seek.getSql());
+		Assert.assertEquals(Arrays.asList("status", "__keyset_0", "__keyset_1"), properties(seek));
+		Assert.assertEquals("d1", seek.getAdditionalParameter("__keyset_0"));
+		Assert.assertEquals(10, seek.getAdditionalParameter("__keyset_1"));
+	}
+
+	@Test
+	public void testMixedDirectionExpandsToOr() {
+		List<SortKey> keys = sortKeys(new OrderBy("deptId", "ASC"), new OrderBy("id", "DESC"));
+		BoundSql boundSql = boundSql("SELECT * FROM staff s", null);
+		BoundSql seek = KeysetPagination.buildSeekBoundSql(configuration, boundSql, boundSql.getSql(), keys, new Object[] {"d1", 10}, NO_LIMIT);
+		Assert.assertEquals("SELECT * FROM staff s WHERE ((s.dept_id > ?) OR (s.dept_id = ? AND s.id < ?)) ORDER BY s.dept_id, s.id DESC", seek.getSql());
+		//参数按在sql中出现的位置插入
+		Assert.assertEquals(Arrays.asList("__keyset_0", "__keyset_0", "__keyset_1"), properties(seek));
+	}
+
+	@Test
+	public void testSeekParametersAfterLiteralPlaceholder() {
+		List<SortKey> keys = sortKeys(new OrderBy("name", "ASC"));
+		BoundSql boundSql = boundSql("SELECT * FROM staff WHERE email LIKE 'a?b%' AND status = ?", "status");
+		BoundSql seek = KeysetPagination.buildSeekBoundSql(configuration, boundSql, boundSql.getSql(), keys, new Object[] {"jim", 3}, NO_LIMIT);
+		Assert.assertTrue(seek.getSql().contains("'a?b%'"));
+		Assert.assertEquals(Arrays.asList("status", "__keyset_0", "__keyset_1"), properties(seek));
+	}
+
+	@Test
+	public void testNullSortTypeIsDesc() {
+		List<SortKey> keys = sortKeys(new OrderBy("deptId", (String) null));
+		BoundSql boundSql = boundSql("SELECT * FROM staff", null);
+		BoundSql seek = KeysetPagination.buildSeekBoundSql(configuration, boundSql, boundSql.getSql(), keys, null, NO_LIMIT);
+		Assert.assertTrue(seek.getSql().endsWith("ORDER BY staff.dept_id DESC, staff.id DESC"));
+	}
+
+	@Test
+	public void testCursorRoundTrip() {
+		List<SortKey> keys = sortKeys(new OrderBy("deptId", "ASC"));
+		ExampleStaffEntity row = new ExampleStaffEntity();
+		row.setId(10);
+		row.setDeptId("d1");
+		String cursor = KeysetPagination.encodeCursor(configuration, row, keys);
+		Assert.assertArrayEquals(new Object[] {"d1", 10}, KeysetPagination.decodeCursor(cursor, keys));
+	}
+
+	@Test
+	public void testCursorValueTypes() {
+		List<SortKey> keys = sortKeys(new OrderBy("createdAt", "ASC"), new OrderBy("version", "ASC"), new OrderBy("mobile", "ASC"));
+		Date createdAt = new Date();
+		Map<String, Object> row = new HashMap<>();
+		row.put("createdAt", createdAt);
+		row.put("version", new BigDecimal("12.50"));
+		row.put("mobile", LocalDateTime.of(2022, 6, 19, 10, 30));
+		row.put("id", 99L);
+		Object[] values = KeysetPagination.decodeCursor(KeysetPagination.encodeCursor(configuration, row, keys), keys);
+		Assert.assertArrayEquals(new Object[] {createdAt, new BigDecimal("12.50"), LocalDateTime.of(2022, 6, 19, 10, 30), 99L}, values);
+	}
+
+	@Test
+	public void testCursorRejectedForOtherSort() {
+		ExampleStaffEntity row = new ExampleStaffEntity();
+		row.setId(10);
+		row.setDeptId("d1");
+		String cursor = KeysetPagination.encodeCursor(configuration, row, sortKeys(new OrderBy("deptId", "ASC")));
+		assertInvalidCursor(cursor, sortKeys(new OrderBy("deptId", "DESC")));
+		assertInvalidCursor("not-a-cursor", sortKeys(new OrderBy("deptId", "ASC")));
+	}
+
+	@Test(expected = MendmixBaseException.class)
+	public void testNullSortValueRejected() {
+		ExampleStaffEntity row = new ExampleStaffEntity();
+		row.setId(10);
+		KeysetPagination.encodeCursor(configuration, row, sortKeys(new OrderBy("deptId", "ASC")));
+	}
+
+	private void assertInvalidCursor(String cursor, List<SortKey> keys) {
+		try {
+			KeysetPagination.decodeCursor(cursor, keys);
+			Assert.fail("cursor should be rejected");
+		} catch (MendmixBaseException e) {
+			Assert.assertEquals("invalid pagination cursor", e.getMessage());
+		}
+	}
+
+	private List<SortKey> sortKeys(OrderBy...orderBys) {
+		PageParams pageParams = new PageParams(1, 10);
+		pageParams.setOrderBys(new ArrayList<>(Arrays.asList(orderBys)));
+		return KeysetPagination.resolveSortKeys(mapperMeta, pageParams);
+	}
+
+	private BoundSql boundSql(String sql, String property) {
+		List<ParameterMapping> parameterMappings = new ArrayList<>();
+		if(property != null) {
+			parameterMappings.add(new ParameterMapping.Builder(configuration, property, Object.class).build());
+		}
+		Map<String, Object> parameter = new HashMap<>();
+		parameter.put("status", 1);
+		return new BoundSql(configuration, sql, parameterMappings, parameter);
+	}
+
+	private static List<String> properties(BoundSql boundSql) {
+		List<String> properties = new ArrayList<>();
+		for (ParameterMapping mapping : boundSql.getParameterMappings()) {
+			properties.add(mapping.getProperty());
+		}
+		return properties;
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.example;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import com.mendmix.cache.CacheUtils;
+import com.mendmix.cache.adapter.LocalCacheAdapter;
+import com.mendmix.example.dao.entity.ExampleStaffEntity;
+import com.mendmix.mybatis.plugin.cache.TransactionalCacheWriter;
+
+/**
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class TransactionalCacheWriterTest {
+
+	private static final String GROUP = "ExampleStaffEntityMapper";
+	
+	private TransactionalCacheWriter cacheWriter = new TransactionalCacheWriter();
+
+	@Before
+	public void init() {
+		CacheUtils.remove("ExampleStaffEntity.id:1", "ExampleStaffEntity.id:2", "ExampleStaffEntity.mobile:138", "ExampleDepartmentEntity.id:1");
+	}
+
+	@After
+	public void clear() {
+		if(TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+
+	@Test
+	public void testWriteWithoutTransaction() {
+		ExampleStaffEntity entity = staff(1, "vakin");
+		cacheWriter.write(GROUP, "ExampleStaffEntity.id:1", entity, 60, false);
+		Assert.assertSame(entity, CacheUtils.get("ExampleStaffEntity.id:1"));
+		Assert.assertEquals(1, cacheWriter.getFlushCount());
+	}
+
+	@Test
+	public void testCommitWritesStagedSnapshot() {
+		TransactionSynchronizationManager.initSynchronization();
+		ExampleStaffEntity entity = staff(1, "vakin");
+		cacheWriter.write(GROUP, "ExampleStaffEntity.id:1", entity, 60, false);
+		cacheWriter.write(GROUP, "ExampleStaffEntity.mobile:138", "ExampleStaffEntity.id:1", 60, true);
+		//暂存后调用方继续修改实体
+		entity.setName("changed");
+		Assert.assertNull(CacheUtils.get("ExampleStaffEntity.id:1"));
+
+		complete(TransactionSynchronization.STATUS_COMMITTED);
+		ExampleStaffEntity cached = CacheUtils.get("ExampleStaffEntity.id:1");
+		Assert.assertEquals("vakin", cached.getName());
+		Assert.assertNotSame(entity, cached);
+		Assert.assertEquals("ExampleStaffEntity.id:1", CacheUtils.getStr("ExampleStaffEntity.mobile:138"));
+		Assert.assertEquals(2, cacheWriter.getWriteCount());
+		Assert.assertEquals(1, cacheWriter.getFlushCount());
+	}
+
+	@Test
+	public void testCommitWritesAllInOneBatch() {
+		CountingCacheAdapter cacheAdapter = new CountingCacheAdapter();
+		TransactionalCacheWriter cacheWriter = new TransactionalCacheWriter(cacheAdapter);
+		TransactionSynchronizationManager.initSynchronization();
+		//每次插入的过期时间带随机偏移，各不相同
+		for (int i = 1; i <= 5; i++) {
+			cacheWriter.write(GROUP, "ExampleStaffEntity.id:" + i, staff(i, "staff" + i), 3600 + i, false);
+		}
+
+		complete(TransactionSynchronization.STATUS_COMMITTED);
+		Assert.assertEquals(1, cacheAdapter.setAllCount.get());
+		Assert.assertEquals(5, cacheWriter.getWriteCount());
+		for (int i = 1; i <= 5; i++) {
+			ExampleStaffEntity cached = cacheAdapter.get("ExampleStaffEntity.id:" + i);
+			Assert.assertEquals("staff" + i, cached.getName());
+			Assert.assertEquals(Long.valueOf(3600 + i), cacheAdapter.expires.get("ExampleStaffEntity.id:" + i));
+		}
+	}
+
+	@Test
+	public void testRollbackDropsStagedWrites() {
+		TransactionSynchronizationManager.initSynchronization();
+		cacheWriter.write(GROUP, "ExampleStaffEntity.id:1", staff(1, "vakin"), 60, false);
+		cacheWriter.write(GROUP, "ExampleStaffEntity.id:2", staff(2, "jim"), 60, false);
+
+		complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+		Assert.assertNull(CacheUtils.get("ExampleStaffEntity.id:1"));
+		Assert.assertNull(CacheUtils.get("ExampleStaffEntity.id:2"));
+		Assert.assertEquals(0, cacheWriter.getWriteCount());
+		Assert.assertEquals(2, cacheWriter.getDiscardCount());
+	}
+
+	@Test
+	public void testDiscardGroupInTransaction() {
+		TransactionSynchronizationManager.initSynchronization();
+		cacheWriter.write(GROUP, "ExampleStaffEntity.id:1", staff(1, "vakin"), 60, false);
+		cacheWriter.write(GROUP, "ExampleStaffEntity.mobile:138", "ExampleStaffEntity.id:1", 60, true);
+		cacheWriter.write("ExampleDepartmentEntityMapper", "ExampleDepartmentEntity.id:1", "dept", 60, false);
+		//同一事务内后续更新该实体
+		cacheWriter.discard(GROUP);
+		Assert.assertEquals(2, cacheWriter.getDiscardCount());
+
+		complete(TransactionSynchronization.STATUS_COMMITTED);
+		Assert.assertNull(CacheUtils.get("ExampleStaffEntity.id:1"));
+		Assert.assertNull(CacheUtils.getStr("ExampleStaffEntity.mobile:138"));
+		Assert.assertEquals("dept", CacheUtils.get("ExampleDepartmentEntity.id:1"));
+		Assert.assertEquals(1, cacheWriter.getWriteCount());
+	}
+
+	@Test
+	public void testDiscardWithoutTransactionIgnored() {
+		cacheWriter.discard(GROUP);
+		Assert.assertEquals(0, cacheWriter.getDiscardCount());
+	}
+
+	private static void complete(int status) {
+		List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+		if(status == TransactionSynchronization.STATUS_COMMITTED) {
+			TransactionSynchronizationUtils.invokeAfterCommit(synchronizations);
+		}
+		TransactionSynchronizationManager.clearSynchronization();
+		TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations, status);
+	}
+
+	private static class CountingCacheAdapter extends LocalCacheAdapter {
+		final AtomicInteger setAllCount = new AtomicInteger();
+		Map<String, Long> expires;
+
+		CountingCacheAdapter() {
+			super(3600);
+		}
+
+		@Override
+		public void setAll(Map<String, Object> keyValues, Map<String, Long> keyExpireSeconds) {
+			setAllCount.incrementAndGet();
+			expires = keyExpireSeconds;
+			super.setAll(keyValues, keyExpireSeconds);
+		}
+	}
+
+	private static ExampleStaffEntity staff(int id, String name) {
+		ExampleStaffEntity entity = new ExampleStaffEntity();
+		entity.setId(id);
+		entity.setName(name);
+		return entity;
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.mybatis.plugin.autofield;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.session.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.support.GenericApplicationContext;
+
+import com.mendmix.common.CurrentRuntimeContext;
+import com.mendmix.common.model.AuthUser;
+import com.mendmix.example.dao.entity.ExampleStaffEntity;
+import com.mendmix.example.dao.mapper.ExampleStaffEntityMapper;
+import com.mendmix.mybatis.metadata.MapperMetadata;
+import com.mendmix.mybatis.plugin.InvocationVals;
+import com.mendmix.spring.InstanceFactory;
+
+/**
+ * 批量插入字段自动填充：{@link AutoFieldFillHandler}处理insertList，字段读写分别使用Field反射与MethodHandle
+ * <br>
+ * 两组除字段读写器外完全相同：每次调用为一批10000条记录（已有主键）填充createdBy、createdAt、updatedBy、updatedAt，上下文每批取一次。
+ *
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AutoFieldFillBenchmark {
+
+	private static final int BATCH_SIZE = 10000;
+
+	@Param({ "reflect", "methodHandle" })
+	private String accessor;
+
+	private AutoFieldFillHandler handler;
+	private MappedStatement mappedStatement;
+	private List<ExampleStaffEntity> entities;
+	private InvocationVals invocation;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		GenericApplicationContext context = new GenericApplicationContext();
+		context.refresh();
+		InstanceFactory.setApplicationContext(context);
+
+		Function<Field, FieldAccessor> accessorFactory = "reflect".equals(accessor) ? FieldAccessor::reflect : FieldAccessor::of;
+		MapperMetadata mapperMetadata = new MapperMetadata(ExampleStaffEntityMapper.class.getName(), ExampleStaffEntity.class.getName(), null);
+		AutoFieldFillHandler.registerMapper(mapperMetadata, null, accessorFactory);
+		handler = new AutoFieldFillHandler();
+
+		Configuration configuration = new Configuration();
+		String statementId = ExampleStaffEntityMapper.class.getName() + ".insertList";
+		mappedStatement = new MappedStatement.Builder(configuration, statementId, new StaticSqlSource(configuration, "INSERT INTO staff"), SqlCommandType.INSERT).build();
+
+		AuthUser user = new AuthUser();
+		user.setId("1001");
+		CurrentRuntimeContext.setAuthUser(user);
+	}
+
+	@Setup(Level.Invocation)
+	public void newBatch() {
+		entities = new ArrayList<>(BATCH_SIZE);
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			ExampleStaffEntity entity = new ExampleStaffEntity();
+			entity.setId(i + 1);
+			entities.add(entity);
+		}
+		Map<String, Object> parameter = new HashMap<>(2);
+		parameter.put("arg0", entities);
+		invocation = new InvocationVals(new Invocation(null, null, new Object[] { mappedStatement, parameter }));
+	}
+
+	@Benchmark
+	public Object insertList() throws Throwable {
+		handler.onInterceptor(invocation);
+		return entities;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(AutoFieldFillBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.mybatis.plugin.metrics;
+
+import java.util.Arrays;
+
+import org.apache.ibatis.executor.BatchExecutor;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class SqlMetricsRegistryTest {
+
+	@Test
+	public void testRowsCounted() {
+		String statementId = "com.mendmix.example.dao.mapper.UserEntityMapper.findByStatus";
+		SqlMetricsRegistry.end(SqlMetricsRegistry.begin(statementId), "SELECT 1", Arrays.asList(1, 2, 3), false, null);
+		SqlMetricsRegistry.end(SqlMetricsRegistry.begin(statementId), "SELECT 1", 2, false, null);
+		Assert.assertEquals(5, SqlMetricsRegistry.getStatementMetrics(statementId).getRows());
+	}
+
+	@Test
+	public void testBatchReturnValueNotCounted() {
+		String statementId = "com.mendmix.example.dao.mapper.UserEntityMapper.insert";
+		SqlMetricsRegistry.end(SqlMetricsRegistry.begin(statementId), "INSERT", BatchExecutor.BATCH_UPDATE_RETURN_VALUE, false, null);
+		SqlMetricsRegistry.end(SqlMetricsRegistry.begin(statementId), "INSERT", 1, false, null);
+		Assert.assertEquals(1, SqlMetricsRegistry.getStatementMetrics(statementId).getRows());
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.mybatis.plugin.pagination;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * count sql改写：简单查询直接改写、分组去重包子查询、left join裁剪
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class CountSqlBuilderTest {
+
+	private final CountSqlBuilder builder = new CountSqlBuilder(true, 100);
+
+	@Test
+	public void testSimpleSelectRewrite() {
+		String countSql = builder.getCountSql("SELECT id, name FROM staff WHERE status = ? ORDER BY id");
+		Assert.assertEquals("SELECT count(1) FROM staff WHERE status = ?", countSql);
+	}
+
+	@Test
+	public void testOrderByWithParameterKept() {
+		String countSql = builder.getCountSql("SELECT id FROM staff WHERE status = ? ORDER BY FIELD(id, ?)");
+		Assert.assertEquals("SELECT count(1) FROM (SELECT id FROM staff WHERE status = ? ORDER BY FIELD(id, ?)) tmp_count", countSql);
+	}
+
+	@Test
+	public void testDistinctWrapped() {
+		String countSql = builder.getCountSql("SELECT DISTINCT dept_id FROM staff WHERE status = ? ORDER BY dept_id");
+		Assert.assertEquals("SELECT count(1) FROM (SELECT DISTINCT dept_id FROM staff WHERE status = ?) tmp_count", countSql);
+	}
+
+	@Test
+	public void testGroupByWrapped() {
+		String countSql = builder.getCountSql("SELECT dept_id, count(1) AS num FROM staff WHERE status = ? GROUP BY dept_id HAVING count(1) > ? ORDER BY num DESC");
+		Assert.assertEquals("SELECT count(1) FROM (SELECT dept_id, count(1) AS num FROM staff WHERE status = ? GROUP BY dept_id HAVING count(1) > ?) tmp_count", countSql);
+	}
+
+	@Test
+	public void testAggregateWrapped() {
+		String countSql = builder.getCountSql("SELECT max(age) FROM staff WHERE status = ?");
+		Assert.assertEquals("SELECT count(1) FROM (SELECT max(age) FROM staff WHERE status = ?) tmp_count", countSql);
+	}
+
+	@Test
+	public void testUnionWrapped() {
+		String countSql = builder.getCountSql("SELECT id FROM staff WHERE status = ? UNION SELECT id FROM staff_history WHERE status = ? ORDER BY id");
+		Assert.assertEquals("SELECT count(1) FROM (SELECT id FROM staff WHERE status = ? UNION SELECT id FROM staff_history WHERE status = ?) tmp_count", countSql);
+	}
+
+	@Test
+	public void testUnreferencedJoinRemoved() {
+		String countSql = builder.getCountSql("SELECT s.id, d.name FROM staff s LEFT JOIN department d ON d.id = s.dept_id WHERE s.status = ?");
+		Assert.assertEquals("SELECT count(1) FROM staff s WHERE s.status = ?", countSql);
+	}
+
+	@Test
+	public void testJoinReferencedByWhereKept() {
+		String countSql = builder.getCountSql("SELECT s.id FROM staff s LEFT JOIN department d ON d.id = s.dept_id WHERE d.name = ?");
+		Assert.assertEquals("SELECT count(1) FROM staff s LEFT JOIN department d ON d.id = s.dept_id WHERE d.name = ?", countSql);
+	}
+
+	@Test
+	public void testJoinReferencedByOtherJoinKept() {
+		String countSql = builder.getCountSql("SELECT s.id FROM staff s LEFT JOIN department d ON d.id = s.dept_id LEFT JOIN company c ON c.id = d.company_id WHERE c.name = ?");
+		Assert.assertEquals("SELECT count(1) FROM staff s LEFT JOIN department d ON d.id = s.dept_id LEFT JOIN company c ON c.id = d.company_id WHERE c.name = ?", countSql);
+	}
+
+	@Test
+	public void testUnqualifiedColumnKeepsJoin() {
+		String countSql = builder.getCountSql("SELECT s.id FROM staff s LEFT JOIN department d ON d.id = s.dept_id WHERE status = ?");
+		Assert.assertEquals("SELECT count(1) FROM staff s LEFT JOIN department d ON d.id = s.dept_id WHERE status = ?", countSql);
+	}
+
+	@Test
+	public void testJoinKeptWhenOptimizeDisabled() {
+		CountSqlBuilder builder = new CountSqlBuilder(false, 100);
+		String countSql = builder.getCountSql("SELECT s.id, d.name FROM staff s LEFT JOIN department d ON d.id = s.dept_id WHERE s.status = ?");
+		Assert.assertEquals("SELECT count(1) FROM staff s LEFT JOIN department d ON d.id = s.dept_id WHERE s.status = ?", countSql);
+	}
+
+	@Test
+	public void testCountSqlCached() {
+		String sql = "SELECT id FROM staff WHERE status = ?";
+		String countSql = builder.getCountSql(sql);
+		Assert.assertSame(countSql, builder.getCountSql(sql));
+		Assert.assertEquals(1, builder.size());
+	}
+}
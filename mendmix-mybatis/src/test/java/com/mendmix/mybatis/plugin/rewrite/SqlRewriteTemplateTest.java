@@ -0,0 +1,288 @@
+/*
+ * Copyright 2016-2022 www.mendmix.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mendmix.mybatis.plugin.rewrite;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mendmix.common.CurrentRuntimeContext;
+import com.mendmix.common.ThreadLocalContext;
+import com.mendmix.common.model.AuthUser;
+import com.mendmix.common.model.OrderBy;
+import com.mendmix.common.model.PageParams;
+import com.mendmix.mybatis.plugin.rewrite.SqlRewriteTemplate.SlotRegistry;
+import com.mendmix.mybatis.plugin.rewrite.SqlRewriteTemplate.SlotType;
+
+import net.sf.jsqlparser.JSQLParserException;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.Parenthesis;
+import net.sf.jsqlparser.expression.StringValue;
+import net.sf.jsqlparser.expression.operators.conditional.AndExpression;
+import net.sf.jsqlparser.expression.operators.conditional.OrExpression;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
+import net.sf.jsqlparser.expression.operators.relational.ExpressionList;
+import net.sf.jsqlparser.expression.operators.relational.InExpression;
+import net.sf.jsqlparser.expression.operators.relational.LikeExpression;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+import net.sf.jsqlparser.statement.select.Select;
+import net.sf.jsqlparser.statement.select.SelectBody;
+import net.sf.jsqlparser.statement.select.SetOperationList;
+
+/**
+ * 模板渲染结果与直接改写语法树的结果比对
+ * @description <br>
+ * @author <a href="mailto:vakinge@gmail.com">vakin</a>
+ * @date 2022年6月19日
+ */
+public class SqlRewriteTemplateTest {
+
+	private static final String STATEMENT_ID = "com.mendmix.example.dao.mapper.ExampleStaffEntityMapper.findListByParam";
+	private static final String SQL = "SELECT * FROM staff WHERE status = ? ORDER BY id";
+
+	@Before
+	public void setUp() {
+		CurrentRuntimeContext.setTenantId("t1");
+		AuthUser user = new AuthUser();
+		user.setId("1001");
+		CurrentRuntimeContext.setAuthUser(user);
+	}
+
+	@After
+	public void tearDown() {
+		ThreadLocalContext.unset();
+	}
+
+	@Test
+	public void testRenderSingleValue() throws JSQLParserException {
+		assertRenderMatches(SQL, perms("dept_id", "d1"), false);
+	}
+
+	@Test
+	public void testRenderLikeValue() throws JSQLParserException {
+		assertRenderMatches(SQL, perms("dept_id", "d1%"), false);
+	}
+
+	@Test
+	public void testRenderMultipleValues() throws JSQLParserException {
+		Map<String, String[]> perms = perms("dept_id", "d1", "d2", "d3");
+		perms.put("type", new String[] {"1"});
+		assertRenderMatches(SQL, perms, false);
+	}
+
+	@Test
+	public void testRenderEmptyValues() throws JSQLParserException {
+		Map<String, String[]> perms = perms("dept_id");
+		perms.put("type", new String[] {"1"});
+		assertRenderMatches(SQL, perms, false);
+	}
+
+	@Test
+	public void testRenderOwnerAndTenant() throws JSQLParserException {
+		assertRenderMatches(SQL, perms("dept_id", "d1", "d2"), true);
+		assertRenderMatches("SELECT * FROM staff", perms("dept_id", "d1"), true);
+	}
+
+	@Test
+	public void testRenderQuotedValue() throws JSQLParserException {
+		assertRenderMatches(SQL, perms("dept_id", "O'Brien", "d2"), false);
+	}
+
+	@Test
+	public void testRenderUnion() throws JSQLParserException {
+		assertRenderMatches("SELECT id FROM staff WHERE status = 1 UNION SELECT id FROM staff_history", perms("dept_id", "d1", "d2"), true);
+	}
+
+	@Test
+	public void testSlotOrderNotRegisterOrder() {
+		SlotRegistry slots = new SlotRegistry();
+		StringValue first = slots.slot(SlotType.PERM_VALUE, "a");
+		StringValue second = slots.slot(SlotType.PERM_VALUE, "b");
+		//登记后未写入的占位
+		slots.slot(SlotType.PERM_VALUE, "c");
+		String rewriteSql = "SELECT * FROM t WHERE b = " + second + " AND a = " + first;
+		SqlRewriteTemplate template = SqlRewriteTemplate.compile("SELECT * FROM t", rewriteSql, slots);
+
+		Map<String, String[]> values = new LinkedHashMap<>();
+		values.put("a", new String[] {"1"});
+		values.put("b", new String[] {"2"});
+		Assert.assertEquals("SELECT * FROM t WHERE b = '2' AND a = '1'", template.render(values));
+	}
+
+	@Test
+	public void testTemplateReusedForSameShape() throws JSQLParserException {
+		SqlRewriteStrategy strategy = new SqlRewriteStrategy(true, null);
+		Map<String, String[]> perms1 = perms("dept_id", "d1", "d2");
+		Map<String, String[]> perms2 = perms("dept_id", "d7", "d8");
+		Assert.assertEquals(templateKey(strategy, null, perms1, true), templateKey(strategy, null, perms2, true));
+
+		SqlRewriteTemplate template = compile(SQL, perms1, true);
+		Assert.assertEquals(rewrite(SQL, perms2, true, null), template.render(perms2));
+	}
+
+	@Test
+	public void testPermValueShapeChangesKey() throws JSQLParserException {
+		SqlRewriteStrategy strategy = new SqlRewriteStrategy(true, null);
+		@SuppressWarnings("unchecked")
+		Map<String, String[]>[] shapes = new Map[] {
+			perms("dept_id"),
+			perms("dept_id", "d1"),
+			perms("dept_id", "d1%"),
+			perms("dept_id", "d1", "d2"),
+			perms("type", "1")
+		};
+		Set<String> keys = new HashSet<>();
+		for (Map<String, String[]> shape : shapes) {
+			keys.add(templateKey(strategy, null, shape, false));
+		}
+		Assert.assertEquals(shapes.length, keys.size());
+		//形状不同的模板不能复用：单值模板无法表示IN列表，等值模板无法表示LIKE
+		Map<String, String[]> multiple = perms("dept_id", "d1", "d2");
+		Assert.assertNotEquals(rewrite(SQL, multiple, false, null), compile(SQL, perms("dept_id", "x"), false).render(multiple));
+		Map<String, String[]> like = perms("dept_id", "d1%");
+		Assert.assertNotEquals(rewrite(SQL, like, false, null), compile(SQL, perms("dept_id", "x"), false).render(like));
+	}
+
+	@Test
+	public void testOwnerFlagChangesKey() throws JSQLParserException {
+		SqlRewriteStrategy strategy = new SqlRewriteStrategy(true, null);
+		Map<String, String[]> perms = perms("dept_id", "d1");
+		Assert.assertNotEquals(templateKey(strategy, null, perms, false), templateKey(strategy, null, perms, true));
+		Assert.assertNotEquals(rewrite(SQL, perms, true, null), compile(SQL, perms, false).render(perms));
+		//无权限值时不追加创建人条件
+		Assert.assertEquals(templateKey(strategy, null, null, false), templateKey(strategy, null, null, true));
+	}
+
+	@Test
+	public void testStrategyAndOrderByChangeKey() {
+		Map<String, String[]> perms = perms("dept_id", "d1");
+		SqlRewriteStrategy strategy = new SqlRewriteStrategy(true, null);
+		SqlRewriteStrategy ignoreSoftDelete = new SqlRewriteStrategy(true, null);
+		ignoreSoftDelete.setIgnoreSoftDelete(true);
+		Assert.assertNotEquals(templateKey(strategy, null, perms, false), templateKey(ignoreSoftDelete, null, perms, false));
+
+		PageParams asc = new PageParams(1, 10).orderBy(new OrderBy("deptId", "ASC"));
+		PageParams desc = new PageParams(1, 10).orderBy(new OrderBy("deptId", "DESC"));
+		Assert.assertNotEquals(templateKey(strategy, null, perms, false), templateKey(strategy, asc, perms, false));
+		Assert.assertNotEquals(templateKey(strategy, asc, perms, false), templateKey(strategy, desc, perms, false));
+	}
+
+	@Test
+	public void testUnparseable() {
+		SqlRewriteTemplate template = SqlRewriteTemplate.unparseable("SELECT ???");
+		Assert.assertTrue(template.isUnparseable());
+		Assert.assertEquals("SELECT ???", template.getOriginSql());
+	}
+
+	private static void assertRenderMatches(String sql, Map<String, String[]> perms, boolean withOwner) throws JSQLParserException {
+		SqlRewriteTemplate template = compile(sql, perms, withOwner);
+		Assert.assertFalse(template.isUnparseable());
+		Assert.assertEquals(rewrite(sql, perms, withOwner, null), template.render(perms));
+	}
+
+	private static SqlRewriteTemplate compile(String sql, Map<String, String[]> perms, boolean withOwner) throws JSQLParserException {
+		SlotRegistry slots = new SlotRegistry();
+		return SqlRewriteTemplate.compile(sql, rewrite(sql, perms, withOwner, slots), slots);
+	}
+
+	private static String templateKey(SqlRewriteStrategy strategy, PageParams pageParam, Map<String, String[]> perms, boolean withOwner) {
+		return SqlRewriteHandler.buildTemplateKey(STATEMENT_ID, SQL, strategy, pageParam, perms, withOwner);
+	}
+
+	/**
+	 * 按{@link SqlRewriteHandler}的条件结构直接改写语法树，slots为空时写入实际值
+	 */
+	private static String rewrite(String sql, Map<String, String[]> perms, boolean withOwner, SlotRegistry slots) throws JSQLParserException {
+		SelectBody selectBody = ((Select) CCJSqlParserUtil.parse(sql)).getSelectBody();
+		if(selectBody instanceof SetOperationList) {
+			for (SelectBody body : ((SetOperationList) selectBody).getSelects()) {
+				rewrite((PlainSelect) body, perms, withOwner, slots);
+			}
+		}else {
+			rewrite((PlainSelect) selectBody, perms, withOwner, slots);
+		}
+		return selectBody.toString();
+	}
+
+	private static void rewrite(PlainSelect select, Map<String, String[]> perms, boolean withOwner, SlotRegistry slots) {
+		Table table = (Table) select.getFromItem();
+		Expression permExpression = condition(new Column(table, "tenant_id"), SlotType.TENANT, null, new String[] {"t1"}, slots);
+		for (Entry<String, String[]> entry : perms.entrySet()) {
+			String[] values = entry.getValue();
+			Column column = new Column(table, entry.getKey());
+			Expression expression;
+			if(values.length == 0) {
+				EqualsTo equalsTo = new EqualsTo();
+				equalsTo.setLeftExpression(column);
+				equalsTo.setRightExpression(new StringValue("__DATA_PERMISSION_NULL__"));
+				expression = equalsTo;
+			}else {
+				expression = condition(column, values.length > 1 ? SlotType.PERM_VALUES : SlotType.PERM_VALUE, entry.getKey(), values, slots);
+			}
+			permExpression = new AndExpression(expression, permExpression);
+		}
+		if(withOwner) {
+			Expression ownerExpression = new AndExpression(
+					condition(new Column(table, "tenant_id"), SlotType.TENANT, null, new String[] {"t1"}, slots),
+					condition(new Column(table, "created_by"), SlotType.OWNER, null, new String[] {"1001"}, slots));
+			permExpression = new OrExpression(new Parenthesis(permExpression), new Parenthesis(ownerExpression));
+		}
+		Expression where = select.getWhere();
+		select.setWhere(where == null ? permExpression : new AndExpression(new Parenthesis(permExpression), new Parenthesis(where)));
+	}
+
+	private static Expression condition(Column column, SlotType type, String field, String[] values, SlotRegistry slots) {
+		if(values.length > 1) {
+			ExpressionList expressionList = new ExpressionList(new ArrayList<>(values.length));
+			if(slots != null) {
+				expressionList.getExpressions().add(slots.slot(type, field));
+			}else {
+				for (String value : values) {
+					expressionList.getExpressions().add(new StringValue(value));
+				}
+			}
+			return new InExpression(column, expressionList);
+		}
+		Expression value = slots != null ? slots.slot(type, field) : new StringValue(values[0]);
+		if(values[0].endsWith("%")) {
+			LikeExpression like = new LikeExpression();
+			like.setLeftExpression(column);
+			like.setRightExpression(value);
+			return like;
+		}
+		EqualsTo equalsTo = new EqualsTo();
+		equalsTo.setLeftExpression(column);
+		equalsTo.setRightExpression(value);
+		return equalsTo;
+	}
+
+	private static Map<String, String[]> perms(String field, String...values) {
+		Map<String, String[]> perms = new LinkedHashMap<>();
+		perms.put(field, values);
+		return perms;
+	}
+}
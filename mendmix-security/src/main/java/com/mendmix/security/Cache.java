@@ -15,6 +15,8 @@
  */
 package com.mendmix.security;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface Cache {
 
 	void setString(String key,String value);
@@ -28,4 +30,12 @@ public interface Cache {
 	<T> T getMapValue(String key,String field);
 	void updateExpireTime(String key);
 	
+	default CompletableFuture<String> getStringAsync(String key){
+		return CompletableFuture.completedFuture(getString(key));
+	}
+	
+	default <T> CompletableFuture<T> getObjectAsync(String key){
+		return CompletableFuture.completedFuture(getObject(key));
+	}
+	
 }
@@ -16,6 +16,7 @@
 package com.mendmix.security;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -76,6 +77,17 @@ public class SecuritySessionManager {
 			return null;
 		return storageManager.getCache(cacheName).getObject(sessionId);
 	}
+	
+	/**
+	 * 异步获取session（网关等非阻塞环境使用）
+	 * @param sessionId
+	 * @return
+	 */
+	public CompletableFuture<UserSession> getLoginSessionAsync(String sessionId) {
+		if (StringUtils.isBlank(sessionId))
+			return CompletableFuture.completedFuture(null);
+		return storageManager.getCache(cacheName).getObjectAsync(sessionId);
+	}
 
 	public UserSession getSession() {
 		return getSession(setCookie);
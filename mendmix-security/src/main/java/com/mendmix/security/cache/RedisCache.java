@@ -16,11 +16,13 @@
 package com.mendmix.security.cache;
 
 import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
 
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
 
 import com.mendmix.cache.RedisTemplateGroups;
+import com.mendmix.cache.adapter.RedisCacheAdapter;
 import com.mendmix.security.Cache;
 
 /**
@@ -34,6 +36,7 @@ public class RedisCache implements Cache {
 	
 	private StringRedisTemplate stringRedisTemplate;
 	private RedisTemplate<String,Object> redisTemplate;
+	private RedisCacheAdapter cacheAdapter;
 	private String keyPrefix;
 	private Duration timeToLiveSeconds;
 	
@@ -41,6 +44,7 @@ public class RedisCache implements Cache {
 	public RedisCache(String keyPrefix,int timeToLiveSeconds) {
 		this.stringRedisTemplate = RedisTemplateGroups.getStringRedisTemplate(CACHE_GROUP_NAME);
 		this.redisTemplate = RedisTemplateGroups.getRedisTemplate(CACHE_GROUP_NAME);
+		this.cacheAdapter = new RedisCacheAdapter(redisTemplate, stringRedisTemplate);
 		this.keyPrefix = keyPrefix + ":";
 		this.timeToLiveSeconds = Duration.ofSeconds(timeToLiveSeconds);
 	}
@@ -51,28 +55,37 @@ public class RedisCache implements Cache {
 
 	@Override
 	public void setString(String key, String value) {
-		stringRedisTemplate.opsForValue().set(buildKey(key), value, timeToLiveSeconds);
+		cacheAdapter.setStr(buildKey(key), value, timeToLiveSeconds.getSeconds());
 	}
 
 	@Override
 	public String getString(String key) {
-		return stringRedisTemplate.opsForValue().get(buildKey(key));
+		return cacheAdapter.getStr(buildKey(key));
 	}
 
 	@Override
 	public void setObject(String key, Object value) {
-		redisTemplate.opsForValue().set(buildKey(key), value, timeToLiveSeconds);
+		cacheAdapter.set(buildKey(key), value, timeToLiveSeconds.getSeconds());
 	}
 
 	@Override
-	@SuppressWarnings("unchecked")
 	public <T> T getObject(String key) {
-		return (T) redisTemplate.opsForValue().get(buildKey(key));
+		return cacheAdapter.get(buildKey(key));
+	}
+
+	@Override
+	public CompletableFuture<String> getStringAsync(String key) {
+		return cacheAdapter.getStrAsync(buildKey(key));
+	}
+
+	@Override
+	public <T> CompletableFuture<T> getObjectAsync(String key) {
+		return cacheAdapter.getAsync(buildKey(key));
 	}
 
 	@Override
 	public void remove(String key) {
-		redisTemplate.delete(buildKey(key));
+		cacheAdapter.remove(buildKey(key));
 	}
 
 	@Override
@@ -17,6 +17,7 @@ package com.mendmix.springcloud.autoconfigure;
 
 import java.util.Map;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
 import org.springframework.boot.web.servlet.ServletRegistrationBean;
@@ -24,6 +25,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import com.mendmix.common.util.ResourceUtils;
+import com.mendmix.mybatis.plugin.metrics.SqlMetricsServlet;
 import com.mendmix.scheduler.api.ScheduleApiServlet;
 import com.mendmix.springweb.exporter.AppMetadataServlet;
 
@@ -76,4 +78,16 @@ public class ServletConfiguration {
 		}
 	    return servletRegistrationBean;
 	}
+	
+	@Configuration
+	@ConditionalOnClass(name = {"com.mendmix.mybatis.plugin.metrics.SqlMetricsServlet"})
+	public static class SqlMetricsServletConfiguration {
+		
+		@Bean
+		public ServletRegistrationBean<SqlMetricsServlet> sqlMetricsServlet() {
+			ServletRegistrationBean<SqlMetricsServlet> servletRegistrationBean = new ServletRegistrationBean<>(new SqlMetricsServlet());
+			servletRegistrationBean.addUrlMappings(SqlMetricsServlet.DEFAULT_URI);
+			return servletRegistrationBean;
+		}
+	}
 }